@@ -566,6 +566,19 @@ public class OrderedExecutor implements ExecutorService {
         return threadIds[chooseThreadIdx(orderingKey, threads.length)];
     }
 
+    /**
+     * Check whether the current thread is one of the threads of the executor.
+     */
+    public boolean isExecutorThread() {
+        long currentThreadId = Thread.currentThread().getId();
+        for (long threadId : threadIds) {
+            if (threadId == currentThreadId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public ExecutorService chooseThread() {
         // skip random # generation in this special case
         if (threads.length == 1) {
@@ -46,7 +46,7 @@ public abstract class AbstractLogCompactor {
 
     public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener) {
         this.conf = conf;
-        this.throttler = new Throttler(conf);
+        this.throttler = Throttler.create(conf);
         this.logRemovalListener = logRemovalListener;
     }
 
@@ -62,12 +62,19 @@ public abstract class AbstractLogCompactor {
      */
     public void cleanUpAndRecover() {}
 
+    /**
+     * Set the tracker of the foreground request latency used by the throttler.
+     */
+    public void setForegroundLatencyTracker(ForegroundLatencyTracker foregroundLatencyTracker) {
+        throttler.setForegroundLatencyTracker(foregroundLatencyTracker);
+    }
+
     /**
      * class Throttler.
      */
     public static class Throttler {
-        private final RateLimiter rateLimiter;
-        private final boolean isThrottleByBytes;
+        final RateLimiter rateLimiter;
+        final boolean isThrottleByBytes;
         private final AtomicBoolean cancelled = new AtomicBoolean(false);
 
         Throttler(ServerConfiguration conf) {
@@ -76,6 +83,17 @@ public abstract class AbstractLogCompactor {
                 ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries());
         }
 
+        static Throttler create(ServerConfiguration conf) {
+            if (conf.isCompactionThrottleAdaptiveEnabled()) {
+                return new AdaptiveCompactionThrottler(conf);
+            }
+            return new Throttler(conf);
+        }
+
+        void setForegroundLatencyTracker(ForegroundLatencyTracker foregroundLatencyTracker) {
+            // the fixed rate throttler doesn't look at the foreground latency
+        }
+
         // acquire. if bybytes: bytes of this entry; if byentries: 1.
         boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
             return rateLimiter.tryAcquire(this.isThrottleByBytes ? permits : 1, timeout, unit);
@@ -0,0 +1,136 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compaction throttler adapting the compaction rate to the foreground traffic.
+ *
+ * <p>Every adjust interval, the throttler samples the p99 latency of the foreground adds
+ * and reads and the average queue depth of the ledger devices. The rate is halved when
+ * either of them goes above its limit, and raised by 25% when both are below 80% of their
+ * limit. The rate stays within a range around the configured compaction rate.
+ *
+ * <p>The rate is adjusted by a timer rather than by the compaction itself, so it keeps
+ * following the foreground traffic while the compaction is idle or waiting for permits.
+ */
+class AdaptiveCompactionThrottler extends AbstractLogCompactor.Throttler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveCompactionThrottler.class);
+
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double INCREASE_FACTOR = 1.25;
+    private static final double HEADROOM = 0.8;
+
+    // shared by the throttlers of all the compactors, the adjustments are cheap
+    private static final ScheduledExecutorService ADJUST_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+            new DefaultThreadFactory("CompactionThrottlerAdjust", true));
+
+    private final double minRate;
+    private final double maxRate;
+    private final long targetP99LatencyMicros;
+    private final double maxDiskQueueDepth;
+    private final DiskQueueDepthSampler diskQueueDepthSampler;
+    private final ScheduledFuture<?> adjustTask;
+
+    private volatile ForegroundLatencyTracker.Window foregroundLatency;
+
+    AdaptiveCompactionThrottler(ServerConfiguration conf) {
+        this(conf, ADJUST_EXECUTOR);
+    }
+
+    AdaptiveCompactionThrottler(ServerConfiguration conf, ScheduledExecutorService adjustExecutor) {
+        super(conf);
+        double baseRate = rateLimiter.getRate();
+        int range = Math.max(1, conf.getCompactionThrottleAdaptiveRateRange());
+        this.minRate = baseRate / range;
+        this.maxRate = baseRate * range;
+        this.targetP99LatencyMicros = TimeUnit.MILLISECONDS.toMicros(
+                conf.getCompactionThrottleTargetForegroundP99LatencyMs());
+        this.maxDiskQueueDepth = conf.getCompactionThrottleMaxDiskQueueDepth();
+        this.diskQueueDepthSampler = maxDiskQueueDepth > 0
+                ? new DiskQueueDepthSampler(Arrays.asList(conf.getLedgerDirs())) : null;
+        long adjustIntervalMs = conf.getCompactionThrottleAdjustIntervalMs();
+        this.adjustTask = adjustExecutor.scheduleWithFixedDelay(this::safeAdjustRate,
+                adjustIntervalMs, adjustIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    void setForegroundLatencyTracker(ForegroundLatencyTracker foregroundLatencyTracker) {
+        this.foregroundLatency = foregroundLatencyTracker.newWindow();
+    }
+
+    @Override
+    public void cancelledAcquire() {
+        super.cancelledAcquire();
+        adjustTask.cancel(false);
+    }
+
+    private void safeAdjustRate() {
+        try {
+            adjustRate();
+        } catch (Throwable t) {
+            // keep the timer running, the next adjustment samples again
+            LOG.warn("Failed to adjust the compaction rate", t);
+        }
+    }
+
+    /**
+     * Adjust the rate to the foreground traffic since the previous adjustment.
+     * Only called from the adjust timer, so the adjustments never run concurrently.
+     */
+    void adjustRate() {
+        ForegroundLatencyTracker.Window window = foregroundLatency;
+        long p99LatencyMicros = window != null ? window.sample(0.99) : -1;
+        double diskQueueDepth = diskQueueDepthSampler != null ? diskQueueDepthSampler.sample() : -1;
+
+        boolean overloaded = p99LatencyMicros > targetP99LatencyMicros
+                || (maxDiskQueueDepth > 0 && diskQueueDepth > maxDiskQueueDepth);
+        boolean underloaded = p99LatencyMicros < targetP99LatencyMicros * HEADROOM
+                && (maxDiskQueueDepth <= 0 || diskQueueDepth < maxDiskQueueDepth * HEADROOM);
+
+        double rate = rateLimiter.getRate();
+        double newRate = rate;
+        if (overloaded) {
+            newRate = Math.max(minRate, rate * DECREASE_FACTOR);
+        } else if (underloaded) {
+            newRate = Math.min(maxRate, rate * INCREASE_FACTOR);
+        }
+        if (newRate != rate) {
+            rateLimiter.setRate(newRate);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Compaction rate changed from {} to {} {}/s, foreground p99 latency: {} us,"
+                        + " disk queue depth: {}", rate, newRate, isThrottleByBytes ? "bytes" : "entries",
+                        p99LatencyMicros, diskQueueDepth);
+            }
+        }
+    }
+}
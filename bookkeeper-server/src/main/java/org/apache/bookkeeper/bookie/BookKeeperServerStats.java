@@ -38,6 +38,8 @@ public interface BookKeeperServerStats {
 
     // Stats
     String CHANNEL_WRITE = "CHANNEL_WRITE";
+    String CHANNEL_FLUSH = "CHANNEL_FLUSH";
+    String CHANNEL_RESPONSES_PER_FLUSH = "CHANNEL_RESPONSES_PER_FLUSH";
 
     //
     // Server Operations
@@ -48,12 +50,21 @@ public interface BookKeeperServerStats {
     String ADD_ENTRY = "ADD_ENTRY";
     String WRITE_THREAD_QUEUED_LATENCY = "WRITE_THREAD_QUEUED_LATENCY";
     String ADD_ENTRY_REJECTED = "ADD_ENTRY_REJECTED";
+    String ADD_ENTRY_CHUNKED_REJECTED = "ADD_ENTRY_CHUNKED_REJECTED";
     String FORCE_LEDGER_REQUEST = "FORCE_LEDGER_REQUEST";
     String FORCE_LEDGER = "FORCE_LEDGER";
     String READ_ENTRY_REQUEST = "READ_ENTRY_REQUEST";
     String READ_ENTRY = "READ_ENTRY";
     String READ_ENTRY_REJECTED = "READ_ENTRY_REJECTED";
+    String READ_ENTRY_ZERO_COPY = "READ_ENTRY_ZERO_COPY";
+    String READ_ENTRY_COMPRESSION = "READ_ENTRY_COMPRESSION";
+    String READ_ENTRY_COMPRESSION_SAVED_BYTES = "READ_ENTRY_COMPRESSION_SAVED_BYTES";
+    String BATCH_READ_ENTRY_REQUEST = "BATCH_READ_ENTRY_REQUEST";
+    String BATCH_READ_ENTRY = "BATCH_READ_ENTRY";
+    String BATCH_READ_ENTRY_ENTRIES = "BATCH_READ_ENTRY_ENTRIES";
     String READ_ENTRY_SCHEDULING_DELAY = "READ_ENTRY_SCHEDULING_DELAY";
+    String REQUEST_SCHEDULER_QUEUE_WAIT = "REQUEST_SCHEDULER_QUEUE_WAIT";
+    String REQUEST_SCHEDULER_PENDING = "REQUEST_SCHEDULER_PENDING";
     String READ_ENTRY_FENCE_REQUEST = "READ_ENTRY_FENCE_REQUEST";
     String READ_ENTRY_FENCE_WAIT = "READ_ENTRY_FENCE_WAIT";
     String READ_ENTRY_FENCE_READ = "READ_ENTRY_FENCE_READ";
@@ -61,6 +72,10 @@ public interface BookKeeperServerStats {
     String READ_ENTRY_LONG_POLL_PRE_WAIT = "READ_ENTRY_LONG_POLL_PRE_WAIT";
     String READ_ENTRY_LONG_POLL_WAIT = "READ_ENTRY_LONG_POLL_WAIT";
     String READ_ENTRY_LONG_POLL_READ = "READ_ENTRY_LONG_POLL_READ";
+    String WATCH_LAC_REQUEST = "WATCH_LAC_REQUEST";
+    String WATCH_LAC_WAIT = "WATCH_LAC_WAIT";
+    String WATCH_LAC_NOTIFICATIONS = "WATCH_LAC_NOTIFICATIONS";
+    String WATCH_LAC_WATCHED_LEDGERS = "WATCH_LAC_WATCHED_LEDGERS";
     String WRITE_LAC_REQUEST = "WRITE_LAC_REQUEST";
     String WRITE_LAC = "WRITE_LAC";
     String READ_LAC_REQUEST = "READ_LAC_REQUEST";
@@ -92,10 +107,15 @@ public interface BookKeeperServerStats {
 
     String ADD_ENTRY_IN_PROGRESS = "ADD_ENTRY_IN_PROGRESS";
     String ADD_ENTRY_BLOCKED = "ADD_ENTRY_BLOCKED";
+    String ADD_ENTRY_CHUNKED_PENDING_BYTES = "ADD_ENTRY_CHUNKED_PENDING_BYTES";
     String ADD_ENTRY_BLOCKED_WAIT = "ADD_ENTRY_BLOCKED_WAIT";
     String READ_ENTRY_IN_PROGRESS = "READ_ENTRY_IN_PROGRESS";
     String READ_ENTRY_BLOCKED = "READ_ENTRY_BLOCKED";
     String READ_ENTRY_BLOCKED_WAIT = "READ_ENTRY_BLOCKED_WAIT";
+    String CHANNEL_THROTTLED = "CHANNEL_THROTTLED";
+    String CHANNEL_THROTTLED_WAIT = "CHANNEL_THROTTLED_WAIT";
+    String CHANNELS_THROTTLED = "CHANNELS_THROTTLED";
+    String IN_FLIGHT_REQUEST_BYTES = "IN_FLIGHT_REQUEST_BYTES";
 
     //
     // Journal Stats (scoped under SERVER_SCOPE)
@@ -152,6 +172,8 @@ public interface BookKeeperServerStats {
     String MINOR_COMPACTION_COUNT = "MINOR_COMPACTION_TOTAL";
     String ACTIVE_LEDGER_COUNT = "ACTIVE_LEDGER_TOTAL";
     String DELETED_LEDGER_COUNT = "DELETED_LEDGER_TOTAL";
+    String COLD_TIER_MIGRATED_ENTRY_LOG_COUNT = "COLD_TIER_MIGRATED_ENTRY_LOG_TOTAL";
+    String COLD_TIER_MIGRATED_SPACE_BYTES = "COLD_TIER_MIGRATED_SPACE_BYTES";
 
     // Index Related Counters
     String INDEX_INMEM_ILLEGAL_STATE_RESET = "INDEX_INMEM_ILLEGAL_STATE_RESET";
@@ -188,4 +210,8 @@ public interface BookKeeperServerStats {
     String NUM_OF_WRITE_LEDGERS_REMOVED_CACHE_MAXSIZE = "NUM_OF_WRITE_LEDGERS_REMOVED_CACHE_MAXSIZE";
     String NUM_LEDGERS_HAVING_MULTIPLE_ENTRYLOGS = "NUM_LEDGERS_HAVING_MULTIPLE_ENTRYLOGS";
     String ENTRYLOGS_PER_LEDGER = "ENTRYLOGS_PER_LEDGER";
+
+    // EntryLogManagerForEntryLogLanes Stats
+    String NUM_OF_ACTIVE_ENTRYLOG_LANES = "NUM_OF_ACTIVE_ENTRYLOG_LANES";
+    String ENTRYLOG_LANE_ROLLS = "ENTRYLOG_LANE_ROLLS";
 }
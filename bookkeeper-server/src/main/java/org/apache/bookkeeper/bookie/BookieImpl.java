@@ -32,6 +32,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
 import java.io.File;
 import java.io.FilenameFilter;
@@ -100,7 +101,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     final List<Journal> journals;
 
     final HandleFactory handles;
-    final boolean entryLogPerLedgerEnabled;
+    final boolean multipleActiveEntryLogsEnabled;
 
     public static final long METAENTRY_ID_LEDGER_KEY = -0x1000;
     public static final long METAENTRY_ID_FENCE_KEY  = -0x2000;
@@ -437,7 +438,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
                     conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator, journalAliveListener));
         }
 
-        this.entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
+        this.multipleActiveEntryLogsEnabled = conf.isMultipleActiveEntryLogsEnabled();
         CheckpointSource checkpointSource = new CheckpointSourceList(journals);
 
         this.ledgerStorage = storage;
@@ -456,12 +457,12 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
          *
          * 2) DbLedgerStorage
          */
-        if (entryLogPerLedgerEnabled || isDbLedgerStorage) {
+        if (multipleActiveEntryLogsEnabled || isDbLedgerStorage) {
             syncThread = new SyncThread(conf, getLedgerDirsListener(), ledgerStorage, checkpointSource, statsLogger) {
                 @Override
                 public void startCheckpoint(Checkpoint checkpoint) {
                     /*
-                     * in the case of entryLogPerLedgerEnabled, LedgerStorage
+                     * in the case of multiple active entry logs, LedgerStorage
                      * dont drive checkpoint logic, but instead it is done
                      * periodically by SyncThread. So startCheckpoint which
                      * will be called by LedgerStorage will be no-op.
@@ -494,6 +495,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
 
         // Expose Stats
         this.bookieStats = new BookieStats(statsLogger, journalDirectories.size(), conf.getJournalQueueSize());
+        ledgerStorage.setForegroundLatencyTracker(bookieStats.getForegroundLatencyTracker());
     }
 
     StateManager initializeStateManager() throws IOException {
@@ -1081,6 +1083,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
             if (success) {
                 bookieStats.getAddEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
                 bookieStats.getAddBytesStats().registerSuccessfulValue(entrySize);
+                bookieStats.getForegroundLatencyTracker().recordLatency(elapsedNanos, TimeUnit.NANOSECONDS);
             } else {
                 bookieStats.getAddEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
                 bookieStats.getAddBytesStats().registerFailedValue(entrySize);
@@ -1124,6 +1127,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
             if (success) {
                 bookieStats.getReadEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
                 bookieStats.getReadBytesStats().registerSuccessfulValue(entrySize);
+                bookieStats.getForegroundLatencyTracker().recordLatency(elapsedNanos, TimeUnit.NANOSECONDS);
             } else {
                 bookieStats.getReadEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
                 bookieStats.getReadBytesStats().registerFailedValue(entrySize);
@@ -1131,6 +1135,22 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         }
     }
 
+    @Override
+    public FileRegion readEntryRegion(long ledgerId, long entryId)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+        FileRegion region = handle.readEntryRegion(entryId);
+        if (region != null) {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            bookieStats.getReadBytes().addCount(region.count());
+            bookieStats.getReadEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            bookieStats.getReadBytesStats().registerSuccessfulValue(region.count());
+            bookieStats.getForegroundLatencyTracker().recordLatency(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+        return region;
+    }
+
     public long readLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
         return handle.getLastAddConfirmed();
@@ -0,0 +1,78 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Migrates aged entry logs from the fast ledger dirs to the cold ledger dirs.
+ *
+ * <p>The migration goes through the same transactional phases as
+ * {@link TransactionalEntryLogCompactor}, except that the compaction log is
+ * allocated on a cold ledger dir. The live entries of the source log are copied,
+ * their locations are updated in the ledger storage index, and the source log is
+ * removed afterwards. Entries of deleted ledgers are dropped along the way.
+ */
+public class ColdTierEntryLogMover extends TransactionalEntryLogCompactor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColdTierEntryLogMover.class);
+
+    private final DefaultEntryLogger defaultEntryLogger;
+    private final long ageThresholdMillis;
+
+    public ColdTierEntryLogMover(ServerConfiguration conf,
+                                 DefaultEntryLogger entryLogger,
+                                 CompactableLedgerStorage ledgerStorage,
+                                 LogRemovalListener logRemover) {
+        super(conf, entryLogger, ledgerStorage, logRemover);
+        this.defaultEntryLogger = entryLogger;
+        this.ageThresholdMillis = TimeUnit.SECONDS.toMillis(conf.getColdEntryLogAgeThresholdSeconds());
+    }
+
+    /**
+     * Check whether the entry log lives on a fast ledger dir and is old enough to be
+     * migrated to the cold tier.
+     */
+    boolean isMigrationCandidate(EntryLogMetadata entryLogMeta, long nowMillis) {
+        long entryLogId = entryLogMeta.getEntryLogId();
+        try {
+            return !defaultEntryLogger.isEntryLogInColdTier(entryLogId)
+                && nowMillis - defaultEntryLogger.getEntryLogLastModified(entryLogId) > ageThresholdMillis;
+        } catch (FileNotFoundException fnfe) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Entry log {} doesn't exist any more, skip migrating it", entryLogId);
+            }
+            return false;
+        }
+    }
+
+    @Override
+    protected CompactionEntryLog newCompactionLog(long logToCompact) throws IOException {
+        return defaultEntryLogger.newColdTierCompactionLog(logToCompact);
+    }
+}
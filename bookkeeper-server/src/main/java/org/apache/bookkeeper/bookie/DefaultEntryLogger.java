@@ -31,6 +31,8 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
+import io.netty.util.IllegalReferenceCountException;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.FastThreadLocal;
 import java.io.BufferedReader;
@@ -44,6 +46,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -322,6 +325,7 @@ public class DefaultEntryLogger implements EntryLogger {
         this.ledgerDirsManager = ledgerDirsManager;
         this.conf = conf;
         entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
+        entryLogMmapReadEnabled = conf.isEntryLogMmapReadEnabled();
         if (listener != null) {
             addListener(listener);
         }
@@ -353,6 +357,9 @@ public class DefaultEntryLogger implements EntryLogger {
         if (entryLogPerLedgerEnabled) {
             this.entryLogManager = new EntryLogManagerForEntryLogPerLedger(conf, ledgerDirsManager,
                     entryLoggerAllocator, listeners, recentlyCreatedEntryLogsStatus, statsLogger);
+        } else if (conf.getEntryLogLanesPerDir() > 0) {
+            this.entryLogManager = new EntryLogManagerForEntryLogLanes(conf, ledgerDirsManager,
+                    entryLoggerAllocator, listeners, recentlyCreatedEntryLogsStatus, statsLogger);
         } else {
             this.entryLogManager = new EntryLogManagerForSingleEntryLog(conf, ledgerDirsManager, entryLoggerAllocator,
                     listeners, recentlyCreatedEntryLogsStatus);
@@ -419,6 +426,22 @@ public class DefaultEntryLogger implements EntryLogger {
      */
     private final ConcurrentMap<Long, FileChannel> logid2FileChannel = new ConcurrentHashMap<Long, FileChannel>();
 
+    /**
+     * Memory mappings of sealed entry logs, used for reading when the mmap read path is enabled.
+     * The map holds one reference of each mapped log; the log is unmapped once this reference
+     * is dropped and all the entries sliced out of the mapping are released.
+     */
+    private final boolean entryLogMmapReadEnabled;
+    private final ConcurrentMap<Long, MappedEntryLogBuffer> logid2MappedLog =
+            new ConcurrentHashMap<Long, MappedEntryLogBuffer>();
+
+    /**
+     * Read channels of sealed entry logs, shared by the file regions handed out for zero-copy reads.
+     * The map holds one reference of each channel, like for the mappings above.
+     */
+    private final ConcurrentMap<Long, EntryLogFileRegion.LogFile> logid2RegionFile =
+            new ConcurrentHashMap<Long, EntryLogFileRegion.LogFile>();
+
     /**
      * Put the logId, bc pair in the map responsible for the current thread.
      * @param logId
@@ -442,6 +465,18 @@ public class DefaultEntryLogger implements EntryLogger {
                 LOG.warn("Exception while closing channel for log file:" + logId);
             }
         }
+        releaseSealedLogReaders(logId);
+    }
+
+    private void releaseSealedLogReaders(long logId) {
+        MappedEntryLogBuffer mappedLog = logid2MappedLog.remove(logId);
+        if (null != mappedLog) {
+            ReferenceCountUtil.release(mappedLog);
+        }
+        EntryLogFileRegion.LogFile regionFile = logid2RegionFile.remove(logId);
+        if (null != regionFile) {
+            ReferenceCountUtil.release(regionFile);
+        }
     }
 
     public BufferedReadChannel getFromChannels(long logId) {
@@ -529,6 +564,8 @@ public class DefaultEntryLogger implements EntryLogger {
         if (!entryLogFile.delete()) {
             LOG.warn("Could not delete entry log file {}", entryLogFile);
         }
+        // drop a mapping or a channel that a concurrent reader may have opened before the file was deleted
+        releaseSealedLogReaders(entryLogId);
         return true;
     }
 
@@ -825,6 +862,12 @@ public class DefaultEntryLogger implements EntryLogger {
         long entryLogId = logIdForOffset(location);
         long pos = posForOffset(location);
 
+        if (entryLogMmapReadEnabled) {
+            ByteBuf data = readMappedEntry(ledgerId, entryId, entryLogId, pos, validateEntry);
+            if (data != null) {
+                return data;
+            }
+        }
 
         BufferedReadChannel fc = null;
         int entrySize = -1;
@@ -854,6 +897,170 @@ public class DefaultEntryLogger implements EntryLogger {
         return data;
     }
 
+    /**
+     * Read an entry from the memory mapping of a sealed entry log.
+     *
+     * @return a slice of the mapping holding the entry, or null if the entry log can't be read
+     *         through a mapping, in which case the entry should be read through the log channel
+     */
+    private ByteBuf readMappedEntry(long ledgerId, long entryId, long entryLogId, long pos, boolean validateEntry)
+            throws IOException {
+        MappedEntryLogBuffer mappedLog = acquireMappedLog(entryLogId);
+        if (mappedLog == null) {
+            return null;
+        }
+        try {
+            ByteBuf sizeBuff = sizeBuffer.get();
+            sizeBuff.clear();
+            long entrySizePos = pos - 4; // we want to get the entrySize as well as the ledgerId and entryId
+            if (entrySizePos < 0 || entrySizePos + sizeBuff.capacity() > mappedLog.capacity()) {
+                throw new EntryLookupException.MissingEntryException(ledgerId, entryId, entryLogId, entrySizePos);
+            }
+            mappedLog.getBytes((int) entrySizePos, sizeBuff, sizeBuff.capacity());
+            int entrySize = sizeBuff.getInt(0);
+            if (validateEntry) {
+                validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
+            }
+            if (entrySize < 0 || pos + entrySize > mappedLog.capacity()) {
+                throw new EntryLookupException("Short read for " + ledgerId + "@"
+                        + entryId + " in " + entryLogId + "@" + pos + "("
+                        + (mappedLog.capacity() - pos) + "!=" + entrySize + ")");
+            }
+            return mappedLog.retainedSlice((int) pos, entrySize);
+        } catch (EntryLookupException e) {
+            throw new IOException("Bad entry read from log file id: " + entryLogId, e);
+        } finally {
+            mappedLog.release();
+        }
+    }
+
+    /**
+     * Get a retained mapping of a sealed entry log, mapping the log on first access.
+     * Logs still being written are never mapped, since the mapping would not see
+     * the data appended afterwards.
+     */
+    private MappedEntryLogBuffer acquireMappedLog(long entryLogId) throws IOException {
+        MappedEntryLogBuffer mappedLog = logid2MappedLog.get(entryLogId);
+        if (mappedLog == null) {
+            if (!isSealedLog(entryLogId)) {
+                return null;
+            }
+            try {
+                mappedLog = MappedEntryLogBuffer.map(findFile(entryLogId));
+            } catch (FileNotFoundException | NoSuchFileException e) {
+                // let the channel read path report the missing log
+                return null;
+            }
+            if (mappedLog == null) {
+                return null;
+            }
+            MappedEntryLogBuffer oldMappedLog = logid2MappedLog.putIfAbsent(entryLogId, mappedLog);
+            if (null != oldMappedLog) {
+                mappedLog.release();
+                mappedLog = oldMappedLog;
+            } else if (!mappedLog.getFile().exists()) {
+                // the log was removed while it was being mapped, after removeEntryLog dropped
+                // the mappings, so drop this one as nobody else would
+                if (logid2MappedLog.remove(entryLogId, mappedLog)) {
+                    mappedLog.release();
+                }
+                return null;
+            }
+        }
+        try {
+            mappedLog.retain();
+        } catch (IllegalReferenceCountException e) {
+            // the log was unmapped concurrently because it is being removed
+            return null;
+        }
+        return mappedLog;
+    }
+
+    @VisibleForTesting
+    boolean hasSealedLogReaders(long entryLogId) {
+        return logid2MappedLog.containsKey(entryLogId) || logid2RegionFile.containsKey(entryLogId);
+    }
+
+    /**
+     * Whether an entry log is flushed and no longer written, so that its content doesn't change anymore.
+     */
+    private boolean isSealedLog(long entryLogId) {
+        return recentlyCreatedEntryLogsStatus.isFlushedLogId(entryLogId)
+                && entryLogManager.getCurrentLogIfPresent(entryLogId) == null;
+    }
+
+    @Override
+    public FileRegion readEntryRegion(long ledgerId, long entryId, long entryLocation) throws IOException {
+        long entryLogId = logIdForOffset(entryLocation);
+        long pos = posForOffset(entryLocation);
+
+        EntryLogFileRegion.LogFile regionFile = acquireRegionFile(entryLogId);
+        if (regionFile == null) {
+            return null;
+        }
+        try {
+            ByteBuf sizeBuff = sizeBuffer.get();
+            sizeBuff.clear();
+            long entrySizePos = pos - 4; // we want to get the entrySize as well as the ledgerId and entryId
+            int rc = regionFile.channel().read(sizeBuff.nioBuffer(0, sizeBuff.capacity()), entrySizePos);
+            if (rc != sizeBuff.capacity()) {
+                throw new EntryLookupException.MissingEntryException(ledgerId, entryId, entryLogId, entrySizePos);
+            }
+            sizeBuff.writerIndex(rc);
+            int entrySize = sizeBuff.getInt(0);
+            validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
+            if (pos + entrySize > regionFile.channel().size()) {
+                throw new EntryLookupException("Short read for " + ledgerId + "@"
+                        + entryId + " in " + entryLogId + "@" + pos + "("
+                        + (regionFile.channel().size() - pos) + "!=" + entrySize + ")");
+            }
+            return new EntryLogFileRegion(regionFile.retain(), pos, entrySize);
+        } catch (EntryLookupException e) {
+            throw new IOException("Bad entry read from log file id: " + entryLogId, e);
+        } finally {
+            regionFile.release();
+        }
+    }
+
+    /**
+     * Get the retained read channel shared by the file regions of a sealed entry log,
+     * opening it on first access.
+     */
+    private EntryLogFileRegion.LogFile acquireRegionFile(long entryLogId) throws IOException {
+        EntryLogFileRegion.LogFile regionFile = logid2RegionFile.get(entryLogId);
+        if (regionFile == null) {
+            if (!isSealedLog(entryLogId)) {
+                return null;
+            }
+            File logFile;
+            try {
+                logFile = findFile(entryLogId);
+                regionFile = EntryLogFileRegion.LogFile.open(logFile);
+            } catch (FileNotFoundException | NoSuchFileException e) {
+                // let the channel read path report the missing log
+                return null;
+            }
+            EntryLogFileRegion.LogFile oldRegionFile = logid2RegionFile.putIfAbsent(entryLogId, regionFile);
+            if (null != oldRegionFile) {
+                regionFile.release();
+                regionFile = oldRegionFile;
+            } else if (!logFile.exists()) {
+                // the log was removed while it was being opened, same as for the mappings
+                if (logid2RegionFile.remove(entryLogId, regionFile)) {
+                    regionFile.release();
+                }
+                return null;
+            }
+        }
+        try {
+            regionFile.retain();
+        } catch (IllegalReferenceCountException e) {
+            // the channel was closed concurrently because the log is being removed
+            return null;
+        }
+        return regionFile;
+    }
+
     /**
      * Read the header of an entry log.
      */
@@ -1171,6 +1378,12 @@ public class DefaultEntryLogger implements EntryLogger {
             }
             // clear the mapping, so we don't need to go through the channels again in finally block in normal case.
             logid2FileChannel.clear();
+            for (Long logId : logid2MappedLog.keySet()) {
+                releaseSealedLogReaders(logId);
+            }
+            for (Long logId : logid2RegionFile.keySet()) {
+                releaseSealedLogReaders(logId);
+            }
             entryLogManager.close();
             synchronized (compactionLogLock) {
                 if (compactionLogChannel != null) {
@@ -1264,7 +1477,41 @@ public class DefaultEntryLogger implements EntryLogger {
     @Override
     public CompactionEntryLog newCompactionLog(long logToCompact) throws IOException {
         createNewCompactionLog();
+        return newCompactionEntryLog(logToCompact);
+    }
+
+    /**
+     * Create a new compaction log on a cold ledger dir, so the live entries of
+     * <i>logToMigrate</i> are moved to the cold tier. The cold dir is picked by
+     * the entry log manager among the cold dirs the disk checker found writable.
+     */
+    CompactionEntryLog newColdTierCompactionLog(long logToMigrate) throws IOException {
+        File coldDir = entryLogManager.getDirForNextEntryLog(ledgerDirsManager.getWritableColdLedgerDirs());
+        synchronized (compactionLogLock) {
+            if (compactionLogChannel == null) {
+                compactionLogChannel = entryLoggerAllocator.createNewLogForCompaction(coldDir);
+            } else if (!compactionLogChannel.getLogFile().getParentFile().equals(coldDir)) {
+                throw new IOException("Compaction log " + compactionLogChannel.getLogFile() + " is already in use");
+            }
+        }
+        return newCompactionEntryLog(logToMigrate);
+    }
+
+    /**
+     * Check whether the entry log lives on a cold ledger dir.
+     */
+    boolean isEntryLogInColdTier(long entryLogId) throws FileNotFoundException {
+        return ledgerDirsManager.isColdLedgerDir(findFile(entryLogId).getParentFile());
+    }
+
+    /**
+     * Get the last modified time of the entry log file, in milliseconds.
+     */
+    long getEntryLogLastModified(long entryLogId) throws FileNotFoundException {
+        return findFile(entryLogId).lastModified();
+    }
 
+    private CompactionEntryLog newCompactionEntryLog(long logToCompact) {
         File compactingLogFile = getCurCompactionLogFile();
         long compactionLogId = fileName2LogId(compactingLogFile.getName());
         File compactedLogFile = compactedLogFileFromCompacting(compactingLogFile, logToCompact);
@@ -0,0 +1,124 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Samples the average queue depth of the block devices backing a set of directories,
+ * from the weighted time spent doing I/Os reported by /proc/diskstats.
+ *
+ * <p>Only available on Linux, when the directories are on a block device listed in
+ * /proc/diskstats.
+ */
+class DiskQueueDepthSampler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiskQueueDepthSampler.class);
+
+    private static final Path PROC_DISKSTATS = Paths.get("/proc/diskstats");
+    // fields of a /proc/diskstats line
+    private static final int DEVICE_NAME_FIELD = 2;
+    private static final int WEIGHTED_IO_MILLIS_FIELD = 13;
+
+    private final Set<String> devices = new HashSet<>();
+    private final Map<String, Long> lastWeightedIoMillis = new HashMap<>();
+    private long lastSampleNanos;
+
+    DiskQueueDepthSampler(List<File> dirs) {
+        if (!Files.isReadable(PROC_DISKSTATS)) {
+            LOG.info("{} is not available, device queue depth is not sampled", PROC_DISKSTATS);
+            return;
+        }
+        for (File dir : dirs) {
+            String device = deviceName(dir);
+            if (device != null) {
+                devices.add(device);
+            } else {
+                LOG.info("Can't find the block device of {}, its queue depth is not sampled", dir);
+            }
+        }
+    }
+
+    private static String deviceName(File dir) {
+        try {
+            String name = Files.getFileStore(dir.toPath()).name();
+            if (!name.startsWith("/dev/")) {
+                return null;
+            }
+            // resolve the links like /dev/mapper/* to the name used in /proc/diskstats
+            return Paths.get(name).toRealPath().getFileName().toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    boolean isAvailable() {
+        return !devices.isEmpty();
+    }
+
+    /**
+     * Get the max average queue depth of the devices since the previous sample.
+     *
+     * @return the queue depth, or -1 if it is not available
+     */
+    double sample() {
+        if (devices.isEmpty()) {
+            return -1;
+        }
+        long nowNanos = MathUtils.nowInNano();
+        long elapsedMillis = (nowNanos - lastSampleNanos) / 1_000_000;
+        boolean firstSample = lastWeightedIoMillis.isEmpty();
+        double maxQueueDepth = -1;
+        try {
+            for (String line : Files.readAllLines(PROC_DISKSTATS, UTF_8)) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length <= WEIGHTED_IO_MILLIS_FIELD || !devices.contains(fields[DEVICE_NAME_FIELD])) {
+                    continue;
+                }
+                long weightedIoMillis = Long.parseLong(fields[WEIGHTED_IO_MILLIS_FIELD]);
+                Long last = lastWeightedIoMillis.put(fields[DEVICE_NAME_FIELD], weightedIoMillis);
+                if (last != null && elapsedMillis > 0) {
+                    maxQueueDepth = Math.max(maxQueueDepth, (double) (weightedIoMillis - last) / elapsedMillis);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOG.warn("Failed to read {}", PROC_DISKSTATS, e);
+            return -1;
+        }
+        lastSampleNanos = nowNanos;
+        return firstSample ? -1 : maxQueueDepth;
+    }
+}
@@ -92,12 +92,16 @@ public class EntryLogCompactor extends AbstractLogCompactor {
 
                 @Override
                 public void process(final long ledgerId, long offset, ByteBuf entry) throws IOException {
+                    long entryId = entry.getLong(entry.readerIndex() + 8);
+                    if (entryId >= 0 && entryId <= ledgerStorage.getTrimEntryId(ledgerId)) {
+                        // trimmed entries are garbage, drop them
+                        return;
+                    }
                     throttler.acquire(entry.readableBytes());
 
                     if (offsets.size() > maxOutstandingRequests) {
                         flush();
                     }
-                    long entryId = entry.getLong(entry.readerIndex() + 8);
 
                     long newoffset = entryLogger.addEntry(ledgerId, entry);
                     offsets.add(new EntryLocation(ledgerId, entryId, newoffset));
@@ -0,0 +1,99 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.channel.DefaultFileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCounted;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link io.netty.channel.FileRegion} covering an entry stored in a sealed entry log.
+ *
+ * <p>Writing the region to a socket lets the kernel move the entry from the page cache to
+ * the socket, without copying it in a buffer first.
+ *
+ * <p>All the regions of a log share the read channel of the log. The channel is closed once
+ * the entry logger drops its own reference and all the regions handed out are released, so
+ * a region stays readable even if the log is garbage collected in the meantime.
+ */
+class EntryLogFileRegion extends DefaultFileRegion {
+
+    private final LogFile logFile;
+
+    EntryLogFileRegion(LogFile logFile, long position, long count) {
+        super(logFile.channel(), position, count);
+        this.logFile = logFile;
+    }
+
+    @Override
+    protected void deallocate() {
+        // the channel is shared with the other regions of the log, don't close it here
+        logFile.release();
+    }
+
+    /**
+     * A ref-counted read channel of a sealed entry log.
+     */
+    static class LogFile extends AbstractReferenceCounted {
+        private static final Logger LOG = LoggerFactory.getLogger(LogFile.class);
+
+        private final FileChannel channel;
+
+        private LogFile(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        static LogFile open(File file) throws IOException {
+            return new LogFile(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+        }
+
+        FileChannel channel() {
+            return channel;
+        }
+
+        @Override
+        public LogFile retain() {
+            super.retain();
+            return this;
+        }
+
+        @Override
+        protected void deallocate() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close entry log channel", e);
+            }
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ENTRYLOGGER_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ENTRYLOG_LANE_ROLLS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.NUM_OF_ACTIVE_ENTRYLOG_LANES;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.buffer.ByteBuf;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger.BufferedLogChannel;
+import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.IOUtils;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.commons.lang3.mutable.MutableInt;
+
+/**
+ * An {@link EntryLogManager} which hashes ledgers into a bounded number of
+ * active entrylogs ("lanes") per ledger directory.
+ *
+ * <p>It sits between {@link EntryLogManagerForSingleEntryLog}, which
+ * interleaves the entries of all the ledgers in one active entrylog, and
+ * {@link EntryLogManagerForEntryLogPerLedger}, which keeps an active entrylog
+ * for every ledger. Entries of a ledger always go to the same lane, so a
+ * sequential read of a ledger touches fewer entrylog pages, and ledgers
+ * written together tend to expire together, letting the garbage collector
+ * remove whole entrylogs of a lane without compacting them.
+ */
+@Slf4j
+class EntryLogManagerForEntryLogLanes extends EntryLogManagerBase {
+
+    static class EntryLogLane {
+        private final int laneId;
+        private final Lock laneLock = new ReentrantLock();
+        private volatile BufferedLogChannel activeLogChannel;
+        private volatile boolean ledgerDirFull = false;
+
+        private EntryLogLane(int laneId) {
+            this.laneId = laneId;
+        }
+
+        int getLaneId() {
+            return laneId;
+        }
+
+        BufferedLogChannel getActiveLogChannel() {
+            return activeLogChannel;
+        }
+
+        private boolean isOnDisk(File disk) {
+            BufferedLogChannel logChannel = activeLogChannel;
+            return logChannel != null && disk.equals(logChannel.getLogFile().getParentFile());
+        }
+    }
+
+    @StatsDoc(
+        name = ENTRYLOGGER_SCOPE,
+        category = CATEGORY_SERVER,
+        help = "EntryLogger related stats"
+    )
+    static class EntryLogLanesStats {
+
+        @StatsDoc(
+            name = NUM_OF_ACTIVE_ENTRYLOG_LANES,
+            help = "Number of entrylog lanes having an active entrylog"
+        )
+        private final Counter numOfActiveLanes;
+        @StatsDoc(
+            name = ENTRYLOG_LANE_ROLLS,
+            help = "Number of times an entrylog lane rolled over to a new entrylog"
+        )
+        private final Counter laneRolls;
+
+        EntryLogLanesStats(StatsLogger statsLogger) {
+            this.numOfActiveLanes = statsLogger.getCounter(NUM_OF_ACTIVE_ENTRYLOG_LANES);
+            this.laneRolls = statsLogger.getCounter(ENTRYLOG_LANE_ROLLS);
+        }
+    }
+
+    private final EntryLogLane[] lanes;
+    private final DefaultEntryLogger.RecentEntryLogsStatus recentlyCreatedEntryLogsStatus;
+    private final EntryLogLanesStats laneStats;
+
+    EntryLogManagerForEntryLogLanes(ServerConfiguration conf, LedgerDirsManager ledgerDirsManager,
+                                    EntryLoggerAllocator entryLoggerAllocator,
+                                    List<DefaultEntryLogger.EntryLogListener> listeners,
+                                    DefaultEntryLogger.RecentEntryLogsStatus recentlyCreatedEntryLogsStatus,
+                                    StatsLogger statsLogger) {
+        super(conf, ledgerDirsManager, entryLoggerAllocator, listeners);
+        this.recentlyCreatedEntryLogsStatus = recentlyCreatedEntryLogsStatus;
+        this.rotatedLogChannels = new CopyOnWriteArrayList<BufferedLogChannel>();
+        int numLanes = Math.max(1, conf.getEntryLogLanesPerDir() * ledgerDirsManager.getAllLedgerDirs().size());
+        this.lanes = new EntryLogLane[numLanes];
+        for (int i = 0; i < numLanes; i++) {
+            lanes[i] = new EntryLogLane(i);
+        }
+        this.laneStats = new EntryLogLanesStats(statsLogger);
+        ledgerDirsManager.addLedgerDirsListener(getLedgerDirsListener());
+        log.info("Created entrylog manager with {} entrylog lanes", numLanes);
+    }
+
+    private LedgerDirsListener getLedgerDirsListener() {
+        return new LedgerDirsListener() {
+            @Override
+            public void diskFull(File disk) {
+                markLanesOnDisk(disk, true);
+            }
+
+            @Override
+            public void diskAlmostFull(File disk) {
+                markLanesOnDisk(disk, true);
+            }
+
+            @Override
+            public void diskWritable(File disk) {
+                markLanesOnDisk(disk, false);
+            }
+        };
+    }
+
+    private void markLanesOnDisk(File disk, boolean ledgerDirFull) {
+        for (EntryLogLane lane : lanes) {
+            if (lane.isOnDisk(disk)) {
+                lane.ledgerDirFull = ledgerDirFull;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    EntryLogLane getLaneForLedger(long ledgerId) {
+        return lanes[MathUtils.signSafeMod(Long.hashCode(ledgerId), lanes.length)];
+    }
+
+    @VisibleForTesting
+    int getNumLanes() {
+        return lanes.length;
+    }
+
+    @Override
+    public long addEntry(long ledger, ByteBuf entry, boolean rollLog) throws IOException {
+        Lock lock = getLaneForLedger(ledger).laneLock;
+        lock.lock();
+        try {
+            return super.addEntry(ledger, entry, rollLog);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    void createNewLog(long ledgerId) throws IOException {
+        Lock lock = getLaneForLedger(ledgerId).laneLock;
+        lock.lock();
+        try {
+            super.createNewLog(ledgerId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    BufferedLogChannel getCurrentLogForLedgerForAddEntry(long ledgerId, int entrySize, boolean rollLog)
+            throws IOException {
+        EntryLogLane lane = getLaneForLedger(ledgerId);
+        lane.laneLock.lock();
+        try {
+            BufferedLogChannel logChannel = lane.activeLogChannel;
+            boolean reachEntryLogLimit = rollLog ? reachEntryLogLimit(logChannel, entrySize)
+                    : readEntryLogHardLimit(logChannel, entrySize);
+            // Create new log if logSizeLimit reached or current disk is full
+            boolean diskFull = (logChannel != null) && lane.ledgerDirFull;
+            boolean allDisksFull = !ledgerDirsManager.hasWritableLedgerDirs();
+
+            /*
+             * same as in entrylog per ledger, if all the disks are full the
+             * bookie must have turned to readonly mode and the addEntry traffic
+             * would be from GC, so it is ok to proceed with the current lane log.
+             */
+            if ((diskFull && (!allDisksFull)) || reachEntryLogLimit || (logChannel == null)) {
+                if (logChannel != null) {
+                    logChannel.flushAndForceWriteIfRegularFlush(false);
+                }
+                createNewLog(ledgerId,
+                    "for lane " + lane.laneId + " : diskFull = " + diskFull + ", allDisksFull = " + allDisksFull
+                        + ", reachEntryLogLimit = " + reachEntryLogLimit + ", logChannel = " + logChannel);
+            }
+            return lane.activeLogChannel;
+        } finally {
+            lane.laneLock.unlock();
+        }
+    }
+
+    @Override
+    BufferedLogChannel getCurrentLogForLedger(long ledgerId) {
+        return getLaneForLedger(ledgerId).activeLogChannel;
+    }
+
+    @Override
+    void setCurrentLogForLedgerAndAddToRotate(long ledgerId, BufferedLogChannel logChannel) {
+        EntryLogLane lane = getLaneForLedger(ledgerId);
+        lane.laneLock.lock();
+        try {
+            BufferedLogChannel hasToRotateLogChannel = lane.activeLogChannel;
+            lane.activeLogChannel = logChannel;
+            lane.ledgerDirFull = false;
+            if (hasToRotateLogChannel != null) {
+                rotatedLogChannels.add(hasToRotateLogChannel);
+                laneStats.laneRolls.inc();
+            } else {
+                laneStats.numOfActiveLanes.inc();
+            }
+        } finally {
+            lane.laneLock.unlock();
+        }
+    }
+
+    @Override
+    public BufferedLogChannel getCurrentLogIfPresent(long entryLogId) {
+        for (EntryLogLane lane : lanes) {
+            BufferedLogChannel logChannel = lane.activeLogChannel;
+            if (logChannel != null && logChannel.getLogId() == entryLogId) {
+                return logChannel;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Returns writable ledger dir with least number of active lanes, so the
+     * lanes are spread evenly over the ledger dirs.
+     */
+    @Override
+    public File getDirForNextEntryLog(List<File> writableLedgerDirs) {
+        Map<File, MutableInt> writableLedgerDirFrequency = new HashMap<File, MutableInt>();
+        writableLedgerDirs.forEach((ledgerDir) -> writableLedgerDirFrequency.put(ledgerDir, new MutableInt()));
+        for (EntryLogLane lane : lanes) {
+            BufferedLogChannel logChannel = lane.activeLogChannel;
+            if (logChannel != null) {
+                MutableInt frequency = writableLedgerDirFrequency.get(logChannel.getLogFile().getParentFile());
+                if (frequency != null) {
+                    frequency.increment();
+                }
+            }
+        }
+        Optional<Entry<File, MutableInt>> ledgerDirWithLeastNumOfLanes = writableLedgerDirFrequency.entrySet()
+                .stream().min(Map.Entry.comparingByValue());
+        return ledgerDirWithLeastNumOfLanes.get().getKey();
+    }
+
+    @Override
+    public void checkpoint() throws IOException {
+        /*
+         * as in entrylog per ledger, the lanes are not rolled on checkpoint, so
+         * both rotated and current logs have to be flushed.
+         */
+        super.flush();
+    }
+
+    @Override
+    public void prepareSortedLedgerStorageCheckpoint(long numBytesFlushed) throws IOException {
+        // do nothing, SyncThread drives periodic checkpoint when multiple entrylogs are active
+    }
+
+    @Override
+    public void prepareEntryMemTableFlush() {
+        // do nothing
+    }
+
+    @Override
+    public boolean commitEntryMemTableFlush() throws IOException {
+        for (EntryLogLane lane : lanes) {
+            if (reachEntryLogLimit(lane.activeLogChannel, 0L)) {
+                lane.laneLock.lock();
+                try {
+                    BufferedLogChannel logChannel = lane.activeLogChannel;
+                    if (reachEntryLogLimit(logChannel, 0L)) {
+                        log.info("Rolling entry logger since it reached size limitation for lane: {}", lane.laneId);
+                        // a lane id is always hashed into its own lane
+                        createNewLog(lane.laneId, "after entry log file of lane is rotated");
+                    }
+                } finally {
+                    lane.laneLock.unlock();
+                }
+            }
+        }
+        // SyncThread drives checkpoint logic, as in entrylog per ledger
+        return false;
+    }
+
+    @Override
+    void flushCurrentLogs() throws IOException {
+        for (EntryLogLane lane : lanes) {
+            /**
+             * flushCurrentLogs method is called during checkpoint, so metadata
+             * of the file also should be force written.
+             */
+            flushLogChannel(lane.activeLogChannel, true);
+        }
+    }
+
+    @Override
+    void flushRotatedLogs() throws IOException {
+        for (BufferedLogChannel channel : rotatedLogChannels) {
+            channel.flushAndForceWrite(true);
+            // since this channel is only used for writing, after flushing the channel,
+            // we had to close the underlying file channel. Otherwise, we might end up
+            // leaking fds which cause the disk spaces could not be reclaimed.
+            channel.close();
+            recentlyCreatedEntryLogsStatus.flushRotatedEntryLog(channel.getLogId());
+            rotatedLogChannels.remove(channel);
+            log.info("Synced entry logger {} to disk.", channel.getLogId());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (EntryLogLane lane : lanes) {
+            BufferedLogChannel logChannel = lane.activeLogChannel;
+            if (logChannel != null) {
+                logChannel.close();
+            }
+        }
+    }
+
+    @Override
+    public void forceClose() {
+        for (EntryLogLane lane : lanes) {
+            IOUtils.close(log, lane.activeLogChannel);
+        }
+    }
+
+    @Override
+    public BufferedLogChannel createNewLogForCompaction() throws IOException {
+        return entryLoggerAllocator.createNewLogForCompaction(selectDirForNextEntryLog());
+    }
+}
@@ -91,6 +91,21 @@ public class EntryLogMetadata {
         return ledgersMap;
     }
 
+    /**
+     * Reduce the size of a ledger in this entry log by the given share, e.g. when part of its
+     * entries are trimmed. The ledger stays in the entry log, since some of its entries may
+     * still be live.
+     */
+    public void reduceLedgerSize(long ledgerId, double share) {
+        long size = ledgersMap.get(ledgerId);
+        if (size <= 0) {
+            return;
+        }
+        long reduction = Math.min(size, (long) (size * share));
+        ledgersMap.put(ledgerId, size - reduction);
+        remainingSize -= reduction;
+    }
+
     public void removeLedgerIf(LongPredicate predicate) {
         ledgersMap.removeIf((ledgerId, size) -> {
             boolean shouldRemove = predicate.test(ledgerId);
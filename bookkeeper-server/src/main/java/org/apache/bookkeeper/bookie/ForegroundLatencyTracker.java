@@ -0,0 +1,117 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the latency of the foreground add and read requests served by the bookie,
+ * so background tasks can back off when they start hurting the foreground traffic.
+ *
+ * <p>Latencies are recorded into a log-linear histogram with 8 sub-buckets per power of two,
+ * which bounds the error of the reported percentiles to 12.5%. Consumers look at the
+ * requests recorded since their previous sample through a {@link Window}.
+ */
+public class ForegroundLatencyTracker {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // latencies are tracked in micros, up to 2^40 micros
+    private static final int MAX_EXPONENT = 40;
+    private static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    // recorded from all the request threads, hence the striped counters
+    private final LongAdder[] buckets = new LongAdder[NUM_BUCKETS];
+
+    public ForegroundLatencyTracker() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void recordLatency(long latency, TimeUnit unit) {
+        buckets[bucketIndex(unit.toMicros(latency))].increment();
+    }
+
+    public Window newWindow() {
+        return new Window();
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) Math.max(micros, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return NUM_BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBoundMicros(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * A view of the requests recorded since the previous call to {@link #sample(double)}.
+     * A window is meant to be used by a single thread.
+     */
+    public class Window {
+        private final long[] lastCounts = new long[NUM_BUCKETS];
+
+        /**
+         * Get the latency percentile of the requests recorded since the previous sample.
+         *
+         * @param percentile the percentile to compute, between 0 and 1
+         * @return the latency in micros, or -1 if no request was recorded since the previous sample
+         */
+        public long sample(double percentile) {
+            long[] counts = new long[NUM_BUCKETS];
+            long total = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                long count = buckets[i].sum();
+                counts[i] = count - lastCounts[i];
+                lastCounts[i] = count;
+                total += counts[i];
+            }
+            if (total == 0) {
+                return -1;
+            }
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bucketUpperBoundMicros(i);
+                }
+            }
+            return bucketUpperBoundMicros(NUM_BUCKETS - 1);
+        }
+    }
+}
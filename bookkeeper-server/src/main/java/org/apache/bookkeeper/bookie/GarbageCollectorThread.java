@@ -28,8 +28,13 @@ import com.google.common.base.Strings;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
+import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -89,6 +94,8 @@ public class GarbageCollectorThread implements Runnable {
     // Entry Logger Handle
     final EntryLogger entryLogger;
     final AbstractLogCompactor compactor;
+    // null if no cold ledger dirs are configured
+    final ColdTierEntryLogMover coldTierMover;
 
     // Stats loggers for garbage collection operations
     private final GarbageCollectorStats gcStats;
@@ -124,6 +131,10 @@ public class GarbageCollectorThread implements Runnable {
     private static final AtomicLong threadNum = new AtomicLong(0);
     final AbstractLogCompactor.Throttler throttler;
 
+    // Share of the trimmed ledgers data in each entry log, pending to be applied on the entry log metadata
+    private final ConcurrentLinkedQueue<Entry<Long, Map<Long, Double>>> pendingTrimmedLedgers =
+            new ConcurrentLinkedQueue<>();
+
     /**
      * Create a garbage collector thread.
      *
@@ -216,6 +227,19 @@ public class GarbageCollectorThread implements Runnable {
             this.compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
         }
 
+        if (ledgerDirsManager.hasColdLedgerDirs() && entryLogger instanceof DefaultEntryLogger) {
+            this.coldTierMover = new ColdTierEntryLogMover(conf, (DefaultEntryLogger) entryLogger, ledgerStorage,
+                    remover);
+            LOG.info("Cold tier migration : enabled, age threshold={}s",
+                    conf.getColdEntryLogAgeThresholdSeconds());
+        } else {
+            if (ledgerDirsManager.hasColdLedgerDirs()) {
+                LOG.warn("Cold ledger dirs are configured, but entry logger {} doesn't support cold tier migration",
+                        entryLogger.getClass().getName());
+            }
+            this.coldTierMover = null;
+        }
+
         this.throttler = new AbstractLogCompactor.Throttler(conf);
         if (minorCompactionInterval > 0 && minorCompactionThreshold > 0) {
             if (minorCompactionThreshold > 1.0d) {
@@ -338,6 +362,13 @@ public class GarbageCollectorThread implements Runnable {
         return suspendMinorCompaction.get();
     }
 
+    public void setForegroundLatencyTracker(ForegroundLatencyTracker foregroundLatencyTracker) {
+        compactor.setForegroundLatencyTracker(foregroundLatencyTracker);
+        if (coldTierMover != null) {
+            coldTierMover.setForegroundLatencyTracker(foregroundLatencyTracker);
+        }
+    }
+
     public void suspendMajorGC() {
         if (suspendMajorCompaction.compareAndSet(false, true)) {
             LOG.info("Suspend Major Compaction triggered by thread: {}", Thread.currentThread().getName());
@@ -408,6 +439,9 @@ public class GarbageCollectorThread implements Runnable {
         }
         // Recover and clean up previous state if using transactional compaction
         compactor.cleanUpAndRecover();
+        if (coldTierMover != null) {
+            coldTierMover.cleanUpAndRecover();
+        }
 
         try {
             // gc inactive/deleted ledgers
@@ -458,6 +492,12 @@ public class GarbageCollectorThread implements Runnable {
                     minorCompacting.set(false);
                 }
             }
+
+            // migrating rewrites the live entries of the entry logs, like compaction does,
+            // so it is suspended along with compaction when the disks are filling up
+            if (coldTierMover != null && !suspendMajor && !suspendMinor) {
+                doMigrateColdEntryLogs();
+            }
             gcStats.getGcThreadRuntime().registerSuccessfulEvent(
                     MathUtils.nowInNano() - threadStart, TimeUnit.NANOSECONDS);
         } catch (EntryLogMetadataMapException e) {
@@ -488,6 +528,8 @@ public class GarbageCollectorThread implements Runnable {
         // Get a cumulative count, don't update until complete
         AtomicLong totalEntryLogSizeAcc = new AtomicLong(0L);
 
+        applyTrimmedLedgers();
+
         // Loop through all of the entry logs and remove the non-active ledgers.
         entryLogMetaMap.forEach((entryLogId, meta) -> {
             try {
@@ -516,6 +558,40 @@ public class GarbageCollectorThread implements Runnable {
         this.numActiveEntryLogs = entryLogMetaMap.size();
     }
 
+    /**
+     * Notify that a ledger was trimmed.
+     *
+     * @param ledgerId the trimmed ledger
+     * @param trimmedShareByEntryLog for each entry log holding trimmed entries, the share of the
+     *                               ledger data in the entry log that was trimmed
+     */
+    public void ledgerTrimmed(long ledgerId, Map<Long, Double> trimmedShareByEntryLog) {
+        pendingTrimmedLedgers.add(new SimpleEntry<>(ledgerId, trimmedShareByEntryLog));
+    }
+
+    private void applyTrimmedLedgers() throws EntryLogMetadataMapException {
+        Entry<Long, Map<Long, Double>> trimmedLedger;
+        while ((trimmedLedger = pendingTrimmedLedgers.poll()) != null) {
+            long ledgerId = trimmedLedger.getKey();
+            for (Entry<Long, Double> e : trimmedLedger.getValue().entrySet()) {
+                entryLogMetaMap.forKey(e.getKey(), (entryLogId, meta) -> {
+                    if (meta == null || !meta.containsLedger(ledgerId)) {
+                        return;
+                    }
+                    // the trimmed entries are not counted as live any more, so the entry log
+                    // becomes a candidate for compaction as its ledgers get trimmed
+                    meta.reduceLedgerSize(ledgerId, e.getValue());
+                    try {
+                        entryLogMetaMap.put(entryLogId, meta);
+                    } catch (EntryLogMetadataMapException ex) {
+                        LOG.warn("Failed to update entry-log metadata {} after trimming ledger {}",
+                                entryLogId, ledgerId, ex);
+                    }
+                });
+            }
+        }
+    }
+
     private boolean removeIfLedgerNotExists(EntryLogMetadata meta) throws EntryLogMetadataMapException {
         MutableBoolean modified = new MutableBoolean(false);
         meta.removeLedgerIf((entryLogLedger) -> {
@@ -640,6 +716,49 @@ public class GarbageCollectorThread implements Runnable {
                 entryLogUsageBuckets, compactedBuckets);
     }
 
+    /**
+     * Migrate the entry logs which are older than the configured age threshold
+     * from the fast ledger dirs to the cold ledger dirs.
+     */
+    @VisibleForTesting
+    void doMigrateColdEntryLogs() throws EntryLogMetadataMapException {
+        long now = System.currentTimeMillis();
+        List<Long> candidates = new ArrayList<>();
+        entryLogMetaMap.forEach((entryLogId, meta) -> {
+            if (coldTierMover.isMigrationCandidate(meta, now)) {
+                candidates.add(entryLogId);
+            }
+        });
+        if (candidates.isEmpty()) {
+            return;
+        }
+        LOG.info("Migrating {} entry logs to the cold tier", candidates.size());
+
+        for (long logId : candidates) {
+            if (!running) {
+                break;
+            }
+            entryLogMetaMap.forKey(logId, (entryLogId, meta) -> {
+                if (meta == null) {
+                    return;
+                }
+                if (!compacting.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    if (coldTierMover.compact(meta)) {
+                        gcStats.getColdTierMigratedEntryLogCounter().inc();
+                        gcStats.getColdTierMigratedSpaceBytes().addCount(meta.getRemainingSize());
+                    }
+                } catch (Exception e) {
+                    LOG.error("Failed to migrate entry log {} to the cold tier", entryLogId, e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
     /**
      * Calculate the index for the batch based on the usage between 0 and 1.
      *
@@ -667,6 +786,9 @@ public class GarbageCollectorThread implements Runnable {
 
         throttler.cancelledAcquire();
         compactor.throttler.cancelledAcquire();
+        if (coldTierMover != null) {
+            coldTierMover.throttler.cancelledAcquire();
+        }
         while (!compacting.compareAndSet(false, true)) {
             // Wait till the thread stops compacting
             Thread.sleep(100);
@@ -293,6 +293,11 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
         return gcThread.isMinorGcSuspend();
     }
 
+    @Override
+    public void setForegroundLatencyTracker(ForegroundLatencyTracker foregroundLatencyTracker) {
+        gcThread.setForegroundLatencyTracker(foregroundLatencyTracker);
+    }
+
     @Override
     public void start() {
         gcThread.start();
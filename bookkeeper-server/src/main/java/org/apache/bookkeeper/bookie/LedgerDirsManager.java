@@ -48,6 +48,7 @@ public class LedgerDirsManager {
 
     private volatile List<File> filledDirs;
     private final List<File> ledgerDirectories;
+    private final List<File> coldLedgerDirectories;
     private volatile List<File> writableLedgerDirectories;
     private final List<LedgerDirsListener> listeners;
     private final Random rand = new Random();
@@ -69,6 +70,9 @@ public class LedgerDirsManager {
         for (File f : this.ledgerDirectories) {
             BookieImpl.checkDirectoryStructure(f);
         }
+        this.coldLedgerDirectories = new ArrayList<File>(
+                Arrays.asList(BookieImpl.getCurrentDirectories(conf.getColdLedgerDirs())));
+        this.coldLedgerDirectories.retainAll(ledgerDirectories);
         this.writableLedgerDirectories = new ArrayList<File>(ledgerDirectories);
         this.filledDirs = new ArrayList<File>();
         this.listeners = new ArrayList<LedgerDirsListener>();
@@ -187,9 +191,44 @@ public class LedgerDirsManager {
         return !writableLedgerDirectories.isEmpty();
     }
 
+    /**
+     * @return true if some of the ledger dirs belong to the cold tier
+     */
+    public boolean hasColdLedgerDirs() {
+        return !coldLedgerDirectories.isEmpty();
+    }
+
+    /**
+     * Check whether the given ledger dir belongs to the cold tier.
+     */
+    public boolean isColdLedgerDir(File dir) {
+        return coldLedgerDirectories.contains(dir);
+    }
+
+    /**
+     * Get the writable ledger dirs of the cold tier.
+     */
+    public List<File> getWritableColdLedgerDirs() throws NoWritableLedgerDirException {
+        List<File> writableColdDirs = new ArrayList<File>(writableLedgerDirectories);
+        writableColdDirs.retainAll(coldLedgerDirectories);
+        if (writableColdDirs.isEmpty()) {
+            throw new NoWritableLedgerDirException("All cold ledger directories are non writable");
+        }
+        return writableColdDirs;
+    }
+
     public List<File> getWritableLedgerDirsForNewLog() throws NoWritableLedgerDirException {
-        if (!writableLedgerDirectories.isEmpty()) {
-            return writableLedgerDirectories;
+        List<File> writableDirs = writableLedgerDirectories;
+        if (!coldLedgerDirectories.isEmpty()) {
+            // new entry logs land on the fast dirs, cold dirs are only used when all fast dirs are full
+            List<File> writableFastDirs = new ArrayList<File>(writableDirs);
+            writableFastDirs.removeAll(coldLedgerDirectories);
+            if (!writableFastDirs.isEmpty()) {
+                return writableFastDirs;
+            }
+        }
+        if (!writableDirs.isEmpty()) {
+            return writableDirs;
         }
 
         // We don't have writable Ledger Dirs. But we are still okay to create new entry log files if we have enough
@@ -24,6 +24,7 @@ package org.apache.bookkeeper.bookie;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -43,6 +44,11 @@ import org.apache.bookkeeper.stats.StatsLogger;
  */
 public interface LedgerStorage {
 
+    /**
+     * Trim entry id of a ledger that was never trimmed.
+     */
+    long NO_TRIM_ENTRY_ID = -1L;
+
     /**
      * Initialize the LedgerStorage implementation.
      *
@@ -144,6 +150,17 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException;
 
+    /**
+     * Get an entry as a region of an immutable entry log file, so that it can be written
+     * to a socket without being copied in memory.
+     *
+     * @return the region holding the entry, or null if the entry should be read with
+     *         {@link #getEntry(long, long)}, e.g. because it is cached or not stored in a sealed log
+     */
+    default FileRegion getEntryRegion(long ledgerId, long entryId) throws IOException, BookieException {
+        return null;
+    }
+
     /**
      * Get last add confirmed.
      *
@@ -199,6 +216,31 @@ public interface LedgerStorage {
      */
     void deleteLedger(long ledgerId) throws IOException;
 
+    /**
+     * Trim a ledger up to the given entry (inclusive).
+     *
+     * <p>The trimmed entries can't be read any more. The space they use is reclaimed
+     * progressively by the garbage collection and the compaction, without waiting for
+     * the deletion of the ledger.
+     *
+     * @param ledgerId the ledger to trim
+     * @param trimEntryId the last entry to trim
+     * @return false if the ledger was already trimmed up to trimEntryId or beyond
+     * @throws IOException
+     */
+    default boolean trimLedger(long ledgerId, long trimEntryId) throws IOException {
+        throw new UnsupportedOperationException("Trimming ledgers is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Get the id of the last trimmed entry of a ledger.
+     *
+     * @return the trim entry id, or {@link #NO_TRIM_ENTRY_ID} if the ledger was never trimmed
+     */
+    default long getTrimEntryId(long ledgerId) {
+        return NO_TRIM_ENTRY_ID;
+    }
+
     /**
      * Signals that a ledger is deleted by the garbage collection thread.
      */
@@ -260,6 +302,14 @@ public interface LedgerStorage {
         return false;
     }
 
+    /**
+     * Set the tracker of the foreground request latency, used to throttle the compaction
+     * when the adaptive compaction throttling is enabled.
+     */
+    default void setForegroundLatencyTracker(ForegroundLatencyTracker foregroundLatencyTracker) {
+        return;
+    }
+
     default void entryLocationCompact() {
         return;
     }
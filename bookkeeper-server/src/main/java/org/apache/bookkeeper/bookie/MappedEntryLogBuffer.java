@@ -0,0 +1,84 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link io.netty.buffer.ByteBuf} backed by a memory mapping of a sealed entry log.
+ *
+ * <p>The mapping is unmapped once the reference count of the buffer drops to zero.
+ * Readers get retained slices of this buffer, so the mapping stays valid until the
+ * entry logger drops its own reference and all the slices handed out are released.
+ *
+ * <p>The log is opened and mapped read-only. The read-only mapping is wrapped as the
+ * single component of a composite buffer, which owns the mapping and unmaps it on
+ * deallocation.
+ */
+class MappedEntryLogBuffer extends CompositeByteBuf {
+
+    private final File file;
+    private final MappedByteBuffer mappedBuffer;
+
+    private MappedEntryLogBuffer(File file, MappedByteBuffer mappedBuffer) {
+        super(ByteBufAllocator.DEFAULT, true, 1, Unpooled.wrappedBuffer(mappedBuffer));
+        this.file = file;
+        this.mappedBuffer = mappedBuffer;
+    }
+
+    /**
+     * Map the whole entry log file.
+     *
+     * @return the mapped buffer, or null if the file is too large to be mapped in one piece
+     */
+    static MappedEntryLogBuffer map(File file) throws IOException {
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = fc.size();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // the mapping stays valid after the channel is closed
+            return new MappedEntryLogBuffer(file, fc.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Get the entry log file which is mapped.
+     */
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    protected void deallocate() {
+        super.deallocate();
+        // the wrapped mapping is not freed by its wrapper, so unmap it explicitly
+        io.netty.util.internal.PlatformDependent.freeDirectBuffer(mappedBuffer);
+    }
+}
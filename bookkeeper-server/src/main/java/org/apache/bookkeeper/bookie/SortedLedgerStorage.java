@@ -107,7 +107,7 @@ public class SortedLedgerStorage
     public void setCheckpointSource(CheckpointSource checkpointSource) {
         interleavedLedgerStorage.setCheckpointSource(checkpointSource);
 
-        if (conf.isEntryLogPerLedgerEnabled()) {
+        if (conf.isMultipleActiveEntryLogsEnabled()) {
             this.memTable = new EntryMemTableWithParallelFlusher(conf, checkpointSource, statsLogger);
         } else {
             this.memTable = new EntryMemTable(conf, checkpointSource, statsLogger);
@@ -118,6 +118,11 @@ public class SortedLedgerStorage
         interleavedLedgerStorage.setCheckpointer(checkpointer);
     }
 
+    @Override
+    public void setForegroundLatencyTracker(ForegroundLatencyTracker foregroundLatencyTracker) {
+        interleavedLedgerStorage.setForegroundLatencyTracker(foregroundLatencyTracker);
+    }
+
     @VisibleForTesting
     ScheduledExecutorService getScheduler() {
         return scheduler;
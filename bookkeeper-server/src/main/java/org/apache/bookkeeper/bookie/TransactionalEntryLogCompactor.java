@@ -82,7 +82,7 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
                 metadata.getEntryLogId(), metadata.getUsage());
             CompactionEntryLog compactionLog;
             try {
-                compactionLog = entryLogger.newCompactionLog(metadata.getEntryLogId());
+                compactionLog = newCompactionLog(metadata.getEntryLogId());
             } catch (IOException ioe) {
                 LOG.error("Exception creating new compaction entry log", ioe);
                 return false;
@@ -110,6 +110,13 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
         return false;
     }
 
+    /**
+     * Create the compaction log the live entries of <i>logToCompact</i> are copied to.
+     */
+    protected CompactionEntryLog newCompactionLog(long logToCompact) throws IOException {
+        return entryLogger.newCompactionLog(logToCompact);
+    }
+
     /**
      * An abstract class that would be extended to be the actual transactional phases for compaction.
      */
@@ -170,6 +177,11 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
 
                 @Override
                 public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                    long scannedEntryId = entry.getLong(entry.readerIndex() + 8);
+                    if (scannedEntryId >= 0 && scannedEntryId <= ledgerStorage.getTrimEntryId(ledgerId)) {
+                        // trimmed entries are garbage, drop them
+                        return;
+                    }
                     throttler.acquire(entry.readableBytes());
                     synchronized (TransactionalEntryLogCompactor.this) {
                         long lid = entry.getLong(entry.readerIndex());
@@ -24,6 +24,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ACTIVE_ENTRY_LO
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ACTIVE_LEDGER_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COLD_TIER_MIGRATED_ENTRY_LOG_COUNT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COLD_TIER_MIGRATED_SPACE_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.DELETED_LEDGER_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.MAJOR_COMPACTION_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.MINOR_COMPACTION_COUNT;
@@ -76,6 +78,16 @@ public class GarbageCollectorStats {
         help = "Number of ledgers deleted by garbage collection"
     )
     private final Counter deletedLedgerCounter;
+    @StatsDoc(
+        name = COLD_TIER_MIGRATED_ENTRY_LOG_COUNT,
+        help = "Number of entry log files migrated to the cold tier"
+    )
+    private final Counter coldTierMigratedEntryLogCounter;
+    @StatsDoc(
+        name = COLD_TIER_MIGRATED_SPACE_BYTES,
+        help = "Number of live entry bytes migrated to the cold tier"
+    )
+    private final Counter coldTierMigratedSpaceBytes;
     @StatsDoc(
         name = THREAD_RUNTIME,
         help = "Operation stats of garbage collections"
@@ -109,6 +121,8 @@ public class GarbageCollectorStats {
         this.reclaimedSpaceViaDeletes = statsLogger.getCounter(RECLAIMED_DELETION_SPACE_BYTES);
         this.gcThreadRuntime = statsLogger.getOpStatsLogger(THREAD_RUNTIME);
         this.deletedLedgerCounter = statsLogger.getCounter(DELETED_LEDGER_COUNT);
+        this.coldTierMigratedEntryLogCounter = statsLogger.getCounter(COLD_TIER_MIGRATED_ENTRY_LOG_COUNT);
+        this.coldTierMigratedSpaceBytes = statsLogger.getCounter(COLD_TIER_MIGRATED_SPACE_BYTES);
 
         this.activeEntryLogCountGauge = new Gauge<Integer>() {
             @Override
@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.bookie.storage;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
 import java.util.Collection;
 import org.apache.bookkeeper.bookie.AbstractLogCompactor;
@@ -67,6 +68,20 @@ public interface EntryLogger extends AutoCloseable {
     ByteBuf readEntry(long ledgerId, long entryId, long entryLocation)
             throws IOException, NoEntryException;
 
+    /**
+     * Get the region of an immutable entrylog holding an entry, and verify that it matches
+     * the expected ledger and entry ID. The region can be written to a socket without
+     * copying the entry in memory.
+     * @param ledgerId the ledgerID to match
+     * @param entryId the entryID to match
+     * @param entryLocation the location of the entry
+     * @return the region holding the entry, or null if the entry must be read with
+     *         {@link #readEntry(long, long, long)}, e.g. because its entrylog is still written
+     */
+    default FileRegion readEntryRegion(long ledgerId, long entryId, long entryLocation) throws IOException {
+        return null;
+    }
+
     /**
      * Flush any outstanding writes to disk.
      */
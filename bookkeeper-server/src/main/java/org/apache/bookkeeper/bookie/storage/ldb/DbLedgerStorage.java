@@ -29,6 +29,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.internal.PlatformDependent;
 import java.io.File;
@@ -48,6 +49,7 @@ import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger;
+import org.apache.bookkeeper.bookie.ForegroundLatencyTracker;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
 import org.apache.bookkeeper.bookie.LedgerCache;
@@ -168,18 +170,53 @@ public class DbLedgerStorage implements LedgerStorage {
             throw new IOException("ledger and index dirs size not matched");
         }
 
+        // When a cold tier is configured, every fast ledger dir is paired with a cold
+        // ledger dir, where its entry logs are migrated to once they get old.
+        List<File> coldLedgerDirs = new ArrayList<>();
+        for (File ledgerDir : ledgerDirsManager.getAllLedgerDirs()) {
+            if (ledgerDirsManager.isColdLedgerDir(ledgerDir)) {
+                coldLedgerDirs.add(ledgerDir);
+            }
+        }
+        if (!coldLedgerDirs.isEmpty() && directIOEntryLogger) {
+            throw new IOException("Cold ledger dirs are not supported with the direct io entry logger");
+        }
+        if (!coldLedgerDirs.isEmpty()
+                && coldLedgerDirs.size() * 2 != ledgerDirsManager.getAllLedgerDirs().size()) {
+            throw new IOException("Number of cold ledger dirs should match the number of the other ledger dirs");
+        }
+        for (int i = 0; i < ledgerDirsManager.getAllLedgerDirs().size(); i++) {
+            File indexDir = indexDirsManager.getAllLedgerDirs().get(i);
+            // The ledgers are spread over the fast dirs only, so turning a dir which already
+            // holds ledgers into a cold dir would map its ledgers to other dirs and lose them
+            if (ledgerDirsManager.isColdLedgerDir(ledgerDirsManager.getAllLedgerDirs().get(i))
+                    && hasLedgerIndex(indexDir)) {
+                throw new IOException("Cold ledger dir " + ledgerDirsManager.getAllLedgerDirs().get(i)
+                        + " already holds the ledger index " + indexDir
+                        + ", only new empty dirs can be added as cold ledger dirs");
+            }
+        }
+        this.numberOfDirs -= coldLedgerDirs.size();
+
         long perDirectoryWriteCacheSize = writeCacheMaxSize / numberOfDirs;
         long perDirectoryReadCacheSize = readCacheMaxSize / numberOfDirs;
         int readAheadCacheBatchSize = conf.getInt(READ_AHEAD_CACHE_BATCH_SIZE, DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE);
 
         ledgerStorageList = Lists.newArrayList();
+        int coldDirIndex = 0;
         for (int i = 0; i < ledgerDirsManager.getAllLedgerDirs().size(); i++) {
             File ledgerDir = ledgerDirsManager.getAllLedgerDirs().get(i);
             File indexDir = indexDirsManager.getAllLedgerDirs().get(i);
-            // Create a ledger dirs manager for the single directory
-            File[] lDirs = new File[1];
+            if (ledgerDirsManager.isColdLedgerDir(ledgerDir)) {
+                continue;
+            }
+            // Create a ledger dirs manager for the single directory, and its paired cold directory if any
+            File[] lDirs = new File[coldLedgerDirs.isEmpty() ? 1 : 2];
             // Remove the `/current` suffix which will be appended again by LedgersDirManager
             lDirs[0] = ledgerDir.getParentFile();
+            if (!coldLedgerDirs.isEmpty()) {
+                lDirs[1] = coldLedgerDirs.get(coldDirIndex++).getParentFile();
+            }
             LedgerDirsManager ldm = new LedgerDirsManager(conf, lDirs, ledgerDirsManager.getDiskChecker(),
                     NullStatsLogger.INSTANCE);
 
@@ -356,6 +393,11 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).getEntry(ledgerId, entryId);
     }
 
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId) throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).getEntryRegion(ledgerId, entryId);
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         return getLedgerStorage(ledgerId).getLastAddConfirmed(ledgerId);
@@ -393,6 +435,16 @@ public class DbLedgerStorage implements LedgerStorage {
         getLedgerStorage(ledgerId).deleteLedger(ledgerId);
     }
 
+    @Override
+    public boolean trimLedger(long ledgerId, long trimEntryId) throws IOException {
+        return getLedgerStorage(ledgerId).trimLedger(ledgerId, trimEntryId);
+    }
+
+    @Override
+    public long getTrimEntryId(long ledgerId) {
+        return getLedgerStorage(ledgerId).getTrimEntryId(ledgerId);
+    }
+
     @Override
     public void registerLedgerDeletionListener(LedgerDeletionListener listener) {
         ledgerStorageList.forEach(ls -> ls.registerLedgerDeletionListener(listener));
@@ -456,6 +508,13 @@ public class DbLedgerStorage implements LedgerStorage {
      * @param processor
      * @throws IOException
      */
+    /**
+     * Check whether the index dir already holds the index of some ledgers.
+     */
+    static boolean hasLedgerIndex(File indexDir) {
+        return new File(indexDir, "ledgers").exists() || new File(indexDir, "locations").exists();
+    }
+
     public static void readLedgerIndexEntries(long ledgerId, ServerConfiguration serverConf,
             LedgerLoggerProcessor processor) throws IOException {
 
@@ -476,8 +535,15 @@ public class DbLedgerStorage implements LedgerStorage {
         if (ledgerDirs.size() != indexDirs.size()) {
             throw new IOException("ledger and index dirs size not matched");
         }
-        int dirIndex = MathUtils.signSafeMod(ledgerId, ledgerDirs.size());
-        String indexBasePath = indexDirs.get(dirIndex).toString();
+        // The ledgers are only spread over the fast dirs when a cold tier is configured
+        List<File> fastIndexDirs = new ArrayList<>();
+        for (int i = 0; i < ledgerDirs.size(); i++) {
+            if (!ledgerDirsManager.isColdLedgerDir(ledgerDirs.get(i))) {
+                fastIndexDirs.add(indexDirs.get(i));
+            }
+        }
+        int dirIndex = MathUtils.signSafeMod(ledgerId, fastIndexDirs.size());
+        String indexBasePath = fastIndexDirs.get(dirIndex).toString();
 
         EntryLocationIndex entryLocationIndex = new EntryLocationIndex(serverConf,
                 (basePath, subPath, dbConfigType, conf1) ->
@@ -545,6 +611,11 @@ public class DbLedgerStorage implements LedgerStorage {
         return ledgerStorageList.stream().allMatch(SingleDirectoryDbLedgerStorage::isMinorGcSuspended);
     }
 
+    @Override
+    public void setForegroundLatencyTracker(ForegroundLatencyTracker foregroundLatencyTracker) {
+        ledgerStorageList.forEach(s -> s.setForegroundLatencyTracker(foregroundLatencyTracker));
+    }
+
     @Override
     public void entryLocationCompact() {
         ledgerStorageList.forEach(SingleDirectoryDbLedgerStorage::entryLocationCompact);
@@ -20,15 +20,22 @@
  */
 package org.apache.bookkeeper.bookie.storage.ldb;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -47,6 +54,8 @@ public class EntryLocationIndex implements Closeable {
 
     private final KeyValueStorage locationsDb;
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
+    // Trim entry id of the ledgers whose trimmed entries are still in the index
+    private final ConcurrentMap<Long, Long> trimmedLedgers = new ConcurrentHashMap<>();
     private final EntryLocationIndexStats stats;
     private boolean isCompacting;
 
@@ -190,6 +199,10 @@ public class EntryLocationIndex implements Closeable {
         deletedLedgers.add(ledgerId);
     }
 
+    public void trim(long ledgerId, long trimEntryId) {
+        trimmedLedgers.merge(ledgerId, trimEntryId, Math::max);
+    }
+
     public String getEntryLocationDBPath() {
         return locationsDb.getDBPath();
     }
@@ -245,5 +258,86 @@ public class EntryLocationIndex implements Closeable {
                 TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) / 1000.0);
     }
 
+    /**
+     * Remove the offsets of the trimmed entries from the index.
+     *
+     * @param trimListener notified, for each trimmed ledger, with the estimated share of the
+     *                     ledger data that was trimmed in each entry log
+     */
+    public void removeOffsetFromTrimmedLedgers(BiConsumer<Long, Map<Long, Double>> trimListener)
+            throws IOException {
+        if (trimmedLedgers.isEmpty()) {
+            return;
+        }
+
+        LongPairWrapper firstKeyWrapper = LongPairWrapper.get(-1, -1);
+        LongPairWrapper lastKeyWrapper = LongPairWrapper.get(-1, -1);
+        Map<Long, Long> ledgersToTrim = new HashMap<>(trimmedLedgers);
+        Map<Long, Map<Long, Double>> trimmedShares = new HashMap<>();
+
+        try (Batch batch = locationsDb.newBatch()) {
+            for (Map.Entry<Long, Long> e : ledgersToTrim.entrySet()) {
+                long ledgerId = e.getKey();
+                long trimEntryId = e.getValue();
+                if (deletedLedgers.contains(ledgerId)) {
+                    continue;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Deleting indexes from ledger {} up to entry {}", ledgerId, trimEntryId);
+                }
+
+                trimmedShares.put(ledgerId, getTrimmedShareByEntryLog(ledgerId, trimEntryId));
+                firstKeyWrapper.set(ledgerId, 0);
+                lastKeyWrapper.set(ledgerId, trimEntryId + 1);
+                batch.deleteRange(firstKeyWrapper.array, lastKeyWrapper.array);
+            }
+
+            batch.flush();
+            ledgersToTrim.forEach(trimmedLedgers::remove);
+        } finally {
+            firstKeyWrapper.recycle();
+            lastKeyWrapper.recycle();
+        }
+
+        trimmedShares.forEach(trimListener);
+    }
+
+    /**
+     * Estimate the share of the ledger data trimmed in each entry log, from the share of the
+     * ledger entries of the entry log that are trimmed. The entries of the ledger are counted
+     * in a single scan of its range of the index.
+     */
+    @VisibleForTesting
+    Map<Long, Double> getTrimmedShareByEntryLog(long ledgerId, long trimEntryId) throws IOException {
+        // entry log id -> {trimmed entries, entries}
+        Map<Long, long[]> entriesByEntryLog = new HashMap<>();
+        LongPairWrapper firstKey = LongPairWrapper.get(ledgerId, 0);
+        LongPairWrapper lastKey = LongPairWrapper.get(ledgerId + 1, 0);
+        try (CloseableIterator<Entry<byte[], byte[]>> iterator =
+                     locationsDb.iterator(firstKey.array, lastKey.array)) {
+            while (iterator.hasNext()) {
+                Entry<byte[], byte[]> entry = iterator.next();
+                long entryId = ArrayUtil.getLong(entry.getKey(), 8);
+                long entryLogId = ArrayUtil.getLong(entry.getValue(), 0) >> 32L;
+                long[] entries = entriesByEntryLog.computeIfAbsent(entryLogId, id -> new long[2]);
+                if (entryId <= trimEntryId) {
+                    entries[0]++;
+                }
+                entries[1]++;
+            }
+        } finally {
+            firstKey.recycle();
+            lastKey.recycle();
+        }
+
+        Map<Long, Double> trimmedShareByEntryLog = new HashMap<>();
+        entriesByEntryLog.forEach((entryLogId, entries) -> {
+            if (entries[0] > 0) {
+                trimmedShareByEntryLog.put(entryLogId, (double) entries[0] / entries[1]);
+            }
+        });
+        return trimmedShareByEntryLog;
+    }
+
     private static final Logger log = LoggerFactory.getLogger(EntryLocationIndex.class);
 }
@@ -32,8 +32,10 @@ import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.LedgerStorage;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.LedgerData;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
@@ -253,6 +255,54 @@ public class LedgerMetadataIndex implements Closeable {
         }
     }
 
+    /**
+     * Record that the entries of the ledger up to trimEntryId (inclusive) have been trimmed.
+     *
+     * @return false if the ledger was already trimmed up to trimEntryId or beyond
+     */
+    public boolean setTrimEntryId(long ledgerId, long trimEntryId) throws IOException {
+        ReentrantLock lock = lockForLedger(ledgerId);
+        lock.lock();
+        try {
+            LedgerData ledgerData = get(ledgerId);
+            if (ledgerData.hasTrimEntryId() && ledgerData.getTrimEntryId() >= trimEntryId) {
+                return false;
+            }
+
+            LedgerData newLedgerData = LedgerData.newBuilder(ledgerData).setTrimEntryId(trimEntryId).build();
+            ledgers.put(ledgerId, newLedgerData);
+            if (log.isDebugEnabled()) {
+                log.debug("Set trim entry id {} on ledger {}", trimEntryId, ledgerId);
+            }
+
+            pendingLedgersUpdates.add(new SimpleEntry<Long, LedgerData>(ledgerId, newLedgerData));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the id of the last trimmed entry of the ledger.
+     *
+     * @return the trim entry id, or {@link LedgerStorage#NO_TRIM_ENTRY_ID} if the ledger
+     *         was never trimmed or doesn't exist
+     */
+    public long getTrimEntryId(long ledgerId) {
+        LedgerData ledgerData = ledgers.get(ledgerId);
+        if (ledgerData == null || !ledgerData.hasTrimEntryId()) {
+            return LedgerStorage.NO_TRIM_ENTRY_ID;
+        }
+        return ledgerData.getTrimEntryId();
+    }
+
+    void forEachTrimmedLedger(BiConsumer<Long, Long> action) {
+        ledgers.forEach((ledgerId, ledgerData) -> {
+            if (ledgerData.hasTrimEntryId()) {
+                action.accept(ledgerId, ledgerData.getTrimEntryId());
+            }
+        });
+    }
 
     public void setMasterKey(long ledgerId, byte[] masterKey) throws IOException {
         ReentrantLock lock = lockForLedger(ledgerId);
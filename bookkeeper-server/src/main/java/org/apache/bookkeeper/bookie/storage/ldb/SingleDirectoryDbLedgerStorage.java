@@ -31,6 +31,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
@@ -57,6 +58,7 @@ import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
 import org.apache.bookkeeper.bookie.CompactableLedgerStorage;
 import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.ForegroundLatencyTracker;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.GarbageCollectorThread;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
@@ -141,6 +143,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private final long maxReadAheadBytesSize;
 
+    private final int zeroCopyReadMinEntrySize;
+
     private final Counter flushExecutorTime;
 
     public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
@@ -148,7 +152,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                                           EntryLogger entryLogger, StatsLogger statsLogger, ByteBufAllocator allocator,
                                           long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize)
             throws IOException {
-        checkArgument(ledgerDirsManager.getAllLedgerDirs().size() == 1,
+        // the storage dir may be paired with a cold dir, where its old entry logs are migrated to
+        checkArgument(ledgerDirsManager.getAllLedgerDirs().stream()
+                        .filter(dir -> !ledgerDirsManager.isColdLedgerDir(dir)).count() == 1,
                 "Db implementation only allows for one storage dir");
 
         String ledgerBaseDir = ledgerDirsManager.getAllLedgerDirs().get(0).getPath();
@@ -177,6 +183,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // Do not attempt to perform read-ahead more than half the total size of the cache
         maxReadAheadBytesSize = readCacheMaxSize / 2;
 
+        zeroCopyReadMinEntrySize = conf.getZeroCopyReadMinEntrySizeBytes();
+
         long maxThrottleTimeMillis = conf.getLong(DbLedgerStorage.MAX_THROTTLE_TIME_MILLIS,
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
@@ -187,6 +195,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
         entryLocationIndex = new EntryLocationIndex(conf,
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+        // the trimmed entries may not have been removed from the index before the restart
+        ledgerIndex.forEachTrimmedLedger(entryLocationIndex::trim);
 
         transientLedgerInfoCache = ConcurrentLongHashMap.<TransientLedgerInfo>newBuilder()
                 .expectedItems(16 * 1024)
@@ -298,6 +308,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return gcThread.isMinorGcSuspend();
     }
 
+    @VisibleForTesting
+    GarbageCollectorThread getGarbageCollectorThread() {
+        return gcThread;
+    }
+
+    @Override
+    public void setForegroundLatencyTracker(ForegroundLatencyTracker foregroundLatencyTracker) {
+        gcThread.setForegroundLatencyTracker(foregroundLatencyTracker);
+    }
+
     @Override
     public void entryLocationCompact() {
         if (entryLocationIndex.isCompacting()) {
@@ -370,6 +390,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return false;
         }
 
+        if (entryId <= ledgerIndex.getTrimEntryId(ledgerId)) {
+            return false;
+        }
+
         // We need to try to read from both write caches, since recent entries could be found in either of the two. The
         // write caches are already thread safe on their own, here we just need to make sure we get references to both
         // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
@@ -570,6 +594,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return getLastEntry(ledgerId);
         }
 
+        if (entryId <= ledgerIndex.getTrimEntryId(ledgerId)) {
+            throw new Bookie.NoEntryException(ledgerId, entryId);
+        }
+
         // We need to try to read from both write caches, since recent entries could be found in either of the two. The
         // write caches are already thread safe on their own, here we just need to make sure we get references to both
         // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
@@ -645,6 +673,61 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return entry;
     }
 
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId) throws IOException, BookieException {
+        if (entryId == BookieProtocol.LAST_ADD_CONFIRMED || entryId <= ledgerIndex.getTrimEntryId(ledgerId)) {
+            return null;
+        }
+
+        // Cached entries are served from memory by getEntry(), a region is only read on a cache miss. The write
+        // caches are checked the same way as in doGetEntry(): an entry missed during a rotation is either not
+        // indexed yet, or stored in the current entry log, and in both cases it falls back to getEntry()
+        long stamp = writeCacheRotationLock.tryOptimisticRead();
+        WriteCache localWriteCache = writeCache;
+        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+        if (!writeCacheRotationLock.validate(stamp)) {
+            stamp = writeCacheRotationLock.readLock();
+            try {
+                localWriteCache = writeCache;
+                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+            } finally {
+                writeCacheRotationLock.unlockRead(stamp);
+            }
+        }
+        if (localWriteCache.hasEntry(ledgerId, entryId)
+                || localWriteCacheBeingFlushed.hasEntry(ledgerId, entryId)
+                || readCache.hasEntry(ledgerId, entryId)) {
+            return null;
+        }
+
+        long startTime = MathUtils.nowInNano();
+        long entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+        if (entryLocation == 0) {
+            // let getEntry() report the missing entry
+            return null;
+        }
+
+        FileRegion region = entryLogger.readEntryRegion(ledgerId, entryId, entryLocation);
+        if (region == null) {
+            return null;
+        }
+        if (region.count() < zeroCopyReadMinEntrySize) {
+            // small entries are cheaper to copy, and to keep going through the read-ahead cache
+            region.release();
+            return null;
+        }
+        dbLedgerStorageStats.getWriteCacheMissCounter().inc();
+        dbLedgerStorageStats.getReadCacheMissCounter().inc();
+
+        // Keep the read-ahead of the sequential reads: the following entries are served from the read cache,
+        // and the next miss goes back to the entry log
+        long nextEntryLocation = entryLocation + 4 /* size header */ + region.count();
+        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+
+        recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+        return region;
+    }
+
     private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
         long readAheadStartNano = MathUtils.nowInNano();
         int count = 0;
@@ -803,6 +886,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             Batch batch = entryLocationIndex.newBatch();
             writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
+                if (entryId <= ledgerIndex.getTrimEntryId(ledgerId)) {
+                    // the entry was trimmed before reaching the entry log
+                    return;
+                }
                 long location = entryLogger.addEntry(ledgerId, entry);
                 entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
             });
@@ -834,6 +921,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
                     entryLocationIndex.removeOffsetFromDeletedLedgers();
                     ledgerIndex.removeDeletedLedgers();
+                    entryLocationIndex.removeOffsetFromTrimmedLedgers(gcThread::ledgerTrimmed);
                 } catch (Throwable t) {
                     log.warn("Failed to cleanup db indexes", t);
                 }
@@ -896,6 +984,26 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         checkpointSource.checkpointComplete(cp, true);
     }
 
+    @Override
+    public boolean trimLedger(long ledgerId, long trimEntryId) throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Trimming ledger {} up to entry {}", ledgerId, trimEntryId);
+        }
+
+        if (!ledgerIndex.setTrimEntryId(ledgerId, trimEntryId)) {
+            return false;
+        }
+        // The offsets are removed from the index after the next flush, so that the trimmed
+        // entries still in the write cache are not indexed back
+        entryLocationIndex.trim(ledgerId, trimEntryId);
+        return true;
+    }
+
+    @Override
+    public long getTrimEntryId(long ledgerId) {
+        return ledgerIndex.getTrimEntryId(ledgerId);
+    }
+
     @Override
     public void deleteLedger(long ledgerId) throws IOException {
         if (log.isDebugEnabled()) {
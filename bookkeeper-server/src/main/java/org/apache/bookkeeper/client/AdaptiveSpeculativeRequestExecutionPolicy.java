@@ -0,0 +1,162 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.net.BookieId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} issuing the speculative requests at a percentile of
+ * the latency of the bookie the last request was sent to, as reported by the {@link BookiesHealthInfo}.
+ *
+ * <p>A request is backed up as soon as it is slower than the given share of the recent requests to
+ * the same bookie, instead of after a fixed timeout, so a bookie which is slow for a while doesn't
+ * hold the reads for the whole timeout while the reads from a healthy bookie are never backed up
+ * too early. The timeout is {@code firstSpeculativeRequestTimeout} until enough requests were sent
+ * to the bookie, and never more than {@code maxSpeculativeRequestTimeout}.
+ *
+ * <p>The speculative requests are at most {@code maxSpeculativeRequestRatio} of the requests, so
+ * that the backups don't overload the bookies when they are all slow. Once the ratio is reached, a
+ * request is only backed up after {@code maxSpeculativeRequestTimeout}, as a bookie may have failed.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveSpeculativeRequestExecutionPolicy.class);
+
+    // the requests after which the counts of the requests are halved, to follow the recent load
+    private static final long REQUESTS_HALF_LIFE = 100_000;
+
+    final int firstSpeculativeRequestTimeout;
+    final int maxSpeculativeRequestTimeout;
+    final double latencyPercentile;
+    final double maxSpeculativeRequestRatio;
+
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong speculativeRequests = new AtomicLong(0);
+
+    public AdaptiveSpeculativeRequestExecutionPolicy(int firstSpeculativeRequestTimeout,
+            int maxSpeculativeRequestTimeout, double latencyPercentile, double maxSpeculativeRequestRatio) {
+        this.firstSpeculativeRequestTimeout = firstSpeculativeRequestTimeout;
+        this.maxSpeculativeRequestTimeout = Math.max(firstSpeculativeRequestTimeout, maxSpeculativeRequestTimeout);
+        this.latencyPercentile = latencyPercentile;
+        this.maxSpeculativeRequestRatio = maxSpeculativeRequestRatio;
+
+        if (latencyPercentile <= 0 || latencyPercentile >= 100) {
+            throw new IllegalArgumentException("Invalid value provided for latencyPercentile");
+        }
+        if (maxSpeculativeRequestRatio < 0) {
+            throw new IllegalArgumentException("Invalid value provided for maxSpeculativeRequestRatio");
+        }
+    }
+
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+            final SpeculativeRequestExecutor requestExecutor) {
+        if (requests.incrementAndGet() > REQUESTS_HALF_LIFE) {
+            halveRequestCounts();
+        }
+        return scheduleSpeculativeRequest(scheduler, requestExecutor,
+                getSpeculativeRequestTimeoutMicros(requestExecutor), false);
+    }
+
+    /**
+     * Returns the time to wait for the last request before sending a speculative request.
+     */
+    long getSpeculativeRequestTimeoutMicros(SpeculativeRequestExecutor requestExecutor) {
+        long maxTimeoutMicros = TimeUnit.MILLISECONDS.toMicros(maxSpeculativeRequestTimeout);
+        BookieId bookie = requestExecutor.getLastRequestBookie();
+        BookiesHealthInfo bookiesHealthInfo = requestExecutor.getBookiesHealthInfo();
+        long latencyNanos = bookie == null || bookiesHealthInfo == null
+                ? -1L : bookiesHealthInfo.getBookieReadLatencyNanos(bookie, latencyPercentile);
+        if (latencyNanos < 0) {
+            return Math.min(maxTimeoutMicros, TimeUnit.MILLISECONDS.toMicros(firstSpeculativeRequestTimeout));
+        }
+        return Math.max(1L, Math.min(maxTimeoutMicros, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+    }
+
+    private boolean withinSpeculativeRequestRatio() {
+        // allow a speculative request before the first requests are counted
+        return speculativeRequests.get() < maxSpeculativeRequestRatio * requests.get() + 1;
+    }
+
+    private synchronized void halveRequestCounts() {
+        long numRequests = requests.get();
+        if (numRequests > REQUESTS_HALF_LIFE) {
+            requests.addAndGet(-numRequests / 2);
+            speculativeRequests.addAndGet(-speculativeRequests.get() / 2);
+        }
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRequest(final ScheduledExecutorService scheduler,
+                                                          final SpeculativeRequestExecutor requestExecutor,
+                                                          final long timeoutMicros,
+                                                          final boolean deferred) {
+        try {
+            return scheduler.schedule(() -> {
+                if (!deferred && !withinSpeculativeRequestRatio()) {
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("Deferred speculative request for {}, the max ratio {} is reached",
+                                requestExecutor, maxSpeculativeRequestRatio);
+                    }
+                    scheduleSpeculativeRequest(scheduler, requestExecutor,
+                            TimeUnit.MILLISECONDS.toMicros(maxSpeculativeRequestTimeout), true);
+                    return;
+                }
+                ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                    @Override
+                    public void onSuccess(Boolean issueNextRequest) {
+                        if (issueNextRequest) {
+                            speculativeRequests.incrementAndGet();
+                            scheduleSpeculativeRequest(scheduler, requestExecutor,
+                                    getSpeculativeRequestTimeoutMicros(requestExecutor), false);
+                        } else if (LOG.isTraceEnabled()) {
+                            LOG.trace("Stopped issuing speculative requests for {}, "
+                                    + "speculativeRequestTimeoutMicros = {}", requestExecutor, timeoutMicros);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable thrown) {
+                        LOG.warn("Failed to issue speculative request for {}, speculativeRequestTimeoutMicros = {} : ",
+                                requestExecutor, timeoutMicros, thrown);
+                    }
+                }, directExecutor());
+            }, timeoutMicros, TimeUnit.MICROSECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {}, speculativeRequestTimeoutMicros = {} : ",
+                        requestExecutor, timeoutMicros, re);
+            }
+        }
+        return null;
+    }
+}
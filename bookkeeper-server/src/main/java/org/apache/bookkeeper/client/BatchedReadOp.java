@@ -0,0 +1,263 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException.BKDigestMatchException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read operation fetching a range of consecutive entries with batch read requests.
+ *
+ * <p>Each request asks a single bookie for the entries from the first unread entry up to
+ * the end of the range, or of the ensemble of that entry. The bookies are tried in the
+ * read order of the first unread entry. This relies on every bookie of an ensemble storing
+ * all its entries, so it is only used for ledgers whose ensemble size is equal to the
+ * write quorum size.
+ *
+ * <p>A bookie may return fewer entries than requested, because of the max response size.
+ * When <i>readAll</i> is set, the operation sends new requests until the whole range is
+ * read, otherwise it completes with the entries of the first successful response.
+ */
+class BatchedReadOp implements BatchedReadEntryCallback, Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedReadOp.class);
+
+    private final LedgerHandle lh;
+    private final ClientContext clientCtx;
+    private final long startEntryId;
+    private final long endEntryId;
+    private final long maxSize;
+    private final boolean readAll;
+    private final CompletableFuture<LedgerEntries> future;
+    private final List<LedgerEntry> entries;
+
+    private long requestTimeNanos;
+    private boolean complete = false;
+
+    // state of the pending batch read request
+    private long nextEntryId;
+    private List<BookieId> ensemble;
+    private DistributionSchedule.WriteSet writeSet;
+    private int nextReplicaIndex;
+    private int firstError;
+
+    BatchedReadOp(LedgerHandle lh,
+                  ClientContext clientCtx,
+                  long startEntryId,
+                  long endEntryId,
+                  long maxSize,
+                  boolean readAll) {
+        this.lh = lh;
+        this.clientCtx = clientCtx;
+        this.startEntryId = startEntryId;
+        this.endEntryId = endEntryId;
+        this.maxSize = maxSize;
+        this.readAll = readAll;
+        this.future = new CompletableFuture<>();
+        this.entries = new ArrayList<>((int) Math.min(endEntryId - startEntryId + 1, 1024));
+        this.nextEntryId = startEntryId;
+    }
+
+    CompletableFuture<LedgerEntries> future() {
+        return future;
+    }
+
+    private LedgerMetadata getLedgerMetadata() {
+        return lh.getLedgerMetadata();
+    }
+
+    @Override
+    public void run() {
+        this.requestTimeNanos = MathUtils.nowInNano();
+        readNextBatch();
+    }
+
+    private synchronized void readNextBatch() {
+        ensemble = getLedgerMetadata().getEnsembleAt(nextEntryId);
+        if (writeSet != null) {
+            writeSet.recycle();
+        }
+        if (clientCtx.getConf().enableReorderReadSequence) {
+            writeSet = clientCtx.getPlacementPolicy()
+                .reorderReadSequence(
+                        ensemble,
+                        lh.getBookiesHealthInfo(),
+                        lh.getWriteSetForReadOperation(nextEntryId));
+        } else {
+            writeSet = lh.getWriteSetForReadOperation(nextEntryId);
+        }
+        nextReplicaIndex = 0;
+        firstError = BKException.Code.OK;
+        sendNextRead();
+    }
+
+    private void sendNextRead() {
+        if (nextReplicaIndex >= writeSet.size()) {
+            // the read has failed from all replicas
+            fail(firstError);
+            return;
+        }
+        int bookieIndex = writeSet.get(nextReplicaIndex++);
+        BookieId to = ensemble.get(bookieIndex);
+
+        // don't read across an ensemble change, the next ensemble may have different bookies
+        long lastEntryId = endEntryId;
+        long nextEnsembleChange = LedgerMetadataUtils.getNextEnsembleChange(getLedgerMetadata(), nextEntryId);
+        if (nextEnsembleChange != -1) {
+            lastEntryId = Math.min(lastEntryId, nextEnsembleChange - 1);
+        }
+        int maxCount = (int) Math.min(Integer.MAX_VALUE, lastEntryId - nextEntryId + 1);
+
+        if (lh.throttler != null) {
+            lh.throttler.acquire();
+        }
+        clientCtx.getBookieClient().batchReadEntries(to, lh.ledgerId, nextEntryId, maxCount, maxSize,
+                this, new ReadContext(bookieIndex, to), BookieProtocol.FLAG_NONE);
+    }
+
+    private static class ReadContext {
+        final int bookieIndex;
+        final BookieId to;
+
+        ReadContext(int bookieIndex, BookieId to) {
+            this.bookieIndex = bookieIndex;
+            this.to = to;
+        }
+    }
+
+    @Override
+    public synchronized void readEntriesComplete(int rc, long ledgerId, long firstEntryId,
+                                                 ByteBufList bufList, Object ctx) {
+        final ReadContext rctx = (ReadContext) ctx;
+        if (complete) {
+            return;
+        }
+        if (rc == BKException.Code.OK && (bufList == null || bufList.size() == 0)) {
+            rc = BKException.Code.NoSuchEntryException;
+        }
+        if (rc != BKException.Code.OK) {
+            logErrorAndReattemptRead(rctx, "Error: " + BKException.getMessage(rc), rc);
+            return;
+        }
+
+        int numEntriesRead = 0;
+        for (int i = 0; i < bufList.size(); i++) {
+            ByteBuf buffer = bufList.getBuffer(i);
+            long entryId = firstEntryId + i;
+            ByteBuf content;
+            try {
+                content = lh.macManager.verifyDigestAndReturnData(entryId, buffer);
+            } catch (BKDigestMatchException e) {
+                clientCtx.getClientStats().getReadOpDmCounter().inc();
+                if (numEntriesRead == 0) {
+                    logErrorAndReattemptRead(rctx, "Mac mismatch", BKException.Code.DigestMatchException);
+                    return;
+                }
+                // keep the entries verified so far, and read again from the corrupted one
+                LOG.info("Mac mismatch while reading L{} E{} from bookie: {}", lh.ledgerId, entryId, rctx.to);
+                lh.recordReadErrorOnBookie(rctx.bookieIndex);
+                break;
+            }
+            LedgerEntryImpl entry = LedgerEntryImpl.create(ledgerId, entryId);
+            /*
+             * The length is a long and it is the last field of the metadata of an entry.
+             * Consequently, we have to subtract 8 from METADATA_LENGTH to get the length.
+             */
+            entry.setLength(buffer.getLong(DigestManager.METADATA_LENGTH - 8));
+            // the response buffers are released once the callback returns
+            entry.setEntryBuf(content.retain());
+            entries.add(entry);
+            numEntriesRead++;
+        }
+
+        nextEntryId += numEntriesRead;
+        if (readAll && nextEntryId <= endEntryId) {
+            readNextBatch();
+        } else {
+            completeSuccessfully();
+        }
+    }
+
+    private void logErrorAndReattemptRead(ReadContext rctx, String errMsg, int rc) {
+        if (BKException.Code.OK == firstError
+            || BKException.Code.NoSuchEntryException == firstError
+            || BKException.Code.NoSuchLedgerExistsException == firstError) {
+            firstError = rc;
+        } else if (BKException.Code.BookieHandleNotAvailableException == firstError
+                   && BKException.Code.NoSuchEntryException != rc
+                   && BKException.Code.NoSuchLedgerExistsException != rc) {
+            // if other exception rather than NoSuchEntryException or NoSuchLedgerExistsException is
+            // returned we need to update firstError to indicate that it might be a valid read but just
+            // failed.
+            firstError = rc;
+        }
+        if (BKException.Code.NoSuchEntryException == rc
+            || BKException.Code.NoSuchLedgerExistsException == rc) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No such entry found on bookie.  L{} E{} bookie: {}",
+                        lh.ledgerId, nextEntryId, rctx.to);
+            }
+        } else {
+            if (LOG.isInfoEnabled()) {
+                LOG.info("{} while batch reading L{} E{} from bookie: {}",
+                        errMsg, lh.ledgerId, nextEntryId, rctx.to);
+            }
+        }
+        lh.recordReadErrorOnBookie(rctx.bookieIndex);
+
+        sendNextRead();
+    }
+
+    private void completeSuccessfully() {
+        complete = true;
+        writeSet.recycle();
+        long latencyNanos = MathUtils.elapsedNanos(requestTimeNanos);
+        clientCtx.getClientStats().getReadOpLogger().registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
+        future.complete(LedgerEntriesImpl.create(entries));
+    }
+
+    private void fail(int rc) {
+        complete = true;
+        writeSet.recycle();
+        LOG.error("Batch read of ledger entries failed: L{} E{}-E{}, first unread entry is {}, Error = '{}'",
+                lh.getId(), startEntryId, endEntryId, nextEntryId, BKException.getMessage(rc));
+        long latencyNanos = MathUtils.elapsedNanos(requestTimeNanos);
+        clientCtx.getClientStats().getReadOpLogger().registerFailedEvent(latencyNanos, TimeUnit.NANOSECONDS);
+        entries.forEach(LedgerEntry::close);
+        future.completeExceptionally(BKException.create(rc));
+    }
+}
@@ -30,6 +30,7 @@ import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.EventLoopGroup;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Collections;
@@ -64,6 +65,7 @@ import org.apache.bookkeeper.client.api.ListLedgersResultBuilder;
 import org.apache.bookkeeper.client.api.OpenBuilder;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.common.allocator.ByteBufAllocatorBuilder;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
 import org.apache.bookkeeper.common.util.ReflectionUtils;
@@ -85,8 +87,10 @@ import org.apache.bookkeeper.proto.BookieAddressResolver;
 import org.apache.bookkeeper.proto.BookieClient;
 import org.apache.bookkeeper.proto.BookieClientImpl;
 import org.apache.bookkeeper.proto.DataFormats;
+import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.EventLoopStats;
 import org.apache.bookkeeper.util.EventLoopUtil;
 import org.apache.bookkeeper.versioning.Versioned;
 import org.apache.commons.configuration.ConfigurationException;
@@ -122,9 +126,18 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
     // whether the event loop group is one we created, or is owned by whoever
     // instantiated us
     boolean ownEventLoopGroup = false;
+    // the stats of the event loops, when the event loop group is ours
+    final EventLoopStats eventLoopStats;
 
     final BookieClient bookieClient;
     final BookieWatcherImpl bookieWatcher;
+    // the latencies of the reads from the bookies, which drive the adaptive speculative reads
+    final BookieReadLatencyTracker bookieReadLatencyTracker = new BookieReadLatencyTracker();
+    // the entries read by the ledger handles, null if disabled
+    final ClientEntryCache entryCache;
+    final LacWatchMultiplexer lacWatchMultiplexer;
+    // the memory held by the pending adds of all the ledgers, null if not limited
+    final MemoryLimitController pendingAddsMemoryLimiter;
 
     final OrderedExecutor mainWorkerPool;
     final OrderedScheduler scheduler;
@@ -412,6 +425,12 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                        HashedWheelTimer requestTimer,
                        FeatureProvider featureProvider)
             throws IOException, InterruptedException, BKException {
+        try {
+            conf.validate();
+        } catch (ConfigurationException ce) {
+            LOG.error("Invalid client configuration", ce);
+            throw new IOException("Invalid client configuration", ce);
+        }
         this.conf = conf;
         // initialize feature provider
         if (null == featureProvider) {
@@ -437,6 +456,11 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         // initialize stats logger
         this.statsLogger = rootStatsLogger.scope(BookKeeperClientStats.CLIENT_SCOPE);
         this.clientStats = BookKeeperClientStats.newInstance(this.statsLogger);
+        this.entryCache = conf.getEntryCacheMaxSizeBytes() > 0
+                ? new ClientEntryCache(conf.getEntryCacheMaxSizeBytes(), clientStats) : null;
+        this.pendingAddsMemoryLimiter = newPendingAddsMemoryLimiter(conf.getPendingAddsMaxMemoryBytes());
+        this.lacWatchMultiplexer = internalConf.lacWatchMultiplexingEnabled
+                ? new LacWatchMultiplexer(clientCtx) : null;
 
         // initialize metadata driver
         try {
@@ -465,9 +489,11 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
             this.eventLoopGroup = EventLoopUtil.getClientEventLoopGroup(conf,
                     new DefaultThreadFactory("bookkeeper-io"));
             this.ownEventLoopGroup = true;
+            this.eventLoopStats = new EventLoopStats(this.eventLoopGroup, statsLogger);
         } else {
             this.eventLoopGroup = eventLoopGroup;
             this.ownEventLoopGroup = false;
+            this.eventLoopStats = null;
         }
 
         if (byteBufAllocator != null) {
@@ -549,6 +575,9 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         internalConf = ClientInternalConf.fromConfig(conf);
         statsLogger = NullStatsLogger.INSTANCE;
         clientStats = BookKeeperClientStats.newInstance(statsLogger);
+        entryCache = null;
+        pendingAddsMemoryLimiter = null;
+        lacWatchMultiplexer = null;
         scheduler = null;
         requestTimer = null;
         metadataDriver = null;
@@ -560,6 +589,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         ledgerIdGenerator = null;
         featureProvider = null;
         eventLoopGroup = null;
+        eventLoopStats = null;
         bookieWatcher = null;
         bookieInfoScheduler = null;
         bookieClient = null;
@@ -673,6 +703,24 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         return closed;
     }
 
+    /**
+     * Check whether the current thread is a thread of the worker pools or the event loops of the
+     * client, which must not block waiting for the responses of the bookies.
+     */
+    boolean isClientThread() {
+        if (mainWorkerPool.isExecutorThread() || scheduler.isExecutorThread()) {
+            return true;
+        }
+        if (eventLoopGroup != null) {
+            for (EventExecutor eventLoop : eventLoopGroup) {
+                if (eventLoop.inEventLoop()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @VisibleForTesting
     BookieWatcher getBookieWatcher() {
         return bookieWatcher;
@@ -1478,6 +1526,9 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         if (ownEventLoopGroup) {
             eventLoopGroup.shutdownGracefully();
         }
+        if (entryCache != null) {
+            entryCache.close();
+        }
         this.metadataDriver.close();
     }
 
@@ -1608,6 +1659,35 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         });
     }
 
+    private MemoryLimitController newPendingAddsMemoryLimiter(long maxMemoryBytes) {
+        if (maxMemoryBytes <= 0) {
+            return null;
+        }
+        MemoryLimitController limiter = new MemoryLimitController(maxMemoryBytes);
+        clientStats.registerPendingAddsMemoryGauges(new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return maxMemoryBytes;
+            }
+        }, new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return limiter.currentUsage();
+            }
+        });
+        return limiter;
+    }
+
     private final ClientContext clientCtx = new ClientContext() {
             @Override
             public ClientInternalConf getConf() {
@@ -1649,11 +1729,36 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                 return clientStats;
             }
 
+            @Override
+            public BookieReadLatencyTracker getBookieReadLatencyTracker() {
+                return bookieReadLatencyTracker;
+            }
+
+            @Override
+            public ClientEntryCache getEntryCache() {
+                return entryCache;
+            }
+
+            @Override
+            public MemoryLimitController getPendingAddsMemoryLimiter() {
+                return pendingAddsMemoryLimiter;
+            }
+
+            @Override
+            public LacWatchMultiplexer getLacWatchMultiplexer() {
+                return lacWatchMultiplexer;
+            }
+
             @Override
             public boolean isClientClosed() {
                 return BookKeeper.this.isClosed();
             }
 
+            @Override
+            public boolean isClientThread() {
+                return BookKeeper.this.isClientThread();
+            }
+
             @Override
             public ByteBufAllocator getByteBufAllocator() {
                 return allocator;
@@ -65,12 +65,20 @@ public interface BookKeeperClientStats {
     String SPECULATIVE_READ_COUNT = "SPECULATIVE_READ_COUNT";
     String READ_REQUESTS_REORDERED = "READ_REQUESTS_REORDERED";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_OP = "GET_LIST_OF_ENTRIES_OF_LEDGER";
+    String ENTRY_CACHE_HITS = "ENTRY_CACHE_HITS";
+    String ENTRY_CACHE_MISSES = "ENTRY_CACHE_MISSES";
+    String ENTRY_CACHE_SIZE = "ENTRY_CACHE_SIZE";
+    String PENDING_ADDS_MEMORY_MAX = "PENDING_ADDS_MEMORY_MAX";
+    String PENDING_ADDS_MEMORY_USED = "PENDING_ADDS_MEMORY_USED";
+    String ADD_OP_MEMORY_REJECTED = "ADD_OP_MEMORY_REJECTED";
 
     // per channel stats
     String CHANNEL_SCOPE = "per_channel_bookie_client";
 
     String CHANNEL_READ_OP = "READ_ENTRY";
     String CHANNEL_TIMEOUT_READ = "TIMEOUT_READ_ENTRY";
+    String CHANNEL_BATCH_READ_OP = "BATCH_READ_ENTRY";
+    String CHANNEL_READ_DECOMPRESSION = "READ_ENTRY_DECOMPRESSION";
     String CHANNEL_ADD_OP = "ADD_ENTRY";
     String CHANNEL_TIMEOUT_ADD = "TIMEOUT_ADD_ENTRY";
     String CHANNEL_WRITE_LAC_OP = "WRITE_LAC";
@@ -79,6 +87,8 @@ public interface BookKeeperClientStats {
     String CHANNEL_TIMEOUT_FORCE = "TIMEOUT_FORCE";
     String CHANNEL_READ_LAC_OP = "READ_LAC";
     String CHANNEL_TIMEOUT_READ_LAC = "TIMEOUT_READ_LAC";
+    String CHANNEL_WATCH_LAC_OP = "WATCH_LAC";
+    String CHANNEL_TIMEOUT_WATCH_LAC = "TIMEOUT_WATCH_LAC";
     String TIMEOUT_GET_BOOKIE_INFO = "TIMEOUT_GET_BOOKIE_INFO";
     String CHANNEL_START_TLS_OP = "START_TLS";
     String CHANNEL_TIMEOUT_START_TLS_OP = "TIMEOUT_START_TLS";
@@ -129,7 +139,12 @@ public interface BookKeeperClientStats {
     OpStatsLogger getWriteDelayedDueToNotEnoughFaultDomainsLatency();
     Counter getWriteDelayedDueToNotEnoughFaultDomains();
     Counter getWriteTimedOutDueToNotEnoughFaultDomains();
+    Counter getEntryCacheHitsCounter();
+    Counter getEntryCacheMissesCounter();
+    Counter getAddOpMemoryRejectedCounter();
     void registerPendingAddsGauge(Gauge<Integer> gauge);
+    void registerEntryCacheSizeGauge(Gauge<Long> gauge);
+    void registerPendingAddsMemoryGauges(Gauge<Long> maxGauge, Gauge<Long> usedGauge);
 
     static BookKeeperClientStats newInstance(StatsLogger stats) {
         return new BookKeeperClientStatsImpl(stats);
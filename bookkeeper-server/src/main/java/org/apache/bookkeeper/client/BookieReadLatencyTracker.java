@@ -0,0 +1,197 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Tracks the latency of the reads from each bookie, to estimate its percentiles.
+ *
+ * <p>The latencies of a bookie are counted in a histogram with 4 buckets per power of two, so a
+ * percentile, interpolated within its bucket, is estimated within 25%. The histogram covers the
+ * reads of the current and of the previous window, so the percentiles follow the recent behaviour
+ * of the bookie.
+ *
+ * <p>The tracker also keeps an exponentially weighted moving average of the latencies of each
+ * bookie, which follows a change of latency within a few reads.
+ */
+public class BookieReadLatencyTracker {
+
+    static final long DEFAULT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // the reads of a bookie needed to estimate its percentiles
+    static final int MIN_SAMPLES = 50;
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // the latencies under 1 microsecond share the first bucket
+    private static final int MIN_EXPONENT = 10;
+    // up to 2^40 nanoseconds, about 18 minutes
+    private static final int MAX_EXPONENT = 40;
+    private static final int NUM_BUCKETS = (MAX_EXPONENT - MIN_EXPONENT) * SUB_BUCKETS + 1;
+    // the weight of a new latency in the moving average is 1 / 2^EWMA_SHIFT
+    private static final int EWMA_SHIFT = 3;
+
+    private final long windowNanos;
+    private final ConcurrentHashMap<BookieId, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public BookieReadLatencyTracker() {
+        this(DEFAULT_WINDOW_NANOS);
+    }
+
+    BookieReadLatencyTracker(long windowNanos) {
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * Record the latency of a successful read from a bookie.
+     *
+     * @param bookie the bookie
+     * @param latencyNanos the latency of the read, in nanoseconds
+     */
+    public void recordReadLatency(BookieId bookie, long latencyNanos) {
+        histograms.computeIfAbsent(bookie, b -> new Histogram()).record(latencyNanos);
+    }
+
+    /**
+     * Returns the latency of the recent reads from a bookie at a percentile.
+     *
+     * @param bookie the bookie
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, -1 if not enough reads were tracked for the bookie
+     */
+    public long getReadLatencyNanos(BookieId bookie, double percentile) {
+        Histogram histogram = histograms.get(bookie);
+        return histogram == null ? -1L : histogram.percentile(percentile);
+    }
+
+    /**
+     * Returns the moving average of the latencies of the reads from a bookie.
+     *
+     * <p>The average is halved for every window without reads from the bookie, so a bookie which
+     * was avoided because of a latency spike is eventually read from again.
+     *
+     * @param bookie the bookie
+     * @return the average latency in nanoseconds, -1 if no read was tracked for the bookie
+     */
+    public long getReadLatencyEwmaNanos(BookieId bookie) {
+        Histogram histogram = histograms.get(bookie);
+        return histogram == null ? -1L : histogram.ewma();
+    }
+
+    /**
+     * Stop tracking a bookie, e.g. once it left the cluster.
+     */
+    public void removeBookie(BookieId bookie) {
+        histograms.remove(bookie);
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < (1L << MIN_EXPONENT)) {
+            return 0;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent >= MAX_EXPONENT) {
+            return NUM_BUCKETS - 1;
+        }
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket + 1;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket == 0) {
+            return 1L << MIN_EXPONENT;
+        }
+        int exponent = (bucket - 1) / SUB_BUCKETS + MIN_EXPONENT;
+        int subBucket = (bucket - 1) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    private class Histogram {
+        private volatile AtomicLongArray current = new AtomicLongArray(NUM_BUCKETS);
+        private volatile AtomicLongArray previous = new AtomicLongArray(NUM_BUCKETS);
+        private volatile long windowStartNanos = MathUtils.nowInNano();
+        private final AtomicLong ewmaNanos = new AtomicLong(-1L);
+        private volatile long lastRecordNanos;
+
+        void record(long latencyNanos) {
+            maybeRotate();
+            current.incrementAndGet(bucketOf(latencyNanos));
+            ewmaNanos.getAndUpdate(ewma -> ewma < 0 ? latencyNanos : ewma + ((latencyNanos - ewma) >> EWMA_SHIFT));
+            lastRecordNanos = MathUtils.nowInNano();
+        }
+
+        long ewma() {
+            long ewma = ewmaNanos.get();
+            if (ewma <= 0) {
+                return ewma;
+            }
+            long idleWindows = MathUtils.elapsedNanos(lastRecordNanos) / windowNanos;
+            return idleWindows >= 63 ? 0L : ewma >> idleWindows;
+        }
+
+        long percentile(double percentile) {
+            maybeRotate();
+            AtomicLongArray current = this.current;
+            AtomicLongArray previous = this.previous;
+            long total = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                total += current.get(i) + previous.get(i);
+            }
+            if (total < MIN_SAMPLES) {
+                return -1L;
+            }
+            long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+            long count = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                long bucketCount = current.get(i) + previous.get(i);
+                if (count + bucketCount >= rank) {
+                    // interpolate within the bucket
+                    long lowerBound = i == 0 ? 0 : upperBoundOf(i - 1);
+                    double fraction = (double) (rank - count) / bucketCount;
+                    return lowerBound + (long) ((upperBoundOf(i) - lowerBound) * fraction);
+                }
+                count += bucketCount;
+            }
+            return upperBoundOf(NUM_BUCKETS - 1);
+        }
+
+        private void maybeRotate() {
+            if (MathUtils.elapsedNanos(windowStartNanos) < windowNanos) {
+                return;
+            }
+            synchronized (this) {
+                long elapsedNanos = MathUtils.elapsedNanos(windowStartNanos);
+                if (elapsedNanos < windowNanos) {
+                    return;
+                }
+                // the previous window is stale if no read was tracked during the last one
+                previous = elapsedNanos < 2 * windowNanos ? current : new AtomicLongArray(NUM_BUCKETS);
+                current = new AtomicLongArray(NUM_BUCKETS);
+                windowStartNanos = MathUtils.nowInNano();
+            }
+        }
+    }
+}
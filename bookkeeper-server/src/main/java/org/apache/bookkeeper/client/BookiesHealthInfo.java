@@ -44,4 +44,25 @@ public interface BookiesHealthInfo {
      */
     long getBookiePendingRequests(BookieId bookieSocketAddress);
 
+    /**
+     * Returns the latency of the reads from a bookie at a percentile, over the recent reads.
+     *
+     * @param bookieSocketAddress
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, -1 if not enough reads were tracked for the bookie
+     */
+    default long getBookieReadLatencyNanos(BookieId bookieSocketAddress, double percentile) {
+        return -1L;
+    }
+
+    /**
+     * Returns the moving average of the latencies of the recent reads from a bookie.
+     *
+     * @param bookieSocketAddress
+     * @return the average latency in nanoseconds, -1 if no read was tracked for the bookie
+     */
+    default long getBookieReadLatencyEwmaNanos(BookieId bookieSocketAddress) {
+        return -1L;
+    }
+
 }
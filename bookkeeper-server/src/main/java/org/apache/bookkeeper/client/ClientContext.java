@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client;
 
 import io.netty.buffer.ByteBufAllocator;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -42,5 +43,14 @@ public interface ClientContext {
     OrderedExecutor getMainWorkerPool();
     OrderedScheduler getScheduler();
     BookKeeperClientStats getClientStats();
+    BookieReadLatencyTracker getBookieReadLatencyTracker();
+    // null if the entries are not cached
+    ClientEntryCache getEntryCache();
+    // null if the memory of the pending adds is not limited
+    MemoryLimitController getPendingAddsMemoryLimiter();
+    // null if the long poll reads of last add confirmed are not multiplexed
+    LacWatchMultiplexer getLacWatchMultiplexer();
     boolean isClientClosed();
+    // whether the current thread is a thread of the worker pools or the event loops of the client
+    boolean isClientThread();
 }
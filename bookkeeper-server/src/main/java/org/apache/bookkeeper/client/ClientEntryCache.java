@@ -0,0 +1,222 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+
+/**
+ * Cache of the entries read by the ledger handles of a client, so the readers of a ledger sharing
+ * the client, e.g. the subscriptions tailing the ledger, read each entry once from the bookies.
+ *
+ * <p>Only the entries up to the LastAddConfirmed are cached. They never change, so the cached
+ * entries never need to be invalidated.
+ *
+ * <p>The memory is split in segments of direct memory used in a ring-buffer fashion, like the read
+ * cache of the bookies: once the cache is full, the oldest segment is dropped to make space for the
+ * new entries. The entries are copied in the segments, and returned as slices of the segments, so a
+ * cache hit doesn't copy the entry. The segments are reference counted: the memory of a dropped
+ * segment is freed once all the entries read from it are released.
+ */
+class ClientEntryCache {
+
+    private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int MIN_SEGMENTS = 4;
+    // the length of the ledger up to the entry, stored before the entry
+    private static final int ENTRY_HEADER_SIZE = Long.BYTES;
+
+    private final int segmentSize;
+    private final ByteBuf[] segments;
+    private final ConcurrentLongLongPairHashMap[] indexes;
+    private final Counter hitsCounter;
+    private final Counter missesCounter;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // updated holding the write lock
+    private int currentSegmentIdx = 0;
+    private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+    private boolean closed = false;
+
+    ClientEntryCache(long maxCacheSize, BookKeeperClientStats clientStats) {
+        int segmentsCount = (int) Math.max(MIN_SEGMENTS, (maxCacheSize + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE);
+        this.segmentSize = (int) (maxCacheSize / segmentsCount);
+        this.segments = new ByteBuf[segmentsCount];
+        this.indexes = new ConcurrentLongLongPairHashMap[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            indexes[i] = ConcurrentLongLongPairHashMap.newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                    .build();
+        }
+        // the other segments are allocated once they are used
+        segments[0] = Unpooled.directBuffer(segmentSize, segmentSize);
+        this.hitsCounter = clientStats.getEntryCacheHitsCounter();
+        this.missesCounter = clientStats.getEntryCacheMissesCounter();
+        clientStats.registerEntryCacheSizeGauge(new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return size();
+            }
+        });
+    }
+
+    /**
+     * Cache an entry, which must be at or below the LastAddConfirmed of its ledger.
+     *
+     * @param length the length of the ledger up to the entry
+     * @param entry the content of the entry, which is copied
+     */
+    void put(long ledgerId, long entryId, long length, ByteBuf entry) {
+        int entrySize = ENTRY_HEADER_SIZE + entry.readableBytes();
+        if (entrySize > segmentSize) {
+            return;
+        }
+
+        lock.readLock().lock();
+        try {
+            if (closed || contains(ledgerId, entryId)) {
+                // the entry was read concurrently by another reader
+                return;
+            }
+            int offset = currentSegmentOffset.getAndAdd(entrySize);
+            if (offset + entrySize <= segmentSize) {
+                write(currentSegmentIdx, offset, ledgerId, entryId, length, entry);
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // roll over to the next segment
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            int offset = currentSegmentOffset.getAndAdd(entrySize);
+            if (offset + entrySize > segmentSize) {
+                currentSegmentIdx = (currentSegmentIdx + 1) % segments.length;
+                indexes[currentSegmentIdx].clear();
+                // the entries still read from the dropped segment keep its memory
+                ReferenceCountUtil.safeRelease(segments[currentSegmentIdx]);
+                segments[currentSegmentIdx] = Unpooled.directBuffer(segmentSize, segmentSize);
+                currentSegmentOffset.set(entrySize);
+                offset = 0;
+            }
+            write(currentSegmentIdx, offset, ledgerId, entryId, length, entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(int segmentIdx, int offset, long ledgerId, long entryId, long length, ByteBuf entry) {
+        ByteBuf segment = segments[segmentIdx];
+        segment.setLong(offset, length);
+        segment.setBytes(offset + ENTRY_HEADER_SIZE, entry, entry.readerIndex(), entry.readableBytes());
+        indexes[segmentIdx].put(ledgerId, entryId, offset, entry.readableBytes() + ENTRY_HEADER_SIZE);
+    }
+
+    /**
+     * Get a cached entry.
+     *
+     * @return the cached entry, which holds a reference to the cached content until it is closed, or
+     *         null if the entry isn't cached
+     */
+    LedgerEntryImpl get(long ledgerId, long entryId) {
+        lock.readLock().lock();
+        try {
+            // look for the most recent entries first
+            for (int i = 0; i < segments.length; i++) {
+                int segmentIdx = (currentSegmentIdx + segments.length - i) % segments.length;
+                LongPair res = indexes[segmentIdx].get(ledgerId, entryId);
+                if (res != null) {
+                    int offset = (int) res.first;
+                    int entrySize = (int) res.second;
+                    ByteBuf segment = segments[segmentIdx];
+                    hitsCounter.inc();
+                    return LedgerEntryImpl.create(ledgerId, entryId, segment.getLong(offset),
+                            segment.retainedSlice(offset + ENTRY_HEADER_SIZE, entrySize - ENTRY_HEADER_SIZE));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        missesCounter.inc();
+        return null;
+    }
+
+    // must be called holding the lock
+    private boolean contains(long ledgerId, long entryId) {
+        for (int i = 0; i < segments.length; i++) {
+            if (indexes[i].get(ledgerId, entryId) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the total size of the cached entries
+     */
+    long size() {
+        lock.readLock().lock();
+        try {
+            long size = 0;
+            for (int i = 0; i < segments.length; i++) {
+                if (i == currentSegmentIdx) {
+                    size += Math.min(segmentSize, currentSegmentOffset.get());
+                } else if (!indexes[i].isEmpty()) {
+                    size += segmentSize;
+                }
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void close() {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            for (int i = 0; i < segments.length; i++) {
+                indexes[i].clear();
+                ReferenceCountUtil.safeRelease(segments[i]);
+                segments[i] = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -30,6 +30,8 @@ import org.apache.bookkeeper.feature.SettableFeatureProvider;
 class ClientInternalConf {
     final Feature disableEnsembleChangeFeature;
     final boolean delayEnsembleChange;
+    final boolean optimisticEnsembleChange;
+    final boolean pendingAddsMemoryFailFast;
 
     final Optional<SpeculativeRequestExecutionPolicy> readSpeculativeRequestPolicy;
     final Optional<SpeculativeRequestExecutionPolicy> readLACSpeculativeRequestPolicy;
@@ -41,12 +43,17 @@ class ClientInternalConf {
     final boolean enableReorderReadSequence;
     final boolean enableStickyReads;
     final int recoveryReadBatchSize;
+    final int recoveryReadMaxOutstandingBatches;
     final int throttleValue;
     final int bookieFailureHistoryExpirationMSec;
     final int maxAllowedEnsembleChanges;
     final long timeoutMonitorIntervalSec;
     final boolean enableBookieFailureTracking;
     final boolean useV2WireProtocol;
+    final boolean batchReadEnabled;
+    final long batchReadMaxSizeBytes;
+    final boolean lacWatchMultiplexingEnabled;
+    final int lacWatchMaxLedgersPerRequest;
     final boolean enforceMinNumFaultDomainsForWrite;
 
     static ClientInternalConf defaultValues() {
@@ -68,6 +75,7 @@ class ClientInternalConf {
         this.enableReorderReadSequence = conf.isReorderReadSequenceEnabled();
         this.enableParallelRecoveryRead = conf.getEnableParallelRecoveryRead();
         this.recoveryReadBatchSize = conf.getRecoveryReadBatchSize();
+        this.recoveryReadMaxOutstandingBatches = Math.max(1, conf.getRecoveryReadMaxOutstandingBatches());
         this.waitForWriteSetMs = conf.getWaitTimeoutOnBackpressureMillis();
         this.addEntryQuorumTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getAddEntryQuorumTimeout());
         this.throttleValue = conf.getThrottleValue();
@@ -76,14 +84,27 @@ class ClientInternalConf {
         this.disableEnsembleChangeFeature = featureProvider.getFeature(conf.getDisableEnsembleChangeFeatureName());
 
         this.delayEnsembleChange = conf.getDelayEnsembleChange();
+        this.optimisticEnsembleChange = conf.getOptimisticEnsembleChange();
+        this.pendingAddsMemoryFailFast = conf.getPendingAddsMemoryFailFast();
         this.maxAllowedEnsembleChanges = conf.getMaxAllowedEnsembleChanges();
         this.timeoutMonitorIntervalSec = conf.getTimeoutMonitorIntervalSec();
         this.enableBookieFailureTracking = conf.getEnableBookieFailureTracking();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
+        this.batchReadEnabled = conf.isBatchReadEnabled();
+        this.batchReadMaxSizeBytes = conf.getBatchReadMaxSizeBytes();
+        this.lacWatchMultiplexingEnabled = conf.isLacWatchMultiplexingEnabled();
+        this.lacWatchMaxLedgersPerRequest = Math.max(1, conf.getLacWatchMaxLedgersPerRequest());
         this.enableStickyReads = conf.isStickyReadsEnabled();
         this.enforceMinNumFaultDomainsForWrite = conf.getEnforceMinNumFaultDomainsForWrite();
 
-        if (conf.getFirstSpeculativeReadTimeout() > 0) {
+        if (conf.getFirstSpeculativeReadTimeout() > 0 && conf.isAdaptiveSpeculativeReadEnabled()) {
+            this.readSpeculativeRequestPolicy =
+                    Optional.of(new AdaptiveSpeculativeRequestExecutionPolicy(
+                                        conf.getFirstSpeculativeReadTimeout(),
+                                        conf.getMaxSpeculativeReadTimeout(),
+                                        conf.getAdaptiveSpeculativeReadLatencyPercentile(),
+                                        conf.getAdaptiveSpeculativeReadMaxRatio()));
+        } else if (conf.getFirstSpeculativeReadTimeout() > 0) {
             this.readSpeculativeRequestPolicy =
                     Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
                                         conf.getFirstSpeculativeReadTimeout(),
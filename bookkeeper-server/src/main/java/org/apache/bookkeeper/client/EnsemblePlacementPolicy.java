@@ -176,6 +176,10 @@ import org.apache.bookkeeper.stats.StatsLogger;
  * bookies from local region, it would try a bookie from remote region. Hence it would achieve low latency even
  * there is network issues within local region.
  *
+ * <p>With {@link ClientConfiguration#setReorderReadLatencyAwareEnabled(boolean)}, the topology aware policies then
+ * pick the first bookie to read from among the available bookies with the power of two choices: of two random
+ * bookies, the one with the lowest moving average of the read latency times the pending requests is read first.
+ *
  * <h2>How to configure the placement policy?</h2>
  *
  * <p>Currently there are 3 implementations available by default. They are:
@@ -0,0 +1,351 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.ReadLastConfirmedAndEntryOp.LastConfirmedAndEntryCallback;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WatchLacCallback;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Multiplexes the long poll reads of last add confirmed and entry of the ledger handles of a
+ * client on watch requests, each watching many ledgers on a bookie.
+ *
+ * <p>The long poll read of a ledger is sent to the first bookie of the read sequence of the entry
+ * following the previous last add confirmed, as the first attempt of a sequential long poll read.
+ * The long poll reads sent to a bookie are coalesced in watch requests, which the bookie answers as
+ * soon as the last add confirmed of one of their ledgers advances, with the ledgers notified by
+ * then. The long poll reads of the ledgers which were not notified are sent again with the next
+ * watch request, until they time out.
+ *
+ * <p>The long poll reads fall back to {@link ReadLastConfirmedAndEntryOp} on errors, and for the
+ * bookies rejecting the watch requests. As a bookie only learns the last add confirmed from the
+ * entries it stores, the long poll reads of the striped ledgers timing out read the last add
+ * confirmed from the other bookies, without waiting.
+ */
+class LacWatchMultiplexer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LacWatchMultiplexer.class);
+
+    private final ClientContext clientCtx;
+    private final int maxLedgersPerRequest;
+    private final ConcurrentHashMap<BookieId, BookieWatches> bookieWatches = new ConcurrentHashMap<>();
+    // the bookies rejecting the watch requests
+    private final Set<BookieId> unsupportedBookies = ConcurrentHashMap.newKeySet();
+
+    LacWatchMultiplexer(ClientContext clientCtx) {
+        this.clientCtx = clientCtx;
+        this.maxLedgersPerRequest = clientCtx.getConf().lacWatchMaxLedgersPerRequest;
+    }
+
+    /**
+     * Wait for the last add confirmed of a ledger to advance past <i>prevEntryId</i>, and read the
+     * entry following it.
+     */
+    void watch(LedgerHandle lh, long prevEntryId, long timeOutInMillis, LastConfirmedAndEntryCallback cb) {
+        watch(new Watch(lh, prevEntryId, timeOutInMillis, cb));
+    }
+
+    private void watch(Watch watch) {
+        if (clientCtx.isClientClosed()) {
+            complete(watch, BKException.Code.ClientClosedException, LedgerHandle.INVALID_ENTRY_ID, null);
+            return;
+        }
+        BookieId bookie = selectBookie(watch.lh, watch.prevEntryId + 1);
+        if (unsupportedBookies.contains(bookie)) {
+            fallback(watch);
+            return;
+        }
+        bookieWatches.computeIfAbsent(bookie, BookieWatches::new).add(watch);
+    }
+
+    private BookieId selectBookie(LedgerHandle lh, long entryId) {
+        List<BookieId> ensemble = lh.getCurrentEnsemble();
+        DistributionSchedule.WriteSet writeSet = lh.getDistributionSchedule().getEnsembleSet(entryId);
+        if (clientCtx.getConf().enableReorderReadSequence) {
+            writeSet = clientCtx.getPlacementPolicy().reorderReadLACSequence(ensemble,
+                    lh.getBookiesHealthInfo(), writeSet);
+        }
+        try {
+            return ensemble.get(writeSet.get(0));
+        } finally {
+            writeSet.recycle();
+        }
+    }
+
+    private void fallback(Watch watch) {
+        fallback(watch, Math.max(0L, watch.remainingMillis()));
+    }
+
+    private void fallback(Watch watch, long timeOutInMillis) {
+        new ReadLastConfirmedAndEntryOp(watch.lh, clientCtx, watch.lh.getCurrentEnsemble(), watch.cb,
+                watch.prevEntryId, timeOutInMillis)
+            .initiate();
+    }
+
+    private void expire(Watch watch) {
+        LedgerMetadata metadata = watch.lh.getLedgerMetadata();
+        if (metadata.getEnsembleSize() > metadata.getWriteQuorumSize()) {
+            // the bookie watched doesn't learn the last add confirmed of the entries striped to the
+            // other bookies, so ask all of them before claiming that it didn't advance
+            fallback(watch, 0L);
+        } else {
+            complete(watch, BKException.Code.OK, watch.lh.getLastAddConfirmed(), null);
+        }
+    }
+
+    private void complete(Watch watch, int rc, long lastAddConfirmed, LedgerEntry entry) {
+        long latencyMicros = MathUtils.elapsedMicroSec(watch.startTimeNanos);
+        if (BKException.Code.OK == rc) {
+            clientCtx.getClientStats().getReadLacAndEntryOpLogger()
+                .registerSuccessfulEvent(latencyMicros, TimeUnit.MICROSECONDS);
+        } else {
+            clientCtx.getClientStats().getReadLacAndEntryOpLogger()
+                .registerFailedEvent(latencyMicros, TimeUnit.MICROSECONDS);
+        }
+        // callback on the ordered thread of the ledger, as for the long poll reads
+        try {
+            clientCtx.getMainWorkerPool().executeOrdered(watch.lh.getId(),
+                    () -> watch.cb.readLastConfirmedAndEntryComplete(rc, lastAddConfirmed, entry));
+        } catch (RejectedExecutionException e) {
+            watch.cb.readLastConfirmedAndEntryComplete(rc, lastAddConfirmed, entry);
+        }
+    }
+
+    /**
+     * Verify the entry piggy backed on a notification.
+     *
+     * @return the entry, or null if its digest doesn't match
+     */
+    private LedgerEntry toLedgerEntry(LedgerHandle lh, long entryId, long lastAddConfirmed, ByteBuf buffer) {
+        ByteBuf content;
+        try {
+            content = lh.getDigestManager().verifyDigestAndReturnData(entryId, buffer);
+        } catch (BKException.BKDigestMatchException e) {
+            LOG.warn("Mac mismatch on the entry {} of ledger {} piggy backed on a watch notification",
+                    entryId, lh.getId());
+            buffer.release();
+            return null;
+        }
+        try (LedgerEntryImpl entryImpl = LedgerEntryImpl.create(lh.getId(), entryId)) {
+            // the length is the last field of the metadata of the entry
+            entryImpl.setLength(buffer.getLong(DigestManager.METADATA_LENGTH - 8));
+            entryImpl.setEntryBuf(content);
+            ClientEntryCache entryCache = clientCtx.getEntryCache();
+            if (entryCache != null && entryId <= lastAddConfirmed) {
+                entryCache.put(lh.getId(), entryId, entryImpl.getLength(), entryImpl.getEntryBuffer());
+            }
+            return new LedgerEntry(entryImpl);
+        }
+    }
+
+    /**
+     * A long poll read of a ledger.
+     */
+    private static class Watch {
+        final LedgerHandle lh;
+        final long prevEntryId;
+        final LastConfirmedAndEntryCallback cb;
+        final long startTimeNanos;
+        final long deadlineNanos;
+
+        Watch(LedgerHandle lh, long prevEntryId, long timeOutInMillis, LastConfirmedAndEntryCallback cb) {
+            this.lh = lh;
+            this.prevEntryId = prevEntryId;
+            this.cb = cb;
+            this.startTimeNanos = MathUtils.nowInNano();
+            this.deadlineNanos = startTimeNanos + TimeUnit.MILLISECONDS.toNanos(timeOutInMillis);
+        }
+
+        long remainingMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - MathUtils.nowInNano());
+        }
+    }
+
+    /**
+     * The long poll reads waiting to be sent to a bookie.
+     */
+    private class BookieWatches {
+        final BookieId bookie;
+        // guarded by this
+        final ArrayDeque<Watch> pending = new ArrayDeque<>();
+        boolean sendScheduled = false;
+
+        BookieWatches(BookieId bookie) {
+            this.bookie = bookie;
+        }
+
+        void add(Watch watch) {
+            synchronized (this) {
+                pending.add(watch);
+                if (sendScheduled) {
+                    return;
+                }
+                sendScheduled = true;
+            }
+            // the long poll reads issued until the send runs are coalesced in the same requests
+            try {
+                clientCtx.getMainWorkerPool().executeOrdered(bookie, this::send);
+            } catch (RejectedExecutionException e) {
+                send();
+            }
+        }
+
+        void send() {
+            List<WatchRequest> requests = new ArrayList<>();
+            synchronized (this) {
+                sendScheduled = false;
+                WatchRequest request = null;
+                while (!pending.isEmpty()) {
+                    Watch watch = pending.peek();
+                    if (request == null
+                            || (request.size() >= maxLedgersPerRequest && !request.contains(watch.lh.getId()))) {
+                        request = new WatchRequest(bookie);
+                        requests.add(request);
+                    }
+                    request.add(pending.poll());
+                }
+            }
+            for (WatchRequest request : requests) {
+                request.send();
+            }
+        }
+    }
+
+    /**
+     * A watch request sent to a bookie.
+     */
+    private class WatchRequest implements WatchLacCallback {
+        final BookieId bookie;
+        // the long poll reads of the ledgers which were not notified yet
+        final Map<Long, List<Watch>> watches = new HashMap<>();
+        final List<Watch> notAdvanced = new ArrayList<>();
+        long timeOutInMillis = Long.MAX_VALUE;
+
+        WatchRequest(BookieId bookie) {
+            this.bookie = bookie;
+        }
+
+        int size() {
+            return watches.size();
+        }
+
+        boolean contains(long ledgerId) {
+            return watches.containsKey(ledgerId);
+        }
+
+        void add(Watch watch) {
+            watches.computeIfAbsent(watch.lh.getId(), ledgerId -> new ArrayList<>(1)).add(watch);
+            // the request times out with its first long poll read
+            timeOutInMillis = Math.min(timeOutInMillis, Math.max(0L, watch.remainingMillis()));
+        }
+
+        void send() {
+            long[] ledgerIds = new long[watches.size()];
+            long[] previousLACs = new long[watches.size()];
+            int i = 0;
+            for (Map.Entry<Long, List<Watch>> e : watches.entrySet()) {
+                long previousLAC = Long.MAX_VALUE;
+                for (Watch watch : e.getValue()) {
+                    previousLAC = Math.min(previousLAC, watch.prevEntryId);
+                }
+                ledgerIds[i] = e.getKey();
+                previousLACs[i] = previousLAC;
+                i++;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Watching the last add confirmed of {} ledgers on bookie {}, timeout {} ms",
+                        ledgerIds.length, bookie, timeOutInMillis);
+            }
+            clientCtx.getBookieClient().watchLac(bookie, ledgerIds, previousLACs, timeOutInMillis, true,
+                    this, null);
+        }
+
+        @Override
+        public void lacNotified(int rc, long ledgerId, long lac, long entryId, ByteBuf entry, Object ctx) {
+            List<Watch> ledgerWatches = watches.remove(ledgerId);
+            if (ledgerWatches == null) {
+                ReferenceCountUtil.release(entry);
+                return;
+            }
+            if (BKException.Code.OK != rc) {
+                ReferenceCountUtil.release(entry);
+                ledgerWatches.forEach(LacWatchMultiplexer.this::fallback);
+                return;
+            }
+            for (Watch watch : ledgerWatches) {
+                if (lac <= watch.prevEntryId) {
+                    notAdvanced.add(watch);
+                    continue;
+                }
+                watch.lh.updateLastConfirmed(lac, 0L);
+                LedgerEntry ledgerEntry = null;
+                if (entry != null && entryId == watch.prevEntryId + 1) {
+                    // each long poll read waiting for the entry gets its own copy of it
+                    ledgerEntry = toLedgerEntry(watch.lh, entryId, lac, entry.retainedDuplicate());
+                    if (ledgerEntry == null) {
+                        // read the entry from the other bookies
+                        fallback(watch);
+                        continue;
+                    }
+                }
+                complete(watch, BKException.Code.OK, lac, ledgerEntry);
+            }
+            ReferenceCountUtil.release(entry);
+        }
+
+        @Override
+        public void watchLacComplete(int rc, Object ctx) {
+            if (BKException.Code.IllegalOpException == rc && unsupportedBookies.add(bookie)) {
+                LOG.warn("Bookie {} rejected the watch requests, falling back to long poll reads", bookie);
+            }
+            watches.values().forEach(notAdvanced::addAll);
+            watches.clear();
+            for (Watch watch : notAdvanced) {
+                if (BKException.Code.OK != rc) {
+                    fallback(watch);
+                } else if (watch.remainingMillis() <= 0) {
+                    // the last add confirmed didn't advance before the timeout
+                    expire(watch);
+                } else {
+                    watch(watch);
+                }
+            }
+            notAdvanced.clear();
+        }
+    }
+}
@@ -32,6 +32,7 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
@@ -45,12 +46,14 @@ import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
 import org.apache.bookkeeper.client.AsyncCallback.CloseCallback;
@@ -75,6 +78,7 @@ import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
 import org.apache.bookkeeper.common.concurrent.FutureEventListener;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.checksum.DigestManager;
@@ -144,9 +148,10 @@ public class LedgerHandle implements WriteHandle {
 
     ScheduledFuture<?> timeoutFuture = null;
 
+    // updated under the metadataLock, but concurrent so that adds can check it's empty without the lock
     @VisibleForTesting
     final Map<Integer, BookieId> delayedWriteFailedBookies =
-        new HashMap<Integer, BookieId>();
+        new ConcurrentHashMap<Integer, BookieId>();
 
     /**
      * Invalid entry id. This value is returned from methods which
@@ -161,9 +166,17 @@ public class LedgerHandle implements WriteHandle {
     public static final long INVALID_LEDGER_ID = -0xABCDABCDL;
 
     final Object metadataLock = new Object();
-    boolean changingEnsemble = false;
+    volatile boolean changingEnsemble = false;
+    // the ensemble the pending adds are sent to while its metadata is being updated,
+    // updated under the metadataLock
+    volatile List<BookieId> optimisticEnsemble = null;
     final AtomicInteger numEnsembleChanges = new AtomicInteger(0);
     Queue<PendingAddOp> pendingAddOps;
+
+    private static final AtomicIntegerFieldUpdater<LedgerHandle> ADD_CALLBACKS_WIP_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(LedgerHandle.class, "addCallbacksWip");
+    // the requests to send the add success callbacks, while a thread is sending them
+    private volatile int addCallbacksWip = 0;
     ExplicitLacFlushPolicy explicitLacFlushPolicy;
 
     final Counter ensembleChangeCounter;
@@ -237,6 +250,16 @@ public class LedgerHandle implements WriteHandle {
             public long getBookiePendingRequests(BookieId bookieSocketAddress) {
                 return clientCtx.getBookieClient().getNumPendingRequests(bookieSocketAddress, ledgerId);
             }
+
+            @Override
+            public long getBookieReadLatencyNanos(BookieId bookieSocketAddress, double percentile) {
+                return clientCtx.getBookieReadLatencyTracker().getReadLatencyNanos(bookieSocketAddress, percentile);
+            }
+
+            @Override
+            public long getBookieReadLatencyEwmaNanos(BookieId bookieSocketAddress) {
+                return clientCtx.getBookieReadLatencyTracker().getReadLatencyEwmaNanos(bookieSocketAddress);
+            }
         };
 
         ensembleChangeCounter = clientCtx.getClientStats().getEnsembleChangeCounter();
@@ -282,8 +305,15 @@ public class LedgerHandle implements WriteHandle {
         }
 
         if (clientCtx.getConf().addEntryQuorumTimeoutNanos > 0) {
+            // the pending adds are timed out by the ordered thread of the ledger, which processes their responses
             this.timeoutFuture = clientCtx.getScheduler().scheduleAtFixedRate(
-                    () -> monitorPendingAddOps(),
+                    () -> {
+                        try {
+                            executeOrdered(this::monitorPendingAddOps);
+                        } catch (RejectedExecutionException e) {
+                            LOG.debug("Skipped the timeout check of the pending adds of ledger {}", ledgerId);
+                        }
+                    },
                     clientCtx.getConf().timeoutMonitorIntervalSec,
                     clientCtx.getConf().timeoutMonitorIntervalSec,
                     TimeUnit.SECONDS);
@@ -379,6 +409,15 @@ public class LedgerHandle implements WriteHandle {
         return getLedgerMetadata().getCustomMetadata();
     }
 
+    /**
+     * Get the allocator of the buffers of the client which opened this ledger.
+     *
+     * @return the allocator of the client
+     */
+    public ByteBufAllocator getByteBufAllocator() {
+        return clientCtx.getByteBufAllocator();
+    }
+
     /**
      * Get the number of fragments that makeup this ledger.
      *
@@ -757,6 +796,62 @@ public class LedgerHandle implements WriteHandle {
         return readEntriesInternalAsync(firstEntry, lastEntry, false);
     }
 
+    /**
+     * Read a batch of consecutive entries asynchronously.
+     *
+     * <p>With batch reads enabled, the entries are fetched from a single bookie with one
+     * request, otherwise this falls back to {@link #readAsync(long, long)}.
+     *
+     * @param startEntry
+     *          id of first entry of the batch
+     * @param maxCount
+     *          the max number of entries to read
+     * @param maxSize
+     *          the max size of the entries to read, in bytes
+     */
+    @Override
+    public CompletableFuture<LedgerEntries> batchReadAsync(long startEntry, int maxCount, long maxSize) {
+        // Little sanity check
+        if (startEntry < 0 || maxCount <= 0 || maxSize <= 0) {
+            LOG.error("IncorrectParameterException on ledgerId:{} startEntry:{} maxCount:{} maxSize:{}",
+                    ledgerId, startEntry, maxCount, maxSize);
+            return FutureUtils.exception(new BKIncorrectParameterException());
+        }
+
+        if (startEntry > lastAddConfirmed) {
+            LOG.error("BatchReadAsync exception on ledgerId:{} startEntry:{} lastAddConfirmed:{}",
+                    ledgerId, startEntry, lastAddConfirmed);
+            return FutureUtils.exception(new BKReadException());
+        }
+
+        long lastEntry = Math.min(startEntry + maxCount - 1, lastAddConfirmed);
+        if (!isBatchReadApplicable(startEntry, lastEntry)) {
+            return readEntriesInternalAsync(startEntry, lastEntry, false);
+        }
+        return submitBatchedReadOp(new BatchedReadOp(this, clientCtx, startEntry, lastEntry, maxSize, false));
+    }
+
+    /**
+     * Whether a range of entries can be read with batch read requests. A batch is served by
+     * a single bookie, so every bookie of the ensemble must store all the entries.
+     */
+    private boolean isBatchReadApplicable(long firstEntry, long lastEntry) {
+        ClientInternalConf conf = clientCtx.getConf();
+        return conf.batchReadEnabled && conf.useV2WireProtocol && lastEntry > firstEntry
+            && getLedgerMetadata().getEnsembleSize() == getLedgerMetadata().getWriteQuorumSize();
+    }
+
+    private CompletableFuture<LedgerEntries> submitBatchedReadOp(BatchedReadOp op) {
+        if (clientCtx.isClientClosed()) {
+            op.future().completeExceptionally(BKException.create(ClientClosedException));
+        } else if (isHandleWritable()) {
+            executeOrdered(op);
+        } else {
+            op.run();
+        }
+        return op.future();
+    }
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
@@ -861,6 +956,10 @@ public class LedgerHandle implements WriteHandle {
     CompletableFuture<LedgerEntries> readEntriesInternalAsync(long firstEntry,
                                                               long lastEntry,
                                                               boolean isRecoveryRead) {
+        if (!isRecoveryRead && isBatchReadApplicable(firstEntry, lastEntry)) {
+            return submitBatchedReadOp(new BatchedReadOp(this, clientCtx, firstEntry, lastEntry,
+                    clientCtx.getConf().batchReadMaxSizeBytes, true));
+        }
         PendingReadOp op = new PendingReadOp(this, clientCtx,
                                              firstEntry, lastEntry, isRecoveryRead);
         if (!clientCtx.isClientClosed()) {
@@ -1052,7 +1151,7 @@ public class LedgerHandle implements WriteHandle {
     }
 
     public void asyncAddEntry(ByteBuf data, final AddCallback cb, final Object ctx) {
-        PendingAddOp op = PendingAddOp.create(this, clientCtx, getCurrentEnsemble(), data, writeFlags, cb, ctx);
+        PendingAddOp op = PendingAddOp.create(this, clientCtx, getEnsembleForAdds(), data, writeFlags, cb, ctx);
         doAsyncAddEntry(op);
     }
 
@@ -1205,7 +1304,7 @@ public class LedgerHandle implements WriteHandle {
      */
     void asyncRecoveryAddEntry(final byte[] data, final int offset, final int length,
                                final AddCallback cb, final Object ctx) {
-        PendingAddOp op = PendingAddOp.create(this, clientCtx, getCurrentEnsemble(),
+        PendingAddOp op = PendingAddOp.create(this, clientCtx, getEnsembleForAdds(),
                                               Unpooled.wrappedBuffer(data, offset, length),
                                               writeFlags, cb, ctx)
                 .enableRecoveryAdd();
@@ -1301,6 +1400,9 @@ public class LedgerHandle implements WriteHandle {
         if (throttler != null) {
             throttler.acquire();
         }
+        if (!reservePendingAddMemory(op)) {
+            return;
+        }
 
         boolean wasClosed = false;
         synchronized (this) {
@@ -1359,6 +1461,56 @@ public class LedgerHandle implements WriteHandle {
 
     }
 
+    /**
+     * Reserve the memory of the entry of an add in the memory budget of the pending adds of the
+     * client. The memory is released once the op is recycled. The recovery adds are not limited.
+     *
+     * <p>The threads of the client never wait for the memory, since they complete the writes which
+     * release it. An add rejected before its entry id is assigned, i.e. unless the handle is a
+     * {@link LedgerHandleAdv}, is failed with {@link #INVALID_ENTRY_ID}, like the adds
+     * to a closed ledger, so that the entry ids of the ledger stay contiguous.
+     *
+     * @return true if the memory is reserved; otherwise the add has been failed
+     */
+    boolean reservePendingAddMemory(final PendingAddOp op) {
+        MemoryLimitController memoryLimiter = clientCtx.getPendingAddsMemoryLimiter();
+        if (memoryLimiter == null || op.isRecoveryAdd) {
+            return true;
+        }
+        long size = op.payload.readableBytes();
+        int rc = BKException.Code.OK;
+        if (clientCtx.getConf().pendingAddsMemoryFailFast || clientCtx.isClientThread()) {
+            if (!memoryLimiter.tryReserveMemory(size)) {
+                rc = BKException.Code.TooManyRequestsException;
+            }
+        } else {
+            try {
+                memoryLimiter.reserveMemory(size);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rc = BKException.Code.InterruptedException;
+            }
+        }
+        if (rc == BKException.Code.OK) {
+            op.reservedMemory = size;
+            return true;
+        }
+
+        clientCtx.getClientStats().getAddOpMemoryRejectedCounter().inc();
+        final int failureRc = rc;
+        try {
+            executeOrdered(() -> {
+                op.cb.addCompleteWithLatency(failureRc, LedgerHandle.this, op.getEntryId(), 0, op.ctx);
+                op.recyclePendAddOpObject();
+            });
+        } catch (RejectedExecutionException e) {
+            op.cb.addCompleteWithLatency(BookKeeper.getReturnRc(clientCtx.getBookieClient(), failureRc),
+                    LedgerHandle.this, op.getEntryId(), 0, op.ctx);
+            op.recyclePendAddOpObject();
+        }
+        return false;
+    }
+
     synchronized void updateLastConfirmed(long lac, long len) {
         if (lac > lastAddConfirmed) {
             lastAddConfirmed = lac;
@@ -1581,6 +1733,11 @@ public class LedgerHandle implements WriteHandle {
                 }
             }
         };
+        LacWatchMultiplexer lacWatchMultiplexer = clientCtx.getLacWatchMultiplexer();
+        if (lacWatchMultiplexer != null && !parallel) {
+            lacWatchMultiplexer.watch(this, entryId - 1, timeOutInMillis, innercb);
+            return;
+        }
         new ReadLastConfirmedAndEntryOp(this, clientCtx, getCurrentEnsemble(), innercb, entryId - 1, timeOutInMillis)
             .parallelRead(parallel)
             .initiate();
@@ -1803,7 +1960,25 @@ public class LedgerHandle implements WriteHandle {
         }
     }
 
+    /**
+     * Send the success callbacks of the completed adds at the head of the pending adds.
+     *
+     * <p>The callbacks are sent by a single thread at a time: a thread calling this method while
+     * another one is sending the callbacks, or while the callback of an add calls it again, only
+     * makes the sending thread check the head of the pending adds once more.
+     */
     void sendAddSuccessCallbacks() {
+        if (ADD_CALLBACKS_WIP_UPDATER.getAndIncrement(this) != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            drainAddSuccessCallbacks();
+            missed = ADD_CALLBACKS_WIP_UPDATER.addAndGet(this, -missed);
+        } while (missed != 0);
+    }
+
+    private void drainAddSuccessCallbacks() {
         // Start from the head of the queue and proceed while there are
         // entries that have had all their responses come back
         PendingAddOp pendingAddOp;
@@ -1849,6 +2024,9 @@ public class LedgerHandle implements WriteHandle {
     }
 
     void maybeHandleDelayedWriteBookieFailure() {
+        if (delayedWriteFailedBookies.isEmpty()) {
+            return;
+        }
         synchronized (metadataLock) {
             if (delayedWriteFailedBookies.isEmpty()) {
                 return;
@@ -1924,6 +2102,11 @@ public class LedgerHandle implements WriteHandle {
             LOG.debug("{} Replacing {} in {}", logContext, failedBookies, origEnsemble);
         }
 
+        // the ensemble the pending adds are sent to ahead of the metadata update
+        List<BookieId> baseEnsemble = getCurrentEnsemble();
+        List<BookieId> sentEnsemble = clientCtx.getConf().optimisticEnsembleChange
+                ? sendToOptimisticEnsemble(origEnsemble, baseEnsemble, failedBookies, logContext) : null;
+
         AtomicInteger attempts = new AtomicInteger(0);
         new MetadataUpdateLoop(
                 clientCtx.getLedgerManager(), getId(),
@@ -1936,8 +2119,14 @@ public class LedgerHandle implements WriteHandle {
                     attempts.incrementAndGet();
 
                     List<BookieId> currentEnsemble = getCurrentEnsemble();
-                    List<BookieId> newEnsemble = EnsembleUtils.replaceBookiesInEnsemble(
-                            clientCtx.getBookieWatcher(), metadata, currentEnsemble, failedBookies, logContext);
+                    List<BookieId> newEnsemble;
+                    if (sentEnsemble != null && currentEnsemble.equals(baseEnsemble)) {
+                        // keep the bookies the pending adds were sent to
+                        newEnsemble = sentEnsemble;
+                    } else {
+                        newEnsemble = EnsembleUtils.replaceBookiesInEnsemble(
+                                clientCtx.getBookieWatcher(), metadata, currentEnsemble, failedBookies, logContext);
+                    }
                     Long lastEnsembleKey = LedgerMetadataUtils.getLastEnsembleKey(metadata);
                     LedgerMetadataBuilder builder = LedgerMetadataBuilder.from(metadata);
                     long newEnsembleStartEntry = getLastAddConfirmed() + 1;
@@ -1987,19 +2176,56 @@ public class LedgerHandle implements WriteHandle {
                                 ensembleChangeLoop(origEnsemble, toReplace);
                             } else {
                                 newEnsemble = getCurrentEnsemble();
-                                replaced = EnsembleUtils.diffEnsemble(origEnsemble, newEnsemble);
+                                // resend the pending adds only to the bookies they were not sent to yet
+                                replaced = EnsembleUtils.diffEnsemble(
+                                        optimisticEnsemble != null ? optimisticEnsemble : origEnsemble, newEnsemble);
                                 LOG.info("New Ensemble: {} for ledger: {}", newEnsemble, ledgerId);
 
+                                optimisticEnsemble = null;
                                 changingEnsemble = false;
                             }
                         }
                         if (newEnsemble != null) { // unsetSuccess outside of lock
                             unsetSuccessAndSendWriteRequest(newEnsemble, replaced);
+                            if (replaced.isEmpty()) {
+                                // the pending adds were sent to the new ensemble, only their acks were held
+                                sendAddSuccessCallbacks();
+                            }
                         }
                     }
             }, clientCtx.getMainWorkerPool().chooseThread(ledgerId));
     }
 
+    /**
+     * Send the pending adds to the replacements of the failed bookies before the new ensemble is
+     * written to the metadata store. The adds are acknowledged once the metadata is written, since
+     * the entries are only readable from the bookies of the ensembles in the metadata.
+     *
+     * @return the ensemble the pending adds are sent to, or null if the failed bookies can't be replaced
+     */
+    private List<BookieId> sendToOptimisticEnsemble(List<BookieId> origEnsemble, List<BookieId> baseEnsemble,
+                                                    Map<Integer, BookieId> failedBookies, String logContext) {
+        List<BookieId> newEnsemble;
+        try {
+            newEnsemble = EnsembleUtils.replaceBookiesInEnsemble(
+                    clientCtx.getBookieWatcher(), getLedgerMetadata(), baseEnsemble, failedBookies, logContext);
+        } catch (BKException.BKNotEnoughBookiesException e) {
+            // the metadata update fails the same way
+            return null;
+        }
+        Set<Integer> replaced;
+        synchronized (metadataLock) {
+            replaced = EnsembleUtils.diffEnsemble(
+                    optimisticEnsemble != null ? optimisticEnsemble : origEnsemble, newEnsemble);
+            optimisticEnsemble = newEnsemble;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("{} sending pending adds to {} ahead of the metadata update", logContext, newEnsemble);
+        }
+        executeOrdered(() -> unsetSuccessAndSendWriteRequest(newEnsemble, replaced));
+        return newEnsemble;
+    }
+
     void unsetSuccessAndSendWriteRequest(List<BookieId> ensemble, final Set<Integer> bookies) {
         for (PendingAddOp pendingAddOp : pendingAddOps) {
             for (Integer bookieIndex: bookies) {
@@ -2026,6 +2252,15 @@ public class LedgerHandle implements WriteHandle {
         }
     }
 
+    /**
+     * Get the ensemble the new entries are sent to. It is the current ensemble, unless the
+     * pending adds are sent to a new ensemble whose metadata is being updated.
+     */
+    List<BookieId> getEnsembleForAdds() {
+        List<BookieId> ensemble = optimisticEnsemble;
+        return ensemble != null ? ensemble : getCurrentEnsemble();
+    }
+
     /**
      * Get the current ensemble from the ensemble list. The current ensemble
      * is the last ensemble in the list. The ledger handle uses this ensemble when
@@ -2084,4 +2319,11 @@ public class LedgerHandle implements WriteHandle {
         clientCtx.getMainWorkerPool().executeOrdered(ledgerId, runnable);
     }
 
+    /**
+     * Check whether the current thread is the thread pinned to the ledger.
+     */
+    boolean isInOrderedThread() {
+        return Thread.currentThread().getId() == clientCtx.getMainWorkerPool().getThreadID(ledgerId);
+    }
+
 }
@@ -203,7 +203,7 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
     @Override
     public void asyncAddEntry(final long entryId, ByteBuf data,
                               final AddCallbackWithLatency cb, final Object ctx) {
-        PendingAddOp op = PendingAddOp.create(this, clientCtx, getCurrentEnsemble(), data, writeFlags, cb, ctx);
+        PendingAddOp op = PendingAddOp.create(this, clientCtx, getEnsembleForAdds(), data, writeFlags, cb, ctx);
         op.setEntryId(entryId);
 
         if ((entryId <= this.lastAddConfirmed) || pendingAddOps.contains(op)) {
@@ -224,6 +224,9 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         if (throttler != null) {
             throttler.acquire();
         }
+        if (!reservePendingAddMemory(op)) {
+            return;
+        }
 
         boolean wasClosed = false;
         synchronized (this) {
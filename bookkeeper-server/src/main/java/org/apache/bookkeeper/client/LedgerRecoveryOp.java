@@ -18,12 +18,17 @@
 package org.apache.bookkeeper.client;
 
 import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryListener;
 import org.apache.bookkeeper.proto.checksum.DigestManager.RecoveryData;
+import org.apache.bookkeeper.util.MathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +37,11 @@ import org.slf4j.LoggerFactory;
  * with entry-id of -1 (BookieProtocol.LAST_ADD_CONFIRMED) to all bookies. Then
  * starting from the last confirmed entry (from hints in the ledger entries),
  * it reads forward until it is not able to find a particular entry.
+ *
+ * <p>The entries past the last confirmed are read in batches, with up to
+ * {@link ClientInternalConf#recoveryReadMaxOutstandingBatches} batches being read
+ * at a time. The entries are added back in order, as soon as all the entries
+ * before them are read, without waiting for the previous adds to complete.
  */
 class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
 
@@ -43,8 +53,16 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
 
     final AtomicLong readCount, writeCount;
     volatile boolean readDone;
-    volatile long startEntryToRead;
-    volatile long endEntryToRead;
+    final long startTimeNanos;
+
+    // the batches being read, in order, guarded by this
+    private final ArrayDeque<ReadBatch> readBatches = new ArrayDeque<>();
+    // the first entry of the next batch to read, guarded by this
+    private long nextEntryToRead;
+    // the results of the reads, in entry order, waiting to be added back, guarded by this
+    private final ArrayDeque<ReadResult> readResults = new ArrayDeque<>();
+    // whether a thread is adding back the entries read, guarded by this
+    private boolean recoveringEntries = false;
 
     // keep a copy of metadata for recovery.
     LedgerMetadata metadataForRecovery;
@@ -69,10 +87,62 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
 
     }
 
+    /**
+     * A batch of entries being read. The entries are kept until all the entries of the previous
+     * batches are read.
+     */
+    private static final class ReadBatch {
+        final long startEntryId;
+        final long endEntryId;
+        // the results of the reads, and the entries of the successful ones
+        final ArrayDeque<Integer> rcs = new ArrayDeque<>();
+        final ArrayDeque<LedgerEntry> entries = new ArrayDeque<>();
+        long numCompleted = 0;
+
+        ReadBatch(long startEntryId, long endEntryId) {
+            this.startEntryId = startEntryId;
+            this.endEntryId = endEntryId;
+        }
+
+        boolean isCompleted() {
+            return numCompleted == endEntryId - startEntryId + 1;
+        }
+
+        void release() {
+            for (LedgerEntry entry : entries) {
+                entry.getEntryBuffer().release();
+            }
+            entries.clear();
+            rcs.clear();
+        }
+    }
+
+    /**
+     * The result of the read of an entry, added back once all the entries before it are.
+     */
+    private static final class ReadResult {
+        final int rc;
+        final LedgerEntry entry;
+        final ReadBatch batch;
+
+        ReadResult(int rc, LedgerEntry entry, ReadBatch batch) {
+            this.rc = rc;
+            this.entry = entry;
+            this.batch = batch;
+        }
+
+        void release() {
+            if (null != entry) {
+                entry.getEntryBuffer().release();
+            }
+        }
+    }
+
     public LedgerRecoveryOp(LedgerHandle lh, ClientContext clientCtx) {
         readCount = new AtomicLong(0);
         writeCount = new AtomicLong(0);
         readDone = false;
+        startTimeNanos = MathUtils.nowInNano();
         this.promise = new CompletableFuture<>();
         this.lh = lh;
         this.clientCtx = clientCtx;
@@ -123,12 +193,11 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
 
                                 lh.length = data.getLength();
                                 lh.pendingAddsSequenceHead = lh.lastAddConfirmed;
-                                startEntryToRead = endEntryToRead = lh.lastAddConfirmed;
                             }
                             // keep a copy of ledger metadata before proceeding
                             // ledger recovery
                             metadataForRecovery = lh.getLedgerMetadata();
-                            doRecoveryRead();
+                            startRecoveryReads(lh.lastAddConfirmed + 1);
                         } else if (rc == BKException.Code.TimeoutException) {
                             submitCallback(rc);
                         } else if (rc == BKException.Code.UnauthorizedAccessException) {
@@ -153,6 +222,10 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
         if (BKException.Code.OK == rc) {
             clientCtx.getClientStats().getRecoverAddCountLogger().registerSuccessfulValue(writeCount.get());
             clientCtx.getClientStats().getRecoverReadCountLogger().registerSuccessfulValue(readCount.get());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Recovered {} entries of ledger {} in {} ms", writeCount.get(), lh.getId(),
+                        TimeUnit.NANOSECONDS.toMillis(MathUtils.elapsedNanos(startTimeNanos)));
+            }
             promise.complete(lh);
         } else {
             clientCtx.getClientStats().getRecoverAddCountLogger().registerFailedValue(writeCount.get());
@@ -162,17 +235,44 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
     }
 
     /**
-     * Try to read past the last confirmed.
+     * Start reading past the last confirmed.
      */
-    private void doRecoveryRead() {
-        if (!promise.isDone()) {
-            startEntryToRead = endEntryToRead + 1;
-            endEntryToRead = endEntryToRead + clientCtx.getConf().recoveryReadBatchSize;
-            new RecoveryReadOp(lh, clientCtx, startEntryToRead, endEntryToRead, this, null)
-                .initiate();
+    @VisibleForTesting
+    void startRecoveryReads(long firstEntryId) {
+        List<ReadBatch> toRead = new ArrayList<>();
+        synchronized (this) {
+            nextEntryToRead = firstEntryId;
+            for (int i = 0; i < clientCtx.getConf().recoveryReadMaxOutstandingBatches; i++) {
+                toRead.add(nextReadBatch());
+            }
+        }
+        readBatches(toRead);
+    }
+
+    // must be called holding the lock
+    private ReadBatch nextReadBatch() {
+        ReadBatch batch = new ReadBatch(nextEntryToRead,
+                nextEntryToRead + clientCtx.getConf().recoveryReadBatchSize - 1);
+        nextEntryToRead = batch.endEntryId + 1;
+        readBatches.add(batch);
+        return batch;
+    }
+
+    // the reads are sent without holding the lock, as their callbacks may run on this thread
+    private void readBatches(List<ReadBatch> batches) {
+        for (ReadBatch batch : batches) {
+            if (promise.isDone() || readDone) {
+                return;
+            }
+            readEntries(batch.startEntryId, batch.endEntryId, batch);
         }
     }
 
+    @VisibleForTesting
+    void readEntries(long startEntryId, long endEntryId, Object ctx) {
+        new RecoveryReadOp(lh, clientCtx, startEntryId, endEntryId, this, ctx).initiate();
+    }
+
     @Override
     public void onEntryComplete(int rc, LedgerHandle lh, LedgerEntry entry, Object ctx) {
         // notify entry listener on individual entries being read during ledger recovery.
@@ -181,8 +281,83 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
             listener.onEntryComplete(rc, lh, entry, ctx);
         }
 
-        // we only trigger recovery add an entry when readDone == false && callbackDone == false
-        if (!promise.isDone() && !readDone && rc == BKException.Code.OK) {
+        ReadBatch batch = (ReadBatch) ctx;
+        List<ReadBatch> toRead = new ArrayList<>();
+        boolean recoverEntries = false;
+        synchronized (this) {
+            batch.numCompleted++;
+            if (promise.isDone() || readDone || !readBatches.contains(batch)) {
+                // the recovery stopped before this entry
+                if (BKException.Code.OK == rc) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Successfully read entry {} for ledger {}, but readDone is already {}",
+                                entry.getEntryId(), lh.getId(), readDone);
+                    }
+                    entry.getEntryBuffer().release();
+                }
+                return;
+            }
+            batch.rcs.add(rc);
+            if (BKException.Code.OK == rc) {
+                batch.entries.add(entry);
+            }
+
+            // queue the entries read in order to be added back, and read the next batches
+            ReadBatch head;
+            while ((head = readBatches.peek()) != null) {
+                while (!head.rcs.isEmpty()) {
+                    int entryRc = head.rcs.poll();
+                    LedgerEntry readEntry = BKException.Code.OK == entryRc ? head.entries.poll() : null;
+                    readResults.add(new ReadResult(entryRc, readEntry, head));
+                }
+                if (!head.isCompleted()) {
+                    break;
+                }
+                readBatches.poll();
+                toRead.add(nextReadBatch());
+            }
+            if (!recoveringEntries && !readResults.isEmpty()) {
+                recoveringEntries = recoverEntries = true;
+            }
+        }
+        // the entries are added back without holding the lock, as the add callbacks may run on
+        // this thread. only one thread adds them back at a time, to keep them in order.
+        if (recoverEntries) {
+            recoverEntries();
+        }
+        readBatches(toRead);
+    }
+
+    private void recoverEntries() {
+        while (true) {
+            ReadResult result;
+            synchronized (this) {
+                result = readResults.poll();
+                if (null == result) {
+                    recoveringEntries = false;
+                    return;
+                }
+            }
+            if (!recoverEntry(result.rc, result.entry, result.batch)) {
+                synchronized (this) {
+                    readResults.forEach(ReadResult::release);
+                    readResults.clear();
+                    readBatches.forEach(ReadBatch::release);
+                    readBatches.clear();
+                    recoveringEntries = false;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Add back an entry read past the last confirmed.
+     *
+     * @return true if the recovery continues with the next entry
+     */
+    private boolean recoverEntry(int rc, LedgerEntry entry, ReadBatch batch) {
+        if (rc == BKException.Code.OK) {
             readCount.incrementAndGet();
             byte[] data = entry.getEntry();
 
@@ -202,11 +377,7 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
             }
             if (BKException.Code.OK == rc) {
                 lh.asyncRecoveryAddEntry(data, 0, data.length, this, null);
-                if (entry.getEntryId() == endEntryToRead) {
-                    // trigger next batch read
-                    doRecoveryRead();
-                }
-                return;
+                return !promise.isDone();
             }
         }
 
@@ -216,21 +387,16 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
             if (readCount.get() == writeCount.get()) {
                 submitCallback(BKException.Code.OK);
             }
-            return;
+            return false;
         }
 
         // otherwise, some other error, we can't handle
-        if (BKException.Code.OK != rc && !promise.isDone()) {
+        if (!promise.isDone()) {
             LOG.error("Failure {} while reading entries: ({} - {}), ledger: {} while recovering ledger",
-                      BKException.getMessage(rc), startEntryToRead, endEntryToRead, lh.getId());
+                      BKException.getMessage(rc), batch.startEntryId, batch.endEntryId, lh.getId());
             submitCallback(rc);
-        } else if (BKException.Code.OK == rc) {
-            // we are here is because we successfully read an entry but readDone was already set to true.
-            // this would happen on recovery a ledger than has gaps in the tail.
-            LOG.warn("Successfully read entry {} for ledger {}, but readDone is already {}",
-                    entry.getEntryId(), lh.getId(), readDone);
         }
-        return;
+        return false;
     }
 
     @Override
@@ -23,18 +23,21 @@ import static org.apache.bookkeeper.proto.BookieProtocol.FLAG_NONE;
 import static org.apache.bookkeeper.proto.BookieProtocol.FLAG_RECOVERY_ADD;
 
 import com.google.common.collect.ImmutableMap;
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.net.BookieId;
@@ -50,20 +53,43 @@ import org.slf4j.LoggerFactory;
  * and placed at the same position in the ensemble. The pending adds are then
  * rereplicated.
  *
+ * <p>The op holds no lock. The responses of the bookies, the ensemble changes and the timeouts are
+ * processed by the ordered thread of the ledger, which is the only thread updating the ack set, so
+ * only the life cycle of the op is shared with the thread adding the entry: it is an atomic word
+ * with the write requests in flight and a bit per condition to release the entry and to recycle
+ * the op, each step being taken by the thread that completes its conditions.
  *
+ * <p>The thread adding the entry and an ensemble change may both find the new bookie of an index
+ * of the write set. The ensemble each index was last sent to is swapped atomically before sending,
+ * so only one of them sends the entry to the new bookie, and a bookie is only sent the entry again
+ * once it responded.
  */
 class PendingAddOp implements WriteCallback {
     private static final Logger LOG = LoggerFactory.getLogger(PendingAddOp.class);
 
+    // the op has been initiated
+    private static final int RUN_DONE = 1 << 30;
+    // the callback of the op has been run
+    private static final int CALLBACK_DONE = 1 << 29;
+    // the entry sent to the bookies has been released
+    private static final int TO_SEND_RELEASED = 1 << 28;
+    private static final int RECYCLABLE = RUN_DONE | CALLBACK_DONE | TO_SEND_RELEASED;
+
+    // the ensemble sent to at an index whose bookie responded
+    private static final List<BookieId> RESPONDED = Collections.emptyList();
+
+    private static final AtomicIntegerFieldUpdater<PendingAddOp> STATE_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(PendingAddOp.class, "state");
+
     ByteBuf payload;
-    ReferenceCounted toSend;
+    volatile ReferenceCounted toSend;
     AddCallbackWithLatency cb;
     Object ctx;
     long entryId;
     int entryLength;
 
     DistributionSchedule.AckSet ackSet;
-    boolean completed = false;
+    volatile boolean completed = false;
 
     LedgerHandle lh;
     ClientContext clientCtx;
@@ -74,14 +100,17 @@ class PendingAddOp implements WriteCallback {
     long writeDelayedStartTime; // min fault domains completion latency after response from ack quorum bookies
 
     long currentLedgerLength;
-    int pendingWriteRequests;
-    boolean callbackTriggered;
-    boolean hasRun;
+    volatile boolean callbackTriggered;
     EnumSet<WriteFlag> writeFlags;
     boolean allowFailFast = false;
-    List<BookieId> ensemble;
+    volatile List<BookieId> ensemble;
+    // the memory reserved in the memory budget of the pending adds of the client
+    long reservedMemory;
+    // the write requests in flight and the life cycle bits of the op
+    private volatile int state;
+    // the ensemble the entry was last sent to, for each bookie index, until the bookie responds
+    private AtomicReferenceArray<List<BookieId>> sentEnsembles;
 
-    @SuppressFBWarnings("IS2_INCONSISTENT_SYNC")
     static PendingAddOp create(LedgerHandle lh, ClientContext clientCtx,
                                List<BookieId> ensemble,
                                ByteBuf payload, EnumSet<WriteFlag> writeFlags,
@@ -99,12 +128,15 @@ class PendingAddOp implements WriteCallback {
 
         op.completed = false;
         op.ensemble = ensemble;
+        if (op.sentEnsembles == null || op.sentEnsembles.length() != ensemble.size()) {
+            op.sentEnsembles = new AtomicReferenceArray<>(ensemble.size());
+        }
         op.ackSet = lh.getDistributionSchedule().getAckSet();
-        op.pendingWriteRequests = 0;
+        op.state = 0;
         op.callbackTriggered = false;
-        op.hasRun = false;
         op.requestTimeNanos = Long.MAX_VALUE;
         op.allowFailFast = false;
+        op.reservedMemory = 0;
         op.qwcLatency = 0;
         op.writeFlags = writeFlags;
 
@@ -144,13 +176,31 @@ class PendingAddOp implements WriteCallback {
         return this.entryId;
     }
 
+    /**
+     * Claim the first write request of the entry to the bookie of an index, unless an ensemble
+     * change already sent the entry to this index.
+     */
+    private boolean claimInitialWriteRequest(List<BookieId> ensemble, int bookieIndex) {
+        return sentEnsembles.compareAndSet(bookieIndex, null, ensemble);
+    }
+
+    /**
+     * Claim the write request of the entry to the bookie of an index of a new ensemble.
+     *
+     * @return false if a write request to this bookie is in flight already
+     */
+    private boolean claimWriteRequest(List<BookieId> ensemble, int bookieIndex) {
+        List<BookieId> sentEnsemble = sentEnsembles.getAndSet(bookieIndex, ensemble);
+        return sentEnsemble == null || sentEnsemble == RESPONDED
+                || !sentEnsemble.get(bookieIndex).equals(ensemble.get(bookieIndex));
+    }
+
     private void sendWriteRequest(List<BookieId> ensemble, int bookieIndex) {
         int flags = isRecoveryAdd ? FLAG_RECOVERY_ADD | FLAG_HIGH_PRIORITY : FLAG_NONE;
 
         clientCtx.getBookieClient().addEntry(ensemble.get(bookieIndex),
                                              lh.ledgerId, lh.ledgerKey, entryId, toSend, this, bookieIndex,
                                              flags, allowFailFast, lh.writeFlags);
-        ++pendingWriteRequests;
     }
 
     boolean maybeTimeout() {
@@ -161,7 +211,7 @@ class PendingAddOp implements WriteCallback {
         return false;
     }
 
-    synchronized void timeoutQuorumWait() {
+    void timeoutQuorumWait() {
         if (completed) {
             return;
         }
@@ -176,7 +226,7 @@ class PendingAddOp implements WriteCallback {
         lh.handleUnrecoverableErrorDuringAdd(BKException.Code.AddEntryQuorumTimeoutException);
     }
 
-    synchronized void unsetSuccessAndSendWriteRequest(List<BookieId> ensemble, int bookieIndex) {
+    void unsetSuccessAndSendWriteRequest(List<BookieId> ensemble, int bookieIndex) {
         // update the ensemble
         this.ensemble = ensemble;
 
@@ -222,19 +272,23 @@ class PendingAddOp implements WriteCallback {
             completed = false;
         }
 
+        if (!claimWriteRequest(ensemble, bookieIndex)) {
+            // the thread adding the entry sent it to the new bookie
+            return;
+        }
+        STATE_UPDATER.incrementAndGet(this);
         sendWriteRequest(ensemble, bookieIndex);
     }
 
     /**
      * Initiate the add operation.
      */
-    public synchronized void initiate() {
-        hasRun = true;
+    public void initiate() {
         if (callbackTriggered) {
             // this should only be true if the request was failed due
             // to another request ahead in the pending queue,
             // so we can just ignore this request
-            maybeRecycle();
+            onStateBitSet(RUN_DONE);
             return;
         }
 
@@ -243,6 +297,11 @@ class PendingAddOp implements WriteCallback {
         checkNotNull(lh.macManager);
 
         int flags = isRecoveryAdd ? FLAG_RECOVERY_ADD | FLAG_HIGH_PRIORITY : FLAG_NONE;
+        int writeQuorumSize = lh.distributionSchedule.getWriteQuorumSize();
+        // count the write requests before they are sent, as they may complete while being sent
+        STATE_UPDATER.addAndGet(this, writeQuorumSize);
+        // the ensemble is read once the entry is published, so that either an ensemble change
+        // resends the entry or the entry is sent to the new ensemble
         this.toSend = lh.macManager.computeDigestAndPackageForSending(
                 entryId, lh.lastAddConfirmed, currentLedgerLength,
                 payload, lh.ledgerKey, flags);
@@ -254,16 +313,48 @@ class PendingAddOp implements WriteCallback {
         lh.maybeHandleDelayedWriteBookieFailure();
 
         // Iterate over set and trigger the sendWriteRequests
-        for (int i = 0; i < lh.distributionSchedule.getWriteQuorumSize(); i++) {
-            sendWriteRequest(ensemble, lh.distributionSchedule.getWriteSetBookieIndex(entryId, i));
+        List<BookieId> ensemble = this.ensemble;
+        int skipped = 0;
+        for (int i = 0; i < writeQuorumSize; i++) {
+            int bookieIndex = lh.distributionSchedule.getWriteSetBookieIndex(entryId, i);
+            if (claimInitialWriteRequest(ensemble, bookieIndex)) {
+                sendWriteRequest(ensemble, bookieIndex);
+            } else {
+                // an ensemble change sent the entry to this bookie
+                skipped++;
+            }
         }
+        if (skipped > 0) {
+            STATE_UPDATER.addAndGet(this, -skipped);
+        }
+        onStateBitSet(RUN_DONE);
     }
 
     @Override
-    public synchronized void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
-        int bookieIndex = (Integer) ctx;
-        --pendingWriteRequests;
+    public void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
+        if (lh.isInOrderedThread()) {
+            handleWriteComplete(rc, ledgerId, entryId, addr, ctx);
+            return;
+        }
+        // the write failed before reaching the bookie, e.g. on the thread adding the entry
+        try {
+            lh.executeOrdered(() -> handleWriteComplete(rc, ledgerId, entryId, addr, ctx));
+        } catch (RejectedExecutionException e) {
+            handleWriteComplete(rc, ledgerId, entryId, addr, ctx);
+        }
+    }
 
+    private void handleWriteComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
+        try {
+            processWriteComplete(rc, ledgerId, entryId, addr, (Integer) ctx);
+        } finally {
+            if (STATE_UPDATER.decrementAndGet(this) == RECYCLABLE) {
+                recyclePendAddOpObject();
+            }
+        }
+    }
+
+    private void processWriteComplete(int rc, long ledgerId, long entryId, BookieId addr, int bookieIndex) {
         if (!ensemble.get(bookieIndex).equals(addr)) {
             // ensemble has already changed, failure of this addr is immaterial
             if (LOG.isDebugEnabled()) {
@@ -271,6 +362,8 @@ class PendingAddOp implements WriteCallback {
             }
             return;
         }
+        // a new write request to the bookie may be sent from now on
+        sentEnsembles.set(bookieIndex, RESPONDED);
 
         // must record all acks, even if complete (completion can be undone by an ensemble change)
         boolean ackQuorum = false;
@@ -307,7 +400,6 @@ class PendingAddOp implements WriteCallback {
             sendAddSuccessCallbacks();
             // I am already finished, ignore incoming responses.
             // otherwise, we might hit the following error handling logic, which might cause bad things.
-            maybeRecycle();
             return;
         }
 
@@ -390,7 +482,7 @@ class PendingAddOp implements WriteCallback {
         lh.sendAddSuccessCallbacks();
     }
 
-    synchronized void submitCallback(final int rc) {
+    void submitCallback(final int rc) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Submit callback (lid:{}, eid: {}). rc:{}", lh.getId(), entryId, rc);
         }
@@ -406,7 +498,7 @@ class PendingAddOp implements WriteCallback {
         cb.addCompleteWithLatency(rc, lh, entryId, qwcLatency, ctx);
         callbackTriggered = true;
 
-        maybeRecycle();
+        onStateBitSet(CALLBACK_DONE);
     }
 
     @Override
@@ -444,7 +536,7 @@ class PendingAddOp implements WriteCallback {
     }
 
 
-    private synchronized void maybeRecycle() {
+    private void onStateBitSet(int bit) {
         /**
          * We have opportunity to recycle two objects here.
          * PendingAddOp#toSend and LedgerHandle#pendingAddOp
@@ -460,39 +552,46 @@ class PendingAddOp implements WriteCallback {
          *    - After safeRun finished by the executor
          * BookieClient takes and releases on this buffer immediately after sending the data.
          *
-         * The object can only be recycled after the above conditions are met
-         * otherwise we could end up recycling twice and all
-         * joy that goes along with that.
+         * Each condition is a bit of the state, so the thread setting the last bit of a step
+         * is the only one taking it, and the op can't be recycled twice.
          */
-        if (hasRun && callbackTriggered) {
-            ReferenceCountUtil.release(toSend);
-            toSend = null;
+        int newState = STATE_UPDATER.addAndGet(this, bit);
+        if ((newState & (RUN_DONE | CALLBACK_DONE)) != (RUN_DONE | CALLBACK_DONE)) {
+            return;
         }
+        ReferenceCountUtil.release(toSend);
+        toSend = null;
         // only recycle a pending add op after it has been run.
-        if (hasRun && toSend == null && pendingWriteRequests == 0) {
+        if (STATE_UPDATER.addAndGet(this, TO_SEND_RELEASED) == RECYCLABLE) {
             recyclePendAddOpObject();
         }
     }
 
-    public synchronized void recyclePendAddOpObject() {
+    public void recyclePendAddOpObject() {
         entryId = LedgerHandle.INVALID_ENTRY_ID;
         currentLedgerLength = -1;
         if (payload != null) {
             ReferenceCountUtil.release(payload);
             payload = null;
         }
+        if (reservedMemory > 0) {
+            clientCtx.getPendingAddsMemoryLimiter().releaseMemory(reservedMemory);
+            reservedMemory = 0;
+        }
         cb = null;
         ctx = null;
         ensemble = null;
+        for (int i = 0; i < sentEnsembles.length(); i++) {
+            sentEnsembles.set(i, null);
+        }
         ackSet.recycle();
         ackSet = null;
         lh = null;
         clientCtx = null;
         isRecoveryAdd = false;
         completed = false;
-        pendingWriteRequests = 0;
+        state = 0;
         callbackTriggered = false;
-        hasRun = false;
         allowFailFast = false;
         writeFlags = null;
         addEntrySuccessBookies.clear();
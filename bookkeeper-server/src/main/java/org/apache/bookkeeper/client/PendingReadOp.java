@@ -162,6 +162,36 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
             }
         }
 
+        /**
+         * Complete the read request from the entry cache of the client.
+         *
+         * @param entryCache
+         *          the entry cache of the client
+         * @return true if the entry was cached; otherwise return false if it has to be read from the bookies
+         */
+        boolean completeFromCache(ClientEntryCache entryCache) {
+            if (isComplete()) {
+                return false;
+            }
+            LedgerEntryImpl cachedEntry = entryCache.get(lh.ledgerId, eId);
+            if (cachedEntry == null) {
+                return false;
+            }
+            try {
+                if (!complete.getAndSet(true)) {
+                    rc = BKException.Code.OK;
+                    entryImpl.setLength(cachedEntry.getLength());
+                    entryImpl.setEntryBuf(cachedEntry.getEntryBuffer().retain());
+                    writeSet.recycle();
+                    return true;
+                } else {
+                    return false;
+                }
+            } finally {
+                cachedEntry.close();
+            }
+        }
+
         /**
          * Fail the request with given result code <i>rc</i>.
          *
@@ -254,6 +284,11 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
             return String.format("L%d-E%d", lh.getId(), eId);
         }
 
+        @Override
+        public BookiesHealthInfo getBookiesHealthInfo() {
+            return lh.getBookiesHealthInfo();
+        }
+
         /**
          * Issues a speculative request and indicates if more speculative
          * requests should be issued.
@@ -332,6 +367,7 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
 
         final BitSet sentReplicas;
         final BitSet erroredReplicas;
+        volatile BookieId lastSentTo = null;
 
         SequenceReadRequest(List<BookieId> ensemble, long lId, long eId) {
             super(ensemble, lId, eId);
@@ -340,6 +376,11 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
             this.erroredReplicas = new BitSet(lh.getLedgerMetadata().getWriteQuorumSize());
         }
 
+        @Override
+        public BookieId getLastRequestBookie() {
+            return lastSentTo;
+        }
+
         private synchronized int getNextReplicaIndexToReadFrom() {
             return nextReplicaIndexToReadFrom;
         }
@@ -408,6 +449,7 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
                 sendReadTo(bookieIndex, to, this);
                 sentToHosts.add(to);
                 sentReplicas.set(replica);
+                lastSentTo = to;
                 return to;
             } catch (InterruptedException ie) {
                 LOG.error("Interrupted reading entry " + this, ie);
@@ -528,8 +570,13 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
             seq.add(entry);
             i++;
         } while (i <= endEntryId);
-        // read the entries.
+        // read the entries, unless they are cached.
+        ClientEntryCache entryCache = isRecoveryRead ? null : clientCtx.getEntryCache();
         for (LedgerEntryRequest entry : seq) {
+            if (entryCache != null && entry.completeFromCache(entryCache)) {
+                submitCallback(BKException.Code.OK);
+                continue;
+            }
             entry.read();
             if (!parallelRead && clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
                 speculativeTask = clientCtx.getConf().readSpeculativeRequestPolicy.get()
@@ -547,12 +594,14 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
         final int bookieIndex;
         final BookieId to;
         final LedgerEntryRequest entry;
+        final long sendTimeNanos;
         long lac = LedgerHandle.INVALID_ENTRY_ID;
 
         ReadContext(int bookieIndex, BookieId to, LedgerEntryRequest entry) {
             this.bookieIndex = bookieIndex;
             this.to = to;
             this.entry = entry;
+            this.sendTimeNanos = MathUtils.nowInNano();
         }
 
         @Override
@@ -595,6 +644,8 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
             return;
         }
 
+        clientCtx.getBookieReadLatencyTracker().recordReadLatency(rctx.to,
+                MathUtils.elapsedNanos(rctx.sendTimeNanos));
         heardFromHosts.add(rctx.to);
         heardFromHostsBitSet.set(rctx.bookieIndex, true);
 
@@ -604,6 +655,7 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
             if (!isRecoveryRead) {
                 // do not advance LastAddConfirmed for recovery reads
                 lh.updateLastConfirmed(rctx.getLastAddConfirmed(), 0L);
+                cacheEntry(entry);
             }
             submitCallback(BKException.Code.OK);
         } else {
@@ -616,6 +668,14 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
         }
     }
 
+    private void cacheEntry(LedgerEntryRequest entry) {
+        ClientEntryCache entryCache = clientCtx.getEntryCache();
+        // only the entries up to the LastAddConfirmed never change
+        if (entryCache != null && entry.eId <= lh.getLastAddConfirmed()) {
+            entryCache.put(lh.ledgerId, entry.eId, entry.entryImpl.getLength(), entry.entryImpl.getEntryBuffer());
+        }
+    }
+
     protected void submitCallback(int code) {
         if (BKException.Code.OK == code) {
             numPendingEntries--;
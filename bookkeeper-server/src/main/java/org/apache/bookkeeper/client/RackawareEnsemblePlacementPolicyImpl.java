@@ -292,6 +292,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                     return -1L;
                 }
             });
+        this.reorderReadsLatencyAware = conf.isReorderReadLatencyAwareEnabled();
         return initialize(
                 dnsResolver,
                 timer,
@@ -833,6 +834,8 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
      *      5. read only bookies
      *      6. slow bookies
      *      7. unavailable bookies
+     * With the latency aware reordering, the available (local) bookies are then reordered by
+     * {@link #reorderByLatencyAndLoad(List, BookiesHealthInfo, DistributionSchedule.WriteSet, int)}.
      *
      * @param ensemble
      *          ensemble of bookies
@@ -880,7 +883,11 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         }
 
         boolean reordered = false;
-        if (reorderThresholdPendingRequests > 0) {
+        if (reorderReadsLatencyAware) {
+            if (!isAnyBookieUnavailable) {
+                reordered = reorderByLatencyAndLoad(ensemble, bookiesHealthInfo, writeSet, writeSet.size());
+            }
+        } else if (reorderThresholdPendingRequests > 0) {
             // if there are no slow or unavailable bookies, capture each bookie's number of
             // pending request to reorder requests based on a threshold of pending requests
 
@@ -1023,11 +1030,19 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             writeSet.moveAndShift(firstRemote, i);
         }
 
+        int numAvailable = 0;
+        while (numAvailable < writeSet.size() && (writeSet.get(numAvailable) & MASK_BITS) == LOCAL_MASK) {
+            numAvailable++;
+        }
 
         // remove all masks
         for (int i = 0; i < writeSet.size(); i++) {
             writeSet.set(i, writeSet.get(i) & ~MASK_BITS);
         }
+
+        if (reorderReadsLatencyAware) {
+            reorderByLatencyAndLoad(ensemble, bookiesHealthInfo, writeSet, numAvailable);
+        }
         readReorderedCounter.registerSuccessfulValue(1);
         return writeSet;
     }
@@ -144,6 +144,34 @@ class ReadLastConfirmedAndEntryOp implements BookkeeperInternalCallbacks.ReadEnt
             }
         }
 
+        /**
+         * Complete the read request from the entry cache of the client.
+         *
+         * @param entryCache
+         *          the entry cache of the client
+         * @return true if the entry was cached; otherwise return false if it has to be read from the bookies
+         */
+        boolean completeFromCache(ClientEntryCache entryCache) {
+            LedgerEntryImpl cachedEntry = entryCache.get(entryImpl.getLedgerId(), entryImpl.getEntryId());
+            if (cachedEntry == null) {
+                return false;
+            }
+            try {
+                if (!complete.getAndSet(true)) {
+                    entryImpl.setLength(cachedEntry.getLength());
+                    entryImpl.setEntryBuf(cachedEntry.getEntryBuffer().retain());
+                    writeSet.recycle();
+                    orderedEnsemble.recycle();
+                    rc = BKException.Code.OK;
+                    return true;
+                } else {
+                    return false;
+                }
+            } finally {
+                cachedEntry.close();
+            }
+        }
+
         /**
          * Fail the request with given result code <i>rc</i>.
          *
@@ -498,6 +526,16 @@ class ReadLastConfirmedAndEntryOp implements BookkeeperInternalCallbacks.ReadEnt
         } else {
             request = new SequenceReadRequest(currentEnsemble, lh.getId(), prevEntryId + 1);
         }
+        ClientEntryCache entryCache = clientCtx.getEntryCache();
+        if (entryCache != null && request.completeFromCache(entryCache)) {
+            // the entry was read by another handle of the ledger, so it is confirmed
+            lastAddConfirmed = Math.max(lastAddConfirmed, prevEntryId + 1);
+            lh.updateLastConfirmed(lastAddConfirmed, request.entryImpl.getLength());
+            hasValidResponse = true;
+            // callback on the ordered thread of the ledger, as for the responses of the bookies
+            clientCtx.getMainWorkerPool().executeOrdered(lh.getId(), this::completeRequest);
+            return;
+        }
         request.read();
 
         if (!parallelRead && clientCtx.getConf().readLACSpeculativeRequestPolicy.isPresent()) {
@@ -575,6 +613,11 @@ class ReadLastConfirmedAndEntryOp implements BookkeeperInternalCallbacks.ReadEnt
             if (entryId != BookieProtocol.LAST_ADD_CONFIRMED) {
                 buffer.retain();
                 if (!requestComplete.get() && request.complete(rCtx.getBookieIndex(), bookie, buffer, entryId)) {
+                    ClientEntryCache entryCache = clientCtx.getEntryCache();
+                    if (entryCache != null && entryId <= lastAddConfirmed) {
+                        entryCache.put(ledgerId, entryId, request.entryImpl.getLength(),
+                                request.entryImpl.getEntryBuffer());
+                    }
                     // callback immediately
                     if (rCtx.getLacUpdateTimestamp().isPresent()) {
                         long elapsedMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()
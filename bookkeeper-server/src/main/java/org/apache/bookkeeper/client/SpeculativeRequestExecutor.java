@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.bookkeeper.net.BookieId;
 
 /**
  * Define an executor for issuing speculative requests.
@@ -39,4 +40,22 @@ public interface SpeculativeRequestExecutor {
      * @return whether more speculative requests should be issued
      */
     ListenableFuture<Boolean> issueSpeculativeRequest();
+
+    /**
+     * Returns the bookie the last request was sent to, which a speculative request would back up.
+     *
+     * @return the bookie, null if unknown
+     */
+    default BookieId getLastRequestBookie() {
+        return null;
+    }
+
+    /**
+     * Returns the health of the bookies the requests are sent to.
+     *
+     * @return the health of the bookies, null if unknown
+     */
+    default BookiesHealthInfo getBookiesHealthInfo() {
+        return null;
+    }
 }
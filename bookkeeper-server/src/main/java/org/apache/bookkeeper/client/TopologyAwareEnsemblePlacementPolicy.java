@@ -72,6 +72,7 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
     protected NetworkTopology topology;
     protected DNSToSwitchMapping dnsResolver;
     protected BookieAddressResolver bookieAddressResolver;
+    protected boolean reorderReadsLatencyAware = false;
     @StatsDoc(
             name = BOOKIES_JOINED,
             help = "The distribution of number of bookies joined the cluster on each network topology change"
@@ -626,6 +627,58 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
         }
     }
 
+    /**
+     * Move the bookie to read first to the head of the available bookies of a read sequence, with
+     * the power of two choices: of two random available bookies, the one with the lowest moving
+     * average of the read latency times the pending requests is read first.
+     *
+     * <p>The bookies without latency history are preferred, so they are probed, and picking among
+     * two random bookies rather than the best of all of them spreads the reads of the clients which
+     * share the same view of the bookies.
+     *
+     * @param numAvailable the number of available bookies at the head of the read sequence
+     * @return whether the read sequence was reordered
+     */
+    static boolean reorderByLatencyAndLoad(List<BookieId> ensemble, BookiesHealthInfo bookiesHealthInfo,
+                                           DistributionSchedule.WriteSet writeSet, int numAvailable) {
+        if (numAvailable < 2) {
+            return false;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(numAvailable);
+        int second = random.nextInt(numAvailable - 1);
+        if (second >= first) {
+            second++;
+        }
+        long firstCost = readCost(ensemble.get(writeSet.get(first)), bookiesHealthInfo);
+        long secondCost = readCost(ensemble.get(writeSet.get(second)), bookiesHealthInfo);
+        int best;
+        if (firstCost != secondCost) {
+            best = firstCost < secondCost ? first : second;
+        } else {
+            best = Math.min(first, second);
+        }
+        if (best == 0) {
+            return false;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("read set reordered to read first from {} (cost {} vs {})",
+                    ensemble.get(writeSet.get(best)), Math.min(firstCost, secondCost),
+                    Math.max(firstCost, secondCost));
+        }
+        writeSet.moveAndShift(best, 0);
+        return true;
+    }
+
+    private static long readCost(BookieId bookie, BookiesHealthInfo bookiesHealthInfo) {
+        long latencyNanos = bookiesHealthInfo.getBookieReadLatencyEwmaNanos(bookie);
+        if (latencyNanos < 0) {
+            return 0L;
+        }
+        long pendingRequests = Math.max(0L, bookiesHealthInfo.getBookiePendingRequests(bookie));
+        return latencyNanos * (pendingRequests + 1);
+    }
+
     @Override
     public DistributionSchedule.WriteSet reorderReadSequence(
             List<BookieId> ensemble,
@@ -0,0 +1,77 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import io.netty.buffer.ByteBuf;
+import org.apache.bookkeeper.client.impl.BatchedRecordsImpl;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * The records of an entry written by a {@link BatchingAppender}.
+ *
+ * <p>The records share the buffer of the entry, without copying it: they are only valid until the
+ * entry is closed.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface BatchedRecords extends Iterable<ByteBuf> {
+
+    /**
+     * Get the records of an entry. The entries of the ledgers which weren't created with the custom
+     * metadata of {@link BatchingAppender#newLedgerCustomMetadata()} are seen as a single record.
+     *
+     * @param entry the entry
+     * @param metadata the metadata of the ledger of the entry
+     * @return the records of the entry
+     * @throws IllegalArgumentException if the entry of a batched ledger is not a valid batch
+     */
+    static BatchedRecords of(LedgerEntry entry, LedgerMetadata metadata) {
+        return BatchedRecordsImpl.create(entry, metadata);
+    }
+
+    /**
+     * The id of the entry which contains the records.
+     *
+     * @return the id of the entry
+     */
+    long getEntryId();
+
+    /**
+     * The number of records of the entry.
+     *
+     * @return the number of records
+     */
+    int size();
+
+    /**
+     * Get a record.
+     *
+     * <p>This call doesn't change the reference count of the entry buffer the record is a slice of.
+     *
+     * @param index the index of the record in the entry, as in its {@link RecordPosition}
+     * @return the record
+     * @throws IndexOutOfBoundsException if the entry has no record at this index
+     */
+    ByteBuf getRecord(int index);
+}
@@ -0,0 +1,130 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.impl.BatchedRecordsImpl;
+import org.apache.bookkeeper.client.impl.BatchingAppenderBuilderImpl;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Append records to a ledger, packing several records in a single entry.
+ *
+ * <p>Each entry costs a write to every bookie of the write set and a journal write on each of them,
+ * so applications writing many small records can pack them in fewer entries. The records appended
+ * are batched until the batch reaches its max size or max number of records, or until the linger
+ * time elapsed since its first record, then the batch is appended as a single entry of the ledger.
+ *
+ * <p>The ledger must be created with the custom metadata of {@link #newLedgerCustomMetadata()},
+ * which flags its entries as batches of records. They are read back with
+ * {@link BatchedRecords#of(LedgerEntry, LedgerMetadata)}.
+ *
+ * <p>The ledger is not closed by the appender: once the appender is closed, the application closes
+ * the {@link WriteHandle} as usual.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface BatchingAppender extends AutoCloseable {
+
+    /**
+     * The key of the custom metadata flagging the ledgers written by an appender.
+     */
+    String BATCHED_RECORDS_METADATA_KEY = "bookkeeper.batched-records";
+
+    /**
+     * Create the custom metadata of a ledger written by an appender.
+     *
+     * @return a mutable map, to which the application can add its own custom metadata
+     */
+    static Map<String, byte[]> newLedgerCustomMetadata() {
+        return BatchedRecordsImpl.newCustomMetadata();
+    }
+
+    /**
+     * Create a builder of an appender writing to a ledger.
+     *
+     * @param handle the handle of the ledger to write to, created with the custom metadata of
+     *               {@link #newLedgerCustomMetadata()}
+     * @return a builder of an appender
+     */
+    static BatchingAppenderBuilder newBuilder(WriteHandle handle) {
+        return new BatchingAppenderBuilderImpl(handle);
+    }
+
+    /**
+     * Append a record asynchronously.
+     *
+     * @param record a bytebuf to be written. The bytebuf's reference count will be decremented by 1 once
+     *               the entry which contains it is written.
+     *               do not reuse the buffer, bk-client will release it appropriately.
+     * @return an handle to the result, in case of success it will return the position of the record
+     */
+    CompletableFuture<RecordPosition> appendAsync(ByteBuf record);
+
+    /**
+     * Append a record asynchronously.
+     *
+     * @param record array of bytes to be written
+     *               do not reuse the buffer, bk-client will release it appropriately.
+     * @return an handle to the result, in case of success it will return the position of the record
+     */
+    default CompletableFuture<RecordPosition> appendAsync(byte[] record) {
+        return appendAsync(Unpooled.wrappedBuffer(record));
+    }
+
+    /**
+     * Append the records batched so far without waiting for the batch to be full.
+     *
+     * @return an handle to the result, which completes once all the records appended so far are written
+     */
+    CompletableFuture<Void> flushAsync();
+
+    /**
+     * Append the records batched so far and wait for all the records to be written.
+     */
+    default void flush() throws BKException, InterruptedException {
+        FutureUtils.<Void, BKException>result(flushAsync(), BKException.HANDLER);
+    }
+
+    /**
+     * Asynchronous close the appender, appending the records batched so far.
+     *
+     * <p>The records appended after the appender is closed fail.
+     *
+     * @return an handle to the result, which completes once all the records appended are written
+     */
+    CompletableFuture<Void> closeAsync();
+
+    /**
+     * Synchronous close the appender, appending the records batched so far.
+     */
+    @Override
+    default void close() throws BKException, InterruptedException {
+        FutureUtils.<Void, BKException>result(closeAsync(), BKException.HANDLER);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * Builder of a {@link BatchingAppender}.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface BatchingAppenderBuilder {
+
+    /**
+     * Set the max size of the records of a batch, in bytes. A record larger than it is appended
+     * in a batch of its own. Default is 64KB.
+     *
+     * @param maxBatchBytes the max size of a batch
+     * @return the builder itself
+     */
+    BatchingAppenderBuilder withMaxBatchBytes(int maxBatchBytes);
+
+    /**
+     * Set the max number of records of a batch. Default is 1000.
+     *
+     * @param maxBatchRecords the max number of records of a batch
+     * @return the builder itself
+     */
+    BatchingAppenderBuilder withMaxBatchRecords(int maxBatchRecords);
+
+    /**
+     * Set the max time the first record of a batch waits for more records, before the batch is
+     * appended. With 0 the batches are appended only when they are full or flushed. Default is 1ms.
+     *
+     * @param lingerTime the max time a record waits for more records
+     * @param unit the unit of the linger time
+     * @return the builder itself
+     */
+    BatchingAppenderBuilder withLingerTime(long lingerTime, TimeUnit unit);
+
+    /**
+     * Set the scheduler which appends the batches once their linger time elapsed. The scheduler
+     * isn't shut down with the appender. If none is set, the appender runs a thread of its own.
+     *
+     * @param scheduler the scheduler of the linger time
+     * @return the builder itself
+     */
+    BatchingAppenderBuilder withScheduler(ScheduledExecutorService scheduler);
+
+    /**
+     * Create the appender.
+     *
+     * @return the appender
+     * @throws IllegalArgumentException if the ledger was not created with the custom metadata of
+     *         {@link BatchingAppender#newLedgerCustomMetadata()}
+     */
+    BatchingAppender build();
+}
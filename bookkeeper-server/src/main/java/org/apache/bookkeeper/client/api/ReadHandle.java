@@ -59,6 +59,47 @@ public interface ReadHandle extends Handle {
                                                               BKException.HANDLER);
     }
 
+    /**
+     * Read a batch of consecutive entries asynchronously, from <i>startEntry</i> up to the
+     * LastAddConfirmed.
+     *
+     * <p>The result contains at most <i>maxCount</i> entries, and is bounded by <i>maxSize</i>
+     * bytes, except for the first entry which is always returned. It may contain fewer entries,
+     * so the caller should continue reading from the entry following the last one returned.
+     * When the batch read is not supported, this falls back to {@link #readAsync(long, long)}
+     * on up to <i>maxCount</i> entries.
+     *
+     * @param startEntry
+     *          id of first entry of the batch
+     * @param maxCount
+     *          the max number of entries to read
+     * @param maxSize
+     *          the max size of the entries to read, in bytes
+     * @return an handle to the result of the operation
+     * @since 4.16
+     */
+    default CompletableFuture<LedgerEntries> batchReadAsync(long startEntry, int maxCount, long maxSize) {
+        return readAsync(startEntry, Math.min(startEntry + maxCount - 1, getLastAddConfirmed()));
+    }
+
+    /**
+     * Read a batch of consecutive entries synchronously.
+     *
+     * @param startEntry
+     *          id of first entry of the batch
+     * @param maxCount
+     *          the max number of entries to read
+     * @param maxSize
+     *          the max size of the entries to read, in bytes
+     * @return the result of the operation
+     * @see #batchReadAsync(long, int, long)
+     */
+    default LedgerEntries batchRead(long startEntry, int maxCount, long maxSize)
+            throws BKException, InterruptedException {
+        return FutureUtils.<LedgerEntries, BKException>result(batchReadAsync(startEntry, maxCount, maxSize),
+                                                              BKException.HANDLER);
+    }
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
@@ -0,0 +1,60 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * The position of a record appended through a {@link BatchingAppender}: the entry which contains
+ * the record and the index of the record in the entry.
+ *
+ * @see BatchedRecords
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface RecordPosition extends Comparable<RecordPosition> {
+
+    /**
+     * The id of the entry which contains the record.
+     *
+     * @return the id of the entry
+     */
+    long getEntryId();
+
+    /**
+     * The index of the record in the entry.
+     *
+     * @return the index of the record
+     */
+    int getIndex();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default int compareTo(RecordPosition other) {
+        int result = Long.compare(getEntryId(), other.getEntryId());
+        return result != 0 ? result : Integer.compare(getIndex(), other.getIndex());
+    }
+}
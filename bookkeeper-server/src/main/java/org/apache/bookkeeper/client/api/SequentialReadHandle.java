@@ -0,0 +1,104 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.impl.SequentialReadHandleBuilderImpl;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Read the entries of a ledger in order, prefetching the entries ahead of the reader.
+ *
+ * <p>The handle keeps a window of range reads outstanding ahead of the position of the reader, so
+ * the entries are usually read by the time they are needed. The window starts with a single read
+ * and doubles every time the reader waits for an entry, up to its max number of entries and max
+ * size. The entries are only read once the previous ones are consumed by {@link #nextAsync()}, so
+ * a slow reader holds at most the window in memory.
+ *
+ * <p>The entries are read with {@link ReadHandle#batchReadAsync(long, int, long)}, so they are
+ * read in batch requests when the client and the ledger support them.
+ *
+ * <p>The entries are read up to the LastAddConfirmed of the {@link ReadHandle}. To tail a ledger
+ * which is still written, the application refreshes the LastAddConfirmed, e.g. with
+ * {@link ReadHandle#readLastAddConfirmedAsync()}, once {@link #hasNext()} returns false.
+ *
+ * <p>The ledger is not closed by the handle.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface SequentialReadHandle extends AutoCloseable {
+
+    /**
+     * Create a builder of a sequential handle reading a ledger.
+     *
+     * @param handle the handle of the ledger to read
+     * @return a builder of a sequential read handle
+     */
+    static SequentialReadHandleBuilder newBuilder(ReadHandle handle) {
+        return new SequentialReadHandleBuilderImpl(handle);
+    }
+
+    /**
+     * Returns the id of the entry returned by the next call to {@link #nextAsync()}.
+     *
+     * @return the id of the next entry
+     */
+    long getNextEntryId();
+
+    /**
+     * Returns whether the next entry is within the LastAddConfirmed of the ledger handle.
+     *
+     * @return true if the next entry can be read
+     */
+    boolean hasNext();
+
+    /**
+     * Read the next entry asynchronously.
+     *
+     * <p>The entry is owned by the caller, which closes it once done with it. Reading beyond the
+     * LastAddConfirmed fails with a {@link BKException.Code#NoSuchEntryException}.
+     *
+     * @return an handle to the result of the operation
+     */
+    CompletableFuture<LedgerEntry> nextAsync();
+
+    /**
+     * Read the next entry synchronously.
+     *
+     * @return the next entry
+     * @see #nextAsync()
+     */
+    default LedgerEntry next() throws BKException, InterruptedException {
+        return FutureUtils.<LedgerEntry, BKException>result(nextAsync(), BKException.HANDLER);
+    }
+
+    /**
+     * Close the handle, releasing the entries prefetched and not read yet.
+     *
+     * <p>The reads pending fail.
+     */
+    @Override
+    void close();
+}
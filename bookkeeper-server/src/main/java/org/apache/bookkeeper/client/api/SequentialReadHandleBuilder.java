@@ -0,0 +1,76 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * Builder of a {@link SequentialReadHandle}.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface SequentialReadHandleBuilder {
+
+    /**
+     * Set the id of the first entry to read. Default is 0.
+     *
+     * @param firstEntry the id of the first entry to read
+     * @return the builder itself
+     */
+    SequentialReadHandleBuilder withFirstEntry(long firstEntry);
+
+    /**
+     * Set the max number of entries of a range read. It is also the initial window of the entries
+     * read ahead of the reader. Default is 100.
+     *
+     * @param maxReadEntries the max number of entries of a read
+     * @return the builder itself
+     */
+    SequentialReadHandleBuilder withMaxReadEntries(int maxReadEntries);
+
+    /**
+     * Set the max number of entries read ahead of the reader, being read or not consumed yet.
+     * Default is 1000.
+     *
+     * @param maxOutstandingEntries the max number of entries read ahead
+     * @return the builder itself
+     */
+    SequentialReadHandleBuilder withMaxOutstandingEntries(int maxOutstandingEntries);
+
+    /**
+     * Set the max size of the entries read ahead of the reader, in bytes. The size of the entries
+     * being read is estimated from the size of the entries read so far. Default is 16MB.
+     *
+     * @param maxOutstandingBytes the max size of the entries read ahead
+     * @return the builder itself
+     */
+    SequentialReadHandleBuilder withMaxOutstandingBytes(long maxOutstandingBytes);
+
+    /**
+     * Create the handle. The first reads are sent right away.
+     *
+     * @return the handle
+     */
+    SequentialReadHandle build();
+}
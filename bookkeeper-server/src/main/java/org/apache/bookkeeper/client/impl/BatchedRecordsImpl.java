@@ -0,0 +1,189 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.apache.bookkeeper.client.api.BatchedRecords;
+import org.apache.bookkeeper.client.api.BatchingAppender;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+
+/**
+ * The records of a batched entry.
+ *
+ * <p>The ledgers written by an appender are flagged in their custom metadata with the version of the
+ * format of their entries, so that the entries of the other ledgers are never mistaken for batches.
+ * A batched entry starts with a header made of the number of records and the size of each record,
+ * followed by the records themselves. Keeping the sizes in the header lets the appender write the
+ * records without copying them behind their size.
+ */
+public final class BatchedRecordsImpl implements BatchedRecords {
+
+    private static final byte[] FORMAT_VERSION = "1".getBytes(UTF_8);
+    private static final int FIXED_HEADER_SIZE = Integer.BYTES;
+
+    private final long entryId;
+    private final ByteBuf buffer;
+    // the offsets of the records in the buffer, and the end of the last one
+    private final int[] offsets;
+
+    private BatchedRecordsImpl(long entryId, ByteBuf buffer, int[] offsets) {
+        this.entryId = entryId;
+        this.buffer = buffer;
+        this.offsets = offsets;
+    }
+
+    public static BatchedRecords create(LedgerEntry entry, LedgerMetadata metadata) {
+        ByteBuf buffer = entry.getEntryBuffer();
+        int[] offsets;
+        if (isBatched(metadata)) {
+            offsets = parseHeader(buffer);
+            if (offsets == null) {
+                throw new IllegalArgumentException("Entry " + entry.getEntryId() + " of ledger "
+                        + entry.getLedgerId() + " is not a valid batch of records");
+            }
+        } else {
+            offsets = new int[] { buffer.readerIndex(), buffer.writerIndex() };
+        }
+        return new BatchedRecordsImpl(entry.getEntryId(), buffer, offsets);
+    }
+
+    /**
+     * Check whether the entries of a ledger are batches of records.
+     *
+     * @param metadata the metadata of the ledger
+     */
+    public static boolean isBatched(LedgerMetadata metadata) {
+        return Arrays.equals(FORMAT_VERSION,
+                metadata.getCustomMetadata().get(BatchingAppender.BATCHED_RECORDS_METADATA_KEY));
+    }
+
+    /**
+     * Create the custom metadata flagging a ledger written by an appender.
+     */
+    public static Map<String, byte[]> newCustomMetadata() {
+        Map<String, byte[]> customMetadata = new HashMap<>();
+        customMetadata.put(BatchingAppender.BATCHED_RECORDS_METADATA_KEY, FORMAT_VERSION.clone());
+        return customMetadata;
+    }
+
+    /**
+     * Write the header of a batch.
+     *
+     * @param sizes the sizes of the records of the batch
+     * @param count the number of records of the batch
+     */
+    static ByteBuf writeHeader(ByteBufAllocator allocator, int[] sizes, int count) {
+        ByteBuf header = allocator.buffer(FIXED_HEADER_SIZE + count * Integer.BYTES);
+        header.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            header.writeInt(sizes[i]);
+        }
+        return header;
+    }
+
+    // returns null if the buffer isn't a valid batch
+    private static int[] parseHeader(ByteBuf buffer) {
+        int start = buffer.readerIndex();
+        int length = buffer.readableBytes();
+        if (length < FIXED_HEADER_SIZE) {
+            return null;
+        }
+        int count = buffer.getInt(start);
+        if (count < 0 || count > (length - FIXED_HEADER_SIZE) / Integer.BYTES) {
+            return null;
+        }
+        int[] offsets = new int[count + 1];
+        long offset = start + FIXED_HEADER_SIZE + (long) count * Integer.BYTES;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = (int) offset;
+            int size = buffer.getInt(start + FIXED_HEADER_SIZE + i * Integer.BYTES);
+            if (size < 0) {
+                return null;
+            }
+            offset += size;
+            if (offset > start + length) {
+                return null;
+            }
+        }
+        if (offset != start + length) {
+            return null;
+        }
+        offsets[count] = (int) offset;
+        return offsets;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEntryId() {
+        return entryId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuf getRecord(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Record " + index + " of entry " + entryId + " with "
+                    + size() + " records");
+        }
+        return buffer.slice(offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    @Override
+    public Iterator<ByteBuf> iterator() {
+        return new Iterator<ByteBuf>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public ByteBuf next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getRecord(index++);
+            }
+        };
+    }
+}
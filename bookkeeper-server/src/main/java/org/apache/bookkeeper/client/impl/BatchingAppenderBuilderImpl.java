@@ -0,0 +1,85 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBufAllocator;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.client.api.BatchingAppender;
+import org.apache.bookkeeper.client.api.BatchingAppenderBuilder;
+import org.apache.bookkeeper.client.api.WriteHandle;
+
+/**
+ * Internal builder for {@link BatchingAppender}.
+ */
+public class BatchingAppenderBuilderImpl implements BatchingAppenderBuilder {
+
+    private final WriteHandle handle;
+    private int maxBatchBytes = 64 * 1024;
+    private int maxBatchRecords = 1000;
+    private long lingerTimeNanos = TimeUnit.MILLISECONDS.toNanos(1);
+    private ScheduledExecutorService scheduler = null;
+
+    public BatchingAppenderBuilderImpl(WriteHandle handle) {
+        this.handle = handle;
+    }
+
+    @Override
+    public BatchingAppenderBuilder withMaxBatchBytes(int maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+    @Override
+    public BatchingAppenderBuilder withMaxBatchRecords(int maxBatchRecords) {
+        this.maxBatchRecords = maxBatchRecords;
+        return this;
+    }
+
+    @Override
+    public BatchingAppenderBuilder withLingerTime(long lingerTime, TimeUnit unit) {
+        this.lingerTimeNanos = unit.toNanos(lingerTime);
+        return this;
+    }
+
+    @Override
+    public BatchingAppenderBuilder withScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    @Override
+    public BatchingAppender build() {
+        checkArgument(handle != null, "No ledger handle to append to");
+        checkArgument(maxBatchBytes > 0, "Invalid max batch bytes %s", maxBatchBytes);
+        checkArgument(maxBatchRecords > 0, "Invalid max batch records %s", maxBatchRecords);
+        checkArgument(lingerTimeNanos >= 0, "Invalid linger time %s", lingerTimeNanos);
+        checkArgument(BatchedRecordsImpl.isBatched(handle.getLedgerMetadata()),
+                "Ledger %s was not created with the custom metadata of a batched ledger", handle.getId());
+        ByteBufAllocator allocator = handle instanceof LedgerHandle
+                ? ((LedgerHandle) handle).getByteBufAllocator() : ByteBufAllocator.DEFAULT;
+        return new BatchingAppenderImpl(handle, maxBatchBytes, maxBatchRecords, lingerTimeNanos, scheduler,
+                allocator);
+    }
+}
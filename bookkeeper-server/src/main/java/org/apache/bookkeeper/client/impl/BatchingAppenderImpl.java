@@ -0,0 +1,246 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.BatchingAppender;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Appender batching the records in entries of a ledger.
+ *
+ * <p>A batch is appended as a composite buffer of its header and its records, so the records are
+ * not copied.
+ *
+ * <p>The full batches are queued in the order of their records, then appended to the ledger outside
+ * of the lock of the current batch: an append blocked by the throttling or the memory limit of the
+ * client blocks the thread which appends it, not the records added to the next batch.
+ */
+public class BatchingAppenderImpl implements BatchingAppender {
+
+    private final WriteHandle handle;
+    private final int maxBatchBytes;
+    private final int maxBatchRecords;
+    private final long lingerTimeNanos;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
+    private final ByteBufAllocator allocator;
+
+    // guarded by this
+    private final List<ByteBuf> records = new ArrayList<>();
+    private final List<CompletableFuture<RecordPosition>> recordFutures = new ArrayList<>();
+    private int batchBytes = 0;
+    // identifies the current batch, for its linger timeout to not append a later batch
+    private long batchSequence = 0;
+    private ScheduledFuture<?> lingerFuture = null;
+    // completes once all the batches queued so far are written
+    private CompletableFuture<Void> appendedFuture = FutureUtils.Void();
+    private boolean closed = false;
+
+    // the batches are queued holding the lock of this, and appended holding the append lock
+    private final Queue<Batch> queuedBatches = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    BatchingAppenderImpl(WriteHandle handle, int maxBatchBytes, int maxBatchRecords, long lingerTimeNanos,
+                         ScheduledExecutorService scheduler, ByteBufAllocator allocator) {
+        this.handle = handle;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxBatchRecords = maxBatchRecords;
+        this.lingerTimeNanos = lingerTimeNanos;
+        this.allocator = allocator;
+        if (scheduler == null && lingerTimeNanos > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                    new DefaultThreadFactory("BatchingAppender-linger", true));
+            this.ownScheduler = true;
+        } else {
+            this.scheduler = scheduler;
+            this.ownScheduler = false;
+        }
+    }
+
+    @Override
+    public CompletableFuture<RecordPosition> appendAsync(ByteBuf record) {
+        CompletableFuture<RecordPosition> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                record.release();
+                future.completeExceptionally(new BKException.BKLedgerClosedException());
+                return future;
+            }
+            int size = record.readableBytes();
+            if (!records.isEmpty() && batchBytes + size > maxBatchBytes) {
+                queueBatch();
+            }
+            records.add(record);
+            recordFutures.add(future);
+            batchBytes += size;
+            if (records.size() >= maxBatchRecords || batchBytes >= maxBatchBytes) {
+                queueBatch();
+            } else if (records.size() == 1 && lingerTimeNanos > 0) {
+                final long sequence = batchSequence;
+                lingerFuture = scheduler.schedule(() -> lingerTimeElapsed(sequence), lingerTimeNanos,
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+        appendQueuedBatches(true);
+        return future;
+    }
+
+    private void lingerTimeElapsed(long sequence) {
+        synchronized (this) {
+            if (sequence != batchSequence || records.isEmpty()) {
+                return;
+            }
+            queueBatch();
+        }
+        // the scheduler doesn't wait for the batches appended by another thread
+        appendQueuedBatches(false);
+    }
+
+    // must be called holding the lock, so the batches are queued in the order of their records
+    private void queueBatch() {
+        int count = records.size();
+        int[] sizes = new int[count];
+        CompositeByteBuf entry = allocator.compositeBuffer(count + 1);
+        for (int i = 0; i < count; i++) {
+            sizes[i] = records.get(i).readableBytes();
+        }
+        entry.addComponent(true, BatchedRecordsImpl.writeHeader(allocator, sizes, count));
+        for (ByteBuf record : records) {
+            entry.addComponent(true, record);
+        }
+        Batch batch = new Batch(entry, new ArrayList<>(recordFutures));
+        records.clear();
+        recordFutures.clear();
+        batchBytes = 0;
+        batchSequence++;
+        if (lingerFuture != null) {
+            lingerFuture.cancel(false);
+            lingerFuture = null;
+        }
+        queuedBatches.add(batch);
+        appendedFuture = CompletableFuture.allOf(appendedFuture, batch.writtenFuture);
+    }
+
+    /**
+     * Append the queued batches to the ledger, in the order they were queued.
+     *
+     * @param wait whether to wait for the batches being appended by another thread, else that
+     *             thread appends the batches queued after them
+     */
+    private void appendQueuedBatches(boolean wait) {
+        while (!queuedBatches.isEmpty()) {
+            if (wait) {
+                appendLock.lock();
+            } else if (!appendLock.tryLock()) {
+                // the thread holding the lock checks the queue again once it releases it
+                return;
+            }
+            try {
+                Batch batch;
+                while ((batch = queuedBatches.poll()) != null) {
+                    batch.append();
+                }
+            } finally {
+                appendLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            if (!records.isEmpty()) {
+                queueBatch();
+            }
+            future = appendedFuture;
+        }
+        appendQueuedBatches(true);
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                if (!records.isEmpty()) {
+                    queueBatch();
+                }
+            }
+            future = appendedFuture;
+        }
+        appendQueuedBatches(true);
+        if (ownScheduler) {
+            scheduler.shutdown();
+        }
+        return future;
+    }
+
+    /**
+     * A full batch, waiting to be appended.
+     */
+    private final class Batch {
+        private final ByteBuf entry;
+        private final List<CompletableFuture<RecordPosition>> recordFutures;
+        private final CompletableFuture<Void> writtenFuture = new CompletableFuture<>();
+
+        private Batch(ByteBuf entry, List<CompletableFuture<RecordPosition>> recordFutures) {
+            this.entry = entry;
+            this.recordFutures = recordFutures;
+        }
+
+        private void append() {
+            handle.appendAsync(entry).whenComplete((entryId, cause) -> {
+                for (int i = 0; i < recordFutures.size(); i++) {
+                    if (cause != null) {
+                        recordFutures.get(i).completeExceptionally(cause);
+                    } else {
+                        recordFutures.get(i).complete(new RecordPositionImpl(entryId, i));
+                    }
+                }
+                if (cause != null) {
+                    writtenFuture.completeExceptionally(cause);
+                } else {
+                    writtenFuture.complete(null);
+                }
+            });
+        }
+    }
+}
@@ -159,6 +159,23 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
     )
     private final Counter writeTimedOutDueToNotEnoughFaultDomains;
 
+    @StatsDoc(
+        name = ENTRY_CACHE_HITS,
+        help = "The number of entries read from the client entry cache"
+    )
+    private final Counter entryCacheHitsCounter;
+
+    @StatsDoc(
+        name = ENTRY_CACHE_MISSES,
+        help = "The number of entries not found in the client entry cache"
+    )
+    private final Counter entryCacheMissesCounter;
+
+    @StatsDoc(
+        name = ADD_OP_MEMORY_REJECTED,
+        help = "The number of adds failed because the memory budget of the pending adds was exhausted"
+    )
+    private final Counter addOpMemoryRejectedCounter;
 
     public BookKeeperClientStatsImpl(StatsLogger stats) {
         this.stats = stats;
@@ -190,6 +207,9 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         this.writeDelayedDueToNotEnoughFaultDomains = stats.getCounter(WRITE_DELAYED_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS);
         this.writeTimedOutDueToNotEnoughFaultDomains =
                 stats.getCounter(WRITE_TIMED_OUT_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS);
+        this.entryCacheHitsCounter = stats.getCounter(ENTRY_CACHE_HITS);
+        this.entryCacheMissesCounter = stats.getCounter(ENTRY_CACHE_MISSES);
+        this.addOpMemoryRejectedCounter = stats.getCounter(ADD_OP_MEMORY_REJECTED);
     }
 
     @Override
@@ -289,7 +309,28 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         return writeTimedOutDueToNotEnoughFaultDomains;
     }
     @Override
+    public Counter getEntryCacheHitsCounter() {
+        return entryCacheHitsCounter;
+    }
+    @Override
+    public Counter getEntryCacheMissesCounter() {
+        return entryCacheMissesCounter;
+    }
+    @Override
+    public Counter getAddOpMemoryRejectedCounter() {
+        return addOpMemoryRejectedCounter;
+    }
+    @Override
     public void registerPendingAddsGauge(Gauge<Integer> gauge) {
         stats.registerGauge(PENDING_ADDS, gauge);
     }
+    @Override
+    public void registerEntryCacheSizeGauge(Gauge<Long> gauge) {
+        stats.registerGauge(ENTRY_CACHE_SIZE, gauge);
+    }
+    @Override
+    public void registerPendingAddsMemoryGauges(Gauge<Long> maxGauge, Gauge<Long> usedGauge) {
+        stats.registerGauge(PENDING_ADDS_MEMORY_MAX, maxGauge);
+        stats.registerGauge(PENDING_ADDS_MEMORY_USED, usedGauge);
+    }
 }
@@ -0,0 +1,72 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import org.apache.bookkeeper.client.api.RecordPosition;
+
+/**
+ * The position of a record in a batched entry.
+ */
+public final class RecordPositionImpl implements RecordPosition {
+
+    private final long entryId;
+    private final int index;
+
+    public RecordPositionImpl(long entryId, int index) {
+        this.entryId = entryId;
+        this.index = index;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEntryId() {
+        return entryId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof RecordPosition)) {
+            return false;
+        }
+        RecordPosition other = (RecordPosition) o;
+        return entryId == other.getEntryId() && index == other.getIndex();
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(entryId) * 31 + index;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordPosition(" + entryId + ", " + index + ")";
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.client.api.SequentialReadHandle;
+import org.apache.bookkeeper.client.api.SequentialReadHandleBuilder;
+
+/**
+ * Internal builder for {@link SequentialReadHandle}.
+ */
+public class SequentialReadHandleBuilderImpl implements SequentialReadHandleBuilder {
+
+    private final ReadHandle handle;
+    private long firstEntry = 0L;
+    private int maxReadEntries = 100;
+    private int maxOutstandingEntries = 1000;
+    private long maxOutstandingBytes = 16 * 1024 * 1024;
+
+    public SequentialReadHandleBuilderImpl(ReadHandle handle) {
+        this.handle = handle;
+    }
+
+    @Override
+    public SequentialReadHandleBuilder withFirstEntry(long firstEntry) {
+        this.firstEntry = firstEntry;
+        return this;
+    }
+
+    @Override
+    public SequentialReadHandleBuilder withMaxReadEntries(int maxReadEntries) {
+        this.maxReadEntries = maxReadEntries;
+        return this;
+    }
+
+    @Override
+    public SequentialReadHandleBuilder withMaxOutstandingEntries(int maxOutstandingEntries) {
+        this.maxOutstandingEntries = maxOutstandingEntries;
+        return this;
+    }
+
+    @Override
+    public SequentialReadHandleBuilder withMaxOutstandingBytes(long maxOutstandingBytes) {
+        this.maxOutstandingBytes = maxOutstandingBytes;
+        return this;
+    }
+
+    @Override
+    public SequentialReadHandle build() {
+        checkArgument(handle != null, "No ledger handle to read from");
+        checkArgument(firstEntry >= 0, "Invalid first entry %s", firstEntry);
+        checkArgument(maxReadEntries > 0, "Invalid max read entries %s", maxReadEntries);
+        checkArgument(maxOutstandingEntries > 0, "Invalid max outstanding entries %s", maxOutstandingEntries);
+        checkArgument(maxOutstandingBytes > 0, "Invalid max outstanding bytes %s", maxOutstandingBytes);
+        SequentialReadHandleImpl readHandle = new SequentialReadHandleImpl(handle, firstEntry,
+                Math.min(maxReadEntries, maxOutstandingEntries), maxOutstandingEntries, maxOutstandingBytes);
+        readHandle.start();
+        return readHandle;
+    }
+}
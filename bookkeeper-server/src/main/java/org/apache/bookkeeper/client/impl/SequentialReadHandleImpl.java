@@ -0,0 +1,256 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.client.api.SequentialReadHandle;
+
+/**
+ * Sequential read handle prefetching the entries of a ledger with range reads.
+ *
+ * <p>The window of entries read ahead of the reader is split in reads of consecutive ranges of
+ * entries, kept in the order of their entries. A batch read returning less entries than asked for,
+ * because of its max size, is continued with another read of the rest of its range.
+ */
+public class SequentialReadHandleImpl implements SequentialReadHandle {
+
+    private final ReadHandle handle;
+    private final int maxReadEntries;
+    private final int maxOutstandingEntries;
+    private final long maxOutstandingBytes;
+
+    // guarded by this
+    private final ArrayDeque<Read> reads = new ArrayDeque<>();
+    private final ArrayDeque<CompletableFuture<LedgerEntry>> waiters = new ArrayDeque<>();
+    // the next entry to return to a waiter
+    private long nextEntryToDeliver;
+    // the next entry not covered by a read
+    private long nextEntryToRead;
+    private int windowEntries;
+    // the entries read and not returned yet
+    private int bufferedEntries = 0;
+    private long bufferedBytes = 0L;
+    private long avgEntryBytes = 0L;
+    private Throwable failure = null;
+    private boolean closed = false;
+
+    SequentialReadHandleImpl(ReadHandle handle, long firstEntry, int maxReadEntries, int maxOutstandingEntries,
+                             long maxOutstandingBytes) {
+        this.handle = handle;
+        this.maxReadEntries = maxReadEntries;
+        this.maxOutstandingEntries = maxOutstandingEntries;
+        this.maxOutstandingBytes = maxOutstandingBytes;
+        this.nextEntryToDeliver = firstEntry;
+        this.nextEntryToRead = firstEntry;
+        this.windowEntries = maxReadEntries;
+    }
+
+    void start() {
+        List<Read> toSend;
+        synchronized (this) {
+            toSend = prefetch();
+        }
+        send(toSend);
+    }
+
+    @Override
+    public synchronized long getNextEntryId() {
+        return nextEntryToDeliver + waiters.size();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return getNextEntryId() <= handle.getLastAddConfirmed();
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntry> nextAsync() {
+        CompletableFuture<LedgerEntry> future = new CompletableFuture<>();
+        List<Runnable> completions = new ArrayList<>();
+        List<Read> toSend;
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new BKException.BKLedgerClosedException());
+                return future;
+            }
+            if (failure != null) {
+                future.completeExceptionally(failure);
+                return future;
+            }
+            if (getNextEntryId() > handle.getLastAddConfirmed()) {
+                future.completeExceptionally(new BKException.BKNoSuchEntryException());
+                return future;
+            }
+            waiters.add(future);
+            deliver(completions);
+            if (!waiters.isEmpty() && windowEntries < maxOutstandingEntries) {
+                // the reader caught up with the reads, read further ahead
+                windowEntries = (int) Math.min(maxOutstandingEntries, 2L * windowEntries);
+            }
+            toSend = prefetch();
+        }
+        send(toSend);
+        completions.forEach(Runnable::run);
+        return future;
+    }
+
+    @Override
+    public void close() {
+        List<CompletableFuture<LedgerEntry>> pendingWaiters;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Read read : reads) {
+                read.entries.forEach(LedgerEntry::close);
+                read.entries.clear();
+            }
+            reads.clear();
+            bufferedEntries = 0;
+            bufferedBytes = 0L;
+            pendingWaiters = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (CompletableFuture<LedgerEntry> waiter : pendingWaiters) {
+            waiter.completeExceptionally(new BKException.BKLedgerClosedException());
+        }
+    }
+
+    // must be called holding the lock, the reads returned are sent once it is released
+    private List<Read> prefetch() {
+        List<Read> toSend = new ArrayList<>();
+        long lastAddConfirmed = handle.getLastAddConfirmed();
+        while (!closed && failure == null && nextEntryToRead <= lastAddConfirmed) {
+            long outstandingEntries = nextEntryToRead - nextEntryToDeliver;
+            long count = Math.min(Math.min(maxReadEntries, windowEntries - outstandingEntries),
+                    lastAddConfirmed - nextEntryToRead + 1);
+            if (avgEntryBytes > 0 && outstandingEntries > 0) {
+                // the entries being read are estimated to be of the average size
+                long outstandingBytes = bufferedBytes + (outstandingEntries - bufferedEntries) * avgEntryBytes;
+                count = Math.min(count, (maxOutstandingBytes - outstandingBytes) / avgEntryBytes);
+            }
+            if (count <= 0) {
+                break;
+            }
+            Read read = new Read(nextEntryToRead, nextEntryToRead + count - 1);
+            reads.add(read);
+            toSend.add(read);
+            nextEntryToRead += count;
+        }
+        return toSend;
+    }
+
+    private void send(List<Read> toSend) {
+        for (Read read : toSend) {
+            int count = (int) (read.lastEntry - read.nextEntry + 1);
+            handle.batchReadAsync(read.nextEntry, count, maxOutstandingBytes)
+                    .whenComplete((entries, cause) -> readComplete(read, entries, cause));
+        }
+    }
+
+    private void readComplete(Read read, LedgerEntries entries, Throwable cause) {
+        List<Runnable> completions = new ArrayList<>();
+        List<Read> toSend;
+        synchronized (this) {
+            if (closed) {
+                if (entries != null) {
+                    entries.close();
+                }
+                return;
+            }
+            if (cause != null) {
+                read.failure = cause;
+            } else {
+                long nextEntry = read.nextEntry;
+                for (LedgerEntry entry : entries) {
+                    long entryBytes = entry.getLength();
+                    read.entries.add(entry.duplicate());
+                    bufferedEntries++;
+                    bufferedBytes += entryBytes;
+                    avgEntryBytes = avgEntryBytes == 0 ? entryBytes : (7 * avgEntryBytes + entryBytes) / 8;
+                    read.nextEntry = entry.getEntryId() + 1;
+                }
+                entries.close();
+                if (read.nextEntry == nextEntry) {
+                    read.failure = new BKException.BKReadException();
+                }
+            }
+            toSend = new ArrayList<>();
+            if (read.failure == null && read.nextEntry <= read.lastEntry) {
+                // the batch read was bounded by its size, read the rest of the range
+                toSend.add(read);
+            }
+            deliver(completions);
+            toSend.addAll(prefetch());
+        }
+        send(toSend);
+        completions.forEach(Runnable::run);
+    }
+
+    // must be called holding the lock, the completions are run once it is released
+    private void deliver(List<Runnable> completions) {
+        while (!waiters.isEmpty() && !reads.isEmpty()) {
+            Read read = reads.peek();
+            if (!read.entries.isEmpty()) {
+                LedgerEntry entry = read.entries.poll();
+                bufferedEntries--;
+                bufferedBytes -= entry.getLength();
+                nextEntryToDeliver++;
+                CompletableFuture<LedgerEntry> waiter = waiters.poll();
+                completions.add(() -> waiter.complete(entry));
+            } else if (read.failure != null) {
+                Throwable cause = read.failure;
+                failure = cause;
+                for (CompletableFuture<LedgerEntry> waiter : waiters) {
+                    completions.add(() -> waiter.completeExceptionally(cause));
+                }
+                waiters.clear();
+                return;
+            } else if (read.nextEntry > read.lastEntry) {
+                reads.poll();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static final class Read {
+        final long lastEntry;
+        // the next entry of the range not read yet
+        long nextEntry;
+        // the entries read and not returned yet
+        final ArrayDeque<LedgerEntry> entries = new ArrayDeque<>();
+        Throwable failure = null;
+
+        Read(long firstEntry, long lastEntry) {
+            this.nextEntry = firstEntry;
+            this.lastEntry = lastEntry;
+        }
+    }
+}
@@ -91,6 +91,8 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     protected static final String STORE_SYSTEMTIME_AS_LEDGER_CREATION_TIME = "storeSystemTimeAsLedgerCreationTime";
 
     protected static final String ENABLE_BUSY_WAIT = "enableBusyWait";
+    protected static final String EVENT_LOOP_TRANSPORT = "eventLoopTransport";
+    protected static final String SOCKET_BUSY_POLL_MICROS = "socketBusyPollMicros";
     protected static final String ENABLE_HEALTH_CHECK = "enableHealthCheck";
 
     // Metastore settings, only being used when LEDGER_MANAGER_FACTORY_CLASS is MSLedgerManagerFactory
@@ -1192,6 +1194,63 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getThis();
     }
 
+    /**
+     * Get the transport of the Netty event loops: <i>auto</i>, <i>epoll</i>, <i>io_uring</i> or <i>nio</i>.
+     *
+     * <p><i>auto</i> uses epoll on Linux and NIO elsewhere, unless io_uring is forced with the
+     * <i>enable.io_uring</i> system property. <i>io_uring</i> uses the io_uring transport where the
+     * kernel supports it, and falls back to epoll otherwise. Only the epoll event loops busy-wait
+     * on pinned CPU cores with {@link #isBusyWaitEnabled()}. The native transports are only
+     * available on Linux, NIO is used on other systems.
+     *
+     * <p>Default is <i>auto</i>.
+     *
+     * @return the transport of the event loops
+     */
+    public String getEventLoopTransport() {
+        return getString(EVENT_LOOP_TRANSPORT, "auto");
+    }
+
+    /**
+     * Set the transport of the Netty event loops.
+     *
+     * @param transport
+     *          <i>auto</i>, <i>epoll</i>, <i>io_uring</i> or <i>nio</i>
+     * @return configuration object.
+     * @see #getEventLoopTransport()
+     */
+    public T setEventLoopTransport(String transport) {
+        setProperty(EVENT_LOOP_TRANSPORT, transport);
+        return getThis();
+    }
+
+    /**
+     * Get the time, in microseconds, the kernel busy polls a socket for new data when it is read
+     * with no data available (the <i>SO_BUSY_POLL</i> socket option).
+     *
+     * <p>Busy polling lowers the latency of the reads at the cost of CPU, it pairs well with the
+     * busy-wait of the event loops ({@link #isBusyWaitEnabled()}), which pins them to CPU cores.
+     * It only applies to the epoll transport. Default is 0, which disables the busy polling.
+     *
+     * @return the busy poll time of the sockets, in microseconds
+     */
+    public int getSocketBusyPollMicros() {
+        return getInt(SOCKET_BUSY_POLL_MICROS, 0);
+    }
+
+    /**
+     * Set the time, in microseconds, the kernel busy polls a socket for new data.
+     *
+     * @param busyPollMicros
+     *          the busy poll time of the sockets, in microseconds, 0 to disable it
+     * @return configuration object.
+     * @see #getSocketBusyPollMicros()
+     */
+    public T setSocketBusyPollMicros(int busyPollMicros) {
+        setProperty(SOCKET_BUSY_POLL_MICROS, busyPollMicros);
+        return getThis();
+    }
+
     /**
      * Return the flag indicating whether to limit stats logging.
      *
@@ -31,6 +31,7 @@ import org.apache.bookkeeper.client.api.BookKeeperBuilder;
 import org.apache.bookkeeper.common.util.ReflectionUtils;
 import org.apache.bookkeeper.discover.RegistrationClient;
 import org.apache.bookkeeper.discover.ZKRegistrationClient;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CompressionType;
 import org.apache.bookkeeper.replication.Auditor;
 import org.apache.commons.configuration.ConfigurationException;
 
@@ -102,22 +103,36 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
 
     // Read Parameters
     protected static final String READ_TIMEOUT = "readTimeout";
+    protected static final String BATCH_READ_ENABLED = "batchReadEnabled";
+    protected static final String BATCH_READ_MAX_SIZE_BYTES = "batchReadMaxSizeBytes";
+    protected static final String ENTRY_CACHE_MAX_SIZE_BYTES = "entryCacheMaxSizeBytes";
+    protected static final String DIRECT_V3_CODEC_ENABLED = "directV3CodecEnabled";
+    protected static final String READ_RESPONSE_COMPRESSION = "readResponseCompression";
+    protected static final String ADD_ENTRY_CHUNK_SIZE = "addEntryChunkSizeBytes";
     protected static final String SPECULATIVE_READ_TIMEOUT = "speculativeReadTimeout";
     protected static final String FIRST_SPECULATIVE_READ_TIMEOUT = "firstSpeculativeReadTimeout";
     protected static final String MAX_SPECULATIVE_READ_TIMEOUT = "maxSpeculativeReadTimeout";
     protected static final String SPECULATIVE_READ_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadTimeoutBackoffMultiplier";
+    protected static final String ADAPTIVE_SPECULATIVE_READ_ENABLED = "adaptiveSpeculativeReadEnabled";
+    protected static final String ADAPTIVE_SPECULATIVE_READ_LATENCY_PERCENTILE =
+        "adaptiveSpeculativeReadLatencyPercentile";
+    protected static final String ADAPTIVE_SPECULATIVE_READ_MAX_RATIO = "adaptiveSpeculativeReadMaxRatio";
     protected static final String FIRST_SPECULATIVE_READ_LAC_TIMEOUT = "firstSpeculativeReadLACTimeout";
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadLACTimeoutBackoffMultiplier";
+    protected static final String LAC_WATCH_MULTIPLEXING_ENABLED = "lacWatchMultiplexingEnabled";
+    protected static final String LAC_WATCH_MAX_LEDGERS_PER_REQUEST = "lacWatchMaxLedgersPerRequest";
     protected static final String ENABLE_PARALLEL_RECOVERY_READ = "enableParallelRecoveryRead";
     protected static final String RECOVERY_READ_BATCH_SIZE = "recoveryReadBatchSize";
+    protected static final String RECOVERY_READ_MAX_OUTSTANDING_BATCHES = "recoveryReadMaxOutstandingBatches";
     protected static final String REORDER_READ_SEQUENCE_ENABLED = "reorderReadSequenceEnabled";
     protected static final String STICKY_READS_ENABLED = "stickyReadSEnabled";
     // Add Parameters
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
     protected static final String DELAY_ENSEMBLE_CHANGE = "delayEnsembleChange";
+    protected static final String OPTIMISTIC_ENSEMBLE_CHANGE = "optimisticEnsembleChange";
     protected static final String MAX_ALLOWED_ENSEMBLE_CHANGES = "maxNumEnsembleChanges";
     // Timeout Setting
     protected static final String ADD_ENTRY_TIMEOUT_SEC = "addEntryTimeoutSec";
@@ -132,6 +147,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String TIMEOUT_TIMER_NUM_TICKS = "timeoutTimerNumTicks";
     // backpressure configuration
     protected static final String WAIT_TIMEOUT_ON_BACKPRESSURE = "waitTimeoutOnBackpressureMs";
+    protected static final String PENDING_ADDS_MAX_MEMORY_BYTES = "pendingAddsMaxMemoryBytes";
+    protected static final String PENDING_ADDS_MEMORY_FAIL_FAST = "pendingAddsMemoryFailFast";
 
     // Bookie health check settings
     protected static final String BOOKIE_HEALTH_CHECK_ENABLED = "bookieHealthCheckEnabled";
@@ -158,6 +175,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     public static final String ENSEMBLE_PLACEMENT_POLICY = "ensemblePlacementPolicy";
     protected static final String NETWORK_TOPOLOGY_STABILIZE_PERIOD_SECONDS = "networkTopologyStabilizePeriodSeconds";
     protected static final String READ_REORDER_THRESHOLD_PENDING_REQUESTS = "readReorderThresholdPendingRequests";
+    protected static final String READ_REORDER_LATENCY_AWARE_ENABLED = "readReorderLatencyAwareEnabled";
     protected static final String ENSEMBLE_PLACEMENT_POLICY_ORDER_SLOW_BOOKIES =
         "ensemblePlacementPolicyOrderSlowBookies";
     protected static final String BOOKIE_ADDRESS_RESOLVER_ENABLED = "bookieAddressResolverEnabled";
@@ -595,6 +613,184 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the reads of a range of entries use batch read requests, fetching many entries
+     * with a single request to a bookie.
+     *
+     * <p>Batch reads are only used with the v2 wire protocol, for ledgers whose ensemble size
+     * is equal to the write quorum size. All the bookies must support the batch read requests.
+     *
+     * @return true if batch reads are enabled.
+     */
+    public boolean isBatchReadEnabled() {
+        return getBoolean(BATCH_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the batch reads.
+     *
+     * @param enabled
+     *          whether to use batch read requests
+     * @return client configuration.
+     * @see #isBatchReadEnabled()
+     */
+    public ClientConfiguration setBatchReadEnabled(boolean enabled) {
+        setProperty(BATCH_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max size of a batch read response, in bytes. It is also bounded by the
+     * netty max frame size.
+     *
+     * @return the max size of a batch read response.
+     */
+    public long getBatchReadMaxSizeBytes() {
+        return getLong(BATCH_READ_MAX_SIZE_BYTES, 1024 * 1024);
+    }
+
+    /**
+     * Set the max size of a batch read response, in bytes.
+     *
+     * @param maxSizeBytes
+     *          the max size of a batch read response
+     * @return client configuration.
+     */
+    public ClientConfiguration setBatchReadMaxSizeBytes(long maxSizeBytes) {
+        setProperty(BATCH_READ_MAX_SIZE_BYTES, maxSizeBytes);
+        return this;
+    }
+
+    /**
+     * Get the max size of the entry cache of the client, in bytes. If zero, the entries are not
+     * cached.
+     *
+     * @return the max size of the entry cache.
+     * @see #setEntryCacheMaxSizeBytes(long)
+     */
+    public long getEntryCacheMaxSizeBytes() {
+        return getLong(ENTRY_CACHE_MAX_SIZE_BYTES, 0L);
+    }
+
+    /**
+     * Set the max size of the entry cache of the client, in bytes.
+     *
+     * <p>The entries read up to the LastAddConfirmed are kept in direct memory, shared by all the
+     * ledger handles of the client, so the readers of the same ledgers read each entry once from
+     * the bookies. The cache is disabled by default.
+     *
+     * @param maxSizeBytes
+     *          the max size of the entry cache, zero to disable it
+     * @return client configuration.
+     */
+    public ClientConfiguration setEntryCacheMaxSizeBytes(long maxSizeBytes) {
+        setProperty(ENTRY_CACHE_MAX_SIZE_BYTES, maxSizeBytes);
+        return this;
+    }
+
+    /**
+     * Whether the v3 protocol add requests, read requests and their responses are encoded and
+     * decoded directly, instead of with the protobuf generated code.
+     *
+     * <p>The direct codec doesn't copy the entries: the entries added are appended to the requests,
+     * and the entries read are kept as slices of the received buffers. It is wire compatible with
+     * the protobuf codec, so it works with any bookie. Add requests carrying a request context
+     * still use the protobuf codec.
+     *
+     * @return true if the direct v3 codec is enabled.
+     */
+    public boolean isDirectV3CodecEnabled() {
+        return getBoolean(DIRECT_V3_CODEC_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the direct codec for the v3 protocol add and read messages.
+     *
+     * @param enabled
+     *          whether to enable the direct v3 codec
+     * @return client configuration.
+     * @see #isDirectV3CodecEnabled()
+     */
+    public ClientConfiguration setDirectV3CodecEnabled(boolean enabled) {
+        setProperty(DIRECT_V3_CODEC_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the compression the client accepts for the entries of the v3 read responses:
+     * <i>NONE</i>, <i>SNAPPY</i> or <i>DEFLATE</i>.
+     *
+     * <p>The bookies compress the responses only if they have the read response compression
+     * enabled, and if it makes the entries smaller, so the compression mostly pays off for reads
+     * crossing expensive network links. <i>SNAPPY</i> costs little CPU, while <i>DEFLATE</i> gives
+     * smaller responses. Default is <i>NONE</i>.
+     *
+     * @return the compression accepted for the read responses
+     */
+    public String getReadResponseCompression() {
+        return getString(READ_RESPONSE_COMPRESSION, "NONE");
+    }
+
+    /**
+     * Set the compression the client accepts for the entries of the v3 read responses.
+     *
+     * @param compression
+     *          <i>NONE</i>, <i>SNAPPY</i> or <i>DEFLATE</i>
+     * @return client configuration.
+     * @see #getReadResponseCompression()
+     */
+    public ClientConfiguration setReadResponseCompression(String compression) {
+        setProperty(READ_RESPONSE_COMPRESSION, compression);
+        return this;
+    }
+
+    /**
+     * Get the compression the client accepts for the entries of the v3 read responses, parsed.
+     *
+     * @return the compression accepted for the read responses
+     * @throws IllegalArgumentException if the compression is unknown
+     * @see #getReadResponseCompression()
+     */
+    public CompressionType getReadResponseCompressionType() {
+        String compression = getReadResponseCompression().trim();
+        for (CompressionType type : CompressionType.values()) {
+            if (type.name().equalsIgnoreCase(compression)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown read response compression '" + compression
+                + "', expected NONE, SNAPPY or DEFLATE");
+    }
+
+    /**
+     * Get the size of the chunks the entries larger than it are sent in, with the v3 protocol.
+     *
+     * <p>The bookie receives such an entry in frames of the chunk size, instead of a single frame
+     * as large as the entry, and adds it once its last chunk arrives. It lets the entries grow
+     * beyond the max frame size of the bookies, and bounds the memory of the entries being
+     * received (see the bookie setting <i>maxChunkedAddPendingBytes</i>). The chunks are only sent
+     * to the bookies publishing their support of the chunked adds in their service info, the
+     * entries are sent whole to the other bookies. Default is 0, which disables the chunks.
+     *
+     * @return the size of the chunks of the entries, in bytes
+     */
+    public int getAddEntryChunkSizeBytes() {
+        return getInt(ADD_ENTRY_CHUNK_SIZE, 0);
+    }
+
+    /**
+     * Set the size of the chunks the entries larger than it are sent in.
+     *
+     * @param chunkSize
+     *          the size of the chunks of the entries, in bytes, 0 to disable the chunks
+     * @return client configuration.
+     * @see #getAddEntryChunkSizeBytes()
+     */
+    public ClientConfiguration setAddEntryChunkSizeBytes(int chunkSize) {
+        setProperty(ADD_ENTRY_CHUNK_SIZE, chunkSize);
+        return this;
+    }
+
     /**
      * Get the socket read timeout. This is the number of
      * seconds we wait without hearing a response from a bookie
@@ -858,6 +1054,66 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the max memory held by the entries of the pending adds of the client, over all its
+     * ledgers.
+     *
+     * @return the max memory of the pending adds, in bytes
+     *        0 or a negative value disables the limit
+     *        Default is 0 (disabled)
+     */
+    public long getPendingAddsMaxMemoryBytes() {
+        return getLong(PENDING_ADDS_MAX_MEMORY_BYTES, 0L);
+    }
+
+    /**
+     * Set the max memory held by the entries of the pending adds of the client, over all its
+     * ledgers.
+     *
+     * <p>The memory of an entry is held from the time it is added until the writes of the entry to
+     * all the bookies complete, so a slow bookie holds the memory of all the entries written to it.
+     * Once the limit is reached, the new adds wait for the memory to be released, or fail if
+     * {@link #setPendingAddsMemoryFailFast(boolean)} is enabled.
+     *
+     * @param maxMemoryBytes
+     *        the max memory of the pending adds, in bytes
+     *        0 or a negative value disables the limit
+     * @return client configuration.
+     */
+    public ClientConfiguration setPendingAddsMaxMemoryBytes(long maxMemoryBytes) {
+        setProperty(PENDING_ADDS_MAX_MEMORY_BYTES, maxMemoryBytes);
+        return this;
+    }
+
+    /**
+     * Whether the adds fail when the memory of the pending adds exceeds its limit.
+     *
+     * @return true if the adds fail, otherwise false if they wait for the memory to be released
+     * @see #setPendingAddsMaxMemoryBytes(long)
+     */
+    public boolean getPendingAddsMemoryFailFast() {
+        return getBoolean(PENDING_ADDS_MEMORY_FAIL_FAST, false);
+    }
+
+    /**
+     * Enable/Disable failing the adds when the memory of the pending adds exceeds its limit.
+     *
+     * <p>If set to true, the adds made over the limit fail with
+     * {@link BKException.Code#TooManyRequestsException}. If set to false, the adds block the
+     * thread adding the entries until the memory is released. The adds made from the threads of
+     * the client, e.g. from the callbacks of the previous adds, always fail, since these threads
+     * release the memory. The callbacks of the adds failed before their entry id is assigned get
+     * {@code LedgerHandle.INVALID_ENTRY_ID} as entry id.
+     *
+     * @param failFast
+     *        flag to enable/disable failing the adds over the memory limit
+     * @return client configuration.
+     */
+    public ClientConfiguration setPendingAddsMemoryFailFast(boolean failFast) {
+        setProperty(PENDING_ADDS_MEMORY_FAIL_FAST, failFast);
+        return this;
+    }
+
     /**
      * Get the number of worker threads. This is the number of
      * worker threads used by bookkeeper client to submit operations.
@@ -1037,6 +1293,77 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the speculative entry reads are sent at a percentile of the read latency of the
+     * bookie which was read from, rather than after a fixed timeout backed off up to the max.
+     *
+     * <p>The first speculative read timeout is used until enough reads from the bookie were
+     * tracked, and the max speculative read timeout caps the timeout.
+     *
+     * @see #getAdaptiveSpeculativeReadLatencyPercentile()
+     * @see #getAdaptiveSpeculativeReadMaxRatio()
+     * @return true if the speculative reads are adaptive. Default false.
+     */
+    public boolean isAdaptiveSpeculativeReadEnabled() {
+        return getBoolean(ADAPTIVE_SPECULATIVE_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable the adaptive speculative entry reads.
+     *
+     * @see #isAdaptiveSpeculativeReadEnabled()
+     * @param enabled whether the speculative reads are adaptive
+     * @return client configuration
+     */
+    public ClientConfiguration setAdaptiveSpeculativeReadEnabled(boolean enabled) {
+        setProperty(ADAPTIVE_SPECULATIVE_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the percentile of the read latency of a bookie after which an adaptive speculative
+     * entry read is sent to the next replica.
+     *
+     * @return the latency percentile, between 0 and 100. Default 95.
+     */
+    public double getAdaptiveSpeculativeReadLatencyPercentile() {
+        return getDouble(ADAPTIVE_SPECULATIVE_READ_LATENCY_PERCENTILE, 95.0);
+    }
+
+    /**
+     * Set the percentile of the read latency of a bookie after which an adaptive speculative
+     * entry read is sent to the next replica, e.g. 99 to back up only the slowest reads.
+     *
+     * @param percentile the latency percentile, between 0 and 100
+     * @return client configuration
+     */
+    public ClientConfiguration setAdaptiveSpeculativeReadLatencyPercentile(double percentile) {
+        setProperty(ADAPTIVE_SPECULATIVE_READ_LATENCY_PERCENTILE, percentile);
+        return this;
+    }
+
+    /**
+     * Get the max ratio of the adaptive speculative entry reads to the entry reads. Once it is
+     * reached, a read is only backed up after the max speculative read timeout.
+     *
+     * @return the max ratio of the speculative reads. Default 0.1.
+     */
+    public double getAdaptiveSpeculativeReadMaxRatio() {
+        return getDouble(ADAPTIVE_SPECULATIVE_READ_MAX_RATIO, 0.1);
+    }
+
+    /**
+     * Set the max ratio of the adaptive speculative entry reads to the entry reads, which bounds
+     * the extra load the speculative reads put on the bookies.
+     *
+     * @param ratio the max ratio of the speculative reads
+     * @return client configuration
+     */
+    public ClientConfiguration setAdaptiveSpeculativeReadMaxRatio(double ratio) {
+        setProperty(ADAPTIVE_SPECULATIVE_READ_MAX_RATIO, ratio);
+        return this;
+    }
+
     /**
      * Get the period of time after which the first speculative read last add confirmed and entry
      * should be triggered.
@@ -1097,6 +1424,62 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the long poll reads of last add confirmed and entry are multiplexed on watch
+     * requests, each watching many ledgers on a bookie.
+     *
+     * @return true if the long poll reads are multiplexed.
+     */
+    public boolean isLacWatchMultiplexingEnabled() {
+        return getBoolean(LAC_WATCH_MULTIPLEXING_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the multiplexing of the long poll reads of last add confirmed and entry.
+     *
+     * <p>Instead of parking a long poll read per ledger on a bookie, the client sends a single
+     * watch request for the ledgers tailed on the bookie, which the bookie answers with the
+     * ledgers whose last add confirmed advanced, and their next entries. This saves requests and
+     * timers for the clients tailing many ledgers. The long poll reads issued in parallel are not
+     * multiplexed. The client falls back to the long poll reads for the bookies rejecting the watch
+     * requests, but the bookies older than the watch requests can't decode them, so it has to be
+     * enabled once the bookies are upgraded.
+     *
+     * @param enabled
+     *          whether to multiplex the long poll reads
+     * @return client configuration.
+     */
+    public ClientConfiguration setLacWatchMultiplexingEnabled(boolean enabled) {
+        setProperty(LAC_WATCH_MULTIPLEXING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max number of ledgers watched by a single watch request.
+     *
+     * @return the max number of ledgers watched by a watch request.
+     */
+    public int getLacWatchMaxLedgersPerRequest() {
+        return getInt(LAC_WATCH_MAX_LEDGERS_PER_REQUEST, 100);
+    }
+
+    /**
+     * Set the max number of ledgers watched by a single watch request.
+     *
+     * <p>A watch request is answered as soon as one of its ledgers is notified, and the ledgers
+     * which were not notified are watched again by the next request. Smaller requests are cheaper
+     * to send again, larger requests save more requests on the bookies. It shouldn't exceed the
+     * {@code watchLacMaxLedgersPerRequest} of the bookies, which reject the larger requests.
+     *
+     * @param maxLedgers
+     *          the max number of ledgers watched by a watch request
+     * @return client configuration.
+     */
+    public ClientConfiguration setLacWatchMaxLedgersPerRequest(int maxLedgers) {
+        setProperty(LAC_WATCH_MAX_LEDGERS_PER_REQUEST, maxLedgers);
+        return this;
+    }
+
     /**
      * Whether to enable parallel reading in recovery read.
      *
@@ -1139,6 +1522,33 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the max number of batches read at a time by the ledger recovery.
+     *
+     * @return the max number of recovery read batches in flight.
+     */
+    public int getRecoveryReadMaxOutstandingBatches() {
+        return getInt(RECOVERY_READ_MAX_OUTSTANDING_BATCHES, 1);
+    }
+
+    /**
+     * Set the max number of batches read at a time by the ledger recovery.
+     *
+     * <p>The recovery reads the entries past the last add confirmed in batches of
+     * {@link #getRecoveryReadBatchSize()} entries. With more than one batch in flight,
+     * the next batches are read while the entries of the previous ones are added back,
+     * so the recovery of a ledger with a long unconfirmed tail takes fewer round trips.
+     * The batches read past the end of the ledger are discarded.
+     *
+     * @param maxOutstandingBatches
+     *          the max number of recovery read batches in flight.
+     * @return client configuration.
+     */
+    public ClientConfiguration setRecoveryReadMaxOutstandingBatches(int maxOutstandingBatches) {
+        setProperty(RECOVERY_READ_MAX_OUTSTANDING_BATCHES, maxOutstandingBatches);
+        return this;
+    }
+
     /**
      * If reorder read sequence enabled or not.
      *
@@ -1245,6 +1655,36 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the reads are reordered by the latency and the pending requests of the bookies.
+     *
+     * @return true if the reads are reordered by the latency and the pending requests of the bookies
+     * @see #setReorderReadLatencyAwareEnabled(boolean)
+     */
+    public boolean isReorderReadLatencyAwareEnabled() {
+        return getBoolean(READ_REORDER_LATENCY_AWARE_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable reordering the reads by the latency and the pending requests of the bookies.
+     *
+     * <p>The placement policy picks two random bookies among the available bookies of the read
+     * sequence, and reads first from the one with the lowest moving average of the read latency
+     * times the pending requests. It replaces the reordering by
+     * {@link #setReorderThresholdPendingRequests(int)}, and applies to the entry reads as well as to
+     * the long poll reads of the last add confirmed.
+     *
+     * <p>It is only effective when {@link #setReorderReadSequenceEnabled(boolean)} is enabled.
+     *
+     * @param enabled
+     *          flag to enable/disable the latency aware read reordering.
+     * @return client configuration.
+     */
+    public ClientConfiguration setReorderReadLatencyAwareEnabled(boolean enabled) {
+        setProperty(READ_REORDER_LATENCY_AWARE_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get the network topology stabilize period in seconds. if it is zero, this feature is turned off.
      *
@@ -1848,6 +2288,33 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether to send the pending adds to the new ensemble before its metadata is updated.
+     *
+     * @return true if the ensemble changes are optimistic, otherwise false.
+     */
+    public boolean getOptimisticEnsembleChange() {
+        return getBoolean(OPTIMISTIC_ENSEMBLE_CHANGE, false);
+    }
+
+    /**
+     * Enable/Disable optimistic ensemble change.
+     * <p>
+     * If set to true, the pending adds are sent to the replacements of the failed
+     * bookies as soon as they are picked, and only their acknowledgements wait for
+     * the new ensemble to be written to the metadata store. If set to false, the
+     * pending adds are sent to the new ensemble once its metadata is written.
+     * </p>
+     *
+     * @param enabled
+     *          flag to enable/disable optimistic ensemble change.
+     * @return client configuration.
+     */
+    public ClientConfiguration setOptimisticEnsembleChange(boolean enabled) {
+        setProperty(OPTIMISTIC_ENSEMBLE_CHANGE, enabled);
+        return this;
+    }
+
     /**
      * Whether to enable bookie address changes tracking.
      *
@@ -2062,4 +2529,17 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected ClientConfiguration getThis() {
         return this;
     }
+
+    /**
+     * Validate the configuration.
+     *
+     * @throws ConfigurationException if a setting is invalid
+     */
+    public void validate() throws ConfigurationException {
+        try {
+            getReadResponseCompressionType();
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException(e.getMessage(), e);
+        }
+    }
 }
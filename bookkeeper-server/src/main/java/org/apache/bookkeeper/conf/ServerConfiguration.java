@@ -24,6 +24,8 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import java.io.File;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.FileChannelProvider;
 import org.apache.bookkeeper.bookie.InterleavedLedgerStorage;
@@ -105,6 +107,12 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String COMPACTION_RATE = "compactionRate";
     protected static final String COMPACTION_RATE_BY_ENTRIES = "compactionRateByEntries";
     protected static final String COMPACTION_RATE_BY_BYTES = "compactionRateByBytes";
+    protected static final String COMPACTION_THROTTLE_ADAPTIVE_ENABLED = "compactionThrottleAdaptiveEnabled";
+    protected static final String COMPACTION_THROTTLE_TARGET_P99_LATENCY_MS =
+            "compactionThrottleTargetForegroundP99LatencyMs";
+    protected static final String COMPACTION_THROTTLE_MAX_DISK_QUEUE_DEPTH = "compactionThrottleMaxDiskQueueDepth";
+    protected static final String COMPACTION_THROTTLE_ADAPTIVE_RATE_RANGE = "compactionThrottleAdaptiveRateRange";
+    protected static final String COMPACTION_THROTTLE_ADJUST_INTERVAL_MS = "compactionThrottleAdjustIntervalMs";
 
     // Gc Parameters
     protected static final String GC_WAIT_TIME = "gcWaitTime";
@@ -156,6 +164,9 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
+    protected static final String MAX_IN_FLIGHT_REQUESTS_PER_CHANNEL = "maxInFlightRequestsPerChannel";
+    protected static final String MAX_IN_FLIGHT_REQUEST_BYTES_PER_CHANNEL = "maxInFlightRequestBytesPerChannel";
+    protected static final String MAX_IN_FLIGHT_REQUEST_BYTES = "maxInFlightRequestBytes";
     protected static final String CLOSE_CHANNEL_ON_RESPONSE_TIMEOUT = "closeChannelOnResponseTimeout";
     protected static final String WAIT_TIMEOUT_ON_RESPONSE_BACKPRESSURE = "waitTimeoutOnResponseBackpressureMs";
 
@@ -171,6 +182,8 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_DIRS = "journalDirectories";
     protected static final String LEDGER_DIRS = "ledgerDirectories";
     protected static final String INDEX_DIRS = "indexDirectories";
+    protected static final String COLD_LEDGER_DIRS = "coldLedgerDirectories";
+    protected static final String COLD_ENTRY_LOG_AGE_THRESHOLD_SECONDS = "coldEntryLogAgeThresholdSeconds";
     protected static final String ALLOW_STORAGE_EXPANSION = "allowStorageExpansion";
     // NIO and Netty Parameters
     protected static final String SERVER_TCP_NODELAY = "serverTcpNoDelay";
@@ -178,6 +191,8 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String SERVER_SOCK_LINGER = "serverTcpLinger";
     protected static final String SERVER_WRITEBUFFER_LOW_WATER_MARK = "serverWriteBufferLowWaterMark";
     protected static final String SERVER_WRITEBUFFER_HIGH_WATER_MARK = "serverWriteBufferHighWaterMark";
+    protected static final String SERVER_FLUSH_CONSOLIDATION_WINDOW_MICROS = "serverFlushConsolidationWindowMicros";
+    protected static final String SERVER_FLUSH_CONSOLIDATION_MAX_RESPONSES = "serverFlushConsolidationMaxResponses";
 
     protected static final String SERVER_NUM_ACCEPTOR_THREADS = "serverNumAcceptorThreads";
     protected static final String SERVER_NUM_IO_THREADS = "serverNumIOThreads";
@@ -225,8 +240,14 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_ADD_WORKER_THREADS = "numAddWorkerThreads";
     protected static final String NUM_READ_WORKER_THREADS = "numReadWorkerThreads";
     protected static final String MAX_PENDING_READ_REQUESTS_PER_THREAD = "maxPendingReadRequestsPerThread";
+    protected static final String FAIR_READ_SCHEDULING_ENABLED = "fairReadSchedulingEnabled";
+    protected static final String FAIR_READ_SCHEDULING_QUANTUM = "fairReadSchedulingQuantum";
+    protected static final String FAIR_READ_SCHEDULING_SHARDS = "fairReadSchedulingShards";
+    protected static final String READ_WORKER_VIRTUAL_THREADS_ENABLED = "readWorkerVirtualThreadsEnabled";
+    protected static final String MAX_CONCURRENT_VIRTUAL_THREAD_READS = "maxConcurrentVirtualThreadReads";
     protected static final String MAX_PENDING_ADD_REQUESTS_PER_THREAD = "maxPendingAddRequestsPerThread";
     protected static final String NUM_LONG_POLL_WORKER_THREADS = "numLongPollWorkerThreads";
+    protected static final String WATCH_LAC_MAX_LEDGERS_PER_REQUEST = "watchLacMaxLedgersPerRequest";
     protected static final String NUM_HIGH_PRIORITY_WORKER_THREADS = "numHighPriorityWorkerThreads";
     protected static final String READ_WORKER_THREADS_THROTTLING_ENABLED = "readWorkerThreadsThrottlingEnabled";
 
@@ -236,6 +257,13 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
 
     protected static final String READ_BUFFER_SIZE = "readBufferSizeBytes";
     protected static final String WRITE_BUFFER_SIZE = "writeBufferSizeBytes";
+    protected static final String ENTRY_LOG_MMAP_READ_ENABLED = "entryLogMmapReadEnabled";
+    protected static final String ZERO_COPY_READ_ENABLED = "zeroCopyReadEnabled";
+    protected static final String ZERO_COPY_READ_MIN_ENTRY_SIZE = "zeroCopyReadMinEntrySizeBytes";
+    protected static final String DIRECT_V3_CODEC_ENABLED = "directV3CodecEnabled";
+    protected static final String READ_RESPONSE_COMPRESSION_ENABLED = "readResponseCompressionEnabled";
+    protected static final String READ_RESPONSE_COMPRESSION_MIN_ENTRY_SIZE = "readResponseCompressionMinEntrySizeBytes";
+    protected static final String MAX_CHUNKED_ADD_PENDING_BYTES = "maxChunkedAddPendingBytes";
     // Whether the bookie should use its hostname or ipaddress for the
     // registration.
     protected static final String USE_HOST_NAME_AS_BOOKIE_ID = "useHostNameAsBookieID";
@@ -293,6 +321,11 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
      * config specifying if the entrylog per ledger is enabled or not.
      */
     protected static final String ENTRY_LOG_PER_LEDGER_ENABLED = "entryLogPerLedgerEnabled";
+    /*
+     * config specifying the number of active entrylog lanes per ledger
+     * directory. ledgers are hashed into lanes, 0 disables the feature.
+     */
+    protected static final String ENTRY_LOG_LANES_PER_DIR = "entryLogLanesPerDir";
     // In the case of multipleentrylogs, multiple threads can be used to flush the memtable parallelly.
     protected static final String NUMBER_OF_MEMTABLE_FLUSH_THREADS = "numOfMemtableFlushThreads";
 
@@ -1063,6 +1096,78 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get max number of add and read requests in flight on a channel. 0 == unlimited.
+     *
+     * <p>A channel stops reading requests while it has more requests in flight, without blocking
+     * its event loop.
+     *
+     * @return Max number of requests in flight on a channel.
+     */
+    public int getMaxInFlightRequestsPerChannel() {
+        return this.getInt(MAX_IN_FLIGHT_REQUESTS_PER_CHANNEL, 0);
+    }
+
+    /**
+     * Set max number of add and read requests in flight on a channel. 0 == unlimited.
+     *
+     * @param value
+     *          max number of requests in flight on a channel.
+     * @return server configuration.
+     */
+    public ServerConfiguration setMaxInFlightRequestsPerChannel(int value) {
+        this.setProperty(MAX_IN_FLIGHT_REQUESTS_PER_CHANNEL, value);
+        return this;
+    }
+
+    /**
+     * Get max bytes of the entries of the add requests in flight on a channel. 0 == unlimited.
+     *
+     * <p>A channel stops reading requests while it has more bytes in flight, without blocking its
+     * event loop.
+     *
+     * @return Max bytes in flight on a channel.
+     */
+    public long getMaxInFlightRequestBytesPerChannel() {
+        return this.getLong(MAX_IN_FLIGHT_REQUEST_BYTES_PER_CHANNEL, 0L);
+    }
+
+    /**
+     * Set max bytes of the entries of the add requests in flight on a channel. 0 == unlimited.
+     *
+     * @param value
+     *          max bytes in flight on a channel.
+     * @return server configuration.
+     */
+    public ServerConfiguration setMaxInFlightRequestBytesPerChannel(long value) {
+        this.setProperty(MAX_IN_FLIGHT_REQUEST_BYTES_PER_CHANNEL, value);
+        return this;
+    }
+
+    /**
+     * Get max bytes of the entries of the add requests in flight over all the channels. 0 == unlimited.
+     *
+     * <p>While there are more bytes in flight, the channels receiving requests stop reading until
+     * the bytes in flight are back within the limit.
+     *
+     * @return Max bytes in flight over all the channels.
+     */
+    public long getMaxInFlightRequestBytes() {
+        return this.getLong(MAX_IN_FLIGHT_REQUEST_BYTES, 0L);
+    }
+
+    /**
+     * Set max bytes of the entries of the add requests in flight over all the channels. 0 == unlimited.
+     *
+     * @param value
+     *          max bytes in flight over all the channels.
+     * @return server configuration.
+     */
+    public ServerConfiguration setMaxInFlightRequestBytes(long value) {
+        this.setProperty(MAX_IN_FLIGHT_REQUEST_BYTES, value);
+        return this;
+    }
+
     /**
      * Configures action in case if server timed out sending response to the client.
      * true == close the channel and drop response
@@ -1436,6 +1541,74 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return ledgerDirs;
     }
 
+    /**
+     * Get dir names of the cold tier. Cold ledger dirs must also be configured in
+     * {@link #getLedgerDirNames()}. New entry logs are created on the other (fast)
+     * ledger dirs and entry logs older than {@link #getColdEntryLogAgeThresholdSeconds()}
+     * are migrated to the cold ledger dirs by the garbage collector thread. With
+     * DbLedgerStorage the cold ledger dirs must be new, empty dirs, as the ledgers
+     * are only spread over the fast ledger dirs.
+     *
+     * @return cold ledger dir names, empty if tiering is not configured
+     */
+    public String[] getColdLedgerDirNames() {
+        String[] coldLedgerDirs = this.getStringArray(COLD_LEDGER_DIRS);
+        if (null == coldLedgerDirs) {
+            return new String[0];
+        }
+        return coldLedgerDirs;
+    }
+
+    /**
+     * Set dir names of the cold tier.
+     *
+     * @param coldLedgerDirs
+     *          Dir names of the cold tier, must be a subset of the ledger dirs
+     * @return server configuration
+     */
+    public ServerConfiguration setColdLedgerDirNames(String[] coldLedgerDirs) {
+        this.setProperty(COLD_LEDGER_DIRS, coldLedgerDirs);
+        return this;
+    }
+
+    /**
+     * Get dirs of the cold tier.
+     *
+     * @return cold ledger dirs
+     */
+    public File[] getColdLedgerDirs() {
+        String[] coldLedgerDirNames = getColdLedgerDirNames();
+
+        File[] coldLedgerDirs = new File[coldLedgerDirNames.length];
+        for (int i = 0; i < coldLedgerDirNames.length; i++) {
+            coldLedgerDirs[i] = new File(coldLedgerDirNames[i]);
+        }
+        return coldLedgerDirs;
+    }
+
+    /**
+     * Get the age, in seconds, after which an entry log on a fast ledger dir is
+     * migrated to a cold ledger dir.
+     *
+     * @return cold entry log age threshold in seconds
+     */
+    public long getColdEntryLogAgeThresholdSeconds() {
+        return getLong(COLD_ENTRY_LOG_AGE_THRESHOLD_SECONDS, 86400L);
+    }
+
+    /**
+     * Set the age, in seconds, after which an entry log on a fast ledger dir is
+     * migrated to a cold ledger dir.
+     *
+     * @param thresholdSeconds
+     *          cold entry log age threshold in seconds
+     * @return server configuration
+     */
+    public ServerConfiguration setColdEntryLogAgeThresholdSeconds(long thresholdSeconds) {
+        setProperty(COLD_ENTRY_LOG_AGE_THRESHOLD_SECONDS, thresholdSeconds);
+        return this;
+    }
+
     /**
      * Get dir name to store index files.
      *
@@ -1934,6 +2107,175 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether entries of sealed entry logs are read through a memory mapping of the log
+     * instead of org.apache.bookkeeper.bookie.BufferedReadChannel.
+     * Default is false.
+     *
+     * @return true if the mmap read path is enabled
+     */
+    public boolean isEntryLogMmapReadEnabled() {
+        return getBoolean(ENTRY_LOG_MMAP_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable reading entries of sealed entry logs through a memory mapping of the log.
+     *
+     * @param enabled
+     *          whether to enable the mmap read path
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogMmapReadEnabled(boolean enabled) {
+        setProperty(ENTRY_LOG_MMAP_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether read responses of entries stored in sealed entry logs are written to the socket
+     * as file regions, so that the entries are transferred from the page cache without being
+     * copied in memory. Only applies to v2 protocol reads on channels without TLS.
+     * Cached entries are still served from memory, and a zero-copy read fills the read-ahead
+     * cache with the following entries of the ledger. Default is false.
+     *
+     * @return true if zero-copy reads are enabled
+     */
+    public boolean isZeroCopyReadEnabled() {
+        return getBoolean(ZERO_COPY_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable zero-copy read responses for entries stored in sealed entry logs.
+     *
+     * @param enabled
+     *          whether to enable zero-copy reads
+     * @return server configuration
+     */
+    public ServerConfiguration setZeroCopyReadEnabled(boolean enabled) {
+        setProperty(ZERO_COPY_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the min size of the entries sent with zero-copy reads. Smaller entries are read
+     * in memory, through the read-ahead cache. Default is 64KB.
+     *
+     * @return the min entry size for zero-copy reads, in bytes
+     */
+    public int getZeroCopyReadMinEntrySizeBytes() {
+        return getInt(ZERO_COPY_READ_MIN_ENTRY_SIZE, 64 * 1024);
+    }
+
+    /**
+     * Set the min size of the entries sent with zero-copy reads.
+     *
+     * @param minEntrySize
+     *          the min entry size for zero-copy reads, in bytes
+     * @return server configuration
+     */
+    public ServerConfiguration setZeroCopyReadMinEntrySizeBytes(int minEntrySize) {
+        setProperty(ZERO_COPY_READ_MIN_ENTRY_SIZE, minEntrySize);
+        return this;
+    }
+
+    /**
+     * Whether the v3 protocol add requests, read requests and their responses are encoded and
+     * decoded directly, instead of with the protobuf generated code.
+     *
+     * <p>The direct codec doesn't copy the entries: the entries added are kept as slices of the
+     * received buffers, and the entries read are appended to the responses. It is wire compatible
+     * with the protobuf codec. Default is false.
+     *
+     * @return true if the direct v3 codec is enabled
+     */
+    public boolean isDirectV3CodecEnabled() {
+        return getBoolean(DIRECT_V3_CODEC_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable the direct codec for the v3 protocol add and read messages.
+     *
+     * @param enabled
+     *          whether to enable the direct v3 codec
+     * @return server configuration
+     */
+    public ServerConfiguration setDirectV3CodecEnabled(boolean enabled) {
+        setProperty(DIRECT_V3_CODEC_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the entries sent in v3 read responses are compressed, for the clients accepting it.
+     *
+     * <p>The clients choose the compression in their read requests. An entry is sent uncompressed
+     * if the compression doesn't make it smaller. Default is false.
+     *
+     * @return true if the read responses are compressed
+     */
+    public boolean isReadResponseCompressionEnabled() {
+        return getBoolean(READ_RESPONSE_COMPRESSION_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable the compression of the entries sent in v3 read responses.
+     *
+     * @param enabled
+     *          whether to compress the read responses
+     * @return server configuration
+     */
+    public ServerConfiguration setReadResponseCompressionEnabled(boolean enabled) {
+        setProperty(READ_RESPONSE_COMPRESSION_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the min size of the entries compressed in read responses. Smaller entries are sent as is.
+     *
+     * @return the min size of the compressed entries, in bytes
+     */
+    public int getReadResponseCompressionMinEntrySizeBytes() {
+        return getInt(READ_RESPONSE_COMPRESSION_MIN_ENTRY_SIZE, 1024);
+    }
+
+    /**
+     * Set the min size of the entries compressed in read responses.
+     *
+     * @param minEntrySize
+     *          the min size of the compressed entries, in bytes
+     * @return server configuration
+     */
+    public ServerConfiguration setReadResponseCompressionMinEntrySizeBytes(int minEntrySize) {
+        setProperty(READ_RESPONSE_COMPRESSION_MIN_ENTRY_SIZE, minEntrySize);
+        return this;
+    }
+
+    /**
+     * Get the max number of bytes of the entries being received in chunks, over all the connections
+     * of the bookie (see {@link ClientConfiguration#getAddEntryChunkSizeBytes()}).
+     *
+     * <p>An entry is kept in memory until its last chunk is received. An entry which would exceed
+     * the limit is rejected when its first chunk arrives, and an entry larger than the limit is
+     * never accepted. The bookie publishes its support of the chunked adds in its service info
+     * unless the limit is 0. Default is 256MB.
+     *
+     * @return the max number of bytes of the entries being received in chunks
+     */
+    public long getMaxChunkedAddPendingBytes() {
+        return getLong(MAX_CHUNKED_ADD_PENDING_BYTES, 256 * 1024 * 1024L);
+    }
+
+    /**
+     * Set the max number of bytes of the entries being received in chunks.
+     *
+     * @param maxPendingBytes
+     *          the max number of bytes of the entries being received in chunks
+     * @return server configuration
+     * @see #getMaxChunkedAddPendingBytes()
+     */
+    public ServerConfiguration setMaxChunkedAddPendingBytes(long maxPendingBytes) {
+        setProperty(MAX_CHUNKED_ADD_PENDING_BYTES, maxPendingBytes);
+        return this;
+    }
+
     /**
      * Set the number of threads that would handle write requests.
      *
@@ -1980,6 +2322,31 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getInt(NUM_LONG_POLL_WORKER_THREADS, 0);
     }
 
+    /**
+     * Set the max number of ledgers a single watch request of last add confirmed can watch.
+     *
+     * <p>A watch request registers a watcher on each of its ledgers, and reads the last add confirmed
+     * of all of them when it is answered. The requests watching more ledgers are rejected, and the
+     * clients fall back to a long poll read per ledger.
+     *
+     * @param maxLedgers
+     *          the max number of ledgers watched by a watch request.
+     * @return server configuration
+     */
+    public ServerConfiguration setWatchLacMaxLedgersPerRequest(int maxLedgers) {
+        setProperty(WATCH_LAC_MAX_LEDGERS_PER_REQUEST, maxLedgers);
+        return this;
+    }
+
+    /**
+     * Get the max number of ledgers a single watch request of last add confirmed can watch.
+     *
+     * @return the max number of ledgers watched by a watch request, default value is 1000.
+     */
+    public int getWatchLacMaxLedgersPerRequest() {
+        return getInt(WATCH_LAC_MAX_LEDGERS_PER_REQUEST, 1000);
+    }
+
     /**
      * Set the number of threads that should be used for high priority requests
      * (i.e. recovery reads and adds, and fencing)
@@ -2077,6 +2444,126 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getInt(MAX_PENDING_READ_REQUESTS_PER_THREAD, 10000);
     }
 
+    /**
+     * Whether read requests are run by a fair scheduler instead of the ordered read thread pool.
+     *
+     * <p>The fair scheduler lets any read worker thread run any read, instead of the thread of the
+     * ledger, and serves the client connections with deficit round robin. Reads still run on the high
+     * priority threads when there are some. Default is false.
+     *
+     * @return true if fair read scheduling is enabled
+     */
+    public boolean isFairReadSchedulingEnabled() {
+        return getBoolean(FAIR_READ_SCHEDULING_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable the fair scheduler for read requests.
+     *
+     * @param enabled
+     *          whether to enable fair read scheduling
+     * @return server configuration
+     */
+    public ServerConfiguration setFairReadSchedulingEnabled(boolean enabled) {
+        setProperty(FAIR_READ_SCHEDULING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the quantum of the fair read scheduler, i.e. the number of entries a connection can read
+     * each time it is served, before the scheduler moves on to the next connection. Default is 8.
+     *
+     * @return the quantum of the fair read scheduler
+     */
+    public int getFairReadSchedulingQuantum() {
+        return getInt(FAIR_READ_SCHEDULING_QUANTUM, 8);
+    }
+
+    /**
+     * Set the quantum of the fair read scheduler.
+     *
+     * @param quantum
+     *          the number of entries a connection can read each time it is served
+     * @return server configuration
+     */
+    public ServerConfiguration setFairReadSchedulingQuantum(int quantum) {
+        setProperty(FAIR_READ_SCHEDULING_QUANTUM, quantum);
+        return this;
+    }
+
+    /**
+     * Get the number of shards of the fair read scheduler. The connections are spread over the shards,
+     * each with its own queues and read worker threads, so that the threads don't all contend on the
+     * same lock. Connections are served fairly within a shard, and the idle threads of a shard take the
+     * reads of the other shards. Default is 0, for one shard every 4 read worker threads.
+     *
+     * @return the number of shards of the fair read scheduler
+     */
+    public int getFairReadSchedulingShards() {
+        return getInt(FAIR_READ_SCHEDULING_SHARDS, 0);
+    }
+
+    /**
+     * Set the number of shards of the fair read scheduler.
+     *
+     * @param numShards
+     *          the number of shards, or 0 for one shard every 4 read worker threads
+     * @return server configuration
+     */
+    public ServerConfiguration setFairReadSchedulingShards(int numShards) {
+        setProperty(FAIR_READ_SCHEDULING_SHARDS, numShards);
+        return this;
+    }
+
+    /**
+     * Whether read requests are run on virtual threads instead of the read worker threads.
+     *
+     * <p>Each read runs on its own virtual thread, so a read blocked on the disk doesn't hold a platform
+     * thread, and the number of reads in progress is limited by {@link #getMaxConcurrentVirtualThreadReads()}
+     * instead of the number of read worker threads. This needs a runtime supporting virtual threads
+     * (JDK 21 or later), the read worker threads are used otherwise. It takes precedence over fair read
+     * scheduling. Default is false.
+     *
+     * @return true if reads are run on virtual threads
+     */
+    public boolean isReadWorkerVirtualThreadsEnabled() {
+        return getBoolean(READ_WORKER_VIRTUAL_THREADS_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable running read requests on virtual threads.
+     *
+     * @param enabled
+     *          whether to run read requests on virtual threads
+     * @return server configuration
+     */
+    public ServerConfiguration setReadWorkerVirtualThreadsEnabled(boolean enabled) {
+        setProperty(READ_WORKER_VIRTUAL_THREADS_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max number of reads in progress at the same time when reads run on virtual threads.
+     * The other reads wait for their turn. Default is 1024.
+     *
+     * @return the max number of concurrent reads on virtual threads
+     */
+    public int getMaxConcurrentVirtualThreadReads() {
+        return getInt(MAX_CONCURRENT_VIRTUAL_THREAD_READS, 1024);
+    }
+
+    /**
+     * Set the max number of reads in progress at the same time when reads run on virtual threads.
+     *
+     * @param maxConcurrentReads
+     *          the max number of concurrent reads on virtual threads
+     * @return server configuration
+     */
+    public ServerConfiguration setMaxConcurrentVirtualThreadReads(int maxConcurrentReads) {
+        setProperty(MAX_CONCURRENT_VIRTUAL_THREAD_READS, maxConcurrentReads);
+        return this;
+    }
+
     /**
      * Set the max number of pending add requests for each add worker thread. After the quota is reached, new requests
      * will be failed immediately.
@@ -2964,6 +3451,117 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the compaction rate is adapted to the foreground latency and to the
+     * device queue depth. When enabled, {@link #getCompactionRateByBytes()} or
+     * {@link #getCompactionRateByEntries()} is only the initial rate of the compaction.
+     * Default is false.
+     *
+     * @return true if the adaptive compaction throttling is enabled
+     */
+    public boolean isCompactionThrottleAdaptiveEnabled() {
+        return getBoolean(COMPACTION_THROTTLE_ADAPTIVE_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable the adaptive compaction throttling.
+     *
+     * @param enabled whether to enable the adaptive compaction throttling
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionThrottleAdaptiveEnabled(boolean enabled) {
+        setProperty(COMPACTION_THROTTLE_ADAPTIVE_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the p99 latency of the foreground add and read requests that the adaptive
+     * compaction throttling tries to stay under. Default is 10 milliseconds.
+     *
+     * @return the target foreground p99 latency in milliseconds
+     */
+    public long getCompactionThrottleTargetForegroundP99LatencyMs() {
+        return getLong(COMPACTION_THROTTLE_TARGET_P99_LATENCY_MS, 10);
+    }
+
+    /**
+     * Set the p99 latency of the foreground requests that the adaptive compaction throttling
+     * tries to stay under.
+     *
+     * @param latencyMs the target foreground p99 latency in milliseconds
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionThrottleTargetForegroundP99LatencyMs(long latencyMs) {
+        setProperty(COMPACTION_THROTTLE_TARGET_P99_LATENCY_MS, latencyMs);
+        return this;
+    }
+
+    /**
+     * Get the average queue depth of the ledger devices, as reported by /proc/diskstats,
+     * above which the adaptive compaction throttling slows down the compaction.
+     * A value of 0 or less ignores the device queue depth. Default is 8.
+     *
+     * @return the max device queue depth
+     */
+    public double getCompactionThrottleMaxDiskQueueDepth() {
+        return getDouble(COMPACTION_THROTTLE_MAX_DISK_QUEUE_DEPTH, 8);
+    }
+
+    /**
+     * Set the average queue depth of the ledger devices above which the adaptive compaction
+     * throttling slows down the compaction.
+     *
+     * @param queueDepth the max device queue depth
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionThrottleMaxDiskQueueDepth(double queueDepth) {
+        setProperty(COMPACTION_THROTTLE_MAX_DISK_QUEUE_DEPTH, queueDepth);
+        return this;
+    }
+
+    /**
+     * Get the range of the adaptive compaction rate. The rate is kept between the configured
+     * compaction rate divided by this value and the configured compaction rate multiplied by
+     * this value. Default is 10.
+     *
+     * @return the range of the adaptive compaction rate
+     */
+    public int getCompactionThrottleAdaptiveRateRange() {
+        return getInt(COMPACTION_THROTTLE_ADAPTIVE_RATE_RANGE, 10);
+    }
+
+    /**
+     * Set the range of the adaptive compaction rate.
+     *
+     * @param range the range of the adaptive compaction rate
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionThrottleAdaptiveRateRange(int range) {
+        setProperty(COMPACTION_THROTTLE_ADAPTIVE_RATE_RANGE, range);
+        return this;
+    }
+
+    /**
+     * Get the interval at which the adaptive compaction throttling re-evaluates the compaction
+     * rate. Default is 1000 milliseconds.
+     *
+     * @return the adjust interval in milliseconds
+     */
+    public long getCompactionThrottleAdjustIntervalMs() {
+        return getLong(COMPACTION_THROTTLE_ADJUST_INTERVAL_MS, 1000);
+    }
+
+    /**
+     * Set the interval at which the adaptive compaction throttling re-evaluates the compaction rate.
+     *
+     * @param intervalMs the adjust interval in milliseconds
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionThrottleAdjustIntervalMs(long intervalMs) {
+        setProperty(COMPACTION_THROTTLE_ADJUST_INTERVAL_MS, intervalMs);
+        return this;
+    }
+
     /**
      * Should we remove pages from page cache after force write.
      *
@@ -3172,6 +3770,22 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
             throw new ConfigurationException(
                     "When entryLogPerLedger is enabled , it is unnecessary to use transactional compaction");
         }
+        if (getColdLedgerDirNames().length > 0) {
+            List<String> ledgerDirNames = Arrays.asList(getLedgerDirNames());
+            for (String coldLedgerDir : getColdLedgerDirNames()) {
+                if (!ledgerDirNames.contains(coldLedgerDir)) {
+                    throw new ConfigurationException("Cold ledger dir " + coldLedgerDir
+                            + " is not one of the configured ledger dirs");
+                }
+            }
+            if (getColdLedgerDirNames().length >= ledgerDirNames.size()) {
+                throw new ConfigurationException("At least one ledger dir must not be in the cold tier");
+            }
+        }
+        if (isEntryLogPerLedgerEnabled() && getEntryLogLanesPerDir() > 0) {
+            throw new ConfigurationException(
+                    "entryLogPerLedgerEnabled and entryLogLanesPerDir can not be enabled at the same time");
+        }
         if ((getJournalFormatVersionToWrite() >= 6) ^ (getFileInfoFormatVersionToWrite() >= 1)) {
             throw new ConfigurationException("For persisiting explicitLac, journalFormatVersionToWrite should be >= 6"
                     + "and FileInfoFormatVersionToWrite should be >= 1");
@@ -3779,6 +4393,50 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         setProperty(SERVER_WRITEBUFFER_HIGH_WATER_MARK, waterMark);
         return this;
     }
+
+    /**
+     * Get the time window during which the responses written to a channel are coalesced into a single
+     * flush, when the channel isn't reading requests. With 0, the responses are flushed at the next
+     * run of the event loop of the channel.
+     *
+     * @return the flush consolidation window, in microseconds.
+     */
+    public long getServerFlushConsolidationWindowMicros() {
+        return getLong(SERVER_FLUSH_CONSOLIDATION_WINDOW_MICROS, 0L);
+    }
+
+    /**
+     * Set the time window during which the responses written to a channel are coalesced into a single flush.
+     *
+     * @param windowMicros
+     *          the flush consolidation window, in microseconds.
+     * @return server configuration.
+     */
+    public ServerConfiguration setServerFlushConsolidationWindowMicros(long windowMicros) {
+        setProperty(SERVER_FLUSH_CONSOLIDATION_WINDOW_MICROS, windowMicros);
+        return this;
+    }
+
+    /**
+     * Get the max number of responses coalesced into a single flush of a channel.
+     *
+     * @return the max number of responses per flush.
+     */
+    public int getServerFlushConsolidationMaxResponses() {
+        return getInt(SERVER_FLUSH_CONSOLIDATION_MAX_RESPONSES, 1024);
+    }
+
+    /**
+     * Set the max number of responses coalesced into a single flush of a channel.
+     *
+     * @param maxResponses
+     *          the max number of responses per flush.
+     * @return server configuration.
+     */
+    public ServerConfiguration setServerFlushConsolidationMaxResponses(int maxResponses) {
+        setProperty(SERVER_FLUSH_CONSOLIDATION_MAX_RESPONSES, maxResponses);
+        return this;
+    }
     /**
      * Set registration manager class.
      *
@@ -3828,6 +4486,33 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /*
+     * get the number of active entrylog lanes per ledger directory. If it is
+     * greater than 0, ledgers are hashed into a bounded number of active
+     * entrylogs, so entries of a ledger stay together without having an active
+     * entrylog per ledger.
+     */
+    public int getEntryLogLanesPerDir() {
+        return this.getInt(ENTRY_LOG_LANES_PER_DIR, 0);
+    }
+
+    /*
+     * sets the number of active entrylog lanes per ledger directory, 0
+     * disables the feature.
+     */
+    public ServerConfiguration setEntryLogLanesPerDir(int entryLogLanesPerDir) {
+        this.setProperty(ENTRY_LOG_LANES_PER_DIR, Integer.toString(entryLogLanesPerDir));
+        return this;
+    }
+
+    /*
+     * returns true if there could be more than one active entrylog at a given
+     * point in time, either because of entrylog per ledger or entrylog lanes.
+     */
+    public boolean isMultipleActiveEntryLogsEnabled() {
+        return isEntryLogPerLedgerEnabled() || getEntryLogLanesPerDir() > 0;
+    }
+
     /*
      * In the case of multipleentrylogs, multiple threads can be used to flush the memtable.
      *
@@ -27,6 +27,29 @@ import org.apache.bookkeeper.net.BookieSocketAddress;
  */
 public final class BookieServiceInfoUtils {
 
+    /**
+     * The extension of the <code>bookie-rpc</code> endpoint of the bookies which reassemble the
+     * entries added in chunks.
+     */
+    public static final String CHUNKED_ADD_EXTENSION = "chunked-add";
+
+    /**
+     * Tell whether the <code>bookie-rpc</code> endpoint of a bookie has an extension.
+     *
+     * @param bookieServiceInfo the information published by the bookie
+     * @param extension the extension
+     * @return true if the bookie publishes the extension
+     */
+    public static boolean hasBookieRpcExtension(BookieServiceInfo bookieServiceInfo, String extension) {
+        for (BookieServiceInfo.Endpoint endpoint : bookieServiceInfo.getEndpoints()) {
+            if ("bookie-rpc".equals(endpoint.getProtocol()) && endpoint.getExtensions() != null
+                    && endpoint.getExtensions().contains(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Creates a default legacy bookie info implementation.
      * In the default implementation there is one endpoint with
@@ -111,6 +111,8 @@ class AuthHandler {
                             new BookieProtocol.ReadResponse(
                                     req.getProtocolVersion(), BookieProtocol.EUA,
                                     req.getLedgerId(), req.getEntryId()));
+                } else if (req.getOpCode() == BookieProtocol.BATCH_READ_ENTRY) {
+                    ctx.channel().writeAndFlush(ResponseBuilder.buildErrorResponse(BookieProtocol.EUA, req));
                 } else {
                     ctx.channel().close();
                 }
@@ -135,6 +137,13 @@ class AuthHandler {
 
                     ctx.channel().writeAndFlush(builder.build());
                 }
+            } else if (msg instanceof DirectCodecV3.RequestWithPayload) { // add decoded by the direct codec
+                DirectCodecV3.RequestWithPayload req = (DirectCodecV3.RequestWithPayload) msg;
+                req.release();
+                ctx.channel().writeAndFlush(BookkeeperProtocol.Response.newBuilder()
+                        .setHeader(req.getRequest().getHeader())
+                        .setStatus(BookkeeperProtocol.StatusCode.EUA)
+                        .build());
             } else {
                 // close the channel, junk coming over it
                 ctx.channel().close();
@@ -331,6 +340,9 @@ class AuthHandler {
                     // through
                     break;
                 }
+            } else if (msg instanceof DirectCodecV3.ResponseWithPayload) {
+                LOG.warn("dropping received message {} from bookie {}", msg, ctx.channel());
+                ((DirectCodecV3.ResponseWithPayload) msg).release();
             }
         }
 
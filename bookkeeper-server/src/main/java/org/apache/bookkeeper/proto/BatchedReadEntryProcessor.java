@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.Recycler;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookieProtocol.BatchedReadRequest;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processor of the batch read requests.
+ *
+ * <p>The entries are read in order from the first requested entry, until the max number
+ * of entries or the max response size is reached. An error is only returned if the first
+ * entry can't be read, otherwise the bookie returns the entries read so far.
+ */
+class BatchedReadEntryProcessor extends PacketProcessorBase<BatchedReadRequest> {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedReadEntryProcessor.class);
+
+    // size of the length prefix of each entry in the response
+    static final int ENTRY_FRAME_OVERHEAD = 4;
+
+    private boolean throttleReadResponses;
+    private long maxResponseSize;
+
+    public static BatchedReadEntryProcessor create(BatchedReadRequest request,
+                                                   BookieRequestHandler requestHandler,
+                                                   BookieRequestProcessor requestProcessor,
+                                                   boolean throttleReadResponses,
+                                                   long maxResponseSize) {
+        BatchedReadEntryProcessor rep = RECYCLER.get();
+        rep.init(request, requestHandler, requestProcessor);
+        rep.throttleReadResponses = throttleReadResponses;
+        rep.maxResponseSize = maxResponseSize;
+        requestProcessor.onReadRequestStart(requestHandler);
+        return rep;
+    }
+
+    @Override
+    protected void processPacket() {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received new batch read request: {}", request);
+        }
+        if (!requestHandler.ctx().channel().isOpen()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Dropping batch read request for closed channel: {}", requestHandler.ctx().channel());
+            }
+            requestProcessor.onReadRequestFinish(requestHandler);
+            recycle();
+            return;
+        }
+        int errorCode = BookieProtocol.EOK;
+        long startTimeNanos = MathUtils.nowInNano();
+        ByteBufList data = ByteBufList.get();
+        long maxSize = Math.min(request.getMaxSize(), maxResponseSize);
+        long responseSize = 0;
+        long entryId = request.getEntryId();
+        try {
+            for (int i = 0; i < request.getMaxCount(); i++, entryId++) {
+                ByteBuf entry;
+                try {
+                    entry = requestProcessor.getBookie().readEntry(request.getLedgerId(), entryId);
+                } catch (Bookie.NoEntryException e) {
+                    if (i > 0) {
+                        // reached the end of the entries stored on this bookie
+                        break;
+                    }
+                    throw e;
+                }
+                responseSize += entry.readableBytes() + ENTRY_FRAME_OVERHEAD;
+                if (i > 0 && responseSize > maxSize) {
+                    // always return the first entry, so that the reader makes progress
+                    entry.release();
+                    break;
+                }
+                data.add(entry);
+            }
+        } catch (Bookie.NoLedgerException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.ENOLEDGER;
+        } catch (Bookie.NoEntryException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.ENOENTRY;
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {} at entry {}", request, entryId, e);
+            }
+            errorCode = data.size() > 0 ? BookieProtocol.EOK : BookieProtocol.EIO;
+        } catch (BookieException.DataUnknownException e) {
+            LOG.error("Ledger {} is in an unknown state", request.getLedgerId(), e);
+            errorCode = BookieProtocol.EUNKNOWNLEDGERSTATE;
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger {}", request.getLedgerId(), e);
+            errorCode = BookieProtocol.EUA;
+        } catch (Throwable t) {
+            LOG.error("Unexpected exception batch reading at {}:{} : {}", request.getLedgerId(), entryId,
+                      t.getMessage(), t);
+            errorCode = BookieProtocol.EBADREQ;
+        }
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Batch read {} entries rc = {} for {}", data.size(), errorCode, request);
+        }
+        sendResponse(data, errorCode, startTimeNanos);
+    }
+
+    private void sendResponse(ByteBufList data, int errorCode, long startTimeNanos) {
+        final RequestStats stats = requestProcessor.getRequestStats();
+        final OpStatsLogger logger = stats.getBatchReadEntryStats();
+        BookieProtocol.Response response;
+        if (errorCode == BookieProtocol.EOK) {
+            logger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            stats.getBatchReadEntriesCounter().addCount(data.size());
+            requestProcessor.recordBatchReadEntrySize(data.readableBytes() / data.size());
+            response = ResponseBuilder.buildBatchedReadResponse(data, request);
+        } else {
+            data.release();
+            logger.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            response = ResponseBuilder.buildErrorResponse(errorCode, request);
+        }
+
+        sendReadReqResponse(errorCode, response, stats.getBatchReadRequestStats(), throttleReadResponses);
+        recycle();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchedReadEntry(%d, %d, %d)", request.getLedgerId(), request.getEntryId(),
+                request.getMaxCount());
+    }
+
+    private void recycle() {
+        request.recycle();
+        super.reset();
+        this.recyclerHandle.recycle(this);
+    }
+
+    private final Recycler.Handle<BatchedReadEntryProcessor> recyclerHandle;
+
+    private BatchedReadEntryProcessor(Recycler.Handle<BatchedReadEntryProcessor> recyclerHandle) {
+        this.recyclerHandle = recyclerHandle;
+    }
+
+    private static final Recycler<BatchedReadEntryProcessor> RECYCLER =
+            new Recycler<BatchedReadEntryProcessor>() {
+        @Override
+        protected BatchedReadEntryProcessor newObject(Recycler.Handle<BatchedReadEntryProcessor> handle) {
+            return new BatchedReadEntryProcessor(handle);
+        }
+    };
+}
@@ -26,10 +26,12 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WatchLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
@@ -180,6 +182,26 @@ public interface BookieClient {
                    ReadEntryCallback cb, Object ctx, int flags, byte[] masterKey,
                    boolean allowFastFail);
 
+    /**
+     * Read a batch of consecutive entries from bookie at address {@code address}.
+     *
+     * <p>The bookie returns the entries from {@code startEntryId}, until {@code maxCount}
+     * entries are read, the response reaches {@code maxSize} bytes or an entry is missing.
+     * Only supported with the v2 wire protocol.
+     *
+     * @param address address of the bookie to read from
+     * @param ledgerId id of the ledger the entries belong to
+     * @param startEntryId id of the first entry we wish to read
+     * @param maxCount the max number of entries to read
+     * @param maxSize the max size of the response, in bytes
+     * @param cb the callback notified when the request completes
+     * @param ctx a context object passed to the callback on completion
+     * @param flags a bit mask of flags from BookieProtocol.FLAG_*
+     *              {@link org.apache.bookkeeper.proto.BookieProtocol}
+     */
+    void batchReadEntries(BookieId address, long ledgerId, long startEntryId, int maxCount, long maxSize,
+                          BatchedReadEntryCallback cb, Object ctx, int flags);
+
     /**
      * Send a long poll request to bookie, waiting for the last add confirmed
      * to be updated. The client can also request that the full entry is returned
@@ -203,6 +225,29 @@ public interface BookieClient {
                                    ReadEntryCallback cb,
                                    Object ctx);
 
+    /**
+     * Send a long poll request to bookie, waiting for the last add confirmed of any
+     * of the ledgers {@code ledgerIds} to be updated. The bookie responds with all the
+     * ledgers whose last add confirmed was updated, and the entries following their
+     * previous last add confirmed, if requested. The request is only supported by
+     * the v3 protocol.
+     *
+     * @param address address of bookie to send the long poll request to
+     * @param ledgerIds the ledgers whose last add confirmed we are interested in
+     * @param previousLACs the previous lac values of the ledgers
+     * @param timeOutInMillis number of millis to wait for a LAC update
+     * @param piggyBackEntry whether to read the entries following the previous lacs
+     * @param cb the callback notified of the ledgers updated, and when the request completes
+     * @param ctx a context object passed to the callback on completion
+     */
+    void watchLac(BookieId address,
+                  long[] ledgerIds,
+                  long[] previousLACs,
+                  long timeOutInMillis,
+                  boolean piggyBackEntry,
+                  WatchLacCallback cb,
+                  Object ctx);
+
     /**
      * Read information about the bookie, from the bookie.
      *
@@ -54,14 +54,17 @@ import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.FutureGetListOfEntriesOfLedger;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WatchLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CompressionType;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.tls.SecurityException;
@@ -100,6 +103,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
     private final BookieAddressResolver bookieAddressResolver;
 
     private final long bookieErrorThresholdPerInterval;
+    private final CompressionType readResponseCompression;
 
     public BookieClientImpl(ClientConfiguration conf, EventLoopGroup eventLoopGroup,
                             ByteBufAllocator allocator,
@@ -121,6 +125,8 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         this.statsLogger = statsLogger;
         this.numConnectionsPerBookie = conf.getNumChannelsPerBookie();
         this.bookieErrorThresholdPerInterval = conf.getBookieErrorThresholdPerInterval();
+        // parsed once for all the channels, the configuration being validated by the client
+        this.readResponseCompression = conf.getReadResponseCompressionType();
 
         this.scheduler = scheduler;
         if (conf.getAddEntryTimeout() > 0 || conf.getReadEntryTimeout() > 0) {
@@ -192,7 +198,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
         return new PerChannelBookieClient(clientConfiguration, executor, eventLoopGroup, allocator, address,
                                    statsLoggerForPCBC, authProviderFactory, registry, pcbcPool,
-                                   shFactory, bookieAddressResolver);
+                                   shFactory, bookieAddressResolver, readResponseCompression);
     }
 
     public PerChannelBookieClientPool lookupClient(BookieId addr) {
@@ -353,6 +359,19 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
     }
 
+    private void completeBatchRead(final int rc,
+                                   final long ledgerId,
+                                   final long startEntryId,
+                                   final BatchedReadEntryCallback cb,
+                                   final Object ctx) {
+        try {
+            executor.executeOrdered(ledgerId, () -> cb.readEntriesComplete(rc, ledgerId, startEntryId, null, ctx));
+        } catch (RejectedExecutionException ree) {
+            cb.readEntriesComplete(getRc(BKException.Code.InterruptedException),
+                                   ledgerId, startEntryId, null, ctx);
+        }
+    }
+
     private static class ChannelReadyForAddEntryCallback
         implements GenericCallback<PerChannelBookieClient> {
         private final Handle<ChannelReadyForAddEntryCallback> recyclerHandle;
@@ -489,6 +508,25 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }, ledgerId);
     }
 
+    @Override
+    public void batchReadEntries(final BookieId addr, final long ledgerId, final long startEntryId,
+                                 final int maxCount, final long maxSize, final BatchedReadEntryCallback cb,
+                                 final Object ctx, final int flags) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            completeBatchRead(getRc(BKException.Code.BookieHandleNotAvailableException),
+                    ledgerId, startEntryId, cb, ctx);
+            return;
+        }
+
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                completeBatchRead(rc, ledgerId, startEntryId, cb, ctx);
+            } else {
+                pcbc.batchReadEntries(ledgerId, startEntryId, maxCount, maxSize, cb, ctx, flags);
+            }
+        }, ledgerId);
+    }
 
     @Override
     public void readEntryWaitForLACUpdate(final BookieId addr,
@@ -516,6 +554,34 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }, ledgerId);
     }
 
+    @Override
+    public void watchLac(final BookieId addr,
+                         final long[] ledgerIds,
+                         final long[] previousLACs,
+                         final long timeOutInMillis,
+                         final boolean piggyBackEntry,
+                         final WatchLacCallback cb,
+                         final Object ctx) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            cb.watchLacComplete(getRc(BKException.Code.BookieHandleNotAvailableException), ctx);
+            return;
+        }
+        // order the requests to a bookie by the first ledger watched
+        final long orderingKey = ledgerIds.length > 0 ? ledgerIds[0] : 0L;
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                try {
+                    executor.executeOrdered(orderingKey, () -> cb.watchLacComplete(rc, ctx));
+                } catch (RejectedExecutionException re) {
+                    cb.watchLacComplete(getRc(BKException.Code.InterruptedException), ctx);
+                }
+            } else {
+                pcbc.watchLac(ledgerIds, previousLACs, timeOutInMillis, piggyBackEntry, cb, ctx);
+            }
+        }, orderingKey, useV3Enforced);
+    }
+
     @Override
     public void getBookieInfo(final BookieId addr, final long requested, final GetBookieInfoCallback cb,
             final Object ctx) {
@@ -38,6 +38,7 @@ import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.group.ChannelGroup;
@@ -49,7 +50,6 @@ import io.netty.channel.local.LocalServerChannel;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
 import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
@@ -79,7 +79,10 @@ import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.processor.RequestProcessor;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.EventLoopStats;
 import org.apache.bookkeeper.util.EventLoopUtil;
 import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
@@ -109,13 +112,24 @@ class BookieNettyServer {
 
     final BookieAuthProvider.Factory authProviderFactory;
     final ExtensionRegistry registry = ExtensionRegistry.newInstance();
+    final boolean directV3Codec;
+    final ResponseFlushConsolidationHandler.Stats flushStats;
+    final EventLoopStats eventLoopStats;
 
     private final ByteBufAllocator allocator;
 
     BookieNettyServer(ServerConfiguration conf, RequestProcessor processor, ByteBufAllocator allocator)
         throws IOException, KeeperException, InterruptedException, BookieException {
+        this(conf, processor, allocator, NullStatsLogger.INSTANCE);
+    }
+
+    BookieNettyServer(ServerConfiguration conf, RequestProcessor processor, ByteBufAllocator allocator,
+                      StatsLogger statsLogger)
+        throws IOException, KeeperException, InterruptedException, BookieException {
         this.allocator = allocator;
+        this.flushStats = new ResponseFlushConsolidationHandler.Stats(statsLogger);
         this.maxFrameSize = conf.getNettyMaxFrameSizeBytes();
+        this.directV3Codec = conf.isDirectV3CodecEnabled();
         this.conf = conf;
         this.requestProcessor = processor;
         this.authProviderFactory = AuthProviderFactoryFactory.newBookieAuthProviderFactory(conf);
@@ -126,9 +140,11 @@ class BookieNettyServer {
             this.acceptorGroup = EventLoopUtil.getServerAcceptorGroup(conf,
                     new DefaultThreadFactory("bookie-acceptor"));
             allChannels = new CleanupChannelGroup(eventLoopGroup);
+            this.eventLoopStats = new EventLoopStats(eventLoopGroup, statsLogger);
         } else {
             this.eventLoopGroup = null;
             this.acceptorGroup = null;
+            this.eventLoopStats = null;
         }
 
         if (conf.isEnableLocalTransport()) {
@@ -321,6 +337,9 @@ class BookieNettyServer {
                 bootstrap.channel(IOUringServerSocketChannel.class);
             } else if (eventLoopGroup instanceof EpollEventLoopGroup) {
                 bootstrap.channel(EpollServerSocketChannel.class);
+                if (conf.getSocketBusyPollMicros() > 0) {
+                    bootstrap.childOption(EpollChannelOption.SO_BUSY_POLL, conf.getSocketBusyPollMicros());
+                }
             } else {
                 bootstrap.channel(NioServerSocketChannel.class);
             }
@@ -338,14 +357,18 @@ class BookieNettyServer {
                         new BookieSideConnectionPeerContextHandler();
                     ChannelPipeline pipeline = ch.pipeline();
 
-                    pipeline.addLast("consolidation", new FlushConsolidationHandler(1024, true));
+                    pipeline.addLast("consolidation", new ResponseFlushConsolidationHandler(
+                            conf.getServerFlushConsolidationMaxResponses(),
+                            conf.getServerFlushConsolidationWindowMicros(), flushStats));
 
                     pipeline.addLast("bytebufList", ByteBufList.ENCODER);
 
                     pipeline.addLast("lengthbaseddecoder", new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
 
-                    pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry));
-                    pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry));
+                    pipeline.addLast("bookieProtoDecoder",
+                            new BookieProtoEncoding.RequestDecoder(registry, directV3Codec));
+                    pipeline.addLast("bookieProtoEncoder",
+                            new BookieProtoEncoding.ResponseEncoder(registry, directV3Codec));
                     pipeline.addLast("bookieAuthHandler", new AuthHandler.ServerSideHandler(
                                 contextHandler.getConnectionPeer(), authProviderFactory));
 
@@ -410,8 +433,10 @@ class BookieNettyServer {
 
                     pipeline.addLast("lengthbaseddecoder", new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
 
-                    pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry));
-                    pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry));
+                    pipeline.addLast("bookieProtoDecoder",
+                            new BookieProtoEncoding.RequestDecoder(registry, directV3Codec));
+                    pipeline.addLast("bookieProtoEncoder",
+                            new BookieProtoEncoding.ResponseEncoder(registry, directV3Codec));
                     pipeline.addLast("bookieAuthHandler", new AuthHandler.ServerSideHandler(
                                 contextHandler.getConnectionPeer(), authProviderFactory));
 
@@ -110,7 +110,26 @@ public class BookieProtoEncoding {
                 return msg;
             }
             BookieProtocol.Request r = (BookieProtocol.Request) msg;
-            if (r instanceof BookieProtocol.ReadRequest) {
+            if (r instanceof BookieProtocol.BatchedReadRequest) {
+                BookieProtocol.BatchedReadRequest br = (BookieProtocol.BatchedReadRequest) r;
+                int totalHeaderSize = 4 // for request type
+                    + 8 // for request id
+                    + 8 // for ledgerId
+                    + 8 // for entryId
+                    + 4 // for maxCount
+                    + 8; // for maxSize
+
+                ByteBuf buf = allocator.buffer(totalHeaderSize + 4 /* frame size */);
+                buf.writeInt(totalHeaderSize);
+                buf.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), r.getFlags()));
+                buf.writeLong(br.getRequestId());
+                buf.writeLong(r.getLedgerId());
+                buf.writeLong(r.getEntryId());
+                buf.writeInt(br.getMaxCount());
+                buf.writeLong(br.getMaxSize());
+                r.recycle();
+                return buf;
+            } else if (r instanceof BookieProtocol.ReadRequest) {
                 int totalHeaderSize = 4 // for request type
                     + 8 // for ledgerId
                     + 8; // for entryId
@@ -181,6 +200,15 @@ public class BookieProtoEncoding {
                 } else {
                     return BookieProtocol.ReadRequest.create(version, ledgerId, entryId, flags, null);
                 }
+            case BookieProtocol.BATCH_READ_ENTRY: {
+                long requestId = packet.readLong();
+                ledgerId = packet.readLong();
+                entryId = packet.readLong();
+                int maxCount = packet.readInt();
+                long maxSize = packet.readLong();
+                return BookieProtocol.BatchedReadRequest.create(version, ledgerId, entryId, flags, null,
+                        requestId, maxCount, maxSize);
+            }
             case BookieProtocol.AUTH:
                 BookkeeperProtocol.AuthMessage.Builder builder = BookkeeperProtocol.AuthMessage.newBuilder();
                 builder.mergeFrom(new ByteBufInputStream(packet), extensionRegistry);
@@ -228,6 +256,7 @@ public class BookieProtoEncoding {
         }
 
         private static final int RESPONSE_HEADERS_SIZE = 24;
+        private static final int BATCHED_READ_RESPONSE_HEADERS_SIZE = RESPONSE_HEADERS_SIZE + 8 /* request id */;
 
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator)
@@ -260,6 +289,8 @@ public class BookieProtoEncoding {
                     } else {
                         return ByteBufList.get(buf, rr.getData());
                     }
+                } else if (msg instanceof BookieProtocol.BatchedReadResponse) {
+                    return encodeBatchedReadResponse((BookieProtocol.BatchedReadResponse) r, allocator);
                 } else if (msg instanceof BookieProtocol.AddResponse) {
                     ByteBuf buf = allocator.buffer(RESPONSE_HEADERS_SIZE + 4 /* frame size */);
                     buf.writeInt(RESPONSE_HEADERS_SIZE);
@@ -286,6 +317,70 @@ public class BookieProtoEncoding {
                 r.recycle();
             }
         }
+
+        /**
+         * Encode the headers of a read response whose entry is written afterwards as a file region.
+         */
+        static ByteBuf encodeReadRegionResponseHeaders(BookieProtocol.ReadRegionResponse r,
+                                                       ByteBufAllocator allocator) {
+            ByteBuf buf = allocator.buffer(4 /* frame size */ + RESPONSE_HEADERS_SIZE);
+            buf.writeInt(RESPONSE_HEADERS_SIZE + (int) r.getRegion().count());
+            buf.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), (short) 0));
+            buf.writeInt(r.getErrorCode());
+            buf.writeLong(r.getLedgerId());
+            buf.writeLong(r.getEntryId());
+            return buf;
+        }
+
+        private static Object encodeBatchedReadResponse(BookieProtocol.BatchedReadResponse r,
+                                                        ByteBufAllocator allocator) {
+            ByteBufList entries = r.getData();
+            int payloadSize = entries.readableBytes() + 4 * entries.size();
+            int responseSize = BATCHED_READ_RESPONSE_HEADERS_SIZE + payloadSize;
+            boolean isSmallPayload = payloadSize < SMALL_ENTRY_SIZE_THRESHOLD;
+
+            int bufferSize = 4 /* frame size */ + BATCHED_READ_RESPONSE_HEADERS_SIZE
+                    + (isSmallPayload ? payloadSize : 0);
+            ByteBuf buf = allocator.buffer(bufferSize);
+            buf.writeInt(responseSize);
+            buf.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), (short) 0));
+            buf.writeInt(r.getErrorCode());
+            buf.writeLong(r.getRequestId());
+            buf.writeLong(r.getLedgerId());
+            buf.writeLong(r.getEntryId());
+
+            if (isSmallPayload) {
+                for (int i = 0; i < entries.size(); i++) {
+                    ByteBuf entry = entries.getBuffer(i);
+                    buf.writeInt(entry.readableBytes());
+                    buf.writeBytes(entry, entry.readerIndex(), entry.readableBytes());
+                }
+                entries.release();
+                return buf;
+            } else {
+                // Small entries are copied after the length prefix, large ones are passed by reference
+                ByteBufList composite = ByteBufList.get(buf);
+                ByteBuf current = buf;
+                for (int i = 0; i < entries.size(); i++) {
+                    ByteBuf entry = entries.getBuffer(i);
+                    int entrySize = entry.readableBytes();
+                    if (current == null) {
+                        current = allocator.buffer(4 + (entrySize < SMALL_ENTRY_SIZE_THRESHOLD ? entrySize : 0));
+                        composite.add(current);
+                    }
+                    current.writeInt(entrySize);
+                    if (entrySize < SMALL_ENTRY_SIZE_THRESHOLD) {
+                        current.writeBytes(entry, entry.readerIndex(), entrySize);
+                    } else {
+                        composite.add(entry.retain());
+                        current = null;
+                    }
+                }
+                entries.release();
+                return composite;
+            }
+        }
+
         @Override
         public Object decode(ByteBuf buffer)
                 throws Exception {
@@ -309,6 +404,20 @@ public class BookieProtoEncoding {
 
                 return new BookieProtocol.ReadResponse(
                         version, rc, ledgerId, entryId, buffer.retainedSlice());
+            case BookieProtocol.BATCH_READ_ENTRY: {
+                rc = buffer.readInt();
+                long requestId = buffer.readLong();
+                ledgerId = buffer.readLong();
+                entryId = buffer.readLong();
+
+                ByteBufList entries = ByteBufList.get();
+                while (buffer.isReadable()) {
+                    int entrySize = buffer.readInt();
+                    entries.add(buffer.retainedSlice(buffer.readerIndex(), entrySize));
+                    buffer.skipBytes(entrySize);
+                }
+                return new BookieProtocol.BatchedReadResponse(version, rc, ledgerId, entryId, requestId, entries);
+            }
             case BookieProtocol.AUTH:
                 ByteBufInputStream bufStream = new ByteBufInputStream(buffer);
                 BookkeeperProtocol.AuthMessage.Builder builder = BookkeeperProtocol.AuthMessage.newBuilder();
@@ -410,10 +519,16 @@ public class BookieProtoEncoding {
 
         final EnDecoder reqPreV3;
         final EnDecoder reqV3;
+        final boolean directV3Codec;
 
         public RequestEncoder(ExtensionRegistry extensionRegistry) {
+            this(extensionRegistry, false);
+        }
+
+        public RequestEncoder(ExtensionRegistry extensionRegistry, boolean directV3Codec) {
             reqPreV3 = new RequestEnDeCoderPreV3(extensionRegistry);
             reqV3 = new RequestEnDecoderV3(extensionRegistry);
+            this.directV3Codec = directV3Codec;
         }
 
         @Override
@@ -424,7 +539,9 @@ public class BookieProtoEncoding {
             if (msg instanceof ByteBuf || msg instanceof ByteBufList) {
                 ctx.write(msg, promise);
             } else if (msg instanceof BookkeeperProtocol.Request) {
-                ctx.write(reqV3.encode(msg, ctx.alloc()), promise);
+                Object encoded = directV3Codec
+                        ? DirectCodecV3.encodeReadRequest((BookkeeperProtocol.Request) msg, ctx.alloc()) : null;
+                ctx.write(encoded != null ? encoded : reqV3.encode(msg, ctx.alloc()), promise);
             } else if (msg instanceof BookieProtocol.Request) {
                 ctx.write(reqPreV3.encode(msg, ctx.alloc()), promise);
             } else {
@@ -441,11 +558,17 @@ public class BookieProtoEncoding {
     public static class RequestDecoder extends ChannelInboundHandlerAdapter {
         final EnDecoder reqPreV3;
         final EnDecoder reqV3;
+        final boolean directV3Codec;
         boolean usingV3Protocol;
 
         RequestDecoder(ExtensionRegistry extensionRegistry) {
+            this(extensionRegistry, false);
+        }
+
+        RequestDecoder(ExtensionRegistry extensionRegistry, boolean directV3Codec) {
             reqPreV3 = new RequestEnDeCoderPreV3(extensionRegistry);
             reqV3 = new RequestEnDecoderV3(extensionRegistry);
+            this.directV3Codec = directV3Codec;
             usingV3Protocol = true;
         }
 
@@ -465,7 +588,10 @@ public class BookieProtoEncoding {
                 Object result;
                 if (usingV3Protocol) {
                     try {
-                        result = reqV3.decode(buffer);
+                        result = directV3Codec ? DirectCodecV3.decodeRequest(buffer) : null;
+                        if (result == null) {
+                            result = reqV3.decode(buffer);
+                        }
                     } catch (InvalidProtocolBufferException e) {
                         usingV3Protocol = false;
                         buffer.resetReaderIndex();
@@ -488,10 +614,16 @@ public class BookieProtoEncoding {
     public static class ResponseEncoder extends ChannelOutboundHandlerAdapter {
         final EnDecoder repPreV3;
         final EnDecoder repV3;
+        final boolean directV3Codec;
 
         ResponseEncoder(ExtensionRegistry extensionRegistry) {
+            this(extensionRegistry, false);
+        }
+
+        ResponseEncoder(ExtensionRegistry extensionRegistry, boolean directV3Codec) {
             repPreV3 = new ResponseEnDeCoderPreV3(extensionRegistry);
             repV3 = new ResponseEnDecoderV3(extensionRegistry);
+            this.directV3Codec = directV3Codec;
         }
 
         @Override
@@ -500,10 +632,17 @@ public class BookieProtoEncoding {
                 LOG.trace("Encode response {} to channel {}.", msg, ctx.channel());
             }
 
-            if (msg instanceof ByteBuf) {
+            if (msg instanceof ByteBuf || msg instanceof ByteBufList) {
                 ctx.write(msg, promise);
             } else if (msg instanceof BookkeeperProtocol.Response) {
-                ctx.write(repV3.encode(msg, ctx.alloc()), promise);
+                Object encoded = directV3Codec
+                        ? DirectCodecV3.encodeResponse((BookkeeperProtocol.Response) msg, ctx.alloc()) : null;
+                ctx.write(encoded != null ? encoded : repV3.encode(msg, ctx.alloc()), promise);
+            } else if (msg instanceof BookieProtocol.ReadRegionResponse) {
+                // write the headers, then let the transport send the entry straight from the entry log file
+                BookieProtocol.ReadRegionResponse rr = (BookieProtocol.ReadRegionResponse) msg;
+                ctx.write(ResponseEnDeCoderPreV3.encodeReadRegionResponseHeaders(rr, ctx.alloc()), ctx.voidPromise());
+                ctx.write(rr.getRegion(), promise);
             } else if (msg instanceof BookieProtocol.Response) {
                 ctx.write(repPreV3.encode(msg, ctx.alloc()), promise);
             } else {
@@ -522,15 +661,24 @@ public class BookieProtoEncoding {
         final EnDecoder repV3;
         final boolean useV2Protocol;
         final boolean tlsEnabled;
+        final boolean directV3Codec;
         boolean usingV3Protocol;
 
         ResponseDecoder(ExtensionRegistry extensionRegistry,
                         boolean useV2Protocol,
                         boolean tlsEnabled) {
+            this(extensionRegistry, useV2Protocol, tlsEnabled, false);
+        }
+
+        ResponseDecoder(ExtensionRegistry extensionRegistry,
+                        boolean useV2Protocol,
+                        boolean tlsEnabled,
+                        boolean directV3Codec) {
             this.repPreV3 = new ResponseEnDeCoderPreV3(extensionRegistry);
             this.repV3 = new ResponseEnDecoderV3(extensionRegistry);
             this.useV2Protocol = useV2Protocol;
             this.tlsEnabled = tlsEnabled;
+            this.directV3Codec = directV3Codec;
             usingV3Protocol = true;
         }
 
@@ -550,7 +698,10 @@ public class BookieProtoEncoding {
 
                 Object result;
                 if (!useV2Protocol) { // always use v3 protocol
-                    result = repV3.decode(buffer);
+                    result = directV3Codec ? DirectCodecV3.decodeResponse(buffer) : null;
+                    if (result == null) {
+                        result = repV3.decode(buffer);
+                    }
                 } else { // use v2 protocol but
                     // if TLS enabled, the first message `startTLS` is a protobuf message
                     if (tlsEnabled && usingV3Protocol) {
@@ -22,11 +22,13 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AuthMessage;
+import org.apache.bookkeeper.util.ByteBufList;
 
 /**
  * The packets of the Bookie protocol all have a 4-byte integer indicating the
@@ -133,6 +135,16 @@ public interface BookieProtocol {
     byte WRITE_LAC = 5;
     byte GET_BOOKIE_INFO = 6;
 
+    /**
+     * The Batch read entry request payload will be an 8-byte request id, the ledger
+     * number, the first entry number to read, a 4-byte max number of entries and an
+     * 8-byte max size of the response. The response payload will be a 4-byte error
+     * code, the request id, the ledger number and the first entry number, followed by
+     * the entries read if the error code is EOK, each prefixed by its 4-byte length.
+     * The entries are consecutive, the bookie stops at the first entry it can't read.
+     */
+    byte BATCH_READ_ENTRY = 7;
+
     /**
      * The error code that indicates success.
      */
@@ -348,6 +360,75 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A Request that reads a batch of consecutive entries.
+     */
+    class BatchedReadRequest extends ReadRequest {
+
+        long requestId;
+        int maxCount;
+        long maxSize;
+
+        static BatchedReadRequest create(byte protocolVersion, long ledgerId, long entryId,
+                                         short flags, byte[] masterKey, long requestId,
+                                         int maxCount, long maxSize) {
+            BatchedReadRequest read = RECYCLER.get();
+            read.protocolVersion = protocolVersion;
+            read.opCode = BATCH_READ_ENTRY;
+            read.ledgerId = ledgerId;
+            read.entryId = entryId;
+            read.flags = flags;
+            read.masterKey = masterKey;
+            read.requestId = requestId;
+            read.maxCount = maxCount;
+            read.maxSize = maxSize;
+            return read;
+        }
+
+        long getRequestId() {
+            return requestId;
+        }
+
+        int getMaxCount() {
+            return maxCount;
+        }
+
+        long getMaxSize() {
+            return maxSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Op(%d)[Ledger:%d,Entry:%d,RequestId:%d,MaxCount:%d,MaxSize:%d]",
+                    opCode, ledgerId, entryId, requestId, maxCount, maxSize);
+        }
+
+        private final Handle<BatchedReadRequest> recyclerHandle;
+
+        private BatchedReadRequest(Handle<BatchedReadRequest> recyclerHandle) {
+            super(null);
+            this.recyclerHandle = recyclerHandle;
+        }
+
+        private static final Recycler<BatchedReadRequest> RECYCLER = new Recycler<BatchedReadRequest>() {
+            @Override
+            protected BatchedReadRequest newObject(Handle<BatchedReadRequest> handle) {
+                return new BatchedReadRequest(handle);
+            }
+        };
+
+        @Override
+        public void recycle() {
+            ledgerId = -1;
+            entryId = -1;
+            masterKey = null;
+            requestId = -1;
+            maxCount = -1;
+            maxSize = -1;
+            recyclerHandle.recycle(this);
+        }
+    }
+
     /**
      * An authentication request.
      */
@@ -479,6 +560,134 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A read response holding the entry as a region of an entry log file. It is encoded like
+     * a {@link ReadResponse}, but the entry is transferred from the file to the socket without
+     * being copied in memory.
+     */
+    class ReadRegionResponse extends Response implements ReferenceCounted {
+        final FileRegion region;
+
+        ReadRegionResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId, FileRegion region) {
+            init(protocolVersion, READENTRY, errorCode, ledgerId, entryId);
+            this.region = region;
+        }
+
+        FileRegion getRegion() {
+            return region;
+        }
+
+        @Override
+        public int refCnt() {
+            return region.refCnt();
+        }
+
+        @Override
+        public ReferenceCounted retain() {
+            region.retain();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted retain(int increment) {
+            region.retain(increment);
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted touch() {
+            region.touch();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            region.touch(hint);
+            return this;
+        }
+
+        @Override
+        public boolean release() {
+            return region.release();
+        }
+
+        @Override
+        public boolean release(int decrement) {
+            return region.release(decrement);
+        }
+    }
+
+    /**
+     * A response with a batch of consecutive entries.
+     */
+    class BatchedReadResponse extends Response implements ReferenceCounted {
+        final long requestId;
+        final ByteBufList data;
+
+        BatchedReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId, long requestId) {
+            this(protocolVersion, errorCode, ledgerId, entryId, requestId, ByteBufList.get());
+        }
+
+        BatchedReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId, long requestId,
+                            ByteBufList data) {
+            init(protocolVersion, BATCH_READ_ENTRY, errorCode, ledgerId, entryId);
+            this.requestId = requestId;
+            this.data = data;
+        }
+
+        long getRequestId() {
+            return requestId;
+        }
+
+        ByteBufList getData() {
+            return data;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Op(%d)[Ledger:%d,Entry:%d,RequestId:%d,Entries:%d,errorCode=%d]",
+                    opCode, ledgerId, entryId, requestId, data.size(), errorCode);
+        }
+
+        @Override
+        public int refCnt() {
+            return data.refCnt();
+        }
+
+        @Override
+        public ReferenceCounted retain() {
+            data.retain();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted retain(int increment) {
+            return data.retain(increment);
+        }
+
+        @Override
+        public ReferenceCounted touch() {
+            data.touch();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            data.touch(hint);
+            return this;
+        }
+
+        @Override
+        public boolean release() {
+            return data.release();
+        }
+
+        @Override
+        public boolean release(int decrement) {
+            return data.release(decrement);
+        }
+    }
+
     /**
      * A response that adds data.
      */
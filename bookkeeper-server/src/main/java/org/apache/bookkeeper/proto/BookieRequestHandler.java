@@ -43,6 +43,10 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
     private ChannelHandlerContext ctx;
 
     private ByteBuf pendingSendResponses = null;
+    // created on the first chunked add of the channel, only accessed by its event loop
+    private ChunkedAddAssembler chunkedAddAssembler = null;
+    // created on the first request of the channel when the requests in flight are limited
+    private InFlightRequestLimiter.ChannelBudget inFlightBudget = null;
     private int maxPendingResponsesSize = DEFAULT_PENDING_RESPONSE_SIZE;
 
     BookieRequestHandler(ServerConfiguration conf, RequestProcessor processor, ChannelGroup allChannels) {
@@ -69,6 +73,26 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         log.info("Channels disconnected: {}", ctx.channel());
+        if (chunkedAddAssembler != null) {
+            chunkedAddAssembler.release();
+        }
+        if (inFlightBudget != null) {
+            inFlightBudget.close();
+        }
+    }
+
+    ChunkedAddAssembler getChunkedAddAssembler(BookieRequestProcessor processor) {
+        if (chunkedAddAssembler == null) {
+            chunkedAddAssembler = new ChunkedAddAssembler(processor);
+        }
+        return chunkedAddAssembler;
+    }
+
+    InFlightRequestLimiter.ChannelBudget getInFlightBudget(InFlightRequestLimiter limiter) {
+        if (inFlightBudget == null) {
+            inFlightBudget = limiter.newChannelBudget(ctx.channel());
+        }
+        return inFlightBudget;
     }
 
     @Override
@@ -83,7 +107,8 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        if (!(msg instanceof BookkeeperProtocol.Request || msg instanceof BookieProtocol.Request)) {
+        if (!(msg instanceof BookkeeperProtocol.Request || msg instanceof BookieProtocol.Request
+                || msg instanceof DirectCodecV3.RequestWithPayload)) {
             ctx.fireChannelRead(msg);
             return;
         }
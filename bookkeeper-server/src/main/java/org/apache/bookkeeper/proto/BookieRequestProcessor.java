@@ -28,10 +28,14 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
@@ -50,6 +54,7 @@ import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.processor.RequestProcessor;
+import org.apache.bookkeeper.proto.FairRequestScheduler.RequestClass;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.tls.SecurityException;
 import org.apache.bookkeeper.tls.SecurityHandlerFactory;
@@ -84,6 +89,16 @@ public class BookieRequestProcessor implements RequestProcessor {
      */
     private final OrderedExecutor readThreadPool;
 
+    /**
+     * The scheduler used instead of the read threadpool when fair read scheduling is enabled.
+     */
+    private final FairRequestScheduler readScheduler;
+
+    /**
+     * The executor used instead of the read threadpool when reads run on virtual threads.
+     */
+    private final VirtualThreadReadExecutor virtualThreadReadExecutor;
+
     /**
      * The threadpool used to execute all add entry requests issued to this server.
      */
@@ -118,6 +133,8 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     final Semaphore addsSemaphore;
     final Semaphore readsSemaphore;
+    // null if the requests in flight aren't limited
+    private final InFlightRequestLimiter inFlightRequestLimiter;
 
     final ChannelGroup allChannels;
 
@@ -128,6 +145,18 @@ public class BookieRequestProcessor implements RequestProcessor {
     private final ByteBufAllocator allocator;
 
     private final boolean throttleReadResponses;
+    private final boolean zeroCopyReadEnabled;
+    private final boolean directV3CodecEnabled;
+    private final int readResponseCompressionMinEntrySize;
+    private final long maxChunkedAddPendingBytes;
+    private final long maxResponseSize;
+    private final int maxWatchedLedgersPerRequest;
+
+    /**
+     * Moving average of the size of the entries returned by the batch reads, in bytes, to estimate the
+     * number of entries of a batch read from its max size. Zero until a batch read returns entries.
+     */
+    private volatile long batchReadEntrySizeEstimate = 0;
 
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
                                   SecurityHandlerFactory shFactory, ByteBufAllocator allocator,
@@ -139,11 +168,48 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
-        this.readThreadPool = createExecutor(
-                this.serverCfg.getNumReadWorkerThreads(),
-                "BookieReadThreadPool",
-                serverCfg.getMaxPendingReadRequestPerThread(),
-                statsLogger);
+        this.zeroCopyReadEnabled = serverCfg.isZeroCopyReadEnabled();
+        this.directV3CodecEnabled = serverCfg.isDirectV3CodecEnabled();
+        this.readResponseCompressionMinEntrySize = serverCfg.isReadResponseCompressionEnabled()
+                ? Math.max(1, serverCfg.getReadResponseCompressionMinEntrySizeBytes()) : Integer.MAX_VALUE;
+        this.maxChunkedAddPendingBytes = serverCfg.getMaxChunkedAddPendingBytes();
+        // keep room for the response headers within the max frame size
+        this.maxResponseSize = serverCfg.getNettyMaxFrameSizeBytes() - 1024;
+        this.maxWatchedLedgersPerRequest = serverCfg.getWatchLacMaxLedgersPerRequest();
+        if (serverCfg.isReadWorkerVirtualThreadsEnabled()) {
+            int maxPendingPerThread = serverCfg.getMaxPendingReadRequestPerThread();
+            this.virtualThreadReadExecutor = VirtualThreadReadExecutor.create(
+                    "BookieVirtualReadThread",
+                    serverCfg.getMaxConcurrentVirtualThreadReads(),
+                    maxPendingPerThread > 0
+                            ? Math.max(1, serverCfg.getNumReadWorkerThreads()) * maxPendingPerThread : 0,
+                    serverCfg.getPreserveMdcForTaskExecution());
+        } else {
+            this.virtualThreadReadExecutor = null;
+        }
+        if (null != virtualThreadReadExecutor) {
+            this.readScheduler = null;
+            this.readThreadPool = null;
+        } else if (serverCfg.isFairReadSchedulingEnabled() && serverCfg.getNumReadWorkerThreads() > 0) {
+            int numThreads = serverCfg.getNumReadWorkerThreads();
+            int maxPendingPerThread = serverCfg.getMaxPendingReadRequestPerThread();
+            this.readScheduler = new FairRequestScheduler(
+                    "BookieReadScheduler",
+                    numThreads,
+                    serverCfg.getFairReadSchedulingShards(),
+                    maxPendingPerThread > 0 ? numThreads * maxPendingPerThread : 0,
+                    serverCfg.getFairReadSchedulingQuantum(),
+                    serverCfg.getPreserveMdcForTaskExecution(),
+                    statsLogger);
+            this.readThreadPool = null;
+        } else {
+            this.readScheduler = null;
+            this.readThreadPool = createExecutor(
+                    this.serverCfg.getNumReadWorkerThreads(),
+                    "BookieReadThreadPool",
+                    serverCfg.getMaxPendingReadRequestPerThread(),
+                    statsLogger);
+        }
         this.writeThreadPool = createExecutor(
                 this.serverCfg.getNumAddWorkerThreads(),
                 "BookieWriteThreadPool",
@@ -203,54 +269,82 @@ public class BookieRequestProcessor implements RequestProcessor {
 
         int maxReads = serverCfg.getMaxReadsInProgressLimit();
         readsSemaphore = maxReads > 0 ? new Semaphore(maxReads, true) : null;
+
+        InFlightRequestLimiter limiter = new InFlightRequestLimiter(
+                serverCfg.getMaxInFlightRequestsPerChannel(),
+                serverCfg.getMaxInFlightRequestBytesPerChannel(),
+                serverCfg.getMaxInFlightRequestBytes(),
+                requestStats);
+        inFlightRequestLimiter = limiter.isEnabled() ? limiter : null;
     }
 
-    protected void onAddRequestStart(Channel channel) {
+    protected void onAddRequestStart(BookieRequestHandler requestHandler, long entrySize) {
         if (addsSemaphore != null) {
+            Channel channel = requestHandler.ctx().channel();
             if (!addsSemaphore.tryAcquire()) {
                 final long throttlingStartTimeNanos = MathUtils.nowInNano();
                 channel.config().setAutoRead(false);
                 LOG.info("Too many add requests in progress, disabling autoread on channel {}", channel);
                 requestStats.blockAddRequest();
                 addsSemaphore.acquireUninterruptibly();
-                channel.config().setAutoRead(true);
+                resumeReading(requestHandler);
                 final long delayNanos = MathUtils.elapsedNanos(throttlingStartTimeNanos);
                 LOG.info("Re-enabled autoread on channel {} after AddRequest delay of {} nanos", channel, delayNanos);
                 requestStats.unblockAddRequest(delayNanos);
             }
         }
         requestStats.trackAddRequest();
+        if (inFlightRequestLimiter != null) {
+            inFlightRequestLimiter.onRequestStart(requestHandler, entrySize);
+        }
     }
 
-    protected void onAddRequestFinish() {
+    protected void onAddRequestFinish(BookieRequestHandler requestHandler, long entrySize) {
         requestStats.untrackAddRequest();
         if (addsSemaphore != null) {
             addsSemaphore.release();
         }
+        if (inFlightRequestLimiter != null) {
+            inFlightRequestLimiter.onRequestFinish(requestHandler, entrySize);
+        }
     }
 
-    protected void onReadRequestStart(Channel channel) {
+    protected void onReadRequestStart(BookieRequestHandler requestHandler) {
         if (readsSemaphore != null) {
+            Channel channel = requestHandler.ctx().channel();
             if (!readsSemaphore.tryAcquire()) {
                 final long throttlingStartTimeNanos = MathUtils.nowInNano();
                 channel.config().setAutoRead(false);
                 LOG.info("Too many read requests in progress, disabling autoread on channel {}", channel);
                 requestStats.blockReadRequest();
                 readsSemaphore.acquireUninterruptibly();
-                channel.config().setAutoRead(true);
+                resumeReading(requestHandler);
                 final long delayNanos = MathUtils.elapsedNanos(throttlingStartTimeNanos);
                 LOG.info("Re-enabled autoread on channel {} after ReadRequest delay of {} nanos", channel, delayNanos);
                 requestStats.unblockReadRequest(delayNanos);
             }
         }
         requestStats.trackReadRequest();
+        if (inFlightRequestLimiter != null) {
+            inFlightRequestLimiter.onRequestStart(requestHandler, 0);
+        }
     }
 
-    protected void onReadRequestFinish() {
+    protected void onReadRequestFinish(BookieRequestHandler requestHandler) {
         requestStats.untrackReadRequest();
         if (readsSemaphore != null) {
             readsSemaphore.release();
         }
+        if (inFlightRequestLimiter != null) {
+            inFlightRequestLimiter.onRequestFinish(requestHandler, 0);
+        }
+    }
+
+    private void resumeReading(BookieRequestHandler requestHandler) {
+        // the channel keeps not reading while its requests in flight exceed their budget
+        if (inFlightRequestLimiter == null || !inFlightRequestLimiter.isThrottled(requestHandler)) {
+            requestHandler.ctx().channel().config().setAutoRead(true);
+        }
     }
 
     @VisibleForTesting
@@ -268,6 +362,12 @@ public class BookieRequestProcessor implements RequestProcessor {
         LOG.info("Closing RequestProcessor");
         shutdownExecutor(writeThreadPool);
         shutdownExecutor(readThreadPool);
+        if (null != readScheduler) {
+            readScheduler.shutdown(10, TimeUnit.SECONDS);
+        }
+        if (null != virtualThreadReadExecutor) {
+            virtualThreadReadExecutor.shutdown(10, TimeUnit.SECONDS);
+        }
         if (serverCfg.getNumLongPollWorkerThreads() > 0 || readThreadPool == null) {
             shutdownExecutor(longPollThreadPool);
         }
@@ -317,6 +417,11 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case ADD_ENTRY:
                         processAddRequestV3(r, requestHandler);
                         break;
+                    case ADD_ENTRY_CHUNK:
+                        requestHandler.getChunkedAddAssembler(this).addChunk(r,
+                                Unpooled.wrappedBuffer(r.getAddRequest().getBody().asReadOnlyByteBuffer()),
+                                requestHandler);
+                        break;
                     case READ_ENTRY:
                         processReadRequestV3(r, requestHandler);
                         break;
@@ -351,6 +456,9 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case GET_LIST_OF_ENTRIES_OF_LEDGER:
                         processGetListOfEntriesOfLedgerProcessorV3(r, requestHandler);
                         break;
+                    case WATCH_LAST_ADD_CONFIRMED:
+                        processWatchLacRequestV3(r, requestHandler);
+                        break;
                     default:
                         LOG.info("Unknown operation type {}", header.getOperation());
                         BookkeeperProtocol.Response.Builder response =
@@ -365,6 +473,20 @@ public class BookieRequestProcessor implements RequestProcessor {
             } finally {
                 MDC.clear();
             }
+        } else if (msg instanceof DirectCodecV3.RequestWithPayload) {
+            // an add request decoded by the direct codec, with the entry kept out of the protobuf message
+            DirectCodecV3.RequestWithPayload r = (DirectCodecV3.RequestWithPayload) msg;
+            restoreMdcContextFromRequest(r.getRequest());
+            try {
+                if (r.getRequest().getHeader().getOperation() == BookkeeperProtocol.OperationType.ADD_ENTRY_CHUNK) {
+                    requestHandler.getChunkedAddAssembler(this).addChunk(r.getRequest(), r.getPayload(),
+                            requestHandler);
+                } else {
+                    processAddRequestV3(r.getRequest(), r.getPayload(), requestHandler);
+                }
+            } finally {
+                MDC.clear();
+            }
         } else {
             BookieProtocol.Request r = (BookieProtocol.Request) msg;
             // process packet
@@ -377,6 +499,10 @@ public class BookieRequestProcessor implements RequestProcessor {
                     checkArgument(r instanceof BookieProtocol.ReadRequest);
                     processReadRequest((BookieProtocol.ReadRequest) r, requestHandler);
                     break;
+                case BookieProtocol.BATCH_READ_ENTRY:
+                    checkArgument(r instanceof BookieProtocol.BatchedReadRequest);
+                    processBatchedReadRequest((BookieProtocol.BatchedReadRequest) r, requestHandler);
+                    break;
                 case BookieProtocol.AUTH:
                     LOG.info("Ignoring auth operation from client {}",
                             requestHandler.ctx().channel().remoteAddress());
@@ -422,15 +548,16 @@ public class BookieRequestProcessor implements RequestProcessor {
     private void processReadLacRequestV3(final BookkeeperProtocol.Request r,
                                          final BookieRequestHandler requestHandler) {
         ReadLacProcessorV3 readLac = new ReadLacProcessorV3(r, requestHandler, this);
-        if (null == readThreadPool) {
-            readLac.run();
-        } else {
-            readThreadPool.executeOrdered(r.getAddRequest().getLedgerId(), readLac);
-        }
+        executeRead(requestHandler, r.getAddRequest().getLedgerId(), false, 1, readLac);
     }
 
     private void processAddRequestV3(final BookkeeperProtocol.Request r, final BookieRequestHandler requestHandler) {
-        WriteEntryProcessorV3 write = new WriteEntryProcessorV3(r, requestHandler, this);
+        processAddRequestV3(r, null, requestHandler);
+    }
+
+    void processAddRequestV3(final BookkeeperProtocol.Request r, final ByteBuf payload,
+                             final BookieRequestHandler requestHandler) {
+        WriteEntryProcessorV3 write = new WriteEntryProcessorV3(r, payload, requestHandler, this);
 
         final OrderedExecutor threadPool;
         if (RequestUtils.isHighPriority(r)) {
@@ -450,6 +577,7 @@ public class BookieRequestProcessor implements RequestProcessor {
                               r.getAddRequest().getLedgerId(), r.getAddRequest().getEntryId());
                 }
                 getRequestStats().getAddEntryRejectedCounter().inc();
+                write.releasePayload();
                 BookkeeperProtocol.AddResponse.Builder addResponse = BookkeeperProtocol.AddResponse.newBuilder()
                         .setLedgerId(r.getAddRequest().getLedgerId())
                         .setEntryId(r.getAddRequest().getEntryId())
@@ -507,33 +635,31 @@ public class BookieRequestProcessor implements RequestProcessor {
                 highPriorityThreadPool.chooseThread(requestHandler.ctx());
 
         final ReadEntryProcessorV3 read;
-        final OrderedExecutor threadPool;
-        if (RequestUtils.isLongPollReadRequest(r.getReadRequest())) {
+        final boolean isLongPoll = RequestUtils.isLongPollReadRequest(r.getReadRequest());
+        if (isLongPoll) {
             ExecutorService lpThread = longPollThreadPool.chooseThread(requestHandler.ctx());
 
             read = new LongPollReadEntryProcessorV3(r, requestHandler, this, fenceThread,
                                                     lpThread, requestTimer);
-            threadPool = longPollThreadPool;
         } else {
             read = new ReadEntryProcessorV3(r, requestHandler, this, fenceThread);
-
-            // If it's a high priority read (fencing or as part of recovery process), we want to make sure it
-            // gets executed as fast as possible, so bypass the normal readThreadPool
-            // and execute in highPriorityThreadPool
-            boolean isHighPriority = RequestUtils.isHighPriority(r)
-                || hasFlag(r.getReadRequest(), BookkeeperProtocol.ReadRequest.Flag.FENCE_LEDGER);
-            if (isHighPriority) {
-                threadPool = highPriorityThreadPool;
-            } else {
-                threadPool = readThreadPool;
-            }
         }
 
-        if (null == threadPool) {
+        // If it's a high priority read (fencing or as part of recovery process), we want to make sure it
+        // gets executed as fast as possible, so bypass the normal read threads
+        // and execute in highPriorityThreadPool
+        boolean isHighPriority = !isLongPoll && (RequestUtils.isHighPriority(r)
+            || hasFlag(r.getReadRequest(), BookkeeperProtocol.ReadRequest.Flag.FENCE_LEDGER));
+
+        if (isLongPoll && null == longPollThreadPool) {
             read.run();
         } else {
             try {
-                threadPool.executeOrdered(r.getReadRequest().getLedgerId(), read);
+                if (isLongPoll) {
+                    longPollThreadPool.executeOrdered(r.getReadRequest().getLedgerId(), read);
+                } else {
+                    executeRead(requestHandler, r.getReadRequest().getLedgerId(), isHighPriority, 1, read);
+                }
             } catch (RejectedExecutionException e) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests",
@@ -550,11 +676,40 @@ public class BookieRequestProcessor implements RequestProcessor {
                     .setReadResponse(readResponse);
                 BookkeeperProtocol.Response resp = response.build();
                 read.sendResponse(readResponse.getStatus(), resp, requestStats.getReadRequestStats());
-                onReadRequestFinish();
+                onReadRequestFinish(requestHandler);
             }
         }
     }
 
+    private void processWatchLacRequestV3(final BookkeeperProtocol.Request r,
+                                          final BookieRequestHandler requestHandler) {
+        ExecutorService lpThread = null == longPollThreadPool ? null
+                : longPollThreadPool.chooseThread(requestHandler.ctx());
+        WatchLacProcessorV3 watchLac = new WatchLacProcessorV3(r, requestHandler, this, lpThread,
+                requestTimer, maxResponseSize, maxWatchedLedgersPerRequest);
+        if (null == lpThread) {
+            watchLac.run();
+            return;
+        }
+        try {
+            lpThread.execute(watchLac);
+        } catch (RejectedExecutionException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to process request to watch {} ledgers. Too many pending requests",
+                          r.getWatchLacRequest().getLedgersCount());
+            }
+            BookkeeperProtocol.WatchLacResponse.Builder watchLacResponse =
+                    BookkeeperProtocol.WatchLacResponse.newBuilder()
+                    .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+            BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder()
+                    .setHeader(watchLac.getHeader())
+                    .setStatus(watchLacResponse.getStatus())
+                    .setWatchLacResponse(watchLacResponse);
+            watchLac.sendResponse(watchLacResponse.getStatus(), response.build(),
+                    requestStats.getWatchLacRequestStats());
+        }
+    }
+
     private void processStartTLSRequestV3(final BookkeeperProtocol.Request r,
                                           final BookieRequestHandler requestHandler) {
         BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder();
@@ -613,22 +768,14 @@ public class BookieRequestProcessor implements RequestProcessor {
     private void processGetBookieInfoRequestV3(final BookkeeperProtocol.Request r,
                                                final BookieRequestHandler requestHandler) {
         GetBookieInfoProcessorV3 getBookieInfo = new GetBookieInfoProcessorV3(r, requestHandler, this);
-        if (null == readThreadPool) {
-            getBookieInfo.run();
-        } else {
-            readThreadPool.submit(getBookieInfo);
-        }
+        submitRead(requestHandler, getBookieInfo);
     }
 
     private void processGetListOfEntriesOfLedgerProcessorV3(final BookkeeperProtocol.Request r,
                                                             final BookieRequestHandler requestHandler) {
         GetListOfEntriesOfLedgerProcessorV3 getListOfEntriesOfLedger =
                 new GetListOfEntriesOfLedgerProcessorV3(r, requestHandler, this);
-        if (null == readThreadPool) {
-            getListOfEntriesOfLedger.run();
-        } else {
-            readThreadPool.submit(getListOfEntriesOfLedger);
-        }
+        submitRead(requestHandler, getListOfEntriesOfLedger);
     }
 
     private void processAddRequest(final BookieProtocol.ParsedAddRequest r, final BookieRequestHandler requestHandler) {
@@ -667,13 +814,63 @@ public class BookieRequestProcessor implements RequestProcessor {
         ExecutorService fenceThreadPool =
                 null == highPriorityThreadPool ? null : highPriorityThreadPool.chooseThread(requestHandler.ctx());
         ReadEntryProcessor read = ReadEntryProcessor.create(r, requestHandler,
-                this, fenceThreadPool, throttleReadResponses);
+                this, fenceThreadPool, throttleReadResponses,
+                zeroCopyReadEnabled && supportsFileRegion(requestHandler.ctx().channel()));
 
         // If it's a high priority read (fencing or as part of recovery process), we want to make sure it
         // gets executed as fast as possible, so bypass the normal readThreadPool
         // and execute in highPriorityThreadPool
+        try {
+            executeRead(requestHandler, r.getLedgerId(), r.isHighPriority() || r.isFencing(), 1, read);
+        } catch (RejectedExecutionException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests", r.ledgerId,
+                        r.entryId);
+            }
+            getRequestStats().getReadEntryRejectedCounter().inc();
+            read.sendResponse(
+                BookieProtocol.ETOOMANYREQUESTS,
+                ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
+                requestStats.getReadRequestStats());
+            onReadRequestFinish(requestHandler);
+        }
+    }
+
+    /**
+     * Run a read request which doesn't need to run in ledger order.
+     */
+    private void submitRead(BookieRequestHandler requestHandler, Runnable read) {
+        if (null != virtualThreadReadExecutor) {
+            virtualThreadReadExecutor.execute(read);
+        } else if (null != readScheduler) {
+            readScheduler.execute(requestHandler.ctx().channel(), RequestClass.NORMAL, 1, read);
+        } else if (null == readThreadPool) {
+            read.run();
+        } else {
+            readThreadPool.submit(read);
+        }
+    }
+
+    /**
+     * Run a read request on the read threads, or on the high priority threads if it's a high priority
+     * read. If reads run on virtual threads, the normal reads run on a virtual thread instead. If fair
+     * read scheduling is enabled, the reads are queued by connection in the read scheduler instead,
+     * where the high priority ones are served first if there are no high priority threads.
+     * The read is run in the calling thread if there are no threads to run it.
+     *
+     * @param cost the cost of the read for the read scheduler, i.e. the number of entries to read
+     */
+    private void executeRead(BookieRequestHandler requestHandler, long ledgerId, boolean highPriority, int cost,
+                             Runnable read) {
         final OrderedExecutor threadPool;
-        if (r.isHighPriority() || r.isFencing()) {
+        if (null != virtualThreadReadExecutor && !(highPriority && null != highPriorityThreadPool)) {
+            virtualThreadReadExecutor.execute(read);
+            return;
+        } else if (null != readScheduler && !(highPriority && null != highPriorityThreadPool)) {
+            readScheduler.execute(requestHandler.ctx().channel(),
+                    highPriority ? RequestClass.HIGH_PRIORITY : RequestClass.NORMAL, cost, read);
+            return;
+        } else if (highPriority) {
             threadPool = highPriorityThreadPool;
         } else {
             threadPool = readThreadPool;
@@ -682,23 +879,94 @@ public class BookieRequestProcessor implements RequestProcessor {
         if (null == threadPool) {
             read.run();
         } else {
-            try {
-                threadPool.executeOrdered(r.getLedgerId(), read);
-            } catch (RejectedExecutionException e) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests", r.ledgerId,
-                            r.entryId);
-                }
-                getRequestStats().getReadEntryRejectedCounter().inc();
-                read.sendResponse(
-                    BookieProtocol.ETOOMANYREQUESTS,
-                    ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
-                    requestStats.getReadRequestStats());
-                onReadRequestFinish();
+            threadPool.executeOrdered(ledgerId, read);
+        }
+    }
+
+    /**
+     * Whether responses holding file regions can be written to a channel. TLS needs the entries
+     * in memory to encrypt them, and only socket transports can send a file region.
+     */
+    private static boolean supportsFileRegion(Channel channel) {
+        // the io_uring transport doesn't write file regions
+        return channel instanceof SocketChannel && !(channel instanceof IOUringSocketChannel)
+                && channel.pipeline().get(SslHandler.class) == null;
+    }
+
+    /**
+     * Record the average size of the entries returned by a batch read.
+     */
+    void recordBatchReadEntrySize(long entrySize) {
+        long estimate = batchReadEntrySizeEstimate;
+        // races between reads only lose samples
+        batchReadEntrySizeEstimate = estimate == 0 ? entrySize : estimate + (entrySize - estimate) / 8;
+    }
+
+    /**
+     * Estimate the cost of a batch read for the read scheduler, i.e. the number of entries it returns:
+     * the number of entries of the estimated size that fit in its max size, up to its max count.
+     */
+    @VisibleForTesting
+    static int estimateBatchReadCost(int maxCount, long maxSize, long entrySizeEstimate) {
+        if (entrySizeEstimate <= 0) {
+            return maxCount;
+        }
+        long entryFrameSize = entrySizeEstimate + BatchedReadEntryProcessor.ENTRY_FRAME_OVERHEAD;
+        long numEntries = (maxSize + entryFrameSize - 1) / entryFrameSize;
+        return (int) Math.max(1, Math.min(maxCount, numEntries));
+    }
+
+    private void processBatchedReadRequest(final BookieProtocol.BatchedReadRequest r,
+                                           final BookieRequestHandler requestHandler) {
+        BatchedReadEntryProcessor read = BatchedReadEntryProcessor.create(r, requestHandler,
+                this, throttleReadResponses, maxResponseSize);
+
+        try {
+            int cost = estimateBatchReadCost(r.getMaxCount(), Math.min(r.getMaxSize(), maxResponseSize),
+                    batchReadEntrySizeEstimate);
+            executeRead(requestHandler, r.getLedgerId(), r.isHighPriority(), cost, read);
+        } catch (RejectedExecutionException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to process request to batch read entries at {}:{}. Too many pending requests",
+                        r.ledgerId, r.entryId);
             }
+            getRequestStats().getReadEntryRejectedCounter().inc();
+            read.sendResponse(
+                BookieProtocol.ETOOMANYREQUESTS,
+                ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
+                requestStats.getBatchReadRequestStats());
+            onReadRequestFinish(requestHandler);
         }
     }
 
+    boolean isDirectV3CodecEnabled() {
+        return directV3CodecEnabled;
+    }
+
+    /**
+     * The min size of the entries compressed in read responses, or {@link Integer#MAX_VALUE}
+     * if the read responses are not compressed.
+     */
+    int getReadResponseCompressionMinEntrySize() {
+        return readResponseCompressionMinEntrySize;
+    }
+
+    long getMaxChunkedAddPendingBytes() {
+        return maxChunkedAddPendingBytes;
+    }
+
+    /**
+     * Reserve room for an entry added in chunks, if the entries being received still fit within
+     * the max pending bytes.
+     */
+    boolean tryAcquireChunkedAddBytes(int entryLength) {
+        return requestStats.tryTrackChunkedAddBytes(entryLength, maxChunkedAddPendingBytes);
+    }
+
+    void releaseChunkedAddBytes(int entryLength) {
+        requestStats.untrackChunkedAddBytes(entryLength);
+    }
+
     public long getWaitTimeoutOnBackpressureMillis() {
         return waitTimeoutOnBackpressureMillis;
     }
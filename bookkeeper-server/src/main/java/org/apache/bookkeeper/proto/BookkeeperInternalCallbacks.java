@@ -36,6 +36,7 @@ import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
+import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.versioning.Versioned;
 import org.apache.zookeeper.AsyncCallback;
@@ -85,6 +86,20 @@ public class BookkeeperInternalCallbacks {
         void readLacComplete(int rc, long ledgerId, ByteBuf lac, ByteBuf buffer, Object ctx);
     }
 
+    /**
+     * A callback interface for the long polls of the last-add-confirmed (LAC) of many ledgers.
+     */
+    public interface WatchLacCallback {
+        /**
+         * Called for each ledger notified by the response, before {@link #watchLacComplete}.
+         *
+         * @param entry the entry following the previous LAC of the ledger, or null if it wasn't sent
+         */
+        void lacNotified(int rc, long ledgerId, long lac, long entryId, ByteBuf entry, Object ctx);
+
+        void watchLacComplete(int rc, Object ctx);
+    }
+
     /**
      * A last-add-confirmed (LAC) writer callback interface.
      */
@@ -221,6 +236,15 @@ public class BookkeeperInternalCallbacks {
         void readEntryComplete(int rc, long ledgerId, long entryId, ByteBuf buffer, Object ctx);
     }
 
+    /**
+     * Declaration of a callback implementation for calls from BookieClient objects.
+     * Such calls are for replies of batch read operations (operations to read a range
+     * of consecutive entries from a ledger).
+     */
+    public interface BatchedReadEntryCallback {
+        void readEntriesComplete(int rc, long ledgerId, long startEntryId, ByteBufList bufList, Object ctx);
+    }
+
     /**
      * Listener on entries responded.
      */
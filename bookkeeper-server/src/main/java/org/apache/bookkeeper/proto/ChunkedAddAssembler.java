@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reassembles the entries added in chunks by the {@link OperationType#ADD_ENTRY_CHUNK} requests of
+ * a channel.
+ *
+ * <p>The chunks of an entry are kept as they were received, in a composite buffer, so the entry is
+ * never copied and the request frames stay as small as the chunks, instead of growing to the size
+ * of the entry. Once its last chunk is received, the entry is added like any other entry and the
+ * add response goes back to the client.
+ *
+ * <p>The bytes of the entries being received over all the channels are bounded: an entry which
+ * doesn't fit is rejected as soon as its first chunk arrives, and its other chunks are dropped.
+ *
+ * <p>An assembler is only accessed by the event loop of its channel.
+ */
+class ChunkedAddAssembler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChunkedAddAssembler.class);
+
+    private final BookieRequestProcessor requestProcessor;
+    // the entries being received, by the transaction id shared by their chunks
+    private final Map<Long, PendingEntry> pendingEntries = new HashMap<>();
+
+    ChunkedAddAssembler(BookieRequestProcessor requestProcessor) {
+        this.requestProcessor = requestProcessor;
+    }
+
+    /**
+     * Process a chunk of an entry.
+     *
+     * @param request the chunk request
+     * @param chunk the part of the entry carried by the request, released by the assembler
+     */
+    void addChunk(Request request, ByteBuf chunk, BookieRequestHandler requestHandler) {
+        long txnId = request.getHeader().getTxnId();
+        AddRequest addRequest = request.getAddRequest();
+        int chunkOffset = addRequest.getChunkOffset();
+        int entryLength = addRequest.getEntryLength();
+        boolean lastChunk = (long) chunkOffset + chunk.readableBytes() >= entryLength;
+
+        PendingEntry pendingEntry = pendingEntries.get(txnId);
+        if (pendingEntry == null) {
+            if (!addRequest.hasChunkOffset() || chunkOffset != 0 || entryLength <= 0
+                    || chunk.readableBytes() > entryLength) {
+                chunk.release();
+                reject(request, StatusCode.EBADREQ, lastChunk, requestHandler);
+                return;
+            }
+            if (!requestProcessor.tryAcquireChunkedAddBytes(entryLength)) {
+                chunk.release();
+                requestProcessor.getRequestStats().getAddEntryChunkedRejectedCounter().inc();
+                reject(request, entryLength > requestProcessor.getMaxChunkedAddPendingBytes()
+                        ? StatusCode.EBADREQ : StatusCode.ETOOMANYREQUESTS, lastChunk, requestHandler);
+                return;
+            }
+            CompositeByteBuf entry = requestHandler.ctx().alloc().compositeBuffer(Integer.MAX_VALUE);
+            pendingEntry = new PendingEntry(request, entry);
+            pendingEntries.put(txnId, pendingEntry);
+        } else if (pendingEntry.entry == null) {
+            // the entry was rejected, drop its chunks
+            chunk.release();
+            if (lastChunk) {
+                pendingEntries.remove(txnId);
+            }
+            return;
+        } else {
+            AddRequest firstChunk = pendingEntry.request.getAddRequest();
+            if (chunkOffset != pendingEntry.entry.readableBytes() || entryLength != firstChunk.getEntryLength()
+                    || addRequest.getLedgerId() != firstChunk.getLedgerId()
+                    || addRequest.getEntryId() != firstChunk.getEntryId()
+                    || (long) chunkOffset + chunk.readableBytes() > entryLength) {
+                chunk.release();
+                LOG.warn("Out of sequence chunk of entry {}@{} from {}", addRequest.getEntryId(),
+                        addRequest.getLedgerId(), requestHandler.ctx().channel());
+                releaseEntry(pendingEntry);
+                pendingEntries.remove(txnId);
+                reject(request, StatusCode.EBADREQ, lastChunk, requestHandler);
+                return;
+            }
+        }
+
+        pendingEntry.entry.addComponent(true, chunk);
+        if (!lastChunk) {
+            return;
+        }
+
+        pendingEntries.remove(txnId);
+        requestProcessor.releaseChunkedAddBytes(entryLength);
+        Request firstRequest = pendingEntry.request;
+        Request addEntryRequest = firstRequest.toBuilder()
+                .setHeader(firstRequest.getHeader().toBuilder().setOperation(OperationType.ADD_ENTRY))
+                .setAddRequest(firstRequest.getAddRequest().toBuilder()
+                        .clearChunkOffset()
+                        .clearEntryLength()
+                        .setBody(ByteString.EMPTY))
+                .build();
+        requestProcessor.processAddRequestV3(addEntryRequest, pendingEntry.entry, requestHandler);
+    }
+
+    /**
+     * Release the entries being received, when the channel is closed.
+     */
+    void release() {
+        for (PendingEntry pendingEntry : pendingEntries.values()) {
+            releaseEntry(pendingEntry);
+        }
+        pendingEntries.clear();
+    }
+
+    private void releaseEntry(PendingEntry pendingEntry) {
+        if (pendingEntry.entry != null) {
+            requestProcessor.releaseChunkedAddBytes(pendingEntry.request.getAddRequest().getEntryLength());
+            pendingEntry.entry.release();
+        }
+    }
+
+    private void reject(Request request, StatusCode status, boolean lastChunk,
+                        BookieRequestHandler requestHandler) {
+        long txnId = request.getHeader().getTxnId();
+        if (!lastChunk) {
+            // remember the entry to drop its next chunks
+            pendingEntries.put(txnId, new PendingEntry(request, null));
+        }
+        BKPacketHeader.Builder header = BKPacketHeader.newBuilder()
+                .setVersion(request.getHeader().getVersion())
+                .setOperation(OperationType.ADD_ENTRY)
+                .setTxnId(txnId);
+        if (request.getHeader().hasPriority()) {
+            header.setPriority(request.getHeader().getPriority());
+        }
+        Response response = Response.newBuilder()
+                .setHeader(header)
+                .setStatus(status)
+                .setAddResponse(AddResponse.newBuilder()
+                        .setLedgerId(request.getAddRequest().getLedgerId())
+                        .setEntryId(request.getAddRequest().getEntryId())
+                        .setStatus(status))
+                .build();
+        requestHandler.ctx().channel().writeAndFlush(response);
+    }
+
+    private static final class PendingEntry {
+        // the request of the first chunk
+        final Request request;
+        // the chunks received so far, or null if the entry was rejected
+        final CompositeByteBuf entry;
+
+        PendingEntry(Request request, CompositeByteBuf entry) {
+            this.request = request;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,845 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CompressionType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.ByteBufList;
+
+/**
+ * A codec reading and writing the add and read messages of the protocol version 3 directly
+ * from and to {@link ByteBuf}s, without going through the generated protobuf code.
+ *
+ * <p>The messages are wire compatible with the protobuf schema, so either side of a connection
+ * can use the codec independently of the other. The entry payloads are never copied: when
+ * writing, the payload buffers are appended to the frame, and when reading, the payload is kept
+ * as a retained slice of the received frame, next to the protobuf message holding the other
+ * fields.
+ *
+ * <p>The decode methods return null for any message they don't handle, e.g. a message with a
+ * request context or with fields of another operation, which is then left to the protobuf codec.
+ */
+final class DirectCodecV3 {
+
+    private static final int WIRETYPE_VARINT = 0;
+    private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+
+    // BKPacketHeader
+    private static final int HEADER_VERSION = 1;
+    private static final int HEADER_OPERATION = 2;
+    private static final int HEADER_TXN_ID = 3;
+    private static final int HEADER_PRIORITY = 4;
+
+    // Request and Response
+    private static final int HEADER = 1;
+    private static final int RESPONSE_STATUS = 2;
+    private static final int READ_REQUEST = 100;
+    private static final int ADD_REQUEST = 101;
+    private static final int READ_RESPONSE = 100;
+    private static final int ADD_RESPONSE = 101;
+
+    // ReadRequest
+    private static final int READ_REQUEST_FLAG = 100;
+    private static final int READ_REQUEST_LEDGER_ID = 1;
+    private static final int READ_REQUEST_ENTRY_ID = 2;
+    private static final int READ_REQUEST_MASTER_KEY = 3;
+    private static final int READ_REQUEST_PREVIOUS_LAC = 4;
+    private static final int READ_REQUEST_TIMEOUT = 5;
+    private static final int READ_REQUEST_ACCEPTED_COMPRESSION = 6;
+
+    // AddRequest
+    private static final int ADD_REQUEST_FLAG = 100;
+    private static final int ADD_REQUEST_LEDGER_ID = 1;
+    private static final int ADD_REQUEST_ENTRY_ID = 2;
+    private static final int ADD_REQUEST_MASTER_KEY = 3;
+    private static final int ADD_REQUEST_BODY = 4;
+    private static final int ADD_REQUEST_WRITE_FLAGS = 5;
+    private static final int ADD_REQUEST_CHUNK_OFFSET = 6;
+    private static final int ADD_REQUEST_ENTRY_LENGTH = 7;
+
+    // ReadResponse and AddResponse
+    private static final int RESPONSE_BODY_STATUS = 1;
+    private static final int RESPONSE_BODY_LEDGER_ID = 2;
+    private static final int RESPONSE_BODY_ENTRY_ID = 3;
+    private static final int READ_RESPONSE_BODY = 4;
+    private static final int READ_RESPONSE_MAX_LAC = 5;
+    private static final int READ_RESPONSE_LAC_UPDATE_TIMESTAMP = 6;
+    private static final int READ_RESPONSE_BODY_COMPRESSION = 7;
+    private static final int READ_RESPONSE_BODY_UNCOMPRESSED_SIZE = 8;
+
+    private DirectCodecV3() {}
+
+    /**
+     * A request received with its entry payload, which is kept out of the protobuf message.
+     * The body field of the message is left empty.
+     */
+    static final class RequestWithPayload {
+        private final Request request;
+        private final ByteBuf payload;
+
+        RequestWithPayload(Request request, ByteBuf payload) {
+            this.request = request;
+            this.payload = payload;
+        }
+
+        Request getRequest() {
+            return request;
+        }
+
+        /**
+         * The payload of the request. The receiver of the request is responsible for releasing it.
+         */
+        ByteBuf getPayload() {
+            return payload;
+        }
+
+        void release() {
+            ReferenceCountUtil.release(payload);
+        }
+
+        @Override
+        public String toString() {
+            return RequestUtils.toSafeString(request);
+        }
+    }
+
+    /**
+     * A response received with its entry payload, which is kept out of the protobuf message.
+     * The body field of the message is left empty.
+     */
+    static final class ResponseWithPayload {
+        private final Response response;
+        private final ByteBuf payload;
+
+        ResponseWithPayload(Response response, ByteBuf payload) {
+            this.response = response;
+            this.payload = payload;
+        }
+
+        Response getResponse() {
+            return response;
+        }
+
+        /**
+         * The payload of the response, or null if the response has no body. The receiver of the
+         * response is responsible for releasing it.
+         */
+        ByteBuf getPayload() {
+            return payload;
+        }
+
+        void release() {
+            ReferenceCountUtil.release(payload);
+        }
+
+        @Override
+        public String toString() {
+            return response.toString();
+        }
+    }
+
+    // --- Encoding
+
+    /**
+     * Encode an add request frame.
+     *
+     * @param body the entry to add, whose buffers are appended to the frame without being copied
+     * @param writeFlags the write flags, or -1 to leave them out of the request
+     * @return the frame, including the length prefix
+     */
+    static ByteBufList encodeAddRequest(ByteBufAllocator allocator, long txnId, int priority,
+                                        long ledgerId, long entryId, byte[] masterKey, ByteBufList body,
+                                        boolean recoveryAdd, int writeFlags) {
+        ByteBufList frame = ByteBufList.clone(body);
+        frame.prepend(encodeAddRequestPrefix(allocator, OperationType.ADD_ENTRY, txnId, priority, ledgerId, entryId,
+                masterKey, body.readableBytes(), recoveryAdd, writeFlags, -1, -1));
+        return frame;
+    }
+
+    /**
+     * Encode the frames of the {@link OperationType#ADD_ENTRY_CHUNK} requests adding an entry in
+     * chunks. The frames all carry the same transaction id, and the bookie answers the last one
+     * with a single add response.
+     *
+     * @param body the entry to add, whose buffers are sliced into the frames without being copied
+     * @param chunkSize the max size of the part of the entry sent by each frame
+     * @return the frames, including their length prefixes
+     */
+    static ByteBufList encodeAddRequestChunks(ByteBufAllocator allocator, long txnId, int priority,
+                                              long ledgerId, long entryId, byte[] masterKey, ByteBufList body,
+                                              boolean recoveryAdd, int writeFlags, int chunkSize) {
+        int entryLength = body.readableBytes();
+        ByteBufList frames = ByteBufList.get();
+        int bufferIndex = 0;
+        int bufferOffset = 0;
+        for (int chunkOffset = 0; chunkOffset < entryLength; chunkOffset += chunkSize) {
+            int chunkLength = Math.min(chunkSize, entryLength - chunkOffset);
+            frames.add(encodeAddRequestPrefix(allocator, OperationType.ADD_ENTRY_CHUNK, txnId, priority, ledgerId,
+                    entryId, masterKey, chunkLength, recoveryAdd, writeFlags, chunkOffset, entryLength));
+            int remaining = chunkLength;
+            while (remaining > 0) {
+                ByteBuf buffer = body.getBuffer(bufferIndex);
+                int length = Math.min(remaining, buffer.readableBytes() - bufferOffset);
+                if (length > 0) {
+                    frames.add(buffer.retainedSlice(buffer.readerIndex() + bufferOffset, length));
+                    remaining -= length;
+                    bufferOffset += length;
+                }
+                if (bufferOffset == buffer.readableBytes()) {
+                    bufferIndex++;
+                    bufferOffset = 0;
+                }
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Encode an add request frame up to the tag and length of the body, which follows it.
+     */
+    private static ByteBuf encodeAddRequestPrefix(ByteBufAllocator allocator, OperationType operation, long txnId,
+                                                  int priority, long ledgerId, long entryId, byte[] masterKey,
+                                                  int bodySize, boolean recoveryAdd, int writeFlags,
+                                                  int chunkOffset, int entryLength) {
+        boolean chunk = chunkOffset >= 0;
+        int addSize = varintFieldSize(ADD_REQUEST_LEDGER_ID, ledgerId)
+                + varintFieldSize(ADD_REQUEST_ENTRY_ID, entryId)
+                + bytesFieldSize(ADD_REQUEST_MASTER_KEY, masterKey.length)
+                + (writeFlags >= 0 ? varintFieldSize(ADD_REQUEST_WRITE_FLAGS, writeFlags) : 0)
+                + (chunk ? varintFieldSize(ADD_REQUEST_CHUNK_OFFSET, chunkOffset)
+                        + varintFieldSize(ADD_REQUEST_ENTRY_LENGTH, entryLength) : 0)
+                + (recoveryAdd ? varintFieldSize(ADD_REQUEST_FLAG, AddRequest.Flag.RECOVERY_ADD_VALUE) : 0)
+                + bytesFieldSize(ADD_REQUEST_BODY, bodySize);
+        int headerSize = headerSize(operation, txnId, priority);
+        int frameSize = bytesFieldSize(HEADER, headerSize) + bytesFieldSize(ADD_REQUEST, addSize);
+
+        int prefixSize = 4 + frameSize - bodySize;
+        ByteBuf buf = allocator.buffer(prefixSize, prefixSize);
+        buf.writeInt(frameSize);
+        writeHeader(buf, operation, txnId, priority, headerSize);
+        writeTag(buf, ADD_REQUEST, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(buf, addSize);
+        writeVarintField(buf, ADD_REQUEST_LEDGER_ID, ledgerId);
+        writeVarintField(buf, ADD_REQUEST_ENTRY_ID, entryId);
+        writeTag(buf, ADD_REQUEST_MASTER_KEY, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(buf, masterKey.length);
+        buf.writeBytes(masterKey);
+        if (writeFlags >= 0) {
+            writeVarintField(buf, ADD_REQUEST_WRITE_FLAGS, writeFlags);
+        }
+        if (chunk) {
+            writeVarintField(buf, ADD_REQUEST_CHUNK_OFFSET, chunkOffset);
+            writeVarintField(buf, ADD_REQUEST_ENTRY_LENGTH, entryLength);
+        }
+        if (recoveryAdd) {
+            writeVarintField(buf, ADD_REQUEST_FLAG, AddRequest.Flag.RECOVERY_ADD_VALUE);
+        }
+        // the body goes last, so that its buffers can follow the ones of the other fields
+        writeTag(buf, ADD_REQUEST_BODY, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(buf, bodySize);
+        return buf;
+    }
+
+    /**
+     * Encode a read request frame, or return null if the request has other fields than a read request.
+     */
+    static ByteBuf encodeReadRequest(Request request, ByteBufAllocator allocator) {
+        if (!request.hasReadRequest() || request.getRequestContextCount() > 0) {
+            return null;
+        }
+        BKPacketHeader header = request.getHeader();
+        ReadRequest readRequest = request.getReadRequest();
+        int readSize = varintFieldSize(READ_REQUEST_LEDGER_ID, readRequest.getLedgerId())
+                + varintFieldSize(READ_REQUEST_ENTRY_ID, readRequest.getEntryId())
+                + (readRequest.hasMasterKey()
+                        ? bytesFieldSize(READ_REQUEST_MASTER_KEY, readRequest.getMasterKey().size()) : 0)
+                + (readRequest.hasPreviousLAC()
+                        ? varintFieldSize(READ_REQUEST_PREVIOUS_LAC, readRequest.getPreviousLAC()) : 0)
+                + (readRequest.hasTimeOut() ? varintFieldSize(READ_REQUEST_TIMEOUT, readRequest.getTimeOut()) : 0)
+                + (readRequest.hasAcceptedCompression()
+                        ? varintFieldSize(READ_REQUEST_ACCEPTED_COMPRESSION,
+                                          readRequest.getAcceptedCompression().getNumber()) : 0)
+                + (readRequest.hasFlag()
+                        ? varintFieldSize(READ_REQUEST_FLAG, readRequest.getFlag().getNumber()) : 0);
+        int headerSize = headerSize(header.getOperation(), header.getTxnId(), header.getPriority());
+        int frameSize = bytesFieldSize(HEADER, headerSize) + bytesFieldSize(READ_REQUEST, readSize);
+
+        ByteBuf buf = allocator.buffer(4 + frameSize, 4 + frameSize);
+        buf.writeInt(frameSize);
+        writeHeader(buf, header.getOperation(), header.getTxnId(), header.getPriority(), headerSize);
+        writeTag(buf, READ_REQUEST, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(buf, readSize);
+        writeVarintField(buf, READ_REQUEST_LEDGER_ID, readRequest.getLedgerId());
+        writeVarintField(buf, READ_REQUEST_ENTRY_ID, readRequest.getEntryId());
+        if (readRequest.hasMasterKey()) {
+            writeBytesField(buf, READ_REQUEST_MASTER_KEY, readRequest.getMasterKey());
+        }
+        if (readRequest.hasPreviousLAC()) {
+            writeVarintField(buf, READ_REQUEST_PREVIOUS_LAC, readRequest.getPreviousLAC());
+        }
+        if (readRequest.hasTimeOut()) {
+            writeVarintField(buf, READ_REQUEST_TIMEOUT, readRequest.getTimeOut());
+        }
+        if (readRequest.hasAcceptedCompression()) {
+            writeVarintField(buf, READ_REQUEST_ACCEPTED_COMPRESSION, readRequest.getAcceptedCompression().getNumber());
+        }
+        if (readRequest.hasFlag()) {
+            writeVarintField(buf, READ_REQUEST_FLAG, readRequest.getFlag().getNumber());
+        }
+        return buf;
+    }
+
+    /**
+     * Encode a read response frame.
+     *
+     * <p>Small entries are copied in the frame, as in the protocol version 2, while the buffer of
+     * larger entries is appended to the frame.
+     *
+     * @param readResponse the read response, whose body is only used if no payload is passed
+     * @param payload the entry read, or null; the frame takes the ownership of the buffer
+     * @return the frame, including the length prefix, as a {@link ByteBuf} or a {@link ByteBufList}
+     */
+    static Object encodeReadResponse(ByteBufAllocator allocator, BKPacketHeader header, StatusCode status,
+                                     ReadResponse readResponse, ByteBuf payload) {
+        ByteString body = payload == null && readResponse.hasBody() ? readResponse.getBody() : null;
+        boolean hasBody = payload != null || body != null;
+        int bodySize = payload != null ? payload.readableBytes() : (body != null ? body.size() : 0);
+        int readSize = varintFieldSize(RESPONSE_BODY_STATUS, readResponse.getStatus().getNumber())
+                + varintFieldSize(RESPONSE_BODY_LEDGER_ID, readResponse.getLedgerId())
+                + varintFieldSize(RESPONSE_BODY_ENTRY_ID, readResponse.getEntryId())
+                + (readResponse.hasMaxLAC()
+                        ? varintFieldSize(READ_RESPONSE_MAX_LAC, readResponse.getMaxLAC()) : 0)
+                + (readResponse.hasLacUpdateTimestamp()
+                        ? varintFieldSize(READ_RESPONSE_LAC_UPDATE_TIMESTAMP,
+                                          readResponse.getLacUpdateTimestamp()) : 0)
+                + (readResponse.hasBodyCompression()
+                        ? varintFieldSize(READ_RESPONSE_BODY_COMPRESSION,
+                                          readResponse.getBodyCompression().getNumber()) : 0)
+                + (readResponse.hasBodyUncompressedSize()
+                        ? varintFieldSize(READ_RESPONSE_BODY_UNCOMPRESSED_SIZE,
+                                          readResponse.getBodyUncompressedSize()) : 0)
+                + (hasBody ? bytesFieldSize(READ_RESPONSE_BODY, bodySize) : 0);
+        int headerSize = headerSize(header.getOperation(), header.getTxnId(), header.getPriority());
+        int frameSize = bytesFieldSize(HEADER, headerSize)
+                + varintFieldSize(RESPONSE_STATUS, status.getNumber())
+                + bytesFieldSize(READ_RESPONSE, readSize);
+
+        boolean appendPayload = payload != null && bodySize >= BookieProtoEncoding.SMALL_ENTRY_SIZE_THRESHOLD;
+        int bufSize = 4 + frameSize - (appendPayload ? bodySize : 0);
+        ByteBuf buf = allocator.buffer(bufSize, bufSize);
+        buf.writeInt(frameSize);
+        writeHeader(buf, header.getOperation(), header.getTxnId(), header.getPriority(), headerSize);
+        writeVarintField(buf, RESPONSE_STATUS, status.getNumber());
+        writeTag(buf, READ_RESPONSE, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(buf, readSize);
+        writeVarintField(buf, RESPONSE_BODY_STATUS, readResponse.getStatus().getNumber());
+        writeVarintField(buf, RESPONSE_BODY_LEDGER_ID, readResponse.getLedgerId());
+        writeVarintField(buf, RESPONSE_BODY_ENTRY_ID, readResponse.getEntryId());
+        if (readResponse.hasMaxLAC()) {
+            writeVarintField(buf, READ_RESPONSE_MAX_LAC, readResponse.getMaxLAC());
+        }
+        if (readResponse.hasLacUpdateTimestamp()) {
+            writeVarintField(buf, READ_RESPONSE_LAC_UPDATE_TIMESTAMP, readResponse.getLacUpdateTimestamp());
+        }
+        if (readResponse.hasBodyCompression()) {
+            writeVarintField(buf, READ_RESPONSE_BODY_COMPRESSION, readResponse.getBodyCompression().getNumber());
+        }
+        if (readResponse.hasBodyUncompressedSize()) {
+            writeVarintField(buf, READ_RESPONSE_BODY_UNCOMPRESSED_SIZE, readResponse.getBodyUncompressedSize());
+        }
+        if (!hasBody) {
+            return buf;
+        }
+        // the body goes last, so that its buffer can follow the one of the other fields
+        writeTag(buf, READ_RESPONSE_BODY, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(buf, bodySize);
+        if (appendPayload) {
+            return ByteBufList.get(buf, payload);
+        } else if (payload != null) {
+            buf.writeBytes(payload, payload.readerIndex(), bodySize);
+            payload.release();
+        } else {
+            buf.writeBytes(body.asReadOnlyByteBuffer());
+        }
+        return buf;
+    }
+
+    /**
+     * Encode an add or a read response frame, or return null if the response is neither of them.
+     */
+    static Object encodeResponse(Response response, ByteBufAllocator allocator) {
+        if (response.hasReadResponse()) {
+            return encodeReadResponse(allocator, response.getHeader(), response.getStatus(),
+                    response.getReadResponse(), null);
+        } else if (!response.hasAddResponse()) {
+            return null;
+        }
+        BKPacketHeader header = response.getHeader();
+        AddResponse addResponse = response.getAddResponse();
+        int addSize = varintFieldSize(RESPONSE_BODY_STATUS, addResponse.getStatus().getNumber())
+                + varintFieldSize(RESPONSE_BODY_LEDGER_ID, addResponse.getLedgerId())
+                + varintFieldSize(RESPONSE_BODY_ENTRY_ID, addResponse.getEntryId());
+        int headerSize = headerSize(header.getOperation(), header.getTxnId(), header.getPriority());
+        int frameSize = bytesFieldSize(HEADER, headerSize)
+                + varintFieldSize(RESPONSE_STATUS, response.getStatus().getNumber())
+                + bytesFieldSize(ADD_RESPONSE, addSize);
+
+        ByteBuf buf = allocator.buffer(4 + frameSize, 4 + frameSize);
+        buf.writeInt(frameSize);
+        writeHeader(buf, header.getOperation(), header.getTxnId(), header.getPriority(), headerSize);
+        writeVarintField(buf, RESPONSE_STATUS, response.getStatus().getNumber());
+        writeTag(buf, ADD_RESPONSE, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(buf, addSize);
+        writeVarintField(buf, RESPONSE_BODY_STATUS, addResponse.getStatus().getNumber());
+        writeVarintField(buf, RESPONSE_BODY_LEDGER_ID, addResponse.getLedgerId());
+        writeVarintField(buf, RESPONSE_BODY_ENTRY_ID, addResponse.getEntryId());
+        return buf;
+    }
+
+    private static int headerSize(OperationType operation, long txnId, int priority) {
+        return varintFieldSize(HEADER_VERSION, ProtocolVersion.VERSION_THREE_VALUE)
+                + varintFieldSize(HEADER_OPERATION, operation.getNumber())
+                + varintFieldSize(HEADER_TXN_ID, txnId)
+                + (priority != 0 ? varintFieldSize(HEADER_PRIORITY, priority & 0xFFFFFFFFL) : 0);
+    }
+
+    private static void writeHeader(ByteBuf buf, OperationType operation, long txnId, int priority, int headerSize) {
+        writeTag(buf, HEADER, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(buf, headerSize);
+        writeVarintField(buf, HEADER_VERSION, ProtocolVersion.VERSION_THREE_VALUE);
+        writeVarintField(buf, HEADER_OPERATION, operation.getNumber());
+        writeVarintField(buf, HEADER_TXN_ID, txnId);
+        if (priority != 0) {
+            // uint32
+            writeVarintField(buf, HEADER_PRIORITY, priority & 0xFFFFFFFFL);
+        }
+    }
+
+    private static void writeBytesField(ByteBuf buf, int field, ByteString value) {
+        writeTag(buf, field, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(buf, value.size());
+        buf.writeBytes(value.asReadOnlyByteBuffer());
+    }
+
+    /**
+     * Write a varint field. Negative int32 and enum values are sign extended, as protobuf does.
+     */
+    private static void writeVarintField(ByteBuf buf, int field, long value) {
+        writeTag(buf, field, WIRETYPE_VARINT);
+        writeVarint64(buf, value);
+    }
+
+    private static void writeTag(ByteBuf buf, int field, int wireType) {
+        writeVarint32(buf, (field << 3) | wireType);
+    }
+
+    private static void writeVarint32(ByteBuf buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
+    private static void writeVarint64(ByteBuf buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.writeByte(((int) value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte((int) value);
+    }
+
+    private static int varintFieldSize(int field, long value) {
+        return varintSize(field << 3) + varintSize(value);
+    }
+
+    private static int bytesFieldSize(int field, int length) {
+        return varintSize(field << 3) + varintSize(length) + length;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    // --- Decoding
+
+    /**
+     * Decode a request frame.
+     *
+     * @return a {@link Request} for a read request, a {@link RequestWithPayload} for an add request,
+     *         or null if the frame must be decoded by the protobuf codec
+     */
+    static Object decodeRequest(ByteBuf packet) {
+        int startIndex = packet.readerIndex();
+        Object request;
+        try {
+            request = parseRequest(packet);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            // malformed, let the protobuf codec report it
+            request = null;
+        }
+        if (request == null) {
+            packet.readerIndex(startIndex);
+        }
+        return request;
+    }
+
+    private static Object parseRequest(ByteBuf packet) {
+        BKPacketHeader header = null;
+        ReadRequest readRequest = null;
+        AddRequest.Builder addRequest = null;
+        int payloadIndex = -1;
+        int payloadSize = 0;
+        while (packet.isReadable()) {
+            int tag = readVarint32(packet);
+            if (tag == tag(HEADER, WIRETYPE_LENGTH_DELIMITED) && header == null) {
+                header = decodeHeader(packet, readLength(packet));
+            } else if (tag == tag(READ_REQUEST, WIRETYPE_LENGTH_DELIMITED) && readRequest == null) {
+                readRequest = decodeReadRequest(packet, readLength(packet));
+            } else if (tag == tag(ADD_REQUEST, WIRETYPE_LENGTH_DELIMITED) && addRequest == null) {
+                int end = readLength(packet) + packet.readerIndex();
+                addRequest = AddRequest.newBuilder();
+                while (packet.readerIndex() < end) {
+                    int addTag = readVarint32(packet);
+                    switch (addTag) {
+                        case (ADD_REQUEST_LEDGER_ID << 3) | WIRETYPE_VARINT:
+                            addRequest.setLedgerId(readVarint64(packet));
+                            break;
+                        case (ADD_REQUEST_ENTRY_ID << 3) | WIRETYPE_VARINT:
+                            addRequest.setEntryId(readVarint64(packet));
+                            break;
+                        case (ADD_REQUEST_MASTER_KEY << 3) | WIRETYPE_LENGTH_DELIMITED:
+                            addRequest.setMasterKey(readBytes(packet, readLength(packet)));
+                            break;
+                        case (ADD_REQUEST_BODY << 3) | WIRETYPE_LENGTH_DELIMITED:
+                            payloadSize = readLength(packet);
+                            payloadIndex = packet.readerIndex();
+                            packet.skipBytes(payloadSize);
+                            break;
+                        case (ADD_REQUEST_WRITE_FLAGS << 3) | WIRETYPE_VARINT:
+                            addRequest.setWriteFlags((int) readVarint64(packet));
+                            break;
+                        case (ADD_REQUEST_CHUNK_OFFSET << 3) | WIRETYPE_VARINT:
+                            addRequest.setChunkOffset((int) readVarint64(packet));
+                            break;
+                        case (ADD_REQUEST_ENTRY_LENGTH << 3) | WIRETYPE_VARINT:
+                            addRequest.setEntryLength((int) readVarint64(packet));
+                            break;
+                        case (ADD_REQUEST_FLAG << 3) | WIRETYPE_VARINT:
+                            AddRequest.Flag flag = AddRequest.Flag.forNumber((int) readVarint64(packet));
+                            if (flag == null) {
+                                return null;
+                            }
+                            addRequest.setFlag(flag);
+                            break;
+                        default:
+                            return null;
+                    }
+                }
+                if (packet.readerIndex() != end || payloadIndex < 0) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        if (header == null || (readRequest == null) == (addRequest == null)) {
+            return null;
+        }
+        if (readRequest != null) {
+            return Request.newBuilder().setHeader(header).setReadRequest(readRequest).build();
+        }
+        if (!addRequest.hasLedgerId() || !addRequest.hasEntryId() || !addRequest.hasMasterKey()) {
+            return null;
+        }
+        Request request = Request.newBuilder()
+                .setHeader(header)
+                .setAddRequest(addRequest.setBody(ByteString.EMPTY))
+                .build();
+        return new RequestWithPayload(request, packet.retainedSlice(payloadIndex, payloadSize));
+    }
+
+    private static ReadRequest decodeReadRequest(ByteBuf packet, int length) {
+        int end = packet.readerIndex() + length;
+        ReadRequest.Builder readRequest = ReadRequest.newBuilder();
+        while (packet.readerIndex() < end) {
+            int tag = readVarint32(packet);
+            switch (tag) {
+                case (READ_REQUEST_LEDGER_ID << 3) | WIRETYPE_VARINT:
+                    readRequest.setLedgerId(readVarint64(packet));
+                    break;
+                case (READ_REQUEST_ENTRY_ID << 3) | WIRETYPE_VARINT:
+                    readRequest.setEntryId(readVarint64(packet));
+                    break;
+                case (READ_REQUEST_MASTER_KEY << 3) | WIRETYPE_LENGTH_DELIMITED:
+                    readRequest.setMasterKey(readBytes(packet, readLength(packet)));
+                    break;
+                case (READ_REQUEST_PREVIOUS_LAC << 3) | WIRETYPE_VARINT:
+                    readRequest.setPreviousLAC(readVarint64(packet));
+                    break;
+                case (READ_REQUEST_TIMEOUT << 3) | WIRETYPE_VARINT:
+                    readRequest.setTimeOut(readVarint64(packet));
+                    break;
+                case (READ_REQUEST_FLAG << 3) | WIRETYPE_VARINT:
+                    ReadRequest.Flag flag = ReadRequest.Flag.forNumber((int) readVarint64(packet));
+                    if (flag == null) {
+                        throw new IllegalArgumentException("Unknown read request flag");
+                    }
+                    readRequest.setFlag(flag);
+                    break;
+                case (READ_REQUEST_ACCEPTED_COMPRESSION << 3) | WIRETYPE_VARINT:
+                    CompressionType compression = CompressionType.forNumber((int) readVarint64(packet));
+                    if (compression == null) {
+                        throw new IllegalArgumentException("Unknown compression");
+                    }
+                    readRequest.setAcceptedCompression(compression);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected read request field");
+            }
+        }
+        if (packet.readerIndex() != end || !readRequest.hasLedgerId() || !readRequest.hasEntryId()) {
+            throw new IllegalArgumentException("Incomplete read request");
+        }
+        return readRequest.build();
+    }
+
+    /**
+     * Decode a response frame.
+     *
+     * @return a {@link Response} for an add response, a {@link ResponseWithPayload} for a read response,
+     *         or null if the frame must be decoded by the protobuf codec
+     */
+    static Object decodeResponse(ByteBuf packet) {
+        int startIndex = packet.readerIndex();
+        Object response;
+        try {
+            response = parseResponse(packet);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            // malformed, let the protobuf codec report it
+            response = null;
+        }
+        if (response == null) {
+            packet.readerIndex(startIndex);
+        }
+        return response;
+    }
+
+    private static Object parseResponse(ByteBuf packet) {
+        BKPacketHeader header = null;
+        StatusCode status = null;
+        AddResponse addResponse = null;
+        ReadResponse.Builder readResponse = null;
+        int payloadIndex = -1;
+        int payloadSize = 0;
+        while (packet.isReadable()) {
+            int tag = readVarint32(packet);
+            if (tag == tag(HEADER, WIRETYPE_LENGTH_DELIMITED) && header == null) {
+                header = decodeHeader(packet, readLength(packet));
+            } else if (tag == tag(RESPONSE_STATUS, WIRETYPE_VARINT) && status == null) {
+                status = readStatus(packet);
+            } else if (tag == tag(ADD_RESPONSE, WIRETYPE_LENGTH_DELIMITED) && addResponse == null) {
+                int end = readLength(packet) + packet.readerIndex();
+                AddResponse.Builder builder = AddResponse.newBuilder();
+                while (packet.readerIndex() < end) {
+                    int addTag = readVarint32(packet);
+                    switch (addTag) {
+                        case (RESPONSE_BODY_STATUS << 3) | WIRETYPE_VARINT:
+                            builder.setStatus(readStatus(packet));
+                            break;
+                        case (RESPONSE_BODY_LEDGER_ID << 3) | WIRETYPE_VARINT:
+                            builder.setLedgerId(readVarint64(packet));
+                            break;
+                        case (RESPONSE_BODY_ENTRY_ID << 3) | WIRETYPE_VARINT:
+                            builder.setEntryId(readVarint64(packet));
+                            break;
+                        default:
+                            return null;
+                    }
+                }
+                if (packet.readerIndex() != end || !builder.isInitialized()) {
+                    return null;
+                }
+                addResponse = builder.build();
+            } else if (tag == tag(READ_RESPONSE, WIRETYPE_LENGTH_DELIMITED) && readResponse == null) {
+                int end = readLength(packet) + packet.readerIndex();
+                readResponse = ReadResponse.newBuilder();
+                while (packet.readerIndex() < end) {
+                    int readTag = readVarint32(packet);
+                    switch (readTag) {
+                        case (RESPONSE_BODY_STATUS << 3) | WIRETYPE_VARINT:
+                            readResponse.setStatus(readStatus(packet));
+                            break;
+                        case (RESPONSE_BODY_LEDGER_ID << 3) | WIRETYPE_VARINT:
+                            readResponse.setLedgerId(readVarint64(packet));
+                            break;
+                        case (RESPONSE_BODY_ENTRY_ID << 3) | WIRETYPE_VARINT:
+                            readResponse.setEntryId(readVarint64(packet));
+                            break;
+                        case (READ_RESPONSE_BODY << 3) | WIRETYPE_LENGTH_DELIMITED:
+                            payloadSize = readLength(packet);
+                            payloadIndex = packet.readerIndex();
+                            packet.skipBytes(payloadSize);
+                            break;
+                        case (READ_RESPONSE_MAX_LAC << 3) | WIRETYPE_VARINT:
+                            readResponse.setMaxLAC(readVarint64(packet));
+                            break;
+                        case (READ_RESPONSE_LAC_UPDATE_TIMESTAMP << 3) | WIRETYPE_VARINT:
+                            readResponse.setLacUpdateTimestamp(readVarint64(packet));
+                            break;
+                        case (READ_RESPONSE_BODY_COMPRESSION << 3) | WIRETYPE_VARINT:
+                            CompressionType compression = CompressionType.forNumber((int) readVarint64(packet));
+                            if (compression == null) {
+                                return null;
+                            }
+                            readResponse.setBodyCompression(compression);
+                            break;
+                        case (READ_RESPONSE_BODY_UNCOMPRESSED_SIZE << 3) | WIRETYPE_VARINT:
+                            readResponse.setBodyUncompressedSize((int) readVarint64(packet));
+                            break;
+                        default:
+                            return null;
+                    }
+                }
+                if (packet.readerIndex() != end || !readResponse.isInitialized()) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        if (header == null || status == null || (addResponse == null) == (readResponse == null)) {
+            return null;
+        }
+        if (addResponse != null) {
+            return Response.newBuilder().setHeader(header).setStatus(status).setAddResponse(addResponse).build();
+        }
+        Response response = Response.newBuilder()
+                .setHeader(header)
+                .setStatus(status)
+                .setReadResponse(readResponse)
+                .build();
+        return new ResponseWithPayload(response,
+                payloadIndex < 0 ? null : packet.retainedSlice(payloadIndex, payloadSize));
+    }
+
+    private static BKPacketHeader decodeHeader(ByteBuf packet, int length) {
+        int end = packet.readerIndex() + length;
+        BKPacketHeader.Builder header = BKPacketHeader.newBuilder();
+        while (packet.readerIndex() < end) {
+            int tag = readVarint32(packet);
+            switch (tag) {
+                case (HEADER_VERSION << 3) | WIRETYPE_VARINT:
+                    ProtocolVersion version = ProtocolVersion.forNumber((int) readVarint64(packet));
+                    if (version == null) {
+                        throw new IllegalArgumentException("Unknown protocol version");
+                    }
+                    header.setVersion(version);
+                    break;
+                case (HEADER_OPERATION << 3) | WIRETYPE_VARINT:
+                    OperationType operation = OperationType.forNumber((int) readVarint64(packet));
+                    if (operation == null) {
+                        throw new IllegalArgumentException("Unknown operation");
+                    }
+                    header.setOperation(operation);
+                    break;
+                case (HEADER_TXN_ID << 3) | WIRETYPE_VARINT:
+                    header.setTxnId(readVarint64(packet));
+                    break;
+                case (HEADER_PRIORITY << 3) | WIRETYPE_VARINT:
+                    header.setPriority((int) readVarint64(packet));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected header field");
+            }
+        }
+        if (packet.readerIndex() != end || !header.isInitialized()) {
+            throw new IllegalArgumentException("Incomplete header");
+        }
+        return header.build();
+    }
+
+    private static StatusCode readStatus(ByteBuf packet) {
+        StatusCode status = StatusCode.forNumber((int) readVarint64(packet));
+        if (status == null) {
+            throw new IllegalArgumentException("Unknown status code");
+        }
+        return status;
+    }
+
+    private static ByteString readBytes(ByteBuf packet, int length) {
+        byte[] bytes = new byte[length];
+        packet.readBytes(bytes);
+        return UnsafeByteOperations.unsafeWrap(bytes);
+    }
+
+    private static int readLength(ByteBuf packet) {
+        int length = readVarint32(packet);
+        if (length < 0 || length > packet.readableBytes()) {
+            throw new IllegalArgumentException("Invalid length " + length);
+        }
+        return length;
+    }
+
+    private static int tag(int field, int wireType) {
+        return (field << 3) | wireType;
+    }
+
+    private static int readVarint32(ByteBuf packet) {
+        return (int) readVarint64(packet);
+    }
+
+    private static long readVarint64(ByteBuf packet) {
+        long result = 0;
+        for (int shift = 0; shift < 63; shift += 7) {
+            byte b = packet.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        // the 10th byte only carries the sign bit, and protobuf does not read the other bits of
+        // a non canonical byte consistently, so those are left to it
+        if (packet.readByte() != 1) {
+            throw new IllegalArgumentException("Malformed varint");
+        }
+        return result | Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.compression.Snappy;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CompressionType;
+
+/**
+ * Compression of the entries sent in read responses.
+ *
+ * <p>{@link CompressionType#SNAPPY} is fast and suits entries read at a high rate, while
+ * {@link CompressionType#DEFLATE} trades more CPU for smaller responses.
+ */
+final class EntryCompression {
+
+    // the snappy codec of netty handles blocks of up to 32KB, larger entries are split in blocks
+    // compressed on their own, each one prefixed by its compressed length
+    private static final int SNAPPY_BLOCK_SIZE = 32 * 1024;
+
+    private EntryCompression() {}
+
+    /**
+     * Compress an entry.
+     *
+     * @param type the compression to use
+     * @param entry the entry, which is left untouched
+     * @return the compressed entry, or null if it isn't smaller than the entry
+     */
+    static ByteBuf compress(CompressionType type, ByteBuf entry, ByteBufAllocator allocator) {
+        int length = entry.readableBytes();
+        switch (type) {
+            case SNAPPY: {
+                // the worst case of snappy is about 1/6 larger than the input
+                int blocks = (length + SNAPPY_BLOCK_SIZE - 1) / SNAPPY_BLOCK_SIZE;
+                ByteBuf compressed = allocator.buffer(blocks * 40 + length + length / 6);
+                Snappy snappy = new Snappy();
+                for (int offset = 0; offset < length; offset += SNAPPY_BLOCK_SIZE) {
+                    int blockLength = Math.min(SNAPPY_BLOCK_SIZE, length - offset);
+                    int lengthIndex = compressed.writerIndex();
+                    compressed.writeInt(0);
+                    snappy.encode(entry.slice(entry.readerIndex() + offset, blockLength), compressed, blockLength);
+                    snappy.reset();
+                    compressed.setInt(lengthIndex, compressed.writerIndex() - lengthIndex - 4);
+                }
+                return smallerOrRelease(compressed, length);
+            }
+            case DEFLATE: {
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try {
+                    deflater.setInput(ByteBufUtil.getBytes(entry, entry.readerIndex(), length, false));
+                    deflater.finish();
+                    // stop once the output isn't smaller than the entry
+                    byte[] output = new byte[length];
+                    int compressedLength = 0;
+                    while (!deflater.finished() && compressedLength < length) {
+                        compressedLength += deflater.deflate(output, compressedLength, length - compressedLength);
+                    }
+                    if (!deflater.finished()) {
+                        return null;
+                    }
+                    ByteBuf compressed = allocator.buffer(compressedLength, compressedLength);
+                    compressed.writeBytes(output, 0, compressedLength);
+                    return compressed;
+                } finally {
+                    deflater.end();
+                }
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Decompress an entry.
+     *
+     * @param type the compression of the entry
+     * @param compressed the compressed entry, which is left untouched
+     * @param uncompressedSize the size of the entry
+     * @param maxSize the max size of the entry, since its size comes from the wire
+     * @return the entry
+     * @throws IOException if the entry is corrupted, or larger than the max size
+     */
+    static ByteBuf decompress(CompressionType type, ByteBuf compressed, int uncompressedSize, int maxSize,
+                              ByteBufAllocator allocator) throws IOException {
+        if (uncompressedSize < 0 || uncompressedSize > maxSize) {
+            throw new IOException("Invalid uncompressed entry size " + uncompressedSize);
+        }
+        // the entry can't grow beyond its declared size
+        ByteBuf entry = allocator.buffer(uncompressedSize, uncompressedSize);
+        try {
+            switch (type) {
+                case SNAPPY: {
+                    Snappy snappy = new Snappy();
+                    ByteBuf blocks = compressed.duplicate();
+                    while (blocks.isReadable()) {
+                        int blockLength = blocks.readInt();
+                        snappy.decode(blocks.readSlice(blockLength), entry);
+                        snappy.reset();
+                    }
+                    break;
+                }
+                case DEFLATE: {
+                    Inflater inflater = new Inflater();
+                    try {
+                        inflater.setInput(ByteBufUtil.getBytes(compressed));
+                        byte[] output = new byte[uncompressedSize];
+                        int length = 0;
+                        while (!inflater.finished() && length < uncompressedSize) {
+                            int n = inflater.inflate(output, length, uncompressedSize - length);
+                            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                                break;
+                            }
+                            length += n;
+                        }
+                        if (!inflater.finished()) {
+                            throw new IOException("Truncated or oversized deflate entry");
+                        }
+                        entry.writeBytes(output, 0, length);
+                    } catch (DataFormatException e) {
+                        throw new IOException("Corrupted deflate entry", e);
+                    } finally {
+                        inflater.end();
+                    }
+                    break;
+                }
+                default:
+                    throw new IOException("Unsupported entry compression " + type);
+            }
+        } catch (IOException e) {
+            entry.release();
+            throw e;
+        } catch (RuntimeException e) {
+            // snappy reports corrupted input with unchecked exceptions
+            entry.release();
+            throw new IOException("Corrupted " + type + " entry", e);
+        }
+        if (entry.readableBytes() != uncompressedSize) {
+            entry.release();
+            throw new IOException("Entry size " + entry.readableBytes() + " doesn't match the expected size "
+                    + uncompressedSize);
+        }
+        return entry;
+    }
+
+    private static ByteBuf smallerOrRelease(ByteBuf compressed, int length) {
+        if (compressed.readableBytes() >= length) {
+            compressed.release();
+            return null;
+        }
+        return compressed;
+    }
+}
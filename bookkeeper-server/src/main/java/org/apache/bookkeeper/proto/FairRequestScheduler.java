@@ -0,0 +1,464 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_SCHEDULER_PENDING;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_SCHEDULER_QUEUE_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.bookkeeper.common.util.MdcUtils;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.ThreadRegistry;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * A scheduler for requests that don't need to run in ledger order, e.g. reads.
+ *
+ * <p>Unlike an {@link org.apache.bookkeeper.common.util.OrderedExecutor}, requests are not bound
+ * to the thread of their ledger: a hot ledger or a few slow reads don't leave requests waiting
+ * behind one thread while the others are idle.
+ *
+ * <p>Requests are queued per connection, and the connections are served with deficit round robin:
+ * each time a connection comes up, it gets a quantum of credits that it spends on its requests,
+ * according to their cost. A connection with a large backlog then can't delay the requests of the
+ * other connections by more than a round. High priority requests are always served first.
+ *
+ * <p>To keep the workers from contending on a single lock, the connections are spread over shards,
+ * each with its own queues, lock and workers. The fairness and the priorities hold within a shard.
+ * A worker whose shard is empty takes requests from the other shards, so that no request waits
+ * while a worker is idle.
+ */
+@StatsDoc(
+    name = SERVER_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Fair request scheduler stats"
+)
+class FairRequestScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(FairRequestScheduler.class);
+
+    /**
+     * The cost of a request is capped, so that it is served within a bounded number of rounds.
+     */
+    private static final int MAX_QUANTA_PER_REQUEST = 64;
+
+    /**
+     * The number of workers per shard, when the number of shards isn't configured.
+     */
+    private static final int DEFAULT_THREADS_PER_SHARD = 4;
+
+    /**
+     * The class of a request. Classes are served in the order of their declaration.
+     */
+    enum RequestClass {
+        HIGH_PRIORITY,
+        NORMAL
+    }
+
+    private final String name;
+    private final int quantum;
+    private final boolean preserveMdc;
+    private final Thread[] workers;
+    private final ClassStats[] classStats;
+    private final Shard[] shards;
+
+    private volatile boolean running = true;
+
+    /**
+     * Create a scheduler.
+     *
+     * @param numShards the number of shards, or 0 for one shard every {@value DEFAULT_THREADS_PER_SHARD}
+     *                  threads. There are never more shards than threads.
+     */
+    FairRequestScheduler(String name, int numThreads, int numShards, int maxPendingRequests, int quantum,
+                         boolean preserveMdc, StatsLogger statsLogger) {
+        this.name = name;
+        this.quantum = Math.max(1, quantum);
+        this.preserveMdc = preserveMdc;
+        this.classStats = new ClassStats[RequestClass.values().length];
+        for (RequestClass requestClass : RequestClass.values()) {
+            classStats[requestClass.ordinal()] = new ClassStats(maxPendingRequests,
+                    statsLogger.scopeLabel("class", requestClass.name().toLowerCase()));
+        }
+
+        if (numShards <= 0) {
+            numShards = (numThreads + DEFAULT_THREADS_PER_SHARD - 1) / DEFAULT_THREADS_PER_SHARD;
+        }
+        numShards = Math.max(1, Math.min(numShards, numThreads));
+        this.shards = new Shard[numShards];
+        for (int i = 0; i < numShards; i++) {
+            shards[i] = new Shard(i);
+        }
+
+        ThreadFactory threadFactory = new DefaultThreadFactory(name);
+        this.workers = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final int idx = i;
+            final Shard shard = shards[i % numShards];
+            workers[i] = threadFactory.newThread(() -> {
+                ThreadRegistry.register(name, idx);
+                runWorker(shard);
+            });
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queue a request.
+     *
+     * @param connection the connection the request was received on
+     * @param requestClass the class of the request
+     * @param cost the cost of the request, in the same unit as the quantum
+     * @param request the request to run
+     * @throws RejectedExecutionException if too many requests of this class are pending,
+     *                                    or the scheduler is shut down
+     */
+    void execute(Object connection, RequestClass requestClass, int cost, Runnable request) {
+        if (!running) {
+            throw new RejectedExecutionException(name + " is shut down");
+        }
+        ClassStats stats = classStats[requestClass.ordinal()];
+        if (stats.pending.incrementAndGet() > stats.maxPending && stats.maxPending > 0) {
+            stats.pending.decrementAndGet();
+            throw new RejectedExecutionException("Too many pending " + requestClass + " requests in " + name);
+        }
+        Task task = new Task(request, Math.max(1, Math.min(cost, quantum * MAX_QUANTA_PER_REQUEST)), stats);
+        Shard shard = shards[MathUtils.signSafeMod(connection.hashCode(), shards.length)];
+        boolean wokeWorker;
+        shard.lock.lock();
+        try {
+            if (!running) {
+                stats.pending.decrementAndGet();
+                throw new RejectedExecutionException(name + " is shut down");
+            }
+            shard.enqueue(connection, requestClass, task);
+            wokeWorker = shard.signalWorker();
+        } finally {
+            shard.lock.unlock();
+        }
+        if (!wokeWorker) {
+            // all the workers of the shard are busy, let an idle worker of another shard take the request
+            for (int i = 1; i < shards.length; i++) {
+                Shard other = shards[(shard.index + i) % shards.length];
+                if (other.idleWorkers > 0 && other.wakeUpWorker()) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void runWorker(Shard shard) {
+        Task task;
+        while ((task = takeTask(shard)) != null) {
+            task.stats.queueWaitStats.registerSuccessfulEvent(
+                    MathUtils.elapsedNanos(task.enqueueNanos), TimeUnit.NANOSECONDS);
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOG.error("Unexpected exception while running request in {}", name, t);
+            }
+        }
+    }
+
+    /**
+     * Take the next request to run, from the shard of the worker first, then from the other shards.
+     *
+     * @return the request, or null if the scheduler is shut down and the shard is empty
+     */
+    private Task takeTask(Shard shard) {
+        while (true) {
+            Task task = shard.poll();
+            if (task != null) {
+                return task;
+            }
+            for (int i = 1; i < shards.length && task == null; i++) {
+                task = shards[(shard.index + i) % shards.length].trySteal();
+            }
+            if (task != null) {
+                return task;
+            }
+            if (!shard.awaitWork()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Stop accepting requests, and wait for the workers to run the pending ones.
+     */
+    void shutdown(long timeout, TimeUnit unit) {
+        running = false;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                shard.notEmpty.signalAll();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        long deadlineNanos = MathUtils.nowInNano() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - MathUtils.nowInNano())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (worker.isAlive()) {
+                LOG.warn("Worker {} of {} didn't stop in time, interrupting it", worker.getName(), name);
+                worker.interrupt();
+            }
+        }
+    }
+
+    private class Task {
+        final Runnable runnable;
+        final int cost;
+        final long enqueueNanos;
+        final Map<String, String> mdcContextMap;
+        final ClassStats stats;
+
+        Task(Runnable runnable, int cost, ClassStats stats) {
+            this.runnable = runnable;
+            this.cost = cost;
+            this.stats = stats;
+            this.enqueueNanos = MathUtils.nowInNano();
+            this.mdcContextMap = preserveMdc ? MDC.getCopyOfContextMap() : null;
+        }
+
+        void run() {
+            if (!preserveMdc) {
+                runnable.run();
+                return;
+            }
+            MdcUtils.restoreContext(mdcContextMap);
+            try {
+                runnable.run();
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    private static class ConnectionQueue {
+        final Object connection;
+        final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        int deficit = 0;
+
+        ConnectionQueue(Object connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * The requests of a class queued in a shard.
+     */
+    private static class ClassQueue {
+        final Map<Object, ConnectionQueue> connections = new HashMap<>();
+        final ArrayDeque<ConnectionQueue> activeConnections = new ArrayDeque<>();
+    }
+
+    /**
+     * A set of connections, with their queues and the workers serving them.
+     */
+    private class Shard {
+        final int index;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition notEmpty = lock.newCondition();
+        final ClassQueue[] classQueues;
+        // updated with the lock held, read without it to pick a shard to wake up or to steal from
+        volatile int queued = 0;
+        // the waiting workers that are not woken up yet
+        volatile int idleWorkers = 0;
+        int wakeUps = 0;
+
+        Shard(int index) {
+            this.index = index;
+            this.classQueues = new ClassQueue[RequestClass.values().length];
+            for (int i = 0; i < classQueues.length; i++) {
+                classQueues[i] = new ClassQueue();
+            }
+        }
+
+        /**
+         * Must be called with the lock held.
+         */
+        void enqueue(Object connection, RequestClass requestClass, Task task) {
+            ClassQueue classQueue = classQueues[requestClass.ordinal()];
+            ConnectionQueue connectionQueue = classQueue.connections.get(connection);
+            if (connectionQueue == null) {
+                connectionQueue = new ConnectionQueue(connection);
+                classQueue.connections.put(connection, connectionQueue);
+                classQueue.activeConnections.addLast(connectionQueue);
+            }
+            connectionQueue.tasks.addLast(task);
+            queued++;
+        }
+
+        Task poll() {
+            lock.lock();
+            try {
+                return pollTask();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Take a request for a worker of another shard, unless this shard is empty or busy.
+         */
+        Task trySteal() {
+            if (queued == 0 || !lock.tryLock()) {
+                return null;
+            }
+            try {
+                return pollTask();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wake up an idle worker to take a request of another shard.
+         *
+         * @return whether a worker was idle
+         */
+        boolean wakeUpWorker() {
+            lock.lock();
+            try {
+                return signalWorker();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wake up a waiting worker, unless they are all woken up already.
+         * Must be called with the lock held.
+         */
+        private boolean signalWorker() {
+            if (idleWorkers == 0) {
+                return false;
+            }
+            idleWorkers--;
+            wakeUps++;
+            notEmpty.signal();
+            return true;
+        }
+
+        /**
+         * Wait for requests to be queued in this shard, or for a wake up to take the requests of another shard.
+         *
+         * @return false if the scheduler is shut down and the shard is empty
+         */
+        boolean awaitWork() {
+            lock.lock();
+            try {
+                if (queued > 0) {
+                    return true;
+                }
+                idleWorkers++;
+                while (wakeUps == 0 && running) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (wakeUps > 0) {
+                    wakeUps--;
+                    return true;
+                }
+                idleWorkers--;
+                return queued > 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Take the next request to run, from the first class with pending requests.
+         * Must be called with the lock held.
+         */
+        private Task pollTask() {
+            for (ClassQueue classQueue : classQueues) {
+                ArrayDeque<ConnectionQueue> active = classQueue.activeConnections;
+                while (!active.isEmpty()) {
+                    ConnectionQueue connectionQueue = active.peekFirst();
+                    Task task = connectionQueue.tasks.peekFirst();
+                    if (task.cost > connectionQueue.deficit) {
+                        // the connection used its credits for this round, move on to the next one
+                        connectionQueue.deficit += quantum;
+                        active.addLast(active.pollFirst());
+                        continue;
+                    }
+                    connectionQueue.tasks.pollFirst();
+                    connectionQueue.deficit -= task.cost;
+                    if (connectionQueue.tasks.isEmpty()) {
+                        // idle connections don't keep their credits
+                        active.pollFirst();
+                        classQueue.connections.remove(connectionQueue.connection);
+                    }
+                    queued--;
+                    task.stats.pending.decrementAndGet();
+                    return task;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class ClassStats {
+        final int maxPending;
+        final AtomicInteger pending = new AtomicInteger();
+
+        @StatsDoc(
+            name = REQUEST_SCHEDULER_QUEUE_WAIT,
+            help = "time spent by requests of a class in the queues of the fair request scheduler"
+        )
+        final OpStatsLogger queueWaitStats;
+
+        ClassStats(int maxPending, StatsLogger statsLogger) {
+            this.maxPending = maxPending;
+            this.queueWaitStats = statsLogger.getOpStatsLogger(REQUEST_SCHEDULER_QUEUE_WAIT);
+            statsLogger.registerGauge(REQUEST_SCHEDULER_PENDING, new Gauge<Number>() {
+                @Override
+                public Number getDefaultValue() {
+                    return 0;
+                }
+
+                @Override
+                public Number getSample() {
+                    return pending.get();
+                }
+            });
+        }
+    }
+}
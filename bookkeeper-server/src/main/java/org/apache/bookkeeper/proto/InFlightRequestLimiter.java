@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.channel.Channel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the requests in flight on the bookie, per channel and over all the channels.
+ *
+ * <p>A channel that exceeds its budget of requests or bytes in flight, or that receives a request
+ * while the bytes in flight over all the channels exceed the global budget, stops reading from its
+ * socket until the requests in flight are back within the budgets. Unlike the max adds and reads
+ * in progress, the limits never block the event loop of the channel, so the other channels of the
+ * event loop keep being served.
+ *
+ * <p>The bytes in flight are the bytes of the entries of the add requests, since they are held in
+ * memory until the entries are added.
+ */
+class InFlightRequestLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InFlightRequestLimiter.class);
+
+    private final int maxRequestsPerChannel;
+    private final long maxBytesPerChannel;
+    private final long maxBytes;
+    private final RequestStats requestStats;
+
+    // the channels throttled because the global budget was exceeded
+    private final Set<ChannelBudget> globallyThrottled = ConcurrentHashMap.newKeySet();
+
+    InFlightRequestLimiter(int maxRequestsPerChannel, long maxBytesPerChannel, long maxBytes,
+                           RequestStats requestStats) {
+        this.maxRequestsPerChannel = maxRequestsPerChannel;
+        this.maxBytesPerChannel = maxBytesPerChannel;
+        this.maxBytes = maxBytes;
+        this.requestStats = requestStats;
+    }
+
+    boolean isEnabled() {
+        return maxRequestsPerChannel > 0 || maxBytesPerChannel > 0 || maxBytes > 0;
+    }
+
+    /**
+     * Track a request received from a channel.
+     *
+     * @param bytes the bytes held by the request until it is completed
+     */
+    void onRequestStart(BookieRequestHandler requestHandler, long bytes) {
+        ChannelBudget budget = requestHandler.getInFlightBudget(this);
+        budget.requests.incrementAndGet();
+        budget.bytes.addAndGet(bytes);
+        long totalBytes = requestStats.trackInFlightRequestBytes(bytes);
+        if (maxBytes > 0 && totalBytes > maxBytes) {
+            globallyThrottled.add(budget);
+        }
+        budget.updateThrottling();
+    }
+
+    /**
+     * Untrack a request once it is completed, resuming the channels back within the budgets.
+     *
+     * @param bytes the bytes the request was tracked with
+     */
+    void onRequestFinish(BookieRequestHandler requestHandler, long bytes) {
+        ChannelBudget budget = requestHandler.getInFlightBudget(this);
+        budget.requests.decrementAndGet();
+        budget.bytes.addAndGet(-bytes);
+        long totalBytes = requestStats.untrackInFlightRequestBytes(bytes);
+        budget.updateThrottling();
+        if (totalBytes <= maxBytes && !globallyThrottled.isEmpty()) {
+            for (ChannelBudget throttled : globallyThrottled) {
+                if (globallyThrottled.remove(throttled)) {
+                    throttled.updateThrottling();
+                }
+            }
+        }
+    }
+
+    boolean isThrottled(BookieRequestHandler requestHandler) {
+        ChannelBudget budget = requestHandler.getInFlightBudget(this);
+        synchronized (budget) {
+            return budget.throttled;
+        }
+    }
+
+    ChannelBudget newChannelBudget(Channel channel) {
+        return new ChannelBudget(channel);
+    }
+
+    /**
+     * The requests in flight of a channel.
+     */
+    final class ChannelBudget {
+
+        private final AtomicInteger requests = new AtomicInteger(0);
+        private final AtomicLong bytes = new AtomicLong(0);
+        private final Channel channel;
+
+        // guarded by this
+        private boolean throttled = false;
+        private long throttlingStartNanos;
+        private int throttleCount = 0;
+        private boolean closed = false;
+
+        private ChannelBudget(Channel channel) {
+            this.channel = channel;
+        }
+
+        private boolean exceeded() {
+            return (maxRequestsPerChannel > 0 && requests.get() > maxRequestsPerChannel)
+                    || (maxBytesPerChannel > 0 && bytes.get() > maxBytesPerChannel)
+                    || globallyThrottled.contains(this);
+        }
+
+        /**
+         * Stop tracking the channel once it is closed.
+         */
+        void close() {
+            globallyThrottled.remove(this);
+            synchronized (this) {
+                closed = true;
+                if (throttled) {
+                    throttled = false;
+                    requestStats.unthrottleChannel(MathUtils.elapsedNanos(throttlingStartNanos));
+                }
+                if (throttleCount > 0) {
+                    LOG.info("Channel {} was throttled {} times because of the requests in flight",
+                            channel, throttleCount);
+                }
+            }
+        }
+
+        private synchronized void updateThrottling() {
+            boolean throttle = exceeded();
+            if (throttle == throttled || closed) {
+                return;
+            }
+            throttled = throttle;
+            channel.config().setAutoRead(!throttle);
+            if (throttle) {
+                throttlingStartNanos = MathUtils.nowInNano();
+                throttleCount++;
+                requestStats.throttleChannel();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Disabled autoread on channel {} with {} requests and {} bytes in flight",
+                            channel, requests.get(), bytes.get());
+                }
+            } else {
+                long delayNanos = MathUtils.elapsedNanos(throttlingStartNanos);
+                requestStats.unthrottleChannel(delayNanos);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Re-enabled autoread on channel {} after {} nanos", channel, delayNanos);
+                }
+            }
+        }
+    }
+}
@@ -38,6 +38,8 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
     BookieRequestHandler requestHandler;
     BookieRequestProcessor requestProcessor;
     long enqueueNanos;
+    // the bytes of the request tracked as in flight until the request is completed
+    long inFlightBytes;
 
     protected void init(T request, BookieRequestHandler requestHandler, BookieRequestProcessor requestProcessor) {
         this.request = request;
@@ -51,6 +53,7 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
         requestHandler = null;
         requestProcessor = null;
         enqueueNanos = -1;
+        inFlightBytes = 0;
     }
 
     protected boolean isVersionCompatible() {
@@ -68,7 +71,7 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
 
     protected void sendWriteReqResponse(int rc, Object response, OpStatsLogger statsLogger) {
         sendResponse(rc, response, statsLogger);
-        requestProcessor.onAddRequestFinish();
+        requestProcessor.onAddRequestFinish(requestHandler, inFlightBytes);
     }
 
     protected void sendReadReqResponse(int rc, Object response, OpStatsLogger statsLogger, boolean throttle) {
@@ -77,7 +80,7 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
         } else {
             sendResponse(rc, response, statsLogger);
         }
-        requestProcessor.onReadRequestFinish();
+        requestProcessor.onReadRequestFinish(requestHandler);
     }
 
     protected void sendResponse(int rc, Object response, OpStatsLogger statsLogger) {
@@ -188,12 +191,12 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
                          ResponseBuilder.buildErrorResponse(BookieProtocol.EBADVERSION, request),
                          requestProcessor.getRequestStats().getReadRequestStats());
             if (request instanceof BookieProtocol.ReadRequest) {
-                requestProcessor.onReadRequestFinish();
+                requestProcessor.onReadRequestFinish(requestHandler);
             }
             if (request instanceof BookieProtocol.ParsedAddRequest) {
                 ((BookieProtocol.ParsedAddRequest) request).release();
                 request.recycle();
-                requestProcessor.onAddRequestFinish();
+                requestProcessor.onAddRequestFinish(requestHandler, inFlightBytes);
             }
             return;
         }
@@ -96,12 +96,17 @@ import org.apache.bookkeeper.auth.ClientAuthProvider;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.BookKeeperClientStats;
 import org.apache.bookkeeper.client.BookieInfoReader.BookieInfo;
+import org.apache.bookkeeper.client.DefaultBookieAddressResolver;
 import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.common.util.MdcUtils;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.discover.BookieServiceInfo;
+import org.apache.bookkeeper.discover.BookieServiceInfoUtils;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
@@ -110,17 +115,20 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StartTLSCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WatchLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CompressionType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.LacNotification;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacRequest;
@@ -130,6 +138,9 @@ import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.WatchLacRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.WatchLacResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.WatchedLedger;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.WriteLacRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.WriteLacResponse;
 import org.apache.bookkeeper.stats.Counter;
@@ -205,6 +216,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "timeout stats of read entries requests"
     )
     private final OpStatsLogger readTimeoutOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_READ_DECOMPRESSION,
+        help = "stats of the decompression of the entries of compressed read responses"
+    )
+    private final OpStatsLogger readDecompressionOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_BATCH_READ_OP,
+        help = "channel stats of batch read entries requests"
+    )
+    private final OpStatsLogger batchReadEntryOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_ADD_OP,
         help = "channel stats of add entries requests"
@@ -225,6 +246,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "channel stats of read_lac requests"
     )
     private final OpStatsLogger readLacOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_WATCH_LAC_OP,
+        help = "channel stats of watch_lac requests"
+    )
+    private final OpStatsLogger watchLacOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_TIMEOUT_ADD,
         help = "timeout stats of add entries requests"
@@ -245,6 +271,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "timeout stats of read_lac requests"
     )
     private final OpStatsLogger readLacTimeoutOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_TIMEOUT_WATCH_LAC,
+        help = "timeout stats of watch_lac requests"
+    )
+    private final OpStatsLogger watchLacTimeoutOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.GET_BOOKIE_INFO_OP,
         help = "channel stats of get_bookie_info requests"
@@ -316,6 +347,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
     private final boolean useV2WireProtocol;
     private final boolean preserveMdcForTaskExecution;
+    private final boolean directV3Codec;
+    private final CompressionType readResponseCompression;
+    private final int addEntryChunkSize;
+    // whether the bookie reassembles the entries added in chunks, as published in its service info
+    private volatile boolean chunkedAddsSupported = false;
 
     /**
      * The following member variables do not need to be concurrent, or volatile
@@ -385,6 +421,20 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                   PerChannelBookieClientPool pcbcPool,
                                   SecurityHandlerFactory shFactory,
                                   BookieAddressResolver bookieAddressResolver) throws SecurityException {
+        this(conf, executor, eventLoopGroup, allocator, bookieId, parentStatsLogger, authProviderFactory, extRegistry,
+                pcbcPool, shFactory, bookieAddressResolver, conf.getReadResponseCompressionType());
+    }
+
+    PerChannelBookieClient(ClientConfiguration conf, OrderedExecutor executor,
+                           EventLoopGroup eventLoopGroup,
+                           ByteBufAllocator allocator,
+                           BookieId bookieId,
+                           StatsLogger parentStatsLogger, ClientAuthProvider.Factory authProviderFactory,
+                           ExtensionRegistry extRegistry,
+                           PerChannelBookieClientPool pcbcPool,
+                           SecurityHandlerFactory shFactory,
+                           BookieAddressResolver bookieAddressResolver,
+                           CompressionType readResponseCompression) throws SecurityException {
         this.maxFrameSize = conf.getNettyMaxFrameSizeBytes();
         this.conf = conf;
         this.bookieId = bookieId;
@@ -403,6 +453,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.startTLSTimeout = conf.getStartTLSTimeout();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
         this.preserveMdcForTaskExecution = conf.getPreserveMdcForTaskExecution();
+        this.directV3Codec = conf.isDirectV3CodecEnabled() && !useV2WireProtocol;
+        this.readResponseCompression = readResponseCompression;
+        this.addEntryChunkSize = useV2WireProtocol ? 0 : conf.getAddEntryChunkSizeBytes();
 
         this.authProviderFactory = authProviderFactory;
         this.extRegistry = extRegistry;
@@ -415,10 +468,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             .scopeLabel(BookKeeperClientStats.BOOKIE_LABEL, bookieId.toString());
 
         readEntryOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_READ_OP);
+        readDecompressionOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_READ_DECOMPRESSION);
+        batchReadEntryOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_BATCH_READ_OP);
         addEntryOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_ADD_OP);
         writeLacOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_WRITE_LAC_OP);
         forceLedgerOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_FORCE_OP);
         readLacOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_READ_LAC_OP);
+        watchLacOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_WATCH_LAC_OP);
         getBookieInfoOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.GET_BOOKIE_INFO_OP);
         getListOfEntriesOfLedgerCompletionOpLogger = statsLogger
                 .getOpStatsLogger(BookKeeperClientStats.GET_LIST_OF_ENTRIES_OF_LEDGER_OP);
@@ -427,6 +483,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeLacTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_WRITE_LAC);
         forceLedgerTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_FORCE);
         readLacTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_READ_LAC);
+        watchLacTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_WATCH_LAC);
         getBookieInfoTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.TIMEOUT_GET_BOOKIE_INFO);
         startTLSOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_START_TLS_OP);
         startTLSTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_START_TLS_OP);
@@ -529,6 +586,32 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         return completionObjects.size();
     }
 
+    /**
+     * Tell whether the bookie reassembles the entries added in chunks. The bookies which don't
+     * can't parse the chunk requests and close the connection, so the chunks are only sent to the
+     * bookies publishing the {@link BookieServiceInfoUtils#CHUNKED_ADD_EXTENSION}.
+     */
+    private boolean bookieSupportsChunkedAdds() {
+        if (!(bookieAddressResolver instanceof DefaultBookieAddressResolver)) {
+            return false;
+        }
+        try {
+            // cached by the registration client since the bookie id was resolved
+            BookieServiceInfo bookieServiceInfo = FutureUtils.result(
+                    ((DefaultBookieAddressResolver) bookieAddressResolver).getRegistrationClient()
+                            .getBookieServiceInfo(bookieId)).getValue();
+            return BookieServiceInfoUtils.hasBookieRpcExtension(bookieServiceInfo,
+                    BookieServiceInfoUtils.CHUNKED_ADD_EXTENSION);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            LOG.warn("Could not get the service info of bookie {}, entries are sent without chunks: {}",
+                    bookieId, e.toString());
+            return false;
+        }
+    }
+
     protected ChannelFuture connect() {
         final long startTime = MathUtils.nowInNano();
         if (LOG.isDebugEnabled()) {
@@ -542,6 +625,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     bookieId, err.toString());
             return processBookieNotResolvedError(startTime, err);
         }
+        if (addEntryChunkSize > 0) {
+            chunkedAddsSupported = bookieSupportsChunkedAdds();
+        }
 
         // Set up the ClientBootStrap so we can create a new Channel connection to the bookie.
         Bootstrap bootstrap = new Bootstrap();
@@ -561,6 +647,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             } catch (NoSuchElementException e) {
                 // Property not set, so keeping default value.
             }
+            if (conf.getSocketBusyPollMicros() > 0) {
+                bootstrap.option(EpollChannelOption.SO_BUSY_POLL, conf.getSocketBusyPollMicros());
+            }
         } else if (eventLoopGroup instanceof DefaultEventLoopGroup) {
             bootstrap.channel(LocalChannel.class);
         } else {
@@ -598,10 +687,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 pipeline.addLast("bytebufList", ByteBufList.ENCODER);
                 pipeline.addLast("lengthbasedframedecoder",
                         new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
-                pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.RequestEncoder(extRegistry));
+                pipeline.addLast("bookieProtoEncoder",
+                        new BookieProtoEncoding.RequestEncoder(extRegistry, directV3Codec));
                 pipeline.addLast(
                     "bookieProtoDecoder",
-                    new BookieProtoEncoding.ResponseDecoder(extRegistry, useV2WireProtocol, shFactory != null));
+                    new BookieProtoEncoding.ResponseDecoder(extRegistry, useV2WireProtocol, shFactory != null,
+                            directV3Codec));
                 pipeline.addLast("authHandler", new AuthHandler.ClientSideHandler(authProviderFactory, txnIdGenerator,
                             connectionPeer, useV2WireProtocol));
                 pipeline.addLast("mainhandler", PerChannelBookieClient.this);
@@ -802,38 +893,53 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
             }
 
-            ByteString body = null;
             ByteBufList bufToSend = (ByteBufList) toSend;
-
-            if (bufToSend.hasArray()) {
-                body = UnsafeByteOperations.unsafeWrap(bufToSend.array(), bufToSend.arrayOffset(),
-                        bufToSend.readableBytes());
+            if (addEntryChunkSize > 0 && chunkedAddsSupported && bufToSend.readableBytes() > addEntryChunkSize) {
+                // send the entry in frames of the chunk size, the bookie answers the last one
+                request = DirectCodecV3.encodeAddRequestChunks(allocator, txnId, headerBuilder.getPriority(),
+                        ledgerId, entryId, masterKey, bufToSend,
+                        ((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD,
+                        writeFlags.isEmpty() ? -1 : WriteFlag.getWriteFlagsValue(writeFlags), addEntryChunkSize);
+            } else if (directV3Codec && !preserveMdcForTaskExecution) {
+                // write the frame around the entry buffers instead of wrapping them in a protobuf message,
+                // requests carrying the MDC context are still encoded by protobuf
+                request = DirectCodecV3.encodeAddRequest(allocator, txnId, headerBuilder.getPriority(),
+                        ledgerId, entryId, masterKey, bufToSend,
+                        ((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD,
+                        writeFlags.isEmpty() ? -1 : WriteFlag.getWriteFlagsValue(writeFlags));
             } else {
-                for (int i = 0; i < bufToSend.size(); i++) {
-                    ByteString piece = UnsafeByteOperations.unsafeWrap(bufToSend.getBuffer(i).nioBuffer());
-                    // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
-                    body = (body == null) ? piece : body.concat(piece);
+                ByteString body = null;
+
+                if (bufToSend.hasArray()) {
+                    body = UnsafeByteOperations.unsafeWrap(bufToSend.array(), bufToSend.arrayOffset(),
+                            bufToSend.readableBytes());
+                } else {
+                    for (int i = 0; i < bufToSend.size(); i++) {
+                        ByteString piece = UnsafeByteOperations.unsafeWrap(bufToSend.getBuffer(i).nioBuffer());
+                        // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
+                        body = (body == null) ? piece : body.concat(piece);
+                    }
+                }
+                AddRequest.Builder addBuilder = AddRequest.newBuilder()
+                        .setLedgerId(ledgerId)
+                        .setEntryId(entryId)
+                        .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
+                        .setBody(body);
+
+                if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
+                    addBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
                 }
-            }
-            AddRequest.Builder addBuilder = AddRequest.newBuilder()
-                    .setLedgerId(ledgerId)
-                    .setEntryId(entryId)
-                    .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
-                    .setBody(body);
 
-            if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
-                addBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
-            }
+                if (!writeFlags.isEmpty()) {
+                    // add flags only if needed, in order to be able to talk with old bookies
+                    addBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(writeFlags));
+                }
 
-            if (!writeFlags.isEmpty()) {
-                // add flags only if needed, in order to be able to talk with old bookies
-                addBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(writeFlags));
+                request = withRequestContext(Request.newBuilder())
+                        .setHeader(headerBuilder)
+                        .setAddRequest(addBuilder)
+                        .build();
             }
-
-            request = withRequestContext(Request.newBuilder())
-                    .setHeader(headerBuilder)
-                    .setAddRequest(addBuilder)
-                    .build();
         }
 
         putCompletionKeyValue(completionKey,
@@ -845,6 +951,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             // because we need to release toSend.
             errorOut(completionKey);
             ReferenceCountUtil.release(toSend);
+            if (request instanceof ByteBufList) {
+                ReferenceCountUtil.release(request);
+            }
             return;
         } else {
             // addEntry times out on backpressure
@@ -913,6 +1022,46 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                           piggyBackEntry, cb, ctx, (short) 0, null, false);
     }
 
+    /**
+     * Long poll of the last add confirmed of many ledgers, only supported by the v3 protocol.
+     */
+    public void watchLac(final long[] ledgerIds,
+                         final long[] previousLACs,
+                         final long timeOutInMillis,
+                         final boolean piggyBackEntry,
+                         WatchLacCallback cb,
+                         Object ctx) {
+        final long orderingKey = ledgerIds.length > 0 ? ledgerIds[0] : 0L;
+        if (useV2WireProtocol) {
+            LOG.error("Watch lac is only supported by the v3 protocol, {} ledgers", ledgerIds.length);
+            executor.executeOrdered(orderingKey, () -> cb.watchLacComplete(BKException.Code.IllegalOpException, ctx));
+            return;
+        }
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.WATCH_LAST_ADD_CONFIRMED);
+
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.WATCH_LAST_ADD_CONFIRMED)
+                .setTxnId(txnId);
+        WatchLacRequest.Builder watchLacBuilder = WatchLacRequest.newBuilder()
+                .setTimeOut(timeOutInMillis)
+                .setPiggybackEntry(piggyBackEntry);
+        for (int i = 0; i < ledgerIds.length; i++) {
+            watchLacBuilder.addLedgers(WatchedLedger.newBuilder()
+                    .setLedgerId(ledgerIds[i])
+                    .setPreviousLAC(previousLACs[i]));
+        }
+        final Request request = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setWatchLacRequest(watchLacBuilder)
+                .build();
+
+        putCompletionKeyValue(completionKey,
+                              new WatchLacCompletion(completionKey, cb, ctx, orderingKey, timeOutInMillis));
+        writeAndFlush(channel, completionKey, request);
+    }
+
     /**
      * Normal Reads.
      */
@@ -995,6 +1144,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 readBuilder.setMasterKey(ByteString.copyFrom(masterKey));
             }
 
+            if (readResponseCompression != CompressionType.NONE) {
+                readBuilder.setAcceptedCompression(readResponseCompression);
+            }
+
             request = withRequestContext(Request.newBuilder())
                     .setHeader(headerBuilder)
                     .setReadRequest(readBuilder)
@@ -1007,6 +1160,34 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeAndFlush(channel, completionKey, request, allowFastFail);
     }
 
+    /**
+     * Batch Reads, only supported by the v2 protocol.
+     */
+    public void batchReadEntries(final long ledgerId,
+                                 final long startEntryId,
+                                 final int maxCount,
+                                 final long maxSize,
+                                 BatchedReadEntryCallback cb,
+                                 Object ctx,
+                                 int flags) {
+        if (!useV2WireProtocol) {
+            LOG.error("Batch read is only supported by the v2 protocol, ledger {} entry {}", ledgerId, startEntryId);
+            executor.executeOrdered(ledgerId, () -> cb.readEntriesComplete(BKException.Code.IllegalOpException,
+                    ledgerId, startEntryId, null, ctx));
+            return;
+        }
+        final long requestId = getTxnId();
+        final CompletionKey completionKey = new V3CompletionKey(requestId, OperationType.BATCH_READ_ENTRY);
+        // leave some room for the response headers within the frame
+        final long maxResponseSize = Math.min(maxSize, maxFrameSize - 1024);
+        Object request = BookieProtocol.BatchedReadRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION,
+                ledgerId, startEntryId, (short) flags, null, requestId, maxCount, maxResponseSize);
+
+        putCompletionKeyValue(completionKey,
+                new BatchedReadCompletion(completionKey, cb, ctx, ledgerId, startEntryId));
+        writeAndFlush(channel, completionKey, request);
+    }
+
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.GET_BOOKIE_INFO);
@@ -1344,7 +1525,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             readV2Response(response);
         } else if (msg instanceof Response) {
             Response response = (Response) msg;
-            readV3Response(response);
+            readV3Response(response, null);
+        } else if (msg instanceof DirectCodecV3.ResponseWithPayload) {
+            DirectCodecV3.ResponseWithPayload response = (DirectCodecV3.ResponseWithPayload) msg;
+            readV3Response(response.getResponse(), response.getPayload());
         } else {
             ctx.fireChannelRead(msg);
         }
@@ -1354,7 +1538,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         OperationType operationType = getOperationType(response.getOpCode());
         StatusCode status = getStatusCodeFromErrorCode(response.errorCode);
 
-        CompletionKey key = acquireV2Key(response.ledgerId, response.entryId, operationType);
+        CompletionKey key;
+        if (response instanceof BookieProtocol.BatchedReadResponse) {
+            key = new V3CompletionKey(((BookieProtocol.BatchedReadResponse) response).getRequestId(), operationType);
+        } else {
+            key = acquireV2Key(response.ledgerId, response.entryId, operationType);
+        }
         CompletionValue completionValue = getCompletionValue(key);
         key.release();
 
@@ -1436,6 +1625,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 return OperationType.WRITE_LAC;
             case BookieProtocol.GET_BOOKIE_INFO:
                 return OperationType.GET_BOOKIE_INFO;
+            case BookieProtocol.BATCH_READ_ENTRY:
+                return OperationType.BATCH_READ_ENTRY;
             default:
                 throw new IllegalArgumentException("Invalid operation type " + opCode);
         }
@@ -1468,7 +1659,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
-    private void readV3Response(final Response response) {
+    /**
+     * Handle a v3 response.
+     *
+     * @param payload the entry of a read response decoded by the direct codec, or null;
+     *                it is released once the response is handled
+     */
+    private void readV3Response(final Response response, final ByteBuf payload) {
         final BKPacketHeader header = response.getHeader();
 
         final CompletionKey key = newCompletionKey(header.getTxnId(), header.getOperation());
@@ -1480,13 +1677,22 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 LOG.debug("Unexpected response received from bookie : " + bookieId + " for type : "
                         + header.getOperation() + " and txnId : " + header.getTxnId());
             }
+            ReferenceCountUtil.release(payload);
         } else {
             long orderingKey = completionValue.ledgerId;
             executor.executeOrdered(orderingKey, new Runnable() {
                 @Override
                 public void run() {
                     completionValue.restoreMdcContext();
-                    completionValue.handleV3Response(response);
+                    if (payload == null) {
+                        completionValue.handleV3Response(response);
+                        return;
+                    }
+                    try {
+                        completionValue.handleV3Response(response, payload);
+                    } finally {
+                        payload.release();
+                    }
                 }
 
                 @Override
@@ -1703,6 +1909,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         public abstract void handleV3Response(
                 BookkeeperProtocol.Response response);
+
+        /**
+         * Handle a v3 response whose entry was decoded out of the message by the direct codec.
+         * The payload is released by the caller.
+         */
+        public void handleV3Response(BookkeeperProtocol.Response response, ByteBuf payload) {
+            handleV3Response(response);
+        }
     }
 
     // visible for testing
@@ -1864,6 +2078,85 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    // visible for testing
+    class WatchLacCompletion extends CompletionValue {
+        final WatchLacCallback cb;
+        final long timeOutNanos;
+
+        public WatchLacCompletion(final CompletionKey key,
+                                  final WatchLacCallback originalCallback,
+                                  final Object ctx, final long orderingKey,
+                                  final long timeOutInMillis) {
+            super("WatchLAC", ctx, orderingKey, BookieProtocol.LAST_ADD_CONFIRMED,
+                  watchLacOpLogger, watchLacTimeoutOpLogger);
+            // the bookie holds the request up to its timeout before responding
+            this.timeOutNanos = TimeUnit.MILLISECONDS.toNanos(timeOutInMillis) + readEntryTimeoutNanos;
+            this.cb = new WatchLacCallback() {
+                    @Override
+                    public void lacNotified(int rc, long ledgerId, long lac, long entryId,
+                                            ByteBuf entry, Object ctx) {
+                        originalCallback.lacNotified(rc, ledgerId, lac, entryId, entry, ctx);
+                    }
+
+                    @Override
+                    public void watchLacComplete(int rc, Object ctx) {
+                        logOpResult(rc);
+                        originalCallback.watchLacComplete(rc, ctx);
+                        key.release();
+                    }
+                };
+        }
+
+        @Override
+        boolean maybeTimeout() {
+            if (MathUtils.elapsedNanos(startTime) >= timeOutNanos) {
+                timeout();
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(() -> cb.watchLacComplete(rc, ctx));
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            WatchLacResponse watchLacResponse = response.getWatchLacResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? watchLacResponse.getStatus() : response.getStatus();
+
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "notifications", watchLacResponse.getNotificationsCount());
+            }
+
+            // the bookies not supporting the watch requests reject them as bad requests
+            int rc = status == StatusCode.EBADREQ
+                ? BKException.Code.IllegalOpException : convertStatus(status, BKException.Code.ReadException);
+            if (rc == BKException.Code.OK) {
+                for (LacNotification notification : watchLacResponse.getNotificationsList()) {
+                    int ledgerRc = convertStatus(notification.getStatus(), BKException.Code.ReadException);
+                    ByteBuf entry = null;
+                    if (notification.hasBody()) {
+                        entry = Unpooled.wrappedBuffer(notification.getBody().asReadOnlyByteBuffer());
+                    }
+                    cb.lacNotified(ledgerRc, notification.getLedgerId(),
+                            notification.hasLastAddConfirmed() ? notification.getLastAddConfirmed() : INVALID_ENTRY_ID,
+                            notification.hasEntryId() ? notification.getEntryId() : INVALID_ENTRY_ID,
+                            entry, ctx);
+                }
+            }
+            cb.watchLacComplete(rc, ctx);
+        }
+    }
+
     // visible for testing
     class ReadCompletion extends CompletionValue {
         final ReadEntryCallback cb;
@@ -1921,14 +2214,21 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         @Override
         public void handleV3Response(BookkeeperProtocol.Response response) {
+            ByteBuf buffer = Unpooled.EMPTY_BUFFER;
+            if (response.getReadResponse().hasBody()) {
+                buffer = Unpooled.wrappedBuffer(response.getReadResponse().getBody().asReadOnlyByteBuffer());
+            }
+            handleV3Response(response, buffer);
+            ReferenceCountUtil.release(
+                    buffer); // meaningless using unpooled, but client may expect to hold the last reference
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response, ByteBuf buffer) {
             readEntryOutstanding.dec();
             ReadResponse readResponse = response.getReadResponse();
             StatusCode status = response.getStatus() == StatusCode.EOK
                 ? readResponse.getStatus() : response.getStatus();
-            ByteBuf buffer = Unpooled.EMPTY_BUFFER;
-            if (readResponse.hasBody()) {
-                buffer = Unpooled.wrappedBuffer(readResponse.getBody().asReadOnlyByteBuffer());
-            }
             long maxLAC = INVALID_ENTRY_ID;
             if (readResponse.hasMaxLAC()) {
                 maxLAC = readResponse.getMaxLAC();
@@ -1937,11 +2237,35 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             if (readResponse.hasLacUpdateTimestamp()) {
                 lacUpdateTimestamp = readResponse.getLacUpdateTimestamp();
             }
+            if (readResponse.hasBodyCompression() && readResponse.getBodyCompression() != CompressionType.NONE
+                    && status == StatusCode.EOK) {
+                ByteBuf entry;
+                long startTime = MathUtils.nowInNano();
+                try {
+                    entry = EntryCompression.decompress(readResponse.getBodyCompression(), buffer,
+                            readResponse.getBodyUncompressedSize(), maxFrameSize, allocator);
+                    readDecompressionOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime),
+                            TimeUnit.NANOSECONDS);
+                } catch (IOException e) {
+                    readDecompressionOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime),
+                            TimeUnit.NANOSECONDS);
+                    LOG.warn("Failed to decompress entry {}@{} read from {}", readResponse.getEntryId(),
+                            readResponse.getLedgerId(), bookieId, e);
+                    handleReadResponse(readResponse.getLedgerId(), readResponse.getEntryId(),
+                                       StatusCode.EIO, Unpooled.EMPTY_BUFFER, maxLAC, lacUpdateTimestamp);
+                    return;
+                }
+                try {
+                    handleReadResponse(readResponse.getLedgerId(), readResponse.getEntryId(),
+                                       status, entry, maxLAC, lacUpdateTimestamp);
+                } finally {
+                    entry.release();
+                }
+                return;
+            }
             handleReadResponse(readResponse.getLedgerId(),
                                readResponse.getEntryId(),
                                status, buffer, maxLAC, lacUpdateTimestamp);
-            ReferenceCountUtil.release(
-                    buffer); // meaningless using unpooled, but client may expect to hold the last reference
         }
 
         private void handleReadResponse(long ledgerId,
@@ -1967,6 +2291,62 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    // visible for testing
+    class BatchedReadCompletion extends CompletionValue {
+        final BatchedReadEntryCallback cb;
+
+        public BatchedReadCompletion(final CompletionKey key,
+                                     final BatchedReadEntryCallback originalCallback,
+                                     final Object originalCtx,
+                                     long ledgerId, final long startEntryId) {
+            super("BatchedRead", originalCtx, ledgerId, startEntryId,
+                  batchReadEntryOpLogger, readTimeoutOpLogger);
+
+            this.cb = (rc, ledgerId1, startEntryId1, bufList, ctx) -> {
+                logOpResult(rc);
+                originalCallback.readEntriesComplete(rc, ledgerId1, startEntryId1, bufList, originalCtx);
+                key.release();
+            };
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(
+                    () -> cb.readEntriesComplete(rc, ledgerId, entryId, null, ctx));
+        }
+
+        @Override
+        public void setOutstanding() {
+            readEntryOutstanding.inc();
+        }
+
+        @Override
+        public void handleV2Response(long ledgerId, long entryId,
+                                     StatusCode status,
+                                     BookieProtocol.Response response) {
+            readEntryOutstanding.dec();
+            if (!(response instanceof BookieProtocol.BatchedReadResponse)) {
+                return;
+            }
+            ByteBufList data = ((BookieProtocol.BatchedReadResponse) response).getData();
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "startEntry", entryId, "entries", data.size());
+            }
+            int rc = convertStatus(status, BKException.Code.ReadException);
+            cb.readEntriesComplete(rc, ledgerId, entryId, data, ctx);
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            // batch reads are only supported by the v2 protocol
+        }
+    }
+
     class StartTLSCompletion extends CompletionValue {
         final StartTLSCallback cb;
 
@@ -18,6 +18,7 @@
 package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import io.netty.util.Recycler;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
@@ -41,17 +42,20 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
 
     private ExecutorService fenceThreadPool;
     private boolean throttleReadResponses;
+    private boolean zeroCopyRead;
 
     public static ReadEntryProcessor create(ReadRequest request,
                                             BookieRequestHandler requestHandler,
                                             BookieRequestProcessor requestProcessor,
                                             ExecutorService fenceThreadPool,
-                                            boolean throttleReadResponses) {
+                                            boolean throttleReadResponses,
+                                            boolean zeroCopyRead) {
         ReadEntryProcessor rep = RECYCLER.get();
         rep.init(request, requestHandler, requestProcessor);
         rep.fenceThreadPool = fenceThreadPool;
         rep.throttleReadResponses = throttleReadResponses;
-        requestProcessor.onReadRequestStart(requestHandler.ctx().channel());
+        rep.zeroCopyRead = zeroCopyRead;
+        requestProcessor.onReadRequestStart(requestHandler);
         return rep;
     }
 
@@ -64,7 +68,7 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Dropping read request for closed channel: {}", requestHandler.ctx().channel());
             }
-            requestProcessor.onReadRequestFinish();
+            requestProcessor.onReadRequestFinish(requestHandler);
             return;
         }
         int errorCode = BookieProtocol.EOK;
@@ -84,6 +88,14 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
                     throw BookieException.create(BookieException.Code.UnauthorizedAccessException);
                 }
             }
+            if (zeroCopyRead && fenceResult == null) {
+                FileRegion region = requestProcessor.getBookie().readEntryRegion(request.getLedgerId(),
+                        request.getEntryId());
+                if (region != null) {
+                    sendRegionResponse(region, startTimeNanos);
+                    return;
+                }
+            }
             data = requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId());
             if (LOG.isDebugEnabled()) {
                 LOG.debug("##### Read entry ##### {} -- ref-count: {}", data.readableBytes(), data.refCnt());
@@ -144,6 +156,15 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
         recycle();
     }
 
+    private void sendRegionResponse(FileRegion region, long startTimeNanos) {
+        final RequestStats stats = requestProcessor.getRequestStats();
+        stats.getReadEntryStats().registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        stats.getReadEntryZeroCopyCounter().inc();
+        sendReadReqResponse(BookieProtocol.EOK, ResponseBuilder.buildReadRegionResponse(region, request),
+                stats.getReadRequestStats(), throttleReadResponses);
+        recycle();
+    }
+
     private void sendFenceResponse(Boolean result, ByteBuf data, long startTimeNanos) {
         final int retCode = result != null && result ? BookieProtocol.EOK : BookieProtocol.EIO;
         sendResponse(data, retCode, startTimeNanos);
@@ -29,6 +29,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.common.concurrent.FutureEventListener;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CompressionType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
@@ -48,6 +49,9 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
 
     private CompletableFuture<Boolean> fenceResult = null;
 
+    // the entry read, when sent through the direct codec instead of being copied in the response
+    private ByteBuf entryPayload = null;
+
     protected final ReadRequest readRequest;
     protected final long ledgerId;
     protected final long entryId;
@@ -61,7 +65,7 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                                 BookieRequestProcessor requestProcessor,
                                 ExecutorService fenceThreadPool) {
         super(request, requestHandler, requestProcessor);
-        requestProcessor.onReadRequestStart(requestHandler.ctx().channel());
+        requestProcessor.onReadRequestStart(requestHandler);
 
         this.readRequest = request.getReadRequest();
         this.ledgerId = readRequest.getLedgerId();
@@ -176,13 +180,13 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
             return null;
         } else {
             try {
-                readResponseBuilder.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
                 if (readLACPiggyBack) {
                     readResponseBuilder.setEntryId(entryId);
                 } else {
                     long knownLAC = requestProcessor.getBookie().readLastAddConfirmed(ledgerId);
                     readResponseBuilder.setMaxLAC(knownLAC);
                 }
+                setBody(readResponseBuilder, entryBody);
                 registerSuccessfulEvent(readStats, startTimeSw);
                 readResponseBuilder.setStatus(StatusCode.EOK);
                 return readResponseBuilder.build();
@@ -254,7 +258,7 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Dropping read request for closed channel: {}", requestHandler.ctx().channel());
             }
-            requestProcessor.onReadRequestFinish();
+            requestProcessor.onReadRequestFinish(requestHandler);
             return;
         }
 
@@ -287,7 +291,7 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
             registerFailedEvent(requestProcessor.getRequestStats().getFenceReadWaitStats(), lastPhaseStartTime);
         } else {
             status = StatusCode.EOK;
-            readResponse.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
+            setBody(readResponse, entryBody);
             registerSuccessfulEvent(requestProcessor.getRequestStats().getFenceReadWaitStats(), lastPhaseStartTime);
         }
 
@@ -298,6 +302,47 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
         readResponse.setStatus(status);
     }
 
+    /**
+     * Set the entry read in the response, compressed if the client accepts it.
+     * The entry is left to the caller.
+     */
+    private void setBody(ReadResponse.Builder readResponse, ByteBuf entryBody) {
+        ByteBuf body = entryBody;
+        if (readRequest.hasAcceptedCompression()
+                && readRequest.getAcceptedCompression() != CompressionType.NONE
+                && entryBody.readableBytes() >= requestProcessor.getReadResponseCompressionMinEntrySize()) {
+            ByteBuf compressed = compressEntry(readRequest.getAcceptedCompression(), entryBody);
+            if (null != compressed) {
+                readResponse.setBodyCompression(readRequest.getAcceptedCompression())
+                        .setBodyUncompressedSize(entryBody.readableBytes());
+                body = compressed;
+            }
+        }
+        if (requestProcessor.isDirectV3CodecEnabled()) {
+            // sent without copy by the direct codec
+            entryPayload = body == entryBody ? entryBody.retain() : body;
+        } else {
+            readResponse.setBody(ByteString.copyFrom(body.nioBuffer()));
+            if (body != entryBody) {
+                body.release();
+            }
+        }
+    }
+
+    private ByteBuf compressEntry(CompressionType compression, ByteBuf entryBody) {
+        final long startNanos = MathUtils.nowInNano();
+        ByteBuf compressed = EntryCompression.compress(compression, entryBody, requestHandler.ctx().alloc());
+        OpStatsLogger compressionStats = requestProcessor.getRequestStats().getReadEntryCompressionStats();
+        if (null == compressed) {
+            compressionStats.registerFailedEvent(MathUtils.elapsedNanos(startNanos), TimeUnit.NANOSECONDS);
+        } else {
+            compressionStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startNanos), TimeUnit.NANOSECONDS);
+            requestProcessor.getRequestStats().getReadEntryCompressionSavedBytesCounter()
+                    .addCount(entryBody.readableBytes() - compressed.readableBytes());
+        }
+        return compressed;
+    }
+
     private void sendFenceResponse(ReadResponse.Builder readResponse,
                                    ByteBuf entryBody,
                                    boolean fenceResult,
@@ -320,6 +365,16 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
     }
 
     protected void sendResponse(ReadResponse readResponse) {
+        if (null != entryPayload) {
+            // the frame takes the ownership of the entry
+            ByteBuf payload = entryPayload;
+            entryPayload = null;
+            Object frame = DirectCodecV3.encodeReadResponse(requestHandler.ctx().alloc(), getHeader(),
+                    readResponse.getStatus(), readResponse, payload);
+            sendResponse(readResponse.getStatus(), frame, reqStats);
+            requestProcessor.onReadRequestFinish(requestHandler);
+            return;
+        }
         Response.Builder response = Response.newBuilder()
                 .setHeader(getHeader())
                 .setStatus(readResponse.getStatus())
@@ -327,7 +382,7 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
         sendResponse(response.getStatus(),
                      response.build(),
                      reqStats);
-        requestProcessor.onReadRequestFinish();
+        requestProcessor.onReadRequestFinish(requestHandler);
     }
 
     //
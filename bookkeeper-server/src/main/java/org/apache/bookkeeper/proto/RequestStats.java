@@ -22,10 +22,18 @@ package org.apache.bookkeeper.proto;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BLOCKED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BLOCKED_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_CHUNKED_PENDING_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_CHUNKED_REJECTED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_IN_PROGRESS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REJECTED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BATCH_READ_ENTRY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BATCH_READ_ENTRY_ENTRIES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BATCH_READ_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNELS_THROTTLED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_THROTTLED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_THROTTLED_WAIT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_WRITE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER_REQUEST;
@@ -33,9 +41,12 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_BOOKIE_INFO
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_BOOKIE_INFO_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.IN_FLIGHT_REQUEST_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_BLOCKED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_BLOCKED_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_COMPRESSION;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_COMPRESSION_SAVED_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_FENCE_READ;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_FENCE_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_FENCE_WAIT;
@@ -47,16 +58,22 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_LONG
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_REJECTED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_SCHEDULING_DELAY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_ZERO_COPY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAC_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAST_ENTRY_NOENTRY_ERROR;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WATCH_LAC_NOTIFICATIONS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WATCH_LAC_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WATCH_LAC_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WATCH_LAC_WATCHED_LEDGERS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_LAC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_LAC_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_THREAD_QUEUED_LATENCY;
 
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.Getter;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
@@ -81,6 +98,10 @@ public class RequestStats {
     final AtomicInteger readsInProgress = new AtomicInteger(0);
     final AtomicInteger readsBlocked = new AtomicInteger(0);
     final AtomicInteger maxReadsInProgress = new AtomicInteger(0);
+    final AtomicLong chunkedAddBytesPending = new AtomicLong(0);
+    final AtomicLong inFlightRequestBytes = new AtomicLong(0);
+    final AtomicInteger channelsThrottled = new AtomicInteger(0);
+    final AtomicLong watchedLedgers = new AtomicLong(0);
 
     @StatsDoc(
         name = ADD_ENTRY_REQUEST,
@@ -107,6 +128,13 @@ public class RequestStats {
             parent = ADD_ENTRY_REQUEST
     )
     private final Counter addEntryRejectedCounter;
+    @StatsDoc(
+            name = ADD_ENTRY_CHUNKED_REJECTED,
+            help = "Counter for adds in chunks rejected on a bookie, because the entries being received in chunks"
+                + " would exceed their max pending bytes",
+            parent = ADD_ENTRY_REQUEST
+    )
+    private final Counter addEntryChunkedRejectedCounter;
     @StatsDoc(
         name = READ_ENTRY_REQUEST,
         help = "request stats of ReadEntry on a bookie"
@@ -124,6 +152,42 @@ public class RequestStats {
             parent = READ_ENTRY_REQUEST
     )
     private final Counter readEntryRejectedCounter;
+    @StatsDoc(
+            name = READ_ENTRY_ZERO_COPY,
+            help = "Counter for reads sent as regions of entry log files, without copying the entry in memory",
+            parent = READ_ENTRY_REQUEST
+    )
+    private final Counter readEntryZeroCopyCounter;
+    @StatsDoc(
+            name = READ_ENTRY_COMPRESSION,
+            help = "operation stats of the compression of read responses on a bookie, failing if the entry"
+                + " doesn't compress",
+            parent = READ_ENTRY_REQUEST
+    )
+    private final OpStatsLogger readEntryCompressionStats;
+    @StatsDoc(
+            name = READ_ENTRY_COMPRESSION_SAVED_BYTES,
+            help = "Counter for the bytes saved by the compression of read responses on a bookie",
+            parent = READ_ENTRY_REQUEST
+    )
+    private final Counter readEntryCompressionSavedBytesCounter;
+    @StatsDoc(
+        name = BATCH_READ_ENTRY_REQUEST,
+        help = "request stats of BatchReadEntry on a bookie"
+    )
+    final OpStatsLogger batchReadRequestStats;
+    @StatsDoc(
+        name = BATCH_READ_ENTRY,
+        help = "operation stats of BatchReadEntry on a bookie",
+        parent = BATCH_READ_ENTRY_REQUEST
+    )
+    final OpStatsLogger batchReadEntryStats;
+    @StatsDoc(
+        name = BATCH_READ_ENTRY_ENTRIES,
+        help = "Counter for the entries returned by the batch reads on a bookie",
+        parent = BATCH_READ_ENTRY_REQUEST
+    )
+    private final Counter batchReadEntriesCounter;
     @StatsDoc(
         name = FORCE_LEDGER,
         help = "operation stats of ForceLedger on a bookie",
@@ -188,6 +252,23 @@ public class RequestStats {
         help = "total NOENTRY errors of reading last entry on a bookie"
     )
     final Counter readLastEntryNoEntryErrorCounter;
+    @StatsDoc(
+        name = WATCH_LAC_REQUEST,
+        help = "request stats of WatchLac on a bookie"
+    )
+    final OpStatsLogger watchLacRequestStats;
+    @StatsDoc(
+        name = WATCH_LAC_WAIT,
+        help = "operation stats of WatchLac wait time on a bookie",
+        parent = WATCH_LAC_REQUEST
+    )
+    final OpStatsLogger watchLacWaitStats;
+    @StatsDoc(
+        name = WATCH_LAC_NOTIFICATIONS,
+        help = "Counter for the ledgers notified by the WatchLac requests on a bookie",
+        parent = WATCH_LAC_REQUEST
+    )
+    final Counter watchLacNotificationsCounter;
     @StatsDoc(
         name = WRITE_LAC_REQUEST,
         help = "request stats of WriteLac on a bookie"
@@ -235,6 +316,16 @@ public class RequestStats {
         help = "operation stats of ReadEntry blocked on a bookie"
     )
     final OpStatsLogger readEntryBlockedStats;
+    @StatsDoc(
+        name = CHANNEL_THROTTLED,
+        help = "number of times a channel stopped reading requests because of the requests in flight"
+    )
+    final Counter channelThrottledCounter;
+    @StatsDoc(
+        name = CHANNEL_THROTTLED_WAIT,
+        help = "operation stats of the time channels stopped reading requests because of the requests in flight"
+    )
+    final OpStatsLogger channelThrottledStats;
     @StatsDoc(
             name = GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST,
             help = "request stats of GetListOfEntriesOfLedger on a bookie"
@@ -252,8 +343,15 @@ public class RequestStats {
         this.writeThreadQueuedLatency = statsLogger.getThreadScopedOpStatsLogger(WRITE_THREAD_QUEUED_LATENCY);
         this.addRequestStats = statsLogger.getOpStatsLogger(ADD_ENTRY_REQUEST);
         this.addEntryRejectedCounter = statsLogger.getCounter(ADD_ENTRY_REJECTED);
+        this.addEntryChunkedRejectedCounter = statsLogger.getCounter(ADD_ENTRY_CHUNKED_REJECTED);
         this.readEntryStats = statsLogger.getThreadScopedOpStatsLogger(READ_ENTRY);
         this.readEntryRejectedCounter = statsLogger.getCounter(READ_ENTRY_REJECTED);
+        this.readEntryZeroCopyCounter = statsLogger.getCounter(READ_ENTRY_ZERO_COPY);
+        this.readEntryCompressionStats = statsLogger.getOpStatsLogger(READ_ENTRY_COMPRESSION);
+        this.readEntryCompressionSavedBytesCounter = statsLogger.getCounter(READ_ENTRY_COMPRESSION_SAVED_BYTES);
+        this.batchReadRequestStats = statsLogger.getOpStatsLogger(BATCH_READ_ENTRY_REQUEST);
+        this.batchReadEntryStats = statsLogger.getThreadScopedOpStatsLogger(BATCH_READ_ENTRY);
+        this.batchReadEntriesCounter = statsLogger.getCounter(BATCH_READ_ENTRY_ENTRIES);
         this.forceLedgerStats = statsLogger.getOpStatsLogger(FORCE_LEDGER);
         this.forceLedgerRequestStats = statsLogger.getOpStatsLogger(FORCE_LEDGER_REQUEST);
         this.readRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_REQUEST);
@@ -266,6 +364,9 @@ public class RequestStats {
         this.longPollReadStats = statsLogger.getOpStatsLogger(READ_ENTRY_LONG_POLL_READ);
         this.longPollReadRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_LONG_POLL_REQUEST);
         this.readLastEntryNoEntryErrorCounter = statsLogger.getCounter(READ_LAST_ENTRY_NOENTRY_ERROR);
+        this.watchLacRequestStats = statsLogger.getOpStatsLogger(WATCH_LAC_REQUEST);
+        this.watchLacWaitStats = statsLogger.getOpStatsLogger(WATCH_LAC_WAIT);
+        this.watchLacNotificationsCounter = statsLogger.getCounter(WATCH_LAC_NOTIFICATIONS);
         this.writeLacStats = statsLogger.getOpStatsLogger(WRITE_LAC);
         this.writeLacRequestStats = statsLogger.getOpStatsLogger(WRITE_LAC_REQUEST);
         this.readLacStats = statsLogger.getOpStatsLogger(READ_LAC);
@@ -276,6 +377,8 @@ public class RequestStats {
 
         this.addEntryBlockedStats = statsLogger.getOpStatsLogger(ADD_ENTRY_BLOCKED_WAIT);
         this.readEntryBlockedStats = statsLogger.getOpStatsLogger(READ_ENTRY_BLOCKED_WAIT);
+        this.channelThrottledCounter = statsLogger.getCounter(CHANNEL_THROTTLED);
+        this.channelThrottledStats = statsLogger.getOpStatsLogger(CHANNEL_THROTTLED_WAIT);
 
         this.getListOfEntriesOfLedgerStats = statsLogger.getOpStatsLogger(GET_LIST_OF_ENTRIES_OF_LEDGER);
         this.getListOfEntriesOfLedgerRequestStats =
@@ -305,6 +408,30 @@ public class RequestStats {
             }
         });
 
+        statsLogger.registerGauge(ADD_ENTRY_CHUNKED_PENDING_BYTES, new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return chunkedAddBytesPending;
+            }
+        });
+
+        statsLogger.registerGauge(WATCH_LAC_WATCHED_LEDGERS, new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return watchedLedgers;
+            }
+        });
+
         statsLogger.registerGauge(READ_ENTRY_IN_PROGRESS, new Gauge<Number>() {
             @Override
             public Number getDefaultValue() {
@@ -328,6 +455,30 @@ public class RequestStats {
                 return readsBlocked;
             }
         });
+
+        statsLogger.registerGauge(CHANNELS_THROTTLED, new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return channelsThrottled;
+            }
+        });
+
+        statsLogger.registerGauge(IN_FLIGHT_REQUEST_BYTES, new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return inFlightRequestBytes;
+            }
+        });
     }
 
     //
@@ -356,6 +507,21 @@ public class RequestStats {
         return maxAddsInProgress.get();
     }
 
+    boolean tryTrackChunkedAddBytes(long bytes, long maxBytes) {
+        long pending;
+        do {
+            pending = chunkedAddBytesPending.get();
+            if (pending + bytes > maxBytes) {
+                return false;
+            }
+        } while (!chunkedAddBytesPending.compareAndSet(pending, pending + bytes));
+        return true;
+    }
+
+    void untrackChunkedAddBytes(long bytes) {
+        chunkedAddBytesPending.addAndGet(-bytes);
+    }
+
     //
     // Read requests
     //
@@ -382,4 +548,38 @@ public class RequestStats {
         return maxReadsInProgress.get();
     }
 
+    //
+    // Watch requests
+    //
+
+    void trackWatchedLedgers(int numLedgers) {
+        watchedLedgers.addAndGet(numLedgers);
+    }
+
+    void untrackWatchedLedgers(int numLedgers) {
+        watchedLedgers.addAndGet(-numLedgers);
+    }
+
+    //
+    // Requests in flight
+    //
+
+    long trackInFlightRequestBytes(long bytes) {
+        return inFlightRequestBytes.addAndGet(bytes);
+    }
+
+    long untrackInFlightRequestBytes(long bytes) {
+        return inFlightRequestBytes.addAndGet(-bytes);
+    }
+
+    void throttleChannel() {
+        channelThrottledCounter.inc();
+        channelsThrottled.incrementAndGet();
+    }
+
+    void unthrottleChannel(long delayNanos) {
+        channelThrottledStats.registerSuccessfulEvent(delayNanos, TimeUnit.NANOSECONDS);
+        channelsThrottled.decrementAndGet();
+    }
+
 }
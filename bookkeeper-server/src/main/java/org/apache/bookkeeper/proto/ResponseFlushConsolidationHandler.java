@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_FLUSH;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_RESPONSES_PER_FLUSH;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * Coalesces the flushes of the responses written to a bookie channel.
+ *
+ * <p>Each response completed by the request threads is written and flushed on its own. Like the
+ * {@link io.netty.handler.flush.FlushConsolidationHandler}, this handler delays the flushes while
+ * the channel is reading requests, until the read completes, and otherwise until the next run of
+ * the event loop, so the responses completed in the meantime go out with a single write system
+ * call. The flush can be delayed further by a time window, to gather the responses of requests
+ * completing at about the same time. A flush is never delayed beyond a max number of responses,
+ * or once the channel becomes non-writable.
+ *
+ * <p>The number of responses sent by each flush of the socket is recorded.
+ */
+class ResponseFlushConsolidationHandler extends ChannelDuplexHandler {
+
+    private final int maxResponsesPerFlush;
+    private final long windowNanos;
+    private final Stats stats;
+    private final Runnable flushTask;
+
+    // the state is only accessed from the event loop of the channel
+    private ChannelHandlerContext ctx;
+    private int pendingFlushes;
+    private int pendingResponses;
+    private boolean readInProgress;
+    private Future<?> nextScheduledFlush;
+
+    ResponseFlushConsolidationHandler(int maxResponsesPerFlush, long windowMicros, Stats stats) {
+        this.maxResponsesPerFlush = Math.max(1, maxResponsesPerFlush);
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, windowMicros));
+        this.stats = stats;
+        this.flushTask = () -> {
+            nextScheduledFlush = null;
+            // while reading, the flush happens when the read completes
+            if (pendingFlushes > 0 && !readInProgress) {
+                flushNow(ctx);
+            }
+        };
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        pendingResponses++;
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (++pendingFlushes >= maxResponsesPerFlush) {
+            flushNow(ctx);
+        } else if (!readInProgress) {
+            scheduleFlush(ctx);
+        }
+        // else the flush happens when the read completes
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        readInProgress = false;
+        if (pendingFlushes > 0) {
+            if (windowNanos > 0) {
+                scheduleFlush(ctx);
+            } else {
+                flushNow(ctx);
+            }
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable()) {
+            // let the pending responses drain, so that the channel can become writable again
+            flushIfNeeded(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        readInProgress = false;
+        flushIfNeeded(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        readInProgress = false;
+        flushIfNeeded(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        readInProgress = false;
+        flushIfNeeded(ctx);
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        flushIfNeeded(ctx);
+    }
+
+    private void scheduleFlush(ChannelHandlerContext ctx) {
+        if (nextScheduledFlush == null) {
+            nextScheduledFlush = windowNanos > 0
+                    ? ctx.channel().eventLoop().schedule(flushTask, windowNanos, TimeUnit.NANOSECONDS)
+                    : ctx.channel().eventLoop().submit(flushTask);
+        }
+    }
+
+    private void flushIfNeeded(ChannelHandlerContext ctx) {
+        if (pendingFlushes > 0) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        if (nextScheduledFlush != null) {
+            nextScheduledFlush.cancel(false);
+            nextScheduledFlush = null;
+        }
+        stats.flushes.inc();
+        stats.responsesPerFlush.registerSuccessfulValue(pendingResponses);
+        pendingFlushes = 0;
+        pendingResponses = 0;
+        ctx.flush();
+    }
+
+    /**
+     * The stats shared by the handlers of all the channels.
+     */
+    @StatsDoc(
+        name = SERVER_SCOPE,
+        category = CATEGORY_SERVER,
+        help = "Bookie channel flush stats"
+    )
+    static class Stats {
+        @StatsDoc(
+            name = CHANNEL_FLUSH,
+            help = "number of flushes of the responses written to the bookie channels"
+        )
+        final Counter flushes;
+        @StatsDoc(
+            name = CHANNEL_RESPONSES_PER_FLUSH,
+            help = "distribution of the number of responses sent by a flush of a bookie channel"
+        )
+        final OpStatsLogger responsesPerFlush;
+
+        Stats(StatsLogger statsLogger) {
+            this.flushes = statsLogger.getCounter(CHANNEL_FLUSH);
+            this.responsesPerFlush = statsLogger.getOpStatsLogger(CHANNEL_RESPONSES_PER_FLUSH);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.common.util.MdcUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Runs read requests on virtual threads, one per request.
+ *
+ * <p>Reads spend most of their time blocked on the disk, so running them on virtual threads lets
+ * the number of reads in progress follow the queue depth of the devices, without a large pool of
+ * platform threads. The reads in progress are still limited by a semaphore, and the reads waiting
+ * for a permit are limited as well, to bound the memory used by the pending requests.
+ *
+ * <p>Virtual threads are looked up by reflection, since the bookie still runs on older JDKs.
+ */
+class VirtualThreadReadExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadReadExecutor.class);
+
+    private final String name;
+    private final ExecutorService executor;
+    private final Semaphore concurrentReads;
+    private final int maxOutstandingReads;
+    private final AtomicInteger outstandingReads = new AtomicInteger(0);
+    private final boolean preserveMdc;
+
+    @VisibleForTesting
+    VirtualThreadReadExecutor(String name, ExecutorService executor, int maxConcurrentReads,
+                              int maxPendingReads, boolean preserveMdc) {
+        this.name = name;
+        this.executor = executor;
+        this.concurrentReads = new Semaphore(maxConcurrentReads);
+        this.maxOutstandingReads = maxPendingReads > 0 ? maxConcurrentReads + maxPendingReads : 0;
+        this.preserveMdc = preserveMdc;
+    }
+
+    /**
+     * Create an executor running reads on virtual threads.
+     *
+     * @param name the name prefix of the virtual threads
+     * @param maxConcurrentReads the max number of reads in progress
+     * @param maxPendingReads the max number of reads waiting to start, or 0 for no limit
+     * @param preserveMdc whether to run the reads with the MDC of the thread queuing them
+     * @return the executor, or null if the runtime doesn't support virtual threads
+     */
+    static VirtualThreadReadExecutor create(String name, int maxConcurrentReads, int maxPendingReads,
+                                            boolean preserveMdc) {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor(name);
+        if (executor == null) {
+            return null;
+        }
+        LOG.info("Running read requests on virtual threads, with at most {} concurrent reads",
+                maxConcurrentReads);
+        return new VirtualThreadReadExecutor(name, executor, Math.max(1, maxConcurrentReads), maxPendingReads,
+                preserveMdc);
+    }
+
+    /**
+     * Equivalent of
+     * {@code Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory())}.
+     */
+    @VisibleForTesting
+    static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Virtual threads are not supported by this runtime ({}), using the read worker threads",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+
+    /**
+     * Run a read on a new virtual thread.
+     *
+     * @throws RejectedExecutionException if too many reads are pending, or the executor is shut down
+     */
+    void execute(Runnable read) {
+        int outstanding = outstandingReads.incrementAndGet();
+        if (maxOutstandingReads > 0 && outstanding > maxOutstandingReads) {
+            outstandingReads.decrementAndGet();
+            throw new RejectedExecutionException("Too many pending reads in " + name);
+        }
+        final Map<String, String> mdcContextMap = preserveMdc ? MDC.getCopyOfContextMap() : null;
+        try {
+            executor.execute(() -> {
+                // blocking a virtual thread on the semaphore doesn't hold a platform thread
+                concurrentReads.acquireUninterruptibly();
+                try {
+                    if (preserveMdc) {
+                        MdcUtils.restoreContext(mdcContextMap);
+                    }
+                    read.run();
+                } catch (Throwable t) {
+                    LOG.error("Unexpected exception while running read in {}", name, t);
+                } finally {
+                    if (preserveMdc) {
+                        MDC.clear();
+                    }
+                    concurrentReads.release();
+                    outstandingReads.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            outstandingReads.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Stop accepting reads, and wait for the reads in progress to complete.
+     */
+    void shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, unit)) {
+                LOG.warn("Reads of {} didn't complete in time, interrupting them", name);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
+import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.LacNotification;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.WatchLacRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.WatchLacResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.WatchedLedger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processor handling the long polls of the last add confirmed of many ledgers.
+ *
+ * <p>A watcher is registered on the last add confirmed of each ledger of the request, and the
+ * request is answered once the last add confirmed of any of them advances, or when it times out.
+ * The response notifies all the ledgers whose last add confirmed advanced by then, with the entry
+ * following the previous last add confirmed known by the client, if requested. A single timer
+ * expires the request, whatever the number of ledgers watched. The requests watching more than
+ * {@code watchLacMaxLedgersPerRequest} ledgers are rejected.
+ */
+class WatchLacProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger logger = LoggerFactory.getLogger(WatchLacProcessorV3.class);
+
+    private final WatchLacRequest watchLacRequest;
+    private final List<WatchedLedger> ledgers;
+    private final LedgerWatcher[] watchers;
+    private final ExecutorService longPollThreadPool;
+    private final HashedWheelTimer requestTimer;
+    private final long maxResponseSize;
+    private final int maxLedgers;
+    private final long startTimeNanos;
+
+    // guarded by this
+    private boolean registering = false;
+    private boolean notified = false;
+    private boolean responding = false;
+    private Timeout expirationTimerTask = null;
+
+    WatchLacProcessorV3(Request request,
+                        BookieRequestHandler requestHandler,
+                        BookieRequestProcessor requestProcessor,
+                        ExecutorService longPollThreadPool,
+                        HashedWheelTimer requestTimer,
+                        long maxResponseSize,
+                        int maxLedgers) {
+        super(request, requestHandler, requestProcessor);
+        this.watchLacRequest = request.getWatchLacRequest();
+        this.ledgers = watchLacRequest.getLedgersList();
+        this.watchers = new LedgerWatcher[ledgers.size()];
+        this.longPollThreadPool = longPollThreadPool;
+        this.requestTimer = requestTimer;
+        this.maxResponseSize = maxResponseSize;
+        this.maxLedgers = maxLedgers;
+        this.startTimeNanos = MathUtils.nowInNano();
+    }
+
+    @Override
+    public void run() {
+        if (!isVersionCompatible()) {
+            sendResponse(WatchLacResponse.newBuilder().setStatus(StatusCode.EBADVERSION).build());
+            return;
+        }
+        if (ledgers.size() > maxLedgers) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Rejected the request to watch {} ledgers, more than the max of {} ledgers",
+                        ledgers.size(), maxLedgers);
+            }
+            sendResponse(WatchLacResponse.newBuilder().setStatus(StatusCode.ETOOMANYREQUESTS).build());
+            return;
+        }
+        synchronized (this) {
+            registering = true;
+        }
+        // the watchers are registered out of the lock, as the ledgers notify their watchers
+        boolean respondNow = registerWatchers();
+        synchronized (this) {
+            registering = false;
+            if (respondNow || notified || watchLacRequest.getTimeOut() <= 0) {
+                responding = true;
+            } else {
+                expirationTimerTask = requestTimer.newTimeout(timeout -> scheduleResponse(true),
+                        watchLacRequest.getTimeOut(), TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        registerEvent(false);
+        respond();
+    }
+
+    /**
+     * Register the watchers on the ledgers of the request.
+     *
+     * @return true if a ledger is already notified, so the request has to be answered right away
+     */
+    private boolean registerWatchers() {
+        int numRegistered = 0;
+        for (int i = 0; i < ledgers.size(); i++) {
+            WatchedLedger ledger = ledgers.get(i);
+            LedgerWatcher watcher = new LedgerWatcher(ledger.getPreviousLAC());
+            try {
+                if (!requestProcessor.getBookie().waitForLastAddConfirmedUpdate(ledger.getLedgerId(),
+                        ledger.getPreviousLAC(), watcher)) {
+                    // the lac already advanced, or the ledger is closed
+                    break;
+                }
+            } catch (IOException e) {
+                // the ledger is notified with the error
+                break;
+            }
+            watchers[i] = watcher;
+            numRegistered++;
+        }
+        requestProcessor.getRequestStats().trackWatchedLedgers(numRegistered);
+        return numRegistered < ledgers.size();
+    }
+
+    private void cancelWatchers() {
+        int numRegistered = 0;
+        for (int i = 0; i < watchers.length; i++) {
+            if (null == watchers[i]) {
+                continue;
+            }
+            numRegistered++;
+            try {
+                requestProcessor.getBookie().cancelWaitForLastAddConfirmedUpdate(ledgers.get(i).getLedgerId(),
+                        watchers[i]);
+            } catch (IOException e) {
+                // the ledger is gone, so is its watcher
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Failed to cancel the watch of ledger {}", ledgers.get(i).getLedgerId(), e);
+                }
+            }
+            watchers[i] = null;
+        }
+        requestProcessor.getRequestStats().untrackWatchedLedgers(numRegistered);
+    }
+
+    private void scheduleResponse(boolean timeout) {
+        synchronized (this) {
+            if (registering) {
+                // respond once all the watchers are registered
+                notified = true;
+                return;
+            }
+            if (responding) {
+                return;
+            }
+            responding = true;
+            if (null != expirationTimerTask) {
+                expirationTimerTask.cancel();
+            }
+        }
+        registerEvent(timeout);
+        if (null == longPollThreadPool) {
+            respond();
+            return;
+        }
+        try {
+            longPollThreadPool.execute(this::respond);
+        } catch (RejectedExecutionException exc) {
+            // If the threadPool has been shutdown, simply drop the task
+        }
+    }
+
+    private void registerEvent(boolean timeout) {
+        long elapsedNanos = MathUtils.elapsedNanos(startTimeNanos);
+        if (timeout) {
+            requestProcessor.getRequestStats().getWatchLacWaitStats()
+                    .registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        } else {
+            requestProcessor.getRequestStats().getWatchLacWaitStats()
+                    .registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void respond() {
+        cancelWatchers();
+        WatchLacResponse.Builder response = WatchLacResponse.newBuilder().setStatus(StatusCode.EOK);
+        long responseSize = 0;
+        for (int i = 0; i < ledgers.size(); i++) {
+            LacNotification notification = getNotification(ledgers.get(i), maxResponseSize - responseSize);
+            if (null != notification) {
+                responseSize += notification.getSerializedSize();
+                response.addNotifications(notification);
+            }
+        }
+        requestProcessor.getRequestStats().getWatchLacNotificationsCounter()
+                .addCount(response.getNotificationsCount());
+        sendResponse(response.build());
+    }
+
+    /**
+     * Get the notification of a ledger watched.
+     *
+     * @param maxEntrySize the max size of the entry following the previous lac sent with the
+     *                     notification, if requested; the notification is sent without the entry
+     *                     if it doesn't fit in the response
+     * @return the notification of the ledger, or null if its lac didn't advance
+     */
+    private LacNotification getNotification(WatchedLedger ledger, long maxEntrySize) {
+        long ledgerId = ledger.getLedgerId();
+        long previousLAC = ledger.getPreviousLAC();
+        LacNotification.Builder notification = LacNotification.newBuilder().setLedgerId(ledgerId);
+        long lac;
+        try {
+            lac = requestProcessor.getBookie().readLastAddConfirmed(ledgerId);
+        } catch (Bookie.NoLedgerException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("No ledger found while watching ledger {}, previous lac = {}", ledgerId, previousLAC);
+            }
+            return notification.setStatus(StatusCode.ENOLEDGER).build();
+        } catch (BookieException.DataUnknownException e) {
+            logger.error("Ledger {} in unknown state and cannot serve watch requests", ledgerId, e);
+            return notification.setStatus(StatusCode.EUNKNOWNLEDGERSTATE).build();
+        } catch (BookieException | IOException e) {
+            logger.error("IOException while watching ledger {}, previous lac = {} : ", ledgerId, previousLAC, e);
+            return notification.setStatus(StatusCode.EIO).build();
+        }
+        if (lac <= previousLAC) {
+            return null;
+        }
+        notification.setStatus(StatusCode.EOK).setLastAddConfirmed(lac);
+        if (watchLacRequest.getPiggybackEntry() && maxEntrySize > 0) {
+            long entryId = previousLAC + 1;
+            ByteBuf entry = null;
+            try {
+                entry = requestProcessor.getBookie().readEntry(ledgerId, entryId);
+                if (entry.readableBytes() <= maxEntrySize) {
+                    notification.setEntryId(entryId).setBody(ByteString.copyFrom(entry.nioBuffer()));
+                }
+            } catch (Bookie.NoEntryException e) {
+                // piggy back is best effort, the entry may be striped to another bookie
+                requestProcessor.getRequestStats().getReadLastEntryNoEntryErrorCounter().inc();
+            } catch (BookieException | IOException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Failed to read entry {} of ledger {} watched", entryId, ledgerId, e);
+                }
+            } finally {
+                ReferenceCountUtil.release(entry);
+            }
+        }
+        return notification.build();
+    }
+
+    private void sendResponse(WatchLacResponse watchLacResponse) {
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(watchLacResponse.getStatus())
+                .setWatchLacResponse(watchLacResponse);
+        sendResponse(response.getStatus(),
+                response.build(),
+                requestProcessor.getRequestStats().getWatchLacRequestStats());
+    }
+
+    /**
+     * The watcher of the lac of a ledger of the request.
+     */
+    private class LedgerWatcher implements Watcher<LastAddConfirmedUpdateNotification> {
+
+        private final long previousLAC;
+
+        LedgerWatcher(long previousLAC) {
+            this.previousLAC = previousLAC;
+        }
+
+        @Override
+        public void update(LastAddConfirmedUpdateNotification newLACNotification) {
+            if (newLACNotification.getLastAddConfirmed() > previousLAC) {
+                scheduleResponse(false);
+            }
+            newLACNotification.recycle();
+        }
+    }
+}
@@ -42,10 +42,22 @@ import org.slf4j.LoggerFactory;
 class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
     private static final Logger logger = LoggerFactory.getLogger(WriteEntryProcessorV3.class);
 
+    // the entry, when decoded out of the request by the direct codec
+    private final ByteBuf payload;
+    // the bytes of the entry tracked as in flight until the request is completed
+    private final long inFlightBytes;
+
     public WriteEntryProcessorV3(Request request, BookieRequestHandler requestHandler,
                                  BookieRequestProcessor requestProcessor) {
+        this(request, null, requestHandler, requestProcessor);
+    }
+
+    WriteEntryProcessorV3(Request request, ByteBuf payload, BookieRequestHandler requestHandler,
+                          BookieRequestProcessor requestProcessor) {
         super(request, requestHandler, requestProcessor);
-        requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
+        this.payload = payload;
+        this.inFlightBytes = payload != null ? payload.readableBytes() : request.getAddRequest().getBody().size();
+        requestProcessor.onAddRequestStart(requestHandler, inFlightBytes);
     }
 
     // Returns null if there is no exception thrown
@@ -60,6 +72,7 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
                 .setEntryId(entryId);
 
         if (!isVersionCompatible()) {
+            releasePayload();
             addResponse.setStatus(StatusCode.EBADVERSION);
             return addResponse.build();
         }
@@ -68,6 +81,7 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
             && !(RequestUtils.isHighPriority(request)
                     && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
             logger.warn("BookieServer is running as readonly mode, so rejecting the request from the client!");
+            releasePayload();
             addResponse.setStatus(StatusCode.EREADONLY);
             return addResponse.build();
         }
@@ -114,7 +128,9 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
         final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
         StatusCode status = null;
         byte[] masterKey = addRequest.getMasterKey().toByteArray();
-        ByteBuf entryToAdd = Unpooled.wrappedBuffer(addRequest.getBody().asReadOnlyByteBuffer());
+        // the bookie releases the entry once added
+        ByteBuf entryToAdd = payload != null
+                ? payload : Unpooled.wrappedBuffer(addRequest.getBody().asReadOnlyByteBuffer());
         try {
             if (RequestUtils.hasFlag(addRequest, AddRequest.Flag.RECOVERY_ADD)) {
                 requestProcessor.getBookie().recoveryAddEntry(entryToAdd, wcb,
@@ -180,7 +196,16 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
     @Override
     protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
         super.sendResponse(code, response, statsLogger);
-        requestProcessor.onAddRequestFinish();
+        requestProcessor.onAddRequestFinish(requestHandler, inFlightBytes);
+    }
+
+    /**
+     * Release the entry, when the request is rejected before being handed to the bookie.
+     */
+    void releasePayload() {
+        if (payload != null) {
+            payload.release();
+        }
     }
 
     /**
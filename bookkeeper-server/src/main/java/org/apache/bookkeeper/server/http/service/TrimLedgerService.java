@@ -0,0 +1,128 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.server.http.service;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.common.util.JsonUtil;
+import org.apache.bookkeeper.http.HttpServer;
+import org.apache.bookkeeper.http.service.HttpEndpointService;
+import org.apache.bookkeeper.http.service.HttpServiceRequest;
+import org.apache.bookkeeper.http.service.HttpServiceResponse;
+import org.apache.bookkeeper.proto.BookieServer;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HttpEndpointService that handle trim ledger requests.
+ *
+ * <p>The PUT method will trim a ledger on current bookie up to an entry (inclusive).
+ * The request body would be like:
+ *        {
+ *           "ledger_id" : 1,
+ *           "trim_entry_id" : 100
+ *        }
+ */
+public class TrimLedgerService implements HttpEndpointService {
+
+    static final Logger LOG = LoggerFactory.getLogger(TrimLedgerService.class);
+
+    private final BookieServer bookieServer;
+
+    public TrimLedgerService(BookieServer bookieServer) {
+        this.bookieServer = checkNotNull(bookieServer);
+    }
+
+    @Override
+    public HttpServiceResponse handle(HttpServiceRequest request) throws Exception {
+        HttpServiceResponse response = new HttpServiceResponse();
+
+        if (HttpServer.Method.PUT != request.getMethod()) {
+            response.setCode(HttpServer.StatusCode.METHOD_NOT_ALLOWED);
+            response.setBody("Not found method. Should be PUT method to trim a ledger.");
+            return response;
+        }
+
+        String requestBody = request.getBody();
+        if (StringUtils.isBlank(requestBody)) {
+            response.setCode(HttpServer.StatusCode.BAD_REQUEST);
+            response.setBody("Empty request body");
+            return response;
+        }
+
+        long ledgerId;
+        long trimEntryId;
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> configMap = JsonUtil.fromJson(requestBody, HashMap.class);
+            Object ledgerIdParam = configMap.get("ledger_id");
+            Object trimEntryIdParam = configMap.get("trim_entry_id");
+            if (!(ledgerIdParam instanceof Number) || !(trimEntryIdParam instanceof Number)) {
+                response.setCode(HttpServer.StatusCode.BAD_REQUEST);
+                response.setBody("Request body should contain numeric ledger_id and trim_entry_id");
+                return response;
+            }
+            ledgerId = ((Number) ledgerIdParam).longValue();
+            trimEntryId = ((Number) trimEntryIdParam).longValue();
+        } catch (JsonUtil.ParseJsonException ex) {
+            LOG.warn("Trim ledger failed, caused by: " + ex.getMessage());
+            response.setCode(HttpServer.StatusCode.BAD_REQUEST);
+            response.setBody(ex.getMessage());
+            return response;
+        }
+        if (trimEntryId < 0) {
+            response.setCode(HttpServer.StatusCode.BAD_REQUEST);
+            response.setBody("trim_entry_id should not be negative");
+            return response;
+        }
+
+        String output;
+        try {
+            if (bookieServer.getBookie().getLedgerStorage().trimLedger(ledgerId, trimEntryId)) {
+                output = String.format("Trimmed ledger %d up to entry %d on bookie:%s.",
+                        ledgerId, trimEntryId, bookieServer.getBookieId());
+            } else {
+                output = String.format("Ledger %d is already trimmed up to entry %d or beyond on bookie:%s.",
+                        ledgerId, trimEntryId, bookieServer.getBookieId());
+            }
+        } catch (Bookie.NoLedgerException e) {
+            response.setCode(HttpServer.StatusCode.NOT_FOUND);
+            response.setBody(e.getMessage());
+            return response;
+        } catch (UnsupportedOperationException e) {
+            response.setCode(HttpServer.StatusCode.BAD_REQUEST);
+            response.setBody(e.getMessage());
+            return response;
+        }
+
+        String jsonResponse = JsonUtil.toJson(output);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("output body:" + jsonResponse);
+        }
+        response.setBody(jsonResponse);
+        response.setCode(HttpServer.StatusCode.OK);
+        return response;
+    }
+}
@@ -28,6 +28,7 @@ import org.apache.bookkeeper.bookie.UncleanShutdownDetection;
 import org.apache.bookkeeper.common.allocator.ByteBufAllocatorWithOomHandler;
 import org.apache.bookkeeper.common.component.ComponentInfoPublisher;
 import org.apache.bookkeeper.common.component.ComponentInfoPublisher.EndpointInfo;
+import org.apache.bookkeeper.discover.BookieServiceInfoUtils;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.proto.BookieServer;
 import org.apache.bookkeeper.server.component.ServerLifecycleComponent;
@@ -108,6 +109,9 @@ public class BookieService extends ServerLifecycleComponent {
             if (conf.getServerConf().getTLSProviderFactoryClass() != null) {
                 extensions.add("tls");
             }
+            if (conf.getServerConf().getMaxChunkedAddPendingBytes() > 0) {
+                extensions.add(BookieServiceInfoUtils.CHUNKED_ADD_EXTENSION);
+            }
             EndpointInfo endpoint = new EndpointInfo("bookie",
                     localAddress.getPort(),
                     localAddress.getHostName(),
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.util;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * Stats of the threads of a Netty event loop group, labelled by the index of the event loop.
+ *
+ * <p>The utilization is the share of the wall clock time the event loop thread spent on a CPU
+ * since the previous sample, in percent. An event loop in busy-wait mode always spins, so its
+ * utilization is close to 100 and its pending tasks are the better indication of its load. The
+ * utilization is only reported if the JVM measures the CPU time of the threads, which it does by
+ * default.
+ */
+@Slf4j
+public class EventLoopStats {
+
+    public static final String EVENT_LOOP_LABEL = "eventloop";
+    public static final String EVENT_LOOP_PENDING_TASKS = "EVENT_LOOP_PENDING_TASKS";
+    public static final String EVENT_LOOP_UTILIZATION = "EVENT_LOOP_UTILIZATION";
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    @StatsDoc(
+        name = EVENT_LOOP_PENDING_TASKS,
+        help = "number of tasks waiting to run on an event loop"
+    )
+    private final List<Gauge<Number>> pendingTasksGauges = new ArrayList<>();
+    @StatsDoc(
+        name = EVENT_LOOP_UTILIZATION,
+        help = "percentage of the time an event loop thread spent on a CPU since the previous sample"
+    )
+    private final List<Gauge<Number>> utilizationGauges = new ArrayList<>();
+
+    /**
+     * Register the stats of the event loops of a group.
+     *
+     * @param eventLoopGroup the event loop group
+     * @param statsLogger the stats logger to register the stats with
+     */
+    public EventLoopStats(EventExecutorGroup eventLoopGroup, StatsLogger statsLogger) {
+        // the thread CPU time measurement is a setting of the whole JVM, so it is left as it is
+        boolean cpuTimeSupported = THREAD_MX_BEAN.isThreadCpuTimeSupported()
+                && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+        if (!cpuTimeSupported) {
+            log.info("The thread CPU time measurement is disabled, the event loop utilization isn't reported");
+        }
+        int index = 0;
+        for (EventExecutor executor : eventLoopGroup) {
+            StatsLogger eventLoopStatsLogger = statsLogger.scopeLabel(EVENT_LOOP_LABEL, String.valueOf(index++));
+
+            Gauge<Number> pendingTasksGauge = new Gauge<Number>() {
+                @Override
+                public Number getDefaultValue() {
+                    return 0;
+                }
+
+                @Override
+                public Number getSample() {
+                    return executor instanceof SingleThreadEventExecutor
+                            ? ((SingleThreadEventExecutor) executor).pendingTasks() : 0;
+                }
+            };
+            eventLoopStatsLogger.registerGauge(EVENT_LOOP_PENDING_TASKS, pendingTasksGauge);
+            pendingTasksGauges.add(pendingTasksGauge);
+
+            if (cpuTimeSupported) {
+                UtilizationGauge utilizationGauge = new UtilizationGauge();
+                // the thread of an event loop is only known once it runs a task
+                executor.execute(() -> utilizationGauge.threadId = Thread.currentThread().getId());
+                eventLoopStatsLogger.registerGauge(EVENT_LOOP_UTILIZATION, utilizationGauge);
+                utilizationGauges.add(utilizationGauge);
+            }
+        }
+    }
+
+    private static class UtilizationGauge implements Gauge<Number> {
+
+        volatile long threadId = -1;
+        private long lastCpuTimeNanos = -1;
+        private long lastSampleNanos;
+
+        @Override
+        public Number getDefaultValue() {
+            return 0;
+        }
+
+        @Override
+        public synchronized Number getSample() {
+            long id = threadId;
+            if (id < 0) {
+                return 0;
+            }
+            long cpuTimeNanos = THREAD_MX_BEAN.getThreadCpuTime(id);
+            long nowNanos = System.nanoTime();
+            if (cpuTimeNanos < 0) {
+                // the thread is gone, or the measurement was disabled since
+                lastCpuTimeNanos = -1;
+                return 0;
+            }
+            double utilization = 0;
+            if (lastCpuTimeNanos >= 0 && nowNanos > lastSampleNanos) {
+                utilization = Math.min(100.0,
+                        100.0 * (cpuTimeNanos - lastCpuTimeNanos) / (nowNanos - lastSampleNanos));
+            }
+            lastCpuTimeNanos = cpuTimeNanos;
+            lastSampleNanos = nowNanos;
+            return utilization;
+        }
+    }
+}
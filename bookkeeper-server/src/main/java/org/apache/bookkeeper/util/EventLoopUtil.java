@@ -42,21 +42,29 @@ public class EventLoopUtil {
 
     private static final String ENABLE_IO_URING = "enable.io_uring";
 
+    private static final String TRANSPORT_AUTO = "auto";
+    private static final String TRANSPORT_EPOLL = "epoll";
+    private static final String TRANSPORT_IO_URING = "io_uring";
+    private static final String TRANSPORT_NIO = "nio";
+
     public static EventLoopGroup getClientEventLoopGroup(ClientConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.getEventLoopTransport());
     }
 
     public static EventLoopGroup getServerEventLoopGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.getEventLoopTransport());
     }
 
     public static EventLoopGroup getServerAcceptorGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getServerNumAcceptorThreads(), false);
+        return getEventLoopGroup(threadFactory, conf.getServerNumAcceptorThreads(), false,
+                conf.getEventLoopTransport());
     }
 
     private static EventLoopGroup getEventLoopGroup(ThreadFactory threadFactory,
-            int numThreads, boolean enableBusyWait) {
-        if (!SystemUtils.IS_OS_LINUX) {
+            int numThreads, boolean enableBusyWait, String transport) {
+        if (!SystemUtils.IS_OS_LINUX || TRANSPORT_NIO.equalsIgnoreCase(transport)) {
             return new NioEventLoopGroup(numThreads, threadFactory);
         }
 
@@ -67,36 +75,56 @@ public class EventLoopUtil {
         if (StringUtils.equalsAnyIgnoreCase(enableIoUring, "1", "true")) {
             // Throw exception if IOUring cannot be used
             IOUring.ensureAvailability();
-            return new IOUringEventLoopGroup(numThreads, threadFactory);
-        } else {
-            try {
-                if (!enableBusyWait) {
-                    // Regular Epoll based event loop
-                    return new EpollEventLoopGroup(numThreads, threadFactory);
-                }
-
-                // With low latency setting, put the Netty event loop on busy-wait loop to reduce cost of
-                // context switches
-                EpollEventLoopGroup eventLoopGroup = new EpollEventLoopGroup(numThreads, threadFactory,
-                        () -> (selectSupplier, hasTasks) -> SelectStrategy.BUSY_WAIT);
-
-                // Enable CPU affinity on IO threads
-                for (int i = 0; i < numThreads; i++) {
-                    eventLoopGroup.next().submit(() -> {
-                        try {
-                            CpuAffinity.acquireCore();
-                        } catch (Throwable t) {
-                            log.warn("Failed to acquire CPU core for thread {} err {} {}",
-                                    Thread.currentThread().getName(), t.getMessage(), t);
-                        }
-                    });
-                }
+            return newIOUringEventLoopGroup(threadFactory, numThreads, enableBusyWait);
+        } else if (TRANSPORT_IO_URING.equalsIgnoreCase(transport)) {
+            if (IOUring.isAvailable()) {
+                return newIOUringEventLoopGroup(threadFactory, numThreads, enableBusyWait);
+            }
+            log.warn("Could not use Netty io_uring event loop, falling back to epoll: {}",
+                    IOUring.unavailabilityCause().getMessage());
+        } else if (!TRANSPORT_AUTO.equalsIgnoreCase(transport) && !TRANSPORT_EPOLL.equalsIgnoreCase(transport)) {
+            throw new IllegalArgumentException("Unknown event loop transport " + transport);
+        }
 
-                return eventLoopGroup;
-            } catch (ExceptionInInitializerError | NoClassDefFoundError | UnsatisfiedLinkError e) {
-                log.warn("Could not use Netty Epoll event loop: {}", e.getMessage());
-                return new NioEventLoopGroup(numThreads, threadFactory);
+        try {
+            if (!enableBusyWait) {
+                // Regular Epoll based event loop
+                return new EpollEventLoopGroup(numThreads, threadFactory);
             }
+
+            // With low latency setting, put the Netty event loop on busy-wait loop to reduce cost of
+            // context switches
+            EpollEventLoopGroup eventLoopGroup = new EpollEventLoopGroup(numThreads, threadFactory,
+                    () -> (selectSupplier, hasTasks) -> SelectStrategy.BUSY_WAIT);
+
+            acquireCpuCores(eventLoopGroup, numThreads);
+            return eventLoopGroup;
+        } catch (ExceptionInInitializerError | NoClassDefFoundError | UnsatisfiedLinkError e) {
+            log.warn("Could not use Netty Epoll event loop: {}", e.getMessage());
+            return new NioEventLoopGroup(numThreads, threadFactory);
+        }
+    }
+
+    private static EventLoopGroup newIOUringEventLoopGroup(ThreadFactory threadFactory, int numThreads,
+                                                           boolean enableBusyWait) {
+        if (enableBusyWait) {
+            // the cores are only pinned for the event loops spinning on them
+            log.info("The io_uring event loops don't busy-wait, ignoring the busy-wait setting");
+        }
+        return new IOUringEventLoopGroup(numThreads, threadFactory);
+    }
+
+    private static void acquireCpuCores(EventLoopGroup eventLoopGroup, int numThreads) {
+        // Enable CPU affinity on IO threads
+        for (int i = 0; i < numThreads; i++) {
+            eventLoopGroup.next().submit(() -> {
+                try {
+                    CpuAffinity.acquireCore();
+                } catch (Throwable t) {
+                    log.warn("Failed to acquire CPU core for thread {} err {} {}",
+                            Thread.currentThread().getName(), t.getMessage(), t);
+                }
+            });
         }
     }
 }
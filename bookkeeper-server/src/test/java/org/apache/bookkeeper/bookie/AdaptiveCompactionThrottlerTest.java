@@ -0,0 +1,177 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the adaptation of the compaction rate to the foreground traffic.
+ */
+public class AdaptiveCompactionThrottlerTest {
+
+    private static final int BASE_RATE = 1000;
+    private static final int RATE_RANGE = 4;
+    private static final long TARGET_P99_LATENCY_MS = 10;
+
+    private ServerConfiguration conf;
+    private ScheduledExecutorService adjustExecutor;
+    private ScheduledFuture<?> adjustTask;
+    private ForegroundLatencyTracker latencyTracker;
+
+    @Before
+    public void setUp() {
+        conf = TestBKConfiguration.newServerConfiguration();
+        conf.setCompactionRateByEntries(BASE_RATE);
+        conf.setCompactionThrottleAdaptiveEnabled(true);
+        conf.setCompactionThrottleAdaptiveRateRange(RATE_RANGE);
+        conf.setCompactionThrottleTargetForegroundP99LatencyMs(TARGET_P99_LATENCY_MS);
+        conf.setCompactionThrottleMaxDiskQueueDepth(0);
+        conf.setCompactionThrottleAdjustIntervalMs(10);
+        adjustExecutor = mock(ScheduledExecutorService.class);
+        adjustTask = mock(ScheduledFuture.class);
+        doReturn(adjustTask).when(adjustExecutor)
+                .scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+        latencyTracker = new ForegroundLatencyTracker();
+    }
+
+    @After
+    public void tearDown() {
+        adjustExecutor.shutdownNow();
+    }
+
+    private AdaptiveCompactionThrottler newThrottler(ScheduledExecutorService executor) {
+        AdaptiveCompactionThrottler throttler = new AdaptiveCompactionThrottler(conf, executor);
+        throttler.setForegroundLatencyTracker(latencyTracker);
+        return throttler;
+    }
+
+    private void recordLatencies(long latencyMs) {
+        for (int i = 0; i < 100; i++) {
+            latencyTracker.recordLatency(latencyMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void testCreatedFromConf() {
+        assertTrue(AbstractLogCompactor.Throttler.create(conf) instanceof AdaptiveCompactionThrottler);
+        conf.setCompactionThrottleAdaptiveEnabled(false);
+        assertEquals(AbstractLogCompactor.Throttler.class, AbstractLogCompactor.Throttler.create(conf).getClass());
+    }
+
+    @Test
+    public void testRateDecreasedOnSlowForeground() {
+        AdaptiveCompactionThrottler throttler = newThrottler(adjustExecutor);
+        assertEquals(BASE_RATE, throttler.rateLimiter.getRate(), 0.01);
+
+        recordLatencies(5 * TARGET_P99_LATENCY_MS);
+        throttler.adjustRate();
+        assertEquals(BASE_RATE / 2, throttler.rateLimiter.getRate(), 0.01);
+
+        // never below the bottom of the range
+        for (int i = 0; i < 5; i++) {
+            recordLatencies(5 * TARGET_P99_LATENCY_MS);
+            throttler.adjustRate();
+        }
+        assertEquals(BASE_RATE / RATE_RANGE, throttler.rateLimiter.getRate(), 0.01);
+    }
+
+    @Test
+    public void testRateIncreasedOnFastForeground() {
+        AdaptiveCompactionThrottler throttler = newThrottler(adjustExecutor);
+
+        recordLatencies(1);
+        throttler.adjustRate();
+        assertEquals(BASE_RATE * 1.25, throttler.rateLimiter.getRate(), 0.01);
+
+        // no foreground traffic at all, and never above the top of the range
+        for (int i = 0; i < 10; i++) {
+            throttler.adjustRate();
+        }
+        assertEquals(BASE_RATE * RATE_RANGE, throttler.rateLimiter.getRate(), 0.01);
+    }
+
+    @Test
+    public void testRateKeptWithinHeadroom() {
+        AdaptiveCompactionThrottler throttler = newThrottler(adjustExecutor);
+
+        // between 80% and 100% of the target latency
+        recordLatencies(9);
+        throttler.adjustRate();
+        assertEquals(BASE_RATE, throttler.rateLimiter.getRate(), 0.01);
+    }
+
+    @Test
+    public void testOnlyRecentTrafficCounts() {
+        AdaptiveCompactionThrottler throttler = newThrottler(adjustExecutor);
+
+        recordLatencies(5 * TARGET_P99_LATENCY_MS);
+        throttler.adjustRate();
+        assertEquals(BASE_RATE / 2, throttler.rateLimiter.getRate(), 0.01);
+
+        // the slow requests were already accounted in the previous adjustment
+        recordLatencies(1);
+        throttler.adjustRate();
+        assertEquals(BASE_RATE / 2 * 1.25, throttler.rateLimiter.getRate(), 0.01);
+    }
+
+    @Test
+    public void testRateAdjustedWhileCompactionIsIdle() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            AdaptiveCompactionThrottler throttler = newThrottler(executor);
+            // no permit is acquired, the timer alone follows the slow foreground traffic
+            Awaitility.await().pollInterval(1, TimeUnit.MILLISECONDS).until(() -> {
+                recordLatencies(5 * TARGET_P99_LATENCY_MS);
+                return throttler.rateLimiter.getRate() == BASE_RATE / RATE_RANGE;
+            });
+            throttler.cancelledAcquire();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAdjustmentStoppedOnCancel() {
+        AdaptiveCompactionThrottler throttler = newThrottler(adjustExecutor);
+        verify(adjustExecutor).scheduleWithFixedDelay(any(Runnable.class), eq(10L), eq(10L),
+                eq(TimeUnit.MILLISECONDS));
+        throttler.cancelledAcquire();
+        verify(adjustTask).cancel(false);
+    }
+}
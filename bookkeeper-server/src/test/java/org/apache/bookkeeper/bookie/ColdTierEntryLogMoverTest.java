@@ -0,0 +1,137 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the placement of the entry logs on the cold ledger dirs.
+ */
+public class ColdTierEntryLogMoverTest {
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private ServerConfiguration conf;
+    private File fastDir;
+    private File coldDir1;
+    private File coldDir2;
+    private LedgerDirsManager ledgerDirsManager;
+    private DefaultEntryLogger entryLogger;
+
+    @Before
+    public void setUp() throws Exception {
+        conf = TestBKConfiguration.newServerConfiguration();
+        fastDir = newLedgerDir();
+        coldDir1 = newLedgerDir();
+        coldDir2 = newLedgerDir();
+        conf.setLedgerDirNames(new String[] {
+                fastDir.getAbsolutePath(), coldDir1.getAbsolutePath(), coldDir2.getAbsolutePath() });
+        conf.setColdLedgerDirNames(new String[] { coldDir1.getAbsolutePath(), coldDir2.getAbsolutePath() });
+        conf.setEntryLogFilePreAllocationEnabled(false);
+        ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager);
+    }
+
+    private File newLedgerDir() throws Exception {
+        File dir = tmpDirs.createNew("bkColdTierTest", ".dir");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(dir));
+        return dir;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entryLogger.close();
+        tmpDirs.cleanup();
+    }
+
+    @Test
+    public void testNewEntryLogsOnFastDirs() throws Exception {
+        assertTrue(ledgerDirsManager.hasColdLedgerDirs());
+        assertEquals(Collections.singletonList(BookieImpl.getCurrentDirectory(fastDir)),
+                ledgerDirsManager.getWritableLedgerDirsForNewLog());
+        assertEquals(Arrays.asList(BookieImpl.getCurrentDirectory(coldDir1), BookieImpl.getCurrentDirectory(coldDir2)),
+                ledgerDirsManager.getWritableColdLedgerDirs());
+
+        long location = entryLogger.addEntry(1L, entry(1L, 0L));
+        entryLogger.flush();
+        long logId = DefaultEntryLogger.logIdForOffset(location);
+        assertFalse(entryLogger.isEntryLogInColdTier(logId));
+    }
+
+    @Test
+    public void testColdTierCompactionLogOnWritableColdDir() throws Exception {
+        ledgerDirsManager.addToFilledDirs(BookieImpl.getCurrentDirectory(coldDir1));
+
+        CompactionEntryLog compactionLog = entryLogger.newColdTierCompactionLog(0L);
+        try {
+            assertEquals(0, compactingLogs(coldDir1));
+            assertEquals(1, compactingLogs(coldDir2));
+            assertEquals(0, compactingLogs(fastDir));
+        } finally {
+            compactionLog.abort();
+        }
+    }
+
+    @Test
+    public void testNoColdTierCompactionLogWhenColdDirsAreFull() throws Exception {
+        ledgerDirsManager.addToFilledDirs(BookieImpl.getCurrentDirectory(coldDir1));
+        ledgerDirsManager.addToFilledDirs(BookieImpl.getCurrentDirectory(coldDir2));
+        try {
+            entryLogger.newColdTierCompactionLog(0L);
+            fail("The entry logs should not be migrated to full cold dirs");
+        } catch (NoWritableLedgerDirException e) {
+            // expected
+        }
+        assertEquals(0, compactingLogs(fastDir));
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(16 + 100);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeZero(100);
+        return entry;
+    }
+
+    private static int compactingLogs(File dir) {
+        File[] logs = BookieImpl.getCurrentDirectory(dir).listFiles(
+                (d, name) -> name.endsWith(TransactionalEntryLogCompactor.COMPACTING_SUFFIX));
+        return logs == null ? 0 : logs.length;
+    }
+}
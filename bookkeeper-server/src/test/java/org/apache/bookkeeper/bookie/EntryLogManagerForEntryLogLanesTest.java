@@ -0,0 +1,234 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger.BufferedLogChannel;
+import org.apache.bookkeeper.bookie.EntryLogManagerForEntryLogLanes.EntryLogLane;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the placement of the entries in the entry log lanes.
+ */
+public class EntryLogManagerForEntryLogLanesTest {
+
+    private static final int NUM_DIRS = 2;
+    private static final int LANES_PER_DIR = 3;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private ServerConfiguration conf;
+    private LedgerDirsManager ledgerDirsManager;
+    private DefaultEntryLogger entryLogger;
+
+    @Before
+    public void setUp() throws Exception {
+        conf = TestBKConfiguration.newServerConfiguration();
+        String[] ledgerDirs = new String[NUM_DIRS];
+        for (int i = 0; i < NUM_DIRS; i++) {
+            File ledgerDir = tmpDirs.createNew("bkLanesTest", ".dir");
+            BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+            ledgerDirs[i] = ledgerDir.getAbsolutePath();
+        }
+        conf.setLedgerDirNames(ledgerDirs);
+        conf.setEntryLogLanesPerDir(LANES_PER_DIR);
+        conf.setEntryLogFilePreAllocationEnabled(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (entryLogger != null) {
+            entryLogger.close();
+        }
+        tmpDirs.cleanup();
+    }
+
+    private void createEntryLogger() throws Exception {
+        ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager);
+    }
+
+    private EntryLogManagerForEntryLogLanes lanesManager() {
+        return (EntryLogManagerForEntryLogLanes) entryLogger.getEntryLogManager();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(16 + size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeZero(size);
+        return entry;
+    }
+
+    private static String entryLogDir(BufferedLogChannel logChannel) {
+        return logChannel.getLogFile().getParentFile().getAbsolutePath();
+    }
+
+    @Test
+    public void testLanesEnabled() throws Exception {
+        createEntryLogger();
+        assertTrue(entryLogger.getEntryLogManager() instanceof EntryLogManagerForEntryLogLanes);
+        assertEquals(NUM_DIRS * LANES_PER_DIR, lanesManager().getNumLanes());
+        assertTrue(conf.isMultipleActiveEntryLogsEnabled());
+    }
+
+    @Test
+    public void testLanesDisabledByDefault() throws Exception {
+        conf.setEntryLogLanesPerDir(0);
+        createEntryLogger();
+        assertTrue(entryLogger.getEntryLogManager() instanceof EntryLogManagerForSingleEntryLog);
+    }
+
+    @Test
+    public void testEntryLogPerLedgerTakesPrecedence() throws Exception {
+        conf.setEntryLogPerLedgerEnabled(true);
+        createEntryLogger();
+        assertTrue(entryLogger.getEntryLogManager() instanceof EntryLogManagerForEntryLogPerLedger);
+    }
+
+    @Test
+    public void testLedgerAlwaysWrittenToItsLane() throws Exception {
+        createEntryLogger();
+        EntryLogManagerForEntryLogLanes manager = lanesManager();
+        int numLedgers = 4 * manager.getNumLanes();
+        Map<Integer, Long> laneLogs = new HashMap<>();
+        for (int entryId = 0; entryId < 3; entryId++) {
+            for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+                long location = entryLogger.addEntry(ledgerId, entry(ledgerId, entryId, 100));
+                long logId = DefaultEntryLogger.logIdForOffset(location);
+                int laneId = manager.getLaneForLedger(ledgerId).getLaneId();
+                Long laneLog = laneLogs.putIfAbsent(laneId, logId);
+                if (laneLog != null) {
+                    // all the ledgers of a lane share its active entry log
+                    assertEquals(laneLog.longValue(), logId);
+                }
+            }
+        }
+        // every lane has its own active entry log
+        assertEquals(manager.getNumLanes(), laneLogs.size());
+        assertEquals(manager.getNumLanes(), new HashSet<>(laneLogs.values()).size());
+        for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+            assertSame(manager.getLaneForLedger(ledgerId), manager.getLaneForLedger(ledgerId));
+        }
+    }
+
+    @Test
+    public void testLanesSpreadOverLedgerDirs() throws Exception {
+        createEntryLogger();
+        EntryLogManagerForEntryLogLanes manager = lanesManager();
+        for (long ledgerId = 0; ledgerId < 4 * manager.getNumLanes(); ledgerId++) {
+            entryLogger.addEntry(ledgerId, entry(ledgerId, 0, 100));
+        }
+        Map<String, Integer> lanesPerDir = new HashMap<>();
+        for (long ledgerId = 0; ledgerId < manager.getNumLanes(); ledgerId++) {
+            EntryLogLane lane = manager.getLaneForLedger(ledgerId);
+            assertNotNull(lane.getActiveLogChannel());
+        }
+        Set<Integer> lanes = new HashSet<>();
+        for (long ledgerId = 0; ledgerId < 4 * manager.getNumLanes(); ledgerId++) {
+            EntryLogLane lane = manager.getLaneForLedger(ledgerId);
+            if (lanes.add(lane.getLaneId())) {
+                lanesPerDir.merge(entryLogDir(lane.getActiveLogChannel()), 1, Integer::sum);
+            }
+        }
+        assertEquals(NUM_DIRS, lanesPerDir.size());
+        for (int numLanes : lanesPerDir.values()) {
+            assertEquals(LANES_PER_DIR, numLanes);
+        }
+    }
+
+    @Test
+    public void testLaneRollsOnSizeLimit() throws Exception {
+        conf.setEntryLogSizeLimit(8 * 1024);
+        createEntryLogger();
+        EntryLogManagerForEntryLogLanes manager = lanesManager();
+        long ledgerId = 1;
+        long otherLedgerId = ledgerId + 1;
+        while (manager.getLaneForLedger(otherLedgerId) == manager.getLaneForLedger(ledgerId)) {
+            otherLedgerId++;
+        }
+        long otherLocation = entryLogger.addEntry(otherLedgerId, entry(otherLedgerId, 0, 100));
+
+        long[] locations = new long[20];
+        for (int entryId = 0; entryId < locations.length; entryId++) {
+            locations[entryId] = entryLogger.addEntry(ledgerId, entry(ledgerId, entryId, 1024));
+        }
+        long firstLogId = DefaultEntryLogger.logIdForOffset(locations[0]);
+        long lastLogId = DefaultEntryLogger.logIdForOffset(locations[locations.length - 1]);
+        assertNotEquals(firstLogId, lastLogId);
+        assertTrue(manager.getRotatedLogChannels().size() > 0);
+
+        // the other lanes keep their active entry log
+        assertEquals(DefaultEntryLogger.logIdForOffset(otherLocation),
+                manager.getLaneForLedger(otherLedgerId).getActiveLogChannel().getLogId());
+        assertNull(manager.getCurrentLogIfPresent(firstLogId));
+        assertNotNull(manager.getCurrentLogIfPresent(lastLogId));
+
+        entryLogger.flush();
+        assertEquals(0, manager.getRotatedLogChannels().size());
+        for (int entryId = 0; entryId < locations.length; entryId++) {
+            ByteBuf read = entryLogger.readEntry(ledgerId, entryId, locations[entryId]);
+            try {
+                assertEquals(ledgerId, read.getLong(0));
+                assertEquals(entryId, read.getLong(8));
+            } finally {
+                read.release();
+            }
+        }
+    }
+
+    @Test
+    public void testLaneMovesOffFullLedgerDir() throws Exception {
+        createEntryLogger();
+        EntryLogManagerForEntryLogLanes manager = lanesManager();
+        long ledgerId = 0;
+        entryLogger.addEntry(ledgerId, entry(ledgerId, 0, 100));
+        BufferedLogChannel logChannel = manager.getLaneForLedger(ledgerId).getActiveLogChannel();
+        File fullDir = logChannel.getLogFile().getParentFile();
+
+        ledgerDirsManager.addToFilledDirs(fullDir);
+        long location = entryLogger.addEntry(ledgerId, entry(ledgerId, 1, 100));
+
+        BufferedLogChannel newLogChannel = manager.getLaneForLedger(ledgerId).getActiveLogChannel();
+        assertEquals(newLogChannel.getLogId(), DefaultEntryLogger.logIdForOffset(location));
+        assertNotEquals(logChannel.getLogId(), newLogChannel.getLogId());
+        assertNotEquals(fullDir, newLogChannel.getLogFile().getParentFile());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the reads of the sealed entry logs through memory mappings.
+ */
+public class MappedEntryLogBufferTest {
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private ServerConfiguration conf;
+    private DefaultEntryLogger entryLogger;
+
+    @Before
+    public void setUp() throws Exception {
+        File ledgerDir = tmpDirs.createNew("bkMappedLogTest", ".dir");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+        conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        conf.setEntryLogMmapReadEnabled(true);
+        conf.setEntryLogSizeLimit(16 * 1024);
+        conf.setEntryLogFilePreAllocationEnabled(false);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entryLogger.close();
+        tmpDirs.cleanup();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(16 + 1024);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeZero(1024);
+        return entry;
+    }
+
+    /**
+     * Add entries until the first entry log is rolled and flushed.
+     */
+    private long[] addEntriesToSealedLog(long ledgerId) throws Exception {
+        long[] locations = new long[40];
+        for (int entryId = 0; entryId < locations.length; entryId++) {
+            locations[entryId] = entryLogger.addEntry(ledgerId, entry(ledgerId, entryId));
+        }
+        entryLogger.flush();
+        assertNotEquals(DefaultEntryLogger.logIdForOffset(locations[0]),
+                DefaultEntryLogger.logIdForOffset(locations[locations.length - 1]));
+        return locations;
+    }
+
+    @Test
+    public void testMappingIsReadOnly() throws Exception {
+        File file = new File(tmpDirs.createNew("bkMappedLogTest", ".dir"), "0.log");
+        byte[] content = new byte[] { 1, 2, 3, 4 };
+        Files.write(file.toPath(), content);
+
+        MappedEntryLogBuffer mappedLog = MappedEntryLogBuffer.map(file);
+        try {
+            assertEquals(content.length, mappedLog.capacity());
+            for (int i = 0; i < content.length; i++) {
+                assertEquals(content[i], mappedLog.getByte(i));
+            }
+            try {
+                mappedLog.setByte(0, 5);
+                fail("The mapping should be read-only");
+            } catch (ReadOnlyBufferException e) {
+                // expected
+            }
+            assertEquals(content[0], Files.readAllBytes(file.toPath())[0]);
+        } finally {
+            mappedLog.release();
+        }
+    }
+
+    @Test
+    public void testSlicesKeepTheMapping() throws Exception {
+        File file = new File(tmpDirs.createNew("bkMappedLogTest", ".dir"), "0.log");
+        Files.write(file.toPath(), new byte[] { 1, 2, 3, 4 });
+
+        MappedEntryLogBuffer mappedLog = MappedEntryLogBuffer.map(file);
+        ByteBuf slice = mappedLog.retainedSlice(2, 2);
+        mappedLog.release();
+        assertEquals(1, mappedLog.refCnt());
+        assertEquals(3, slice.getByte(0));
+        slice.release();
+        assertEquals(0, mappedLog.refCnt());
+    }
+
+    @Test
+    public void testReadSealedLogThroughMapping() throws Exception {
+        long ledgerId = 1;
+        long[] locations = addEntriesToSealedLog(ledgerId);
+        long sealedLogId = DefaultEntryLogger.logIdForOffset(locations[0]);
+
+        ByteBuf read = entryLogger.readEntry(ledgerId, 0, locations[0]);
+        try {
+            assertEquals(ledgerId, read.getLong(0));
+            assertEquals(0, read.getLong(8));
+        } finally {
+            read.release();
+        }
+        assertTrue(entryLogger.hasSealedLogReaders(sealedLogId));
+
+        assertTrue(entryLogger.removeEntryLog(sealedLogId));
+        assertFalse(entryLogger.hasSealedLogReaders(sealedLogId));
+        try {
+            entryLogger.readEntry(ledgerId, 0, locations[0]).release();
+            fail("The removed entry log should not be readable");
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse(entryLogger.hasSealedLogReaders(sealedLogId));
+    }
+
+    @Test
+    public void testConcurrentReadsDontLeakMappingOfRemovedLog() throws Exception {
+        long ledgerId = 1;
+        long[] locations = addEntriesToSealedLog(ledgerId);
+        long sealedLogId = DefaultEntryLogger.logIdForOffset(locations[0]);
+
+        AtomicBoolean removed = new AtomicBoolean(false);
+        CountDownLatch readerStarted = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            readerStarted.countDown();
+            // keep reading until a read after the removal failed
+            while (true) {
+                boolean wasRemoved = removed.get();
+                try {
+                    entryLogger.readEntry(ledgerId, 0, locations[0]).release();
+                } catch (IOException e) {
+                    if (wasRemoved) {
+                        return;
+                    }
+                }
+            }
+        });
+        reader.start();
+        readerStarted.await();
+        Thread.sleep(10);
+        assertTrue(entryLogger.removeEntryLog(sealedLogId));
+        removed.set(true);
+        reader.join();
+
+        assertFalse(entryLogger.hasSealedLogReaders(sealedLogId));
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.BookieResources;
+import org.apache.bookkeeper.bookie.CheckpointSource;
+import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.GarbageCollectorThread;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the cold tier of the DbLedgerStorage.
+ */
+public class DbLedgerStorageColdTierTest {
+
+    private static final int NUM_LEDGERS = 4;
+    private static final int NUM_ENTRIES = 20;
+    private static final int ENTRY_SIZE = 8 * 1024;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final File[] dirs = new File[4];
+    private DbLedgerStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < dirs.length; i++) {
+            dirs[i] = tmpDirs.createNew("bkColdTierTest", ".dir");
+            BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(dirs[i]));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (storage != null) {
+            storage.shutdown();
+        }
+        tmpDirs.cleanup();
+    }
+
+    private static ServerConfiguration newConf(File[] ledgerDirs, File... coldDirs) {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerStorageClass(DbLedgerStorage.class.getName());
+        conf.setLedgerDirNames(dirNames(ledgerDirs));
+        conf.setColdLedgerDirNames(dirNames(coldDirs));
+        conf.setColdEntryLogAgeThresholdSeconds(0);
+        conf.setEntryLogSizeLimit(64 * 1024);
+        conf.setEntryLogFilePreAllocationEnabled(false);
+        return conf;
+    }
+
+    private static String[] dirNames(File... dirs) {
+        String[] names = new String[dirs.length];
+        for (int i = 0; i < dirs.length; i++) {
+            names[i] = dirs[i].getAbsolutePath();
+        }
+        return names;
+    }
+
+    private DbLedgerStorage startStorage(ServerConfiguration conf) throws Exception {
+        DiskChecker diskChecker = BookieResources.createDiskChecker(conf);
+        LedgerDirsManager ledgerDirsManager = BookieResources.createLedgerDirsManager(
+                conf, diskChecker, NullStatsLogger.INSTANCE);
+        DbLedgerStorage dbStorage = new DbLedgerStorage();
+        // no ledger manager, so the garbage collector never deletes the ledgers
+        dbStorage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+        dbStorage.setCheckpointSource(CheckpointSource.DEFAULT);
+        dbStorage.setCheckpointer(Checkpointer.NULL);
+        storage = dbStorage;
+        return dbStorage;
+    }
+
+    private void stopStorage() throws Exception {
+        storage.shutdown();
+        storage = null;
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(24 + ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1);
+        entry.writeZero(ENTRY_SIZE);
+        return entry;
+    }
+
+    private void writeEntries(DbLedgerStorage dbStorage) throws Exception {
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            dbStorage.setMasterKey(ledgerId, "key".getBytes());
+            for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+                dbStorage.addEntry(entry(ledgerId, entryId));
+            }
+        }
+        dbStorage.flush();
+    }
+
+    private void verifyEntries(DbLedgerStorage dbStorage) throws Exception {
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+                ByteBuf read = dbStorage.getEntry(ledgerId, entryId);
+                try {
+                    assertEquals(ledgerId, read.getLong(0));
+                    assertEquals(entryId, read.getLong(8));
+                } finally {
+                    read.release();
+                }
+            }
+        }
+    }
+
+    private static int numEntryLogs(File dir) {
+        File[] logs = BookieImpl.getCurrentDirectory(dir).listFiles((d, name) -> name.endsWith(".log"));
+        return logs == null ? 0 : logs.length;
+    }
+
+    @Test
+    public void testAddingColdDirsKeepsLedgerMapping() throws Exception {
+        File[] fastDirs = new File[] { dirs[0], dirs[1] };
+        writeEntries(startStorage(newConf(fastDirs)));
+        stopStorage();
+
+        DbLedgerStorage dbStorage = startStorage(newConf(dirs, dirs[2], dirs[3]));
+        assertEquals(2, dbStorage.getLedgerStorageList().size());
+        verifyEntries(dbStorage);
+    }
+
+    @Test
+    public void testRefuseColdDirHoldingLedgers() throws Exception {
+        File[] fastDirs = new File[] { dirs[0], dirs[1] };
+        writeEntries(startStorage(newConf(fastDirs)));
+        stopStorage();
+
+        try {
+            // the ledgers of dirs[1] would be mapped to dirs[2]
+            startStorage(newConf(dirs, dirs[1], dirs[3]));
+            fail("A dir holding ledgers should not be turned into a cold dir");
+        } catch (IOException ioe) {
+            assertTrue(ioe.getMessage().contains(dirs[1].getName()));
+        }
+    }
+
+    @Test
+    public void testMigrationSuspendedWithCompaction() throws Exception {
+        File[] ledgerDirs = new File[] { dirs[0], dirs[1] };
+        DbLedgerStorage dbStorage = startStorage(newConf(ledgerDirs, dirs[1]));
+        writeEntries(dbStorage);
+        Thread.sleep(10);
+        GarbageCollectorThread gcThread = dbStorage.getLedgerStorageList().get(0).getGarbageCollectorThread();
+
+        gcThread.runWithFlags(false, true, false);
+        assertEquals(0, numEntryLogs(dirs[1]));
+        gcThread.runWithFlags(false, false, true);
+        assertEquals(0, numEntryLogs(dirs[1]));
+
+        gcThread.runWithFlags(false, false, false);
+        assertTrue(numEntryLogs(dirs[1]) > 0);
+        verifyEntries(dbStorage);
+    }
+
+    @Test
+    public void testReadLedgerIndexEntriesSkipsColdDirs() throws Exception {
+        ServerConfiguration conf = newConf(dirs, dirs[2], dirs[3]);
+        writeEntries(startStorage(conf));
+        stopStorage();
+
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            AtomicInteger numEntries = new AtomicInteger();
+            DbLedgerStorage.readLedgerIndexEntries(ledgerId, conf,
+                    (entryId, entryLogId, position) -> numEntries.incrementAndGet());
+            assertEquals(NUM_ENTRIES, numEntries.get());
+        }
+    }
+}
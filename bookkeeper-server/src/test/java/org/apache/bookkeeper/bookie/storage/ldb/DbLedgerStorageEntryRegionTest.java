@@ -0,0 +1,191 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.FileRegion;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.BookieResources;
+import org.apache.bookkeeper.bookie.CheckpointSource;
+import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the entries read as file regions of the sealed entry logs.
+ */
+public class DbLedgerStorageEntryRegionTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int NUM_ENTRIES = 40;
+    private static final int ENTRY_SIZE = 8 * 1024;
+    private static final int ENTRY_LOG_SIZE_LIMIT = 64 * 1024;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private ServerConfiguration conf;
+    private DbLedgerStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        File dir = tmpDirs.createNew("bkEntryRegionTest", ".dir");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(dir));
+        conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerStorageClass(DbLedgerStorage.class.getName());
+        conf.setLedgerDirNames(new String[] { dir.getAbsolutePath() });
+        conf.setEntryLogSizeLimit(ENTRY_LOG_SIZE_LIMIT);
+        conf.setEntryLogFilePreAllocationEnabled(false);
+        conf.setZeroCopyReadEnabled(true);
+        conf.setZeroCopyReadMinEntrySizeBytes(1024);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (storage != null) {
+            storage.shutdown();
+        }
+        tmpDirs.cleanup();
+    }
+
+    private void startStorage() throws Exception {
+        DiskChecker diskChecker = BookieResources.createDiskChecker(conf);
+        LedgerDirsManager ledgerDirsManager = BookieResources.createLedgerDirsManager(
+                conf, diskChecker, NullStatsLogger.INSTANCE);
+        storage = new DbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+        storage.setCheckpointSource(CheckpointSource.DEFAULT);
+        storage.setCheckpointer(Checkpointer.NULL);
+        storage.setMasterKey(LEDGER_ID, "key".getBytes());
+    }
+
+    private static ByteBuf entry(long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(24 + size);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1);
+        entry.writeZero(size);
+        return entry;
+    }
+
+    private void writeEntries(int entrySize, boolean flush) throws Exception {
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            storage.addEntry(entry(entryId, entrySize));
+        }
+        if (flush) {
+            storage.flush();
+        }
+    }
+
+    private static ByteBuf readRegion(FileRegion region) throws Exception {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WritableByteChannel channel = Channels.newChannel(out);
+            while (region.transferred() < region.count()) {
+                region.transferTo(channel, region.transferred());
+            }
+            return Unpooled.wrappedBuffer(ByteBuffer.wrap(out.toByteArray()));
+        } finally {
+            region.release();
+        }
+    }
+
+    @Test
+    public void testRegionOnCacheMiss() throws Exception {
+        startStorage();
+        writeEntries(ENTRY_SIZE, true);
+
+        FileRegion region = storage.getEntryRegion(LEDGER_ID, 0);
+        assertNotNull(region);
+        assertEquals(24 + ENTRY_SIZE, region.count());
+        ByteBuf entry = readRegion(region);
+        assertEquals(LEDGER_ID, entry.getLong(0));
+        assertEquals(0L, entry.getLong(8));
+    }
+
+    @Test
+    public void testCacheHitsServedFromMemory() throws Exception {
+        startStorage();
+        writeEntries(ENTRY_SIZE, true);
+
+        ByteBuf cached = storage.getEntry(LEDGER_ID, 0);
+        cached.release();
+        // the entry, and the entries read ahead with it, are in the read cache
+        assertNull(storage.getEntryRegion(LEDGER_ID, 0));
+        assertNull(storage.getEntryRegion(LEDGER_ID, 1));
+    }
+
+    @Test
+    public void testRegionReadFillsTheReadAheadCache() throws Exception {
+        startStorage();
+        writeEntries(ENTRY_SIZE, true);
+
+        FileRegion region = storage.getEntryRegion(LEDGER_ID, 0);
+        assertNotNull(region);
+        region.release();
+
+        // the following entries of the same entry log are served from the read cache
+        int entriesPerLog = ENTRY_LOG_SIZE_LIMIT / (ENTRY_SIZE + 24 + 4);
+        for (long entryId = 1; entryId < entriesPerLog - 1; entryId++) {
+            assertNull("Entry " + entryId + " not read ahead", storage.getEntryRegion(LEDGER_ID, entryId));
+            ByteBuf entry = storage.getEntry(LEDGER_ID, entryId);
+            assertEquals(entryId, entry.getLong(8));
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testNoRegionForWriteCacheEntries() throws Exception {
+        startStorage();
+        writeEntries(ENTRY_SIZE, false);
+
+        assertNull(storage.getEntryRegion(LEDGER_ID, 0));
+        assertNull(storage.getEntryRegion(LEDGER_ID, NUM_ENTRIES - 1));
+    }
+
+    @Test
+    public void testNoRegionForSmallEntries() throws Exception {
+        startStorage();
+        writeEntries(100, true);
+
+        assertNull(storage.getEntryRegion(LEDGER_ID, 0));
+        ByteBuf entry = storage.getEntry(LEDGER_ID, 0);
+        assertEquals(0L, entry.getLong(8));
+        entry.release();
+    }
+}
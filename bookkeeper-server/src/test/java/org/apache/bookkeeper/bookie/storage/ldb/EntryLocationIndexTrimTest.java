@@ -0,0 +1,130 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the trimming of the ledgers in the entry location index.
+ */
+public class EntryLocationIndexTrimTest {
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private EntryLocationIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        File dir = tmpDirs.createNew("bkLocationIndexTrimTest", ".dir");
+        index = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, dir.getAbsolutePath(),
+                NullStatsLogger.INSTANCE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.close();
+        tmpDirs.cleanup();
+    }
+
+    private static long location(long entryLogId, long position) {
+        return (entryLogId << 32L) | position;
+    }
+
+    /**
+     * Entries 0-9 and 20-29 of the ledger are in entry log 1, entries 10-19 in entry log 2.
+     */
+    private void addLedger(long ledgerId) throws Exception {
+        for (long entryId = 0; entryId < 30; entryId++) {
+            long entryLogId = entryId >= 10 && entryId < 20 ? 2 : 1;
+            index.addLocation(ledgerId, entryId, location(entryLogId, 1024 + entryId * 100));
+        }
+    }
+
+    @Test
+    public void testTrimmedShareCountsAllEntriesOfTheLedger() throws Exception {
+        addLedger(1);
+        addLedger(2);
+
+        Map<Long, Double> trimmedShares = index.getTrimmedShareByEntryLog(1, 14);
+        // 10 of the 20 entries of the ledger in entry log 1, 5 of the 10 in entry log 2
+        assertEquals(2, trimmedShares.size());
+        assertEquals(0.5, trimmedShares.get(1L), 0.0001);
+        assertEquals(0.5, trimmedShares.get(2L), 0.0001);
+
+        trimmedShares = index.getTrimmedShareByEntryLog(1, 4);
+        // nothing trimmed in entry log 2
+        assertEquals(1, trimmedShares.size());
+        assertEquals(0.25, trimmedShares.get(1L), 0.0001);
+
+        trimmedShares = index.getTrimmedShareByEntryLog(1, 100);
+        assertEquals(1.0, trimmedShares.get(1L), 0.0001);
+        assertEquals(1.0, trimmedShares.get(2L), 0.0001);
+
+        assertTrue(index.getTrimmedShareByEntryLog(3, 100).isEmpty());
+    }
+
+    @Test
+    public void testRemoveOffsetsOfTrimmedLedgers() throws Exception {
+        addLedger(1);
+        addLedger(2);
+        addLedger(3);
+
+        index.trim(1, 14);
+        // only the highest trim point counts
+        index.trim(2, 20);
+        index.trim(2, 9);
+        index.trim(3, 5);
+        index.delete(3);
+
+        Map<Long, Map<Long, Double>> trimmed = new HashMap<>();
+        index.removeOffsetFromTrimmedLedgers(trimmed::put);
+
+        assertEquals(2, trimmed.size());
+        assertEquals(0.5, trimmed.get(1L).get(2L), 0.0001);
+        assertEquals(1.0, trimmed.get(2L).get(2L), 0.0001);
+        assertFalse(trimmed.containsKey(3L));
+
+        for (long entryId = 0; entryId < 30; entryId++) {
+            assertEquals(entryId <= 14, index.getLocation(1, entryId) == 0);
+            assertEquals(entryId <= 20, index.getLocation(2, entryId) == 0);
+        }
+        // the ledger being deleted is not trimmed
+        assertTrue(index.getLocation(3, 0) != 0);
+
+        // the trims were applied
+        trimmed.clear();
+        index.removeOffsetFromTrimmedLedgers(trimmed::put);
+        assertTrue(trimmed.isEmpty());
+    }
+}
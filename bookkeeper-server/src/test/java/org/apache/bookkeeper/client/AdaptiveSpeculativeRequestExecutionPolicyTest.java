@@ -0,0 +1,251 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the speculative requests issued at a percentile of the latency of the bookies.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicyTest {
+
+    private static final int FIRST_TIMEOUT_MS = 50;
+    private static final int MAX_TIMEOUT_MS = 2000;
+
+    private final BookieId bookie = BookieId.parse("bookie0:3181");
+    private final BookieReadLatencyTracker latencyTracker = new BookieReadLatencyTracker();
+    private final BookiesHealthInfo healthInfo = new BookiesHealthInfo() {
+        @Override
+        public long getBookieFailureHistory(BookieId bookieSocketAddress) {
+            return -1L;
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookieSocketAddress) {
+            return 0L;
+        }
+
+        @Override
+        public long getBookieReadLatencyNanos(BookieId bookieSocketAddress, double percentile) {
+            return latencyTracker.getReadLatencyNanos(bookieSocketAddress, percentile);
+        }
+    };
+
+    // the tasks scheduled, run by the test
+    private final List<Runnable> scheduledTasks = new ArrayList<>();
+    private final List<Long> scheduledDelaysMicros = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Issues the speculative requests of a read of an entry.
+     */
+    private class TestRequestExecutor implements SpeculativeRequestExecutor {
+        // the bookies left to send a speculative request to
+        int remainingBookies;
+        int speculativeRequests = 0;
+
+        TestRequestExecutor(int remainingBookies) {
+            this.remainingBookies = remainingBookies;
+        }
+
+        @Override
+        public ListenableFuture<Boolean> issueSpeculativeRequest() {
+            if (remainingBookies == 0) {
+                return Futures.immediateFuture(false);
+            }
+            remainingBookies--;
+            speculativeRequests++;
+            return Futures.immediateFuture(true);
+        }
+
+        @Override
+        public BookieId getLastRequestBookie() {
+            return bookie;
+        }
+
+        @Override
+        public BookiesHealthInfo getBookiesHealthInfo() {
+            return healthInfo;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        scheduler = mock(ScheduledExecutorService.class);
+        doAnswer(invocation -> {
+            scheduledTasks.add(invocation.getArgument(0));
+            TimeUnit unit = invocation.getArgument(2);
+            scheduledDelaysMicros.add(unit.toMicros(invocation.getArgument(1)));
+            return null;
+        }).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    private void recordLatencies(long latencyNanos, int count) {
+        for (int i = 0; i < count; i++) {
+            latencyTracker.recordReadLatency(bookie, latencyNanos);
+        }
+    }
+
+    private long lastDelayMicros() {
+        return scheduledDelaysMicros.get(scheduledDelaysMicros.size() - 1);
+    }
+
+    private void runScheduledTask(int index) {
+        scheduledTasks.get(index).run();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 100, 0.1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRatio() {
+        new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, -1);
+    }
+
+    @Test
+    public void testFirstTimeoutUntilEnoughReadsTracked() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, 0.1);
+        policy.initiateSpeculativeRequest(scheduler, new TestRequestExecutor(2));
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(FIRST_TIMEOUT_MS), lastDelayMicros());
+
+        recordLatencies(TimeUnit.MILLISECONDS.toNanos(2), BookieReadLatencyTracker.MIN_SAMPLES - 1);
+        policy.initiateSpeculativeRequest(scheduler, new TestRequestExecutor(2));
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(FIRST_TIMEOUT_MS), lastDelayMicros());
+
+        // without the bookie of the last request
+        policy.initiateSpeculativeRequest(scheduler, () -> Futures.immediateFuture(false));
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(FIRST_TIMEOUT_MS), lastDelayMicros());
+    }
+
+    @Test
+    public void testTimeoutAtLatencyPercentile() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, 0.1);
+        recordLatencies(TimeUnit.MILLISECONDS.toNanos(1), 90);
+        recordLatencies(TimeUnit.MILLISECONDS.toNanos(20), 10);
+
+        policy.initiateSpeculativeRequest(scheduler, new TestRequestExecutor(2));
+        // the 95th percentile is in the bucket of 20ms, estimated within 25%
+        long delayMicros = lastDelayMicros();
+        assertTrue("Unexpected timeout " + delayMicros, delayMicros >= 15_000 && delayMicros <= 25_000);
+
+        AdaptiveSpeculativeRequestExecutionPolicy medianPolicy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 50, 0.1);
+        medianPolicy.initiateSpeculativeRequest(scheduler, new TestRequestExecutor(2));
+        delayMicros = lastDelayMicros();
+        assertTrue("Unexpected timeout " + delayMicros, delayMicros >= 750 && delayMicros <= 1250);
+    }
+
+    @Test
+    public void testTimeoutCappedByMaxTimeout() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, 0.1);
+        recordLatencies(TimeUnit.SECONDS.toNanos(10), 100);
+        policy.initiateSpeculativeRequest(scheduler, new TestRequestExecutor(2));
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(MAX_TIMEOUT_MS), lastDelayMicros());
+
+        // the max timeout is at least the first timeout
+        AdaptiveSpeculativeRequestExecutionPolicy lowMaxPolicy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, 10, 95, 0.1);
+        latencyTracker.removeBookie(bookie);
+        lowMaxPolicy.initiateSpeculativeRequest(scheduler, new TestRequestExecutor(2));
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(FIRST_TIMEOUT_MS), lastDelayMicros());
+    }
+
+    @Test
+    public void testNextSpeculativeRequests() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, 1.0);
+        TestRequestExecutor executor = new TestRequestExecutor(2);
+        policy.initiateSpeculativeRequest(scheduler, executor);
+        runScheduledTask(0);
+        assertEquals(1, executor.speculativeRequests);
+        assertEquals(2, scheduledTasks.size());
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(FIRST_TIMEOUT_MS), lastDelayMicros());
+
+        // the next speculative request is scheduled at the latency of the bookie of the last request
+        recordLatencies(TimeUnit.MILLISECONDS.toNanos(1), 100);
+        runScheduledTask(1);
+        assertEquals(2, executor.speculativeRequests);
+        assertEquals(3, scheduledTasks.size());
+        long delayMicros = lastDelayMicros();
+        assertTrue("Unexpected timeout " + delayMicros, delayMicros >= 750 && delayMicros <= 1250);
+
+        // the ratio is reached, so the next request is backed up after the max timeout
+        runScheduledTask(2);
+        assertEquals(4, scheduledTasks.size());
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(MAX_TIMEOUT_MS), lastDelayMicros());
+
+        // and no more request is scheduled once there is no bookie left to send it to
+        runScheduledTask(3);
+        assertEquals(2, executor.speculativeRequests);
+        assertEquals(4, scheduledTasks.size());
+    }
+
+    @Test
+    public void testSpeculativeRequestsBoundedByRatio() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, 0.1);
+        List<TestRequestExecutor> executors = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            TestRequestExecutor executor = new TestRequestExecutor(1);
+            executors.add(executor);
+            policy.initiateSpeculativeRequest(scheduler, executor);
+        }
+        for (int i = 0; i < 10; i++) {
+            runScheduledTask(i);
+        }
+        // 10% of the 10 requests, plus the one allowed before the requests are counted
+        assertEquals(1, executors.get(0).speculativeRequests);
+        assertEquals(1, executors.get(1).speculativeRequests);
+        for (int i = 2; i < 10; i++) {
+            assertEquals(0, executors.get(i).speculativeRequests);
+        }
+
+        // the other requests are backed up after the max timeout
+        assertEquals(20, scheduledTasks.size());
+        for (int i = 12; i < 20; i++) {
+            assertEquals(TimeUnit.MILLISECONDS.toMicros(MAX_TIMEOUT_MS), (long) scheduledDelaysMicros.get(i));
+            runScheduledTask(i);
+        }
+        for (TestRequestExecutor executor : executors) {
+            assertEquals(1, executor.speculativeRequests);
+        }
+    }
+}
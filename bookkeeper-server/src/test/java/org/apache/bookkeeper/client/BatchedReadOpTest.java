@@ -0,0 +1,123 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.bookie.BookKeeperClusterTestCase;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the batch reads of consecutive entries.
+ */
+public class BatchedReadOpTest extends BookKeeperClusterTestCase {
+
+    private static final int NUM_ENTRIES = 20;
+    private static final int ENTRY_SIZE = 1000;
+
+    private LedgerHandle lh;
+
+    public BatchedReadOpTest() {
+        super(3);
+        baseClientConf.setUseV2WireProtocol(true);
+        baseClientConf.setBatchReadEnabled(true);
+    }
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        lh = bkc.createLedger(2, 2, 2, BookKeeper.DigestType.CRC32, "passwd".getBytes());
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            lh.addEntry(entry(i));
+        }
+    }
+
+    private static byte[] entry(int entryId) {
+        byte[] data = new byte[ENTRY_SIZE];
+        Arrays.fill(data, (byte) entryId);
+        return data;
+    }
+
+    private static void assertEntries(LedgerEntries entries, long firstEntryId, int numEntries) {
+        int count = 0;
+        for (LedgerEntry entry : entries) {
+            assertEquals(firstEntryId + count, entry.getEntryId());
+            assertArrayEquals(entry((int) entry.getEntryId()), entry.getEntryBytes());
+            count++;
+        }
+        assertEquals(numEntries, count);
+        entries.close();
+    }
+
+    private static int countEntries(LedgerEntries entries) {
+        int count = 0;
+        for (LedgerEntry ignored : entries) {
+            count++;
+        }
+        entries.close();
+        return count;
+    }
+
+    @Test
+    public void testBatchReadBoundedByMaxSize() throws Exception {
+        LedgerEntries entries = lh.batchReadAsync(2, 10, 4 * ENTRY_SIZE).get();
+        int count = countEntries(entries);
+        // the entries are returned with their digest, so fewer than 4 fit
+        assertTrue("Unexpected batch of " + count + " entries", count > 0 && count < 4);
+        assertEntries(lh.batchReadAsync(2, 10, 4 * ENTRY_SIZE).get(), 2, count);
+    }
+
+    @Test
+    public void testBatchReadReturnsTheFirstEntry() throws Exception {
+        assertEntries(lh.batchReadAsync(5, 10, 10).get(), 5, 1);
+    }
+
+    @Test
+    public void testBatchReadBoundedByLastAddConfirmed() throws Exception {
+        assertEntries(lh.batchReadAsync(15, 100, Long.MAX_VALUE).get(), 15, NUM_ENTRIES - 15);
+    }
+
+    @Test
+    public void testReadAllEntriesWithPartialResponses() throws Exception {
+        baseClientConf.setBatchReadMaxSizeBytes(3 * ENTRY_SIZE);
+        try (BookKeeper bk = new BookKeeper(baseClientConf);
+             LedgerHandle reader = bk.openLedger(lh.getId(), BookKeeper.DigestType.CRC32, "passwd".getBytes())) {
+            assertEntries(reader.readAsync(0, NUM_ENTRIES - 1).get(), 0, NUM_ENTRIES);
+        }
+    }
+
+    @Test
+    public void testBatchReadRetriedOnAnotherReplica() throws Exception {
+        List<BookieId> ensemble = lh.getLedgerMetadata().getEnsembleAt(0);
+        killBookie(ensemble.get(0));
+        assertEntries(lh.batchReadAsync(0, NUM_ENTRIES, Long.MAX_VALUE).get(), 0, NUM_ENTRIES);
+        assertEntries(lh.readAsync(0, NUM_ENTRIES - 1).get(), 0, NUM_ENTRIES);
+    }
+}
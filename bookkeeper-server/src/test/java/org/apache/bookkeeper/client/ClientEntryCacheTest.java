@@ -0,0 +1,176 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.client.BookKeeperClientStats.ENTRY_CACHE_HITS;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.ENTRY_CACHE_MISSES;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.ENTRY_CACHE_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the cache of the entries read by the ledger handles of a client.
+ */
+public class ClientEntryCacheTest {
+
+    // 4 segments of 1024 bytes, each holding 9 entries of 100 bytes and their headers
+    private static final int CACHE_SIZE = 4 * 1024;
+    private static final int ENTRY_SIZE = 100;
+    private static final int ENTRIES_PER_SEGMENT = 9;
+    private static final long LEDGER_ID = 1L;
+
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private ClientEntryCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ClientEntryCache(CACHE_SIZE, BookKeeperClientStats.newInstance(statsProvider.getStatsLogger("")));
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    private static ByteBuf entry(long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        for (int i = 0; i < size; i++) {
+            entry.writeByte((int) (entryId + i));
+        }
+        return entry;
+    }
+
+    private void put(long entryId) {
+        ByteBuf entry = entry(entryId, ENTRY_SIZE);
+        cache.put(LEDGER_ID, entryId, (entryId + 1) * ENTRY_SIZE, entry);
+        entry.release();
+    }
+
+    private static void assertEntry(long entryId, LedgerEntryImpl cachedEntry) {
+        assertNotNull("Entry " + entryId + " should be cached", cachedEntry);
+        try {
+            assertEquals(LEDGER_ID, cachedEntry.getLedgerId());
+            assertEquals(entryId, cachedEntry.getEntryId());
+            assertEquals((entryId + 1) * ENTRY_SIZE, cachedEntry.getLength());
+            ByteBuf expected = entry(entryId, ENTRY_SIZE);
+            assertEquals(expected, cachedEntry.getEntryBuffer());
+            expected.release();
+        } finally {
+            cachedEntry.close();
+        }
+    }
+
+    @Test
+    public void testGetCachedEntry() {
+        ByteBuf entry = entry(0, ENTRY_SIZE);
+        cache.put(LEDGER_ID, 0, ENTRY_SIZE, entry);
+        // the entry is copied
+        assertEquals(0, entry.readerIndex());
+        assertEquals(1, entry.refCnt());
+        entry.release();
+
+        assertEntry(0, cache.get(LEDGER_ID, 0));
+        assertNull(cache.get(LEDGER_ID, 1));
+        assertNull(cache.get(LEDGER_ID + 1, 0));
+        assertEquals(1L, statsProvider.getCounter(ENTRY_CACHE_HITS).get().longValue());
+        assertEquals(2L, statsProvider.getCounter(ENTRY_CACHE_MISSES).get().longValue());
+        assertEquals((long) (Long.BYTES + ENTRY_SIZE), statsProvider.getGauge(ENTRY_CACHE_SIZE).getSample());
+    }
+
+    @Test
+    public void testEntryCachedOnce() {
+        put(0);
+        put(0);
+        assertEquals((long) (Long.BYTES + ENTRY_SIZE), cache.size());
+        assertEntry(0, cache.get(LEDGER_ID, 0));
+    }
+
+    @Test
+    public void testEntryLargerThanSegmentNotCached() {
+        ByteBuf entry = entry(0, CACHE_SIZE / 2);
+        cache.put(LEDGER_ID, 0, CACHE_SIZE / 2, entry);
+        entry.release();
+        assertNull(cache.get(LEDGER_ID, 0));
+        assertEquals(0L, cache.size());
+    }
+
+    @Test
+    public void testOldestSegmentEvicted() {
+        int numEntries = 4 * ENTRIES_PER_SEGMENT;
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            put(entryId);
+        }
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            assertEntry(entryId, cache.get(LEDGER_ID, entryId));
+        }
+
+        // the next entry drops the entries of the oldest segment
+        put(numEntries);
+        for (long entryId = 0; entryId < ENTRIES_PER_SEGMENT; entryId++) {
+            assertNull(cache.get(LEDGER_ID, entryId));
+        }
+        for (long entryId = ENTRIES_PER_SEGMENT; entryId <= numEntries; entryId++) {
+            assertEntry(entryId, cache.get(LEDGER_ID, entryId));
+        }
+        assertEquals((long) (3 * 1024 + Long.BYTES + ENTRY_SIZE), cache.size());
+    }
+
+    @Test
+    public void testEvictedSegmentKeptWhileEntriesAreRead() {
+        put(0);
+        LedgerEntryImpl cachedEntry = cache.get(LEDGER_ID, 0);
+        ByteBuf buffer = cachedEntry.getEntryBuffer();
+        // the cache and the entry read hold the segment
+        assertEquals(2, buffer.refCnt());
+
+        for (long entryId = 1; entryId <= 4 * ENTRIES_PER_SEGMENT; entryId++) {
+            put(entryId);
+        }
+        assertNull(cache.get(LEDGER_ID, 0));
+        assertEquals(1, buffer.refCnt());
+        assertEntry(0, cachedEntry);
+        assertEquals(0, buffer.refCnt());
+    }
+
+    @Test
+    public void testClose() {
+        put(0);
+        LedgerEntryImpl cachedEntry = cache.get(LEDGER_ID, 0);
+        ByteBuf buffer = cachedEntry.getEntryBuffer();
+        cache.close();
+        assertEquals(1, buffer.refCnt());
+        assertNull(cache.get(LEDGER_ID, 0));
+        put(1);
+        assertNull(cache.get(LEDGER_ID, 1));
+
+        assertEntry(0, cachedEntry);
+        assertEquals(0, buffer.refCnt());
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.client.BookKeeperClientStats.READ_REQUESTS_REORDERED;
+import static org.apache.bookkeeper.client.TopologyAwareEnsemblePlacementPolicy.reorderByLatencyAndLoad;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the reordering of the read sequences by the latency and the load of the bookies.
+ */
+public class LatencyAwareReadReorderingTest {
+
+    private static final int NUM_RUNS = 100;
+
+    private final List<BookieId> ensemble = Arrays.asList(
+            BookieId.parse("127.0.0.1:3181"),
+            BookieId.parse("127.0.0.2:3181"),
+            BookieId.parse("127.0.0.3:3181"));
+    private final RoundRobinDistributionSchedule schedule = new RoundRobinDistributionSchedule(3, 2, 3);
+    private final Map<BookieId, Long> latencies = new HashMap<>();
+    private final Map<BookieId, Long> pendingRequests = new HashMap<>();
+    private final BookiesHealthInfo healthInfo = new BookiesHealthInfo() {
+        @Override
+        public long getBookieFailureHistory(BookieId bookieSocketAddress) {
+            return -1L;
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookieSocketAddress) {
+            return pendingRequests.getOrDefault(bookieSocketAddress, 0L);
+        }
+
+        @Override
+        public long getBookieReadLatencyEwmaNanos(BookieId bookieSocketAddress) {
+            return latencies.getOrDefault(bookieSocketAddress, -1L);
+        }
+    };
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private RackawareEnsemblePlacementPolicyImpl policy;
+
+    @After
+    public void tearDown() {
+        if (policy != null) {
+            policy.uninitalize();
+        }
+    }
+
+    private void createPolicy(boolean latencyAware, List<BookieId> writableBookies) {
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setReorderReadLatencyAwareEnabled(latencyAware);
+        policy = new RackawareEnsemblePlacementPolicyImpl();
+        policy.initialize(conf, Optional.empty(), null, new SettableFeatureProvider("", 0),
+                statsProvider.getStatsLogger(""), BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+        policy.onClusterChanged(new HashSet<>(writableBookies), Collections.emptySet());
+    }
+
+    private void setLatency(int bookieIndex, long latencyNanos) {
+        latencies.put(ensemble.get(bookieIndex), latencyNanos);
+    }
+
+    private static int[] toArray(DistributionSchedule.WriteSet writeSet) {
+        int[] indexes = new int[writeSet.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = writeSet.get(i);
+        }
+        return indexes;
+    }
+
+    @Test
+    public void testSingleAvailableBookieNotReordered() {
+        setLatency(0, 1000L);
+        setLatency(1, 10L);
+        DistributionSchedule.WriteSet writeSet = schedule.getWriteSet(0);
+        assertFalse(reorderByLatencyAndLoad(ensemble, healthInfo, writeSet, 1));
+        assertTrue(Arrays.equals(new int[] { 0, 1, 2 }, toArray(writeSet)));
+    }
+
+    @Test
+    public void testLowestCostReadFirst() {
+        setLatency(0, 1000L);
+        setLatency(1, 10L);
+        for (int i = 0; i < NUM_RUNS; i++) {
+            // with two available bookies, both are always the two choices
+            DistributionSchedule.WriteSet writeSet = schedule.getWriteSet(0);
+            assertTrue(reorderByLatencyAndLoad(ensemble, healthInfo, writeSet, 2));
+            assertTrue(Arrays.equals(new int[] { 1, 0, 2 }, toArray(writeSet)));
+        }
+    }
+
+    @Test
+    public void testCostIncludesPendingRequests() {
+        setLatency(0, 100L);
+        setLatency(1, 60L);
+        // 60 * (1 + 1) > 100 * (0 + 1)
+        pendingRequests.put(ensemble.get(1), 1L);
+        for (int i = 0; i < NUM_RUNS; i++) {
+            DistributionSchedule.WriteSet writeSet = schedule.getWriteSet(0);
+            assertFalse(reorderByLatencyAndLoad(ensemble, healthInfo, writeSet, 2));
+            assertTrue(Arrays.equals(new int[] { 0, 1, 2 }, toArray(writeSet)));
+        }
+    }
+
+    @Test
+    public void testBookieWithoutLatencyHistoryPreferred() {
+        setLatency(0, 10L);
+        for (int i = 0; i < NUM_RUNS; i++) {
+            DistributionSchedule.WriteSet writeSet = schedule.getWriteSet(0);
+            assertTrue(reorderByLatencyAndLoad(ensemble, healthInfo, writeSet, 2));
+            assertEquals(1, writeSet.get(0));
+        }
+    }
+
+    @Test
+    public void testEqualCostsPreferEarlierBookie() {
+        setLatency(0, 10L);
+        setLatency(1, 10L);
+        setLatency(2, 10L);
+        for (int i = 0; i < NUM_RUNS; i++) {
+            // of the two choices, the one first in the read sequence is read first
+            DistributionSchedule.WriteSet writeSet = schedule.getWriteSet(0);
+            boolean reordered = reorderByLatencyAndLoad(ensemble, healthInfo, writeSet, 3);
+            if (reordered) {
+                assertTrue(Arrays.equals(new int[] { 1, 0, 2 }, toArray(writeSet)));
+            } else {
+                assertTrue(Arrays.equals(new int[] { 0, 1, 2 }, toArray(writeSet)));
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyAvailableBookiesAreCandidates() {
+        setLatency(0, 1000L);
+        setLatency(1, 100L);
+        setLatency(2, 1L);
+        for (int i = 0; i < NUM_RUNS; i++) {
+            DistributionSchedule.WriteSet writeSet = schedule.getWriteSet(0);
+            reorderByLatencyAndLoad(ensemble, healthInfo, writeSet, 2);
+            assertTrue(Arrays.equals(new int[] { 1, 0, 2 }, toArray(writeSet)));
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoChoices() {
+        setLatency(0, 1000L);
+        setLatency(1, 10L);
+        setLatency(2, 1L);
+        int secondBestFirst = 0;
+        for (int i = 0; i < NUM_RUNS; i++) {
+            DistributionSchedule.WriteSet writeSet = schedule.getWriteSet(0);
+            assertTrue(reorderByLatencyAndLoad(ensemble, healthInfo, writeSet, 3));
+            // the slowest bookie is never read first, and the order of the others is kept
+            assertNotEquals(0, writeSet.get(0));
+            if (writeSet.get(0) == 1) {
+                assertTrue(Arrays.equals(new int[] { 1, 0, 2 }, toArray(writeSet)));
+                secondBestFirst++;
+            } else {
+                assertTrue(Arrays.equals(new int[] { 2, 0, 1 }, toArray(writeSet)));
+            }
+        }
+        // the second best bookie is read first when the best one is not one of the two choices,
+        // one time out of three
+        assertTrue(secondBestFirst > 0);
+        assertTrue(secondBestFirst < NUM_RUNS);
+    }
+
+    @Test
+    public void testReorderReadSequenceAllBookiesAvailable() {
+        createPolicy(true, ensemble);
+        setLatency(0, 1000L);
+        setLatency(1, 10L);
+        setLatency(2, 1L);
+        for (int i = 0; i < NUM_RUNS; i++) {
+            DistributionSchedule.WriteSet writeSet = policy.reorderReadSequence(
+                    ensemble, healthInfo, schedule.getWriteSet(0));
+            assertNotEquals(0, writeSet.get(0));
+            assertEquals(3, writeSet.size());
+        }
+        assertEquals(NUM_RUNS, statsProvider.getOpStatsLogger(READ_REQUESTS_REORDERED).getSuccessCount());
+    }
+
+    @Test
+    public void testReorderReadSequenceWithUnavailableBookie() {
+        // the first bookie is not available, and has no latency history
+        createPolicy(true, ensemble.subList(1, 3));
+        setLatency(1, 1000L);
+        setLatency(2, 10L);
+        for (int i = 0; i < NUM_RUNS; i++) {
+            DistributionSchedule.WriteSet writeSet = policy.reorderReadSequence(
+                    ensemble, healthInfo, schedule.getWriteSet(0));
+            // the unavailable bookie stays last, and the available bookies are reordered by latency
+            assertTrue(Arrays.equals(new int[] { 2, 1, 0 }, toArray(writeSet)));
+        }
+    }
+
+    @Test
+    public void testReorderReadSequenceLatencyAwareDisabled() {
+        createPolicy(false, ensemble);
+        setLatency(0, 1000L);
+        setLatency(1, 10L);
+        setLatency(2, 1L);
+        for (int i = 0; i < NUM_RUNS; i++) {
+            DistributionSchedule.WriteSet writeSet = policy.reorderReadSequence(
+                    ensemble, healthInfo, schedule.getWriteSet(0));
+            assertTrue(Arrays.equals(new int[] { 0, 1, 2 }, toArray(writeSet)));
+        }
+        assertEquals(0, statsProvider.getOpStatsLogger(READ_REQUESTS_REORDERED).getSuccessCount());
+    }
+}
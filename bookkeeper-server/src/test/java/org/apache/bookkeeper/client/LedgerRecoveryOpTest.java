@@ -0,0 +1,246 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the pipelined reads of the entries past the last add confirmed of a recovered ledger.
+ */
+public class LedgerRecoveryOpTest {
+
+    private static final long LEDGER_ID = 1234L;
+
+    /**
+     * A batch of entries read by the recovery, completed by the test.
+     */
+    private static class BatchRead {
+        final long startEntryId;
+        final long endEntryId;
+        final Object ctx;
+
+        BatchRead(long startEntryId, long endEntryId, Object ctx) {
+            this.startEntryId = startEntryId;
+            this.endEntryId = endEntryId;
+            this.ctx = ctx;
+        }
+    }
+
+    private final List<BatchRead> reads = new ArrayList<>();
+    // the entries added back, and the callbacks of the adds
+    private final List<Long> recoveredEntries = new ArrayList<>();
+    private final List<AddCallback> addCallbacks = new ArrayList<>();
+    // the buffers of the entries read
+    private final List<ByteBuf> buffers = new ArrayList<>();
+    private boolean addedUnderLock = false;
+    private LedgerHandle lh;
+    private LedgerRecoveryOp op;
+
+    @Before
+    public void setUp() {
+        ClientConfiguration conf = new ClientConfiguration()
+                .setRecoveryReadBatchSize(2)
+                .setRecoveryReadMaxOutstandingBatches(3);
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+
+        lh = mock(LedgerHandle.class);
+        lh.lastAddPushed = -1;
+        doAnswer(invocation -> {
+            addedUnderLock |= Thread.holdsLock(op);
+            byte[] data = invocation.getArgument(0);
+            synchronized (lh) {
+                lh.lastAddPushed++;
+            }
+            recoveredEntries.add(Unpooled.wrappedBuffer(data).readLong());
+            addCallbacks.add(invocation.getArgument(3));
+            return null;
+        }).when(lh).asyncRecoveryAddEntry(any(byte[].class), anyInt(), anyInt(), any(AddCallback.class), any());
+
+        op = new LedgerRecoveryOp(lh, clientCtx) {
+            @Override
+            void readEntries(long startEntryId, long endEntryId, Object ctx) {
+                reads.add(new BatchRead(startEntryId, endEntryId, ctx));
+            }
+        };
+    }
+
+    private BatchRead readOf(long entryId) {
+        for (BatchRead read : reads) {
+            if (read.startEntryId <= entryId && entryId <= read.endEntryId) {
+                return read;
+            }
+        }
+        throw new AssertionError("Entry " + entryId + " was not read");
+    }
+
+    private void readEntry(long entryId) {
+        ByteBuf buffer = Unpooled.buffer(Long.BYTES).writeLong(entryId);
+        buffers.add(buffer);
+        LedgerEntryImpl entryImpl = LedgerEntryImpl.create(LEDGER_ID, entryId, Long.BYTES, buffer);
+        LedgerEntry entry = new LedgerEntry(entryImpl);
+        entryImpl.close();
+        op.onEntryComplete(BKException.Code.OK, lh, entry, readOf(entryId).ctx);
+    }
+
+    private void failRead(long entryId, int rc) {
+        op.onEntryComplete(rc, lh, null, readOf(entryId).ctx);
+    }
+
+    private void completeAdds() {
+        for (int i = 0; i < addCallbacks.size(); i++) {
+            addCallbacks.get(i).addComplete(BKException.Code.OK, lh, i, null);
+        }
+    }
+
+    private void assertReads(long... startEntryIds) {
+        assertEquals(startEntryIds.length, reads.size());
+        for (int i = 0; i < startEntryIds.length; i++) {
+            assertEquals(startEntryIds[i], reads.get(i).startEntryId);
+            assertEquals(startEntryIds[i] + 1, reads.get(i).endEntryId);
+        }
+    }
+
+    private void assertBuffersReleased() {
+        for (ByteBuf buffer : buffers) {
+            assertEquals(0, buffer.refCnt());
+        }
+    }
+
+    @Test
+    public void testEntriesReadOutOfOrderAddedBackInOrder() throws Exception {
+        op.startRecoveryReads(0);
+        assertReads(0, 2, 4);
+
+        // the entries of a batch are read in order, but the batches complete out of order. the
+        // entries are held until all the entries before them are read
+        readEntry(4);
+        readEntry(5);
+        readEntry(2);
+        readEntry(3);
+        assertTrue(recoveredEntries.isEmpty());
+        readEntry(0);
+        assertEquals(Arrays.asList(0L), recoveredEntries);
+        assertReads(0, 2, 4);
+
+        readEntry(1);
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L), recoveredEntries);
+        assertReads(0, 2, 4, 6, 8, 10);
+        assertFalse(addedUnderLock);
+
+        // the recovery stops at the first missing entry, once the entries are added back
+        failRead(8, BKException.Code.NoSuchEntryException);
+        failRead(9, BKException.Code.NoSuchEntryException);
+        readEntry(6);
+        failRead(7, BKException.Code.NoSuchEntryException);
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L), recoveredEntries);
+        assertFalse(op.promise.isDone());
+        completeAdds();
+        assertSame(lh, op.promise.get());
+
+        // the entries read past the end of the ledger are released
+        readEntry(10);
+        readEntry(11);
+        assertEquals(7, recoveredEntries.size());
+        assertEquals(6, reads.size());
+        assertFalse(addedUnderLock);
+        assertBuffersReleased();
+    }
+
+    @Test
+    public void testMissingEntryReadAfterTheAddsComplete() throws Exception {
+        op.startRecoveryReads(0);
+        readEntry(0);
+        readEntry(1);
+        completeAdds();
+        failRead(2, BKException.Code.NoSuchLedgerExistsException);
+        assertSame(lh, op.promise.get());
+        assertEquals(Arrays.asList(0L, 1L), recoveredEntries);
+    }
+
+    @Test
+    public void testReadFailureMidPipeline() throws Exception {
+        op.startRecoveryReads(0);
+        readEntry(0);
+        readEntry(1);
+        readEntry(4);
+        readEntry(5);
+        assertEquals(Arrays.asList(0L, 1L), recoveredEntries);
+
+        // the failure stops the recovery, and releases the entries read after it
+        failRead(2, BKException.Code.ReadException);
+        try {
+            op.promise.get();
+            fail("The recovery should have failed");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof BKException.BKReadException);
+        }
+        assertEquals(Arrays.asList(0L, 1L), recoveredEntries);
+        assertBuffersReleased();
+
+        // the reads completing after the failure are released, and no more batch is read
+        readEntry(3);
+        readEntry(6);
+        readEntry(7);
+        assertEquals(Arrays.asList(0L, 1L), recoveredEntries);
+        assertReads(0, 2, 4, 6);
+        assertBuffersReleased();
+        assertFalse(addedUnderLock);
+    }
+
+    @Test
+    public void testAddFailureMidPipeline() throws Exception {
+        op.startRecoveryReads(0);
+        readEntry(0);
+        readEntry(1);
+        addCallbacks.get(0).addComplete(BKException.Code.BookieHandleNotAvailableException, lh, 0, null);
+        assertTrue(op.promise.isCompletedExceptionally());
+
+        // no more entries are added back
+        readEntry(2);
+        readEntry(3);
+        assertEquals(Arrays.asList(0L, 1L), recoveredEntries);
+        assertBuffersReleased();
+    }
+}
@@ -0,0 +1,674 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.ADD_OP_MEMORY_REJECTED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.FeatureProvider;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the interleavings of the write requests, responses and ensemble changes of pending adds.
+ */
+public class PendingAddOpTest {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final byte[] PASSWORD = "passwd".getBytes(UTF_8);
+
+    private final BookieId b0 = BookieId.parse("bookie0:3181");
+    private final BookieId b1 = BookieId.parse("bookie1:3181");
+    private final BookieId b2 = BookieId.parse("bookie2:3181");
+    private final BookieId b3 = BookieId.parse("bookie3:3181");
+    private final List<BookieId> ensemble = Arrays.asList(b0, b1, b2);
+    private final List<BookieId> newEnsemble = Arrays.asList(b0, b3, b2);
+
+    private final List<WriteRequest> writeRequests = new CopyOnWriteArrayList<>();
+    private final List<Integer> callbackRcs = new CopyOnWriteArrayList<>();
+    private final List<Long> callbackEntryIds = new CopyOnWriteArrayList<>();
+    // the metadata writes, completed by the test
+    private final List<MetadataWrite> metadataWrites = new CopyOnWriteArrayList<>();
+    private final ClientConfiguration clientConf = new ClientConfiguration();
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private OrderedExecutor mainWorkerPool;
+    private OrderedScheduler scheduler;
+    private BookieClient bookieClient;
+    private LedgerManager ledgerManager;
+    private BookieWatcher bookieWatcher;
+    private FeatureProvider featureProvider = SettableFeatureProvider.DISABLE_ALL;
+    private MemoryLimitController memoryLimiter = null;
+    private LedgerHandle lh;
+
+    /**
+     * A write request sent to a bookie.
+     */
+    private static class WriteRequest {
+        final BookieId bookie;
+        final long entryId;
+        final ReferenceCounted toSend;
+        final WriteCallback cb;
+        final Object ctx;
+
+        WriteRequest(BookieId bookie, long entryId, ReferenceCounted toSend, WriteCallback cb, Object ctx) {
+            this.bookie = bookie;
+            this.entryId = entryId;
+            this.toSend = toSend;
+            this.cb = cb;
+            this.ctx = ctx;
+        }
+    }
+
+    /**
+     * A write of the metadata of the ledger.
+     */
+    private static class MetadataWrite {
+        final LedgerMetadata metadata;
+        final CompletableFuture<Versioned<LedgerMetadata>> future = new CompletableFuture<>();
+
+        MetadataWrite(LedgerMetadata metadata) {
+            this.metadata = metadata;
+        }
+
+        void complete() {
+            future.complete(new Versioned<>(metadata, new LongVersion(1)));
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mainWorkerPool = OrderedExecutor.newBuilder().name("test-worker").numThreads(1).build();
+        scheduler = OrderedScheduler.newSchedulerBuilder().name("test-scheduler").numThreads(1).build();
+        bookieClient = mock(BookieClient.class);
+        doAnswer(invocation -> {
+            writeRequests.add(new WriteRequest(invocation.getArgument(0), invocation.getArgument(3),
+                    invocation.getArgument(4), invocation.getArgument(5), invocation.getArgument(6)));
+            return null;
+        }).when(bookieClient).addEntry(any(), anyLong(), any(), anyLong(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+        ledgerManager = mock(LedgerManager.class);
+        doAnswer(invocation -> {
+            MetadataWrite write = new MetadataWrite(invocation.getArgument(1));
+            metadataWrites.add(write);
+            return write.future;
+        }).when(ledgerManager).writeLedgerMetadata(anyLong(), any(), any());
+        bookieWatcher = mock(BookieWatcher.class);
+        when(bookieWatcher.replaceBookie(anyInt(), anyInt(), anyInt(), any(), any(), anyInt(), any()))
+                .thenReturn(b3);
+    }
+
+    @After
+    public void tearDown() {
+        mainWorkerPool.shutdown();
+        scheduler.shutdown();
+    }
+
+    private LedgerHandle createLedgerHandle(boolean inRecovery) throws Exception {
+        ClientInternalConf conf = ClientInternalConf.fromConfigAndFeatureProvider(clientConf, featureProvider);
+        BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(statsProvider.getStatsLogger(""));
+        ClientContext clientCtx = new ClientContext() {
+            @Override
+            public ClientInternalConf getConf() {
+                return conf;
+            }
+
+            @Override
+            public LedgerManager getLedgerManager() {
+                return ledgerManager;
+            }
+
+            @Override
+            public BookieWatcher getBookieWatcher() {
+                return bookieWatcher;
+            }
+
+            @Override
+            public EnsemblePlacementPolicy getPlacementPolicy() {
+                return mock(EnsemblePlacementPolicy.class);
+            }
+
+            @Override
+            public BookieClient getBookieClient() {
+                return bookieClient;
+            }
+
+            @Override
+            public ByteBufAllocator getByteBufAllocator() {
+                return UnpooledByteBufAllocator.DEFAULT;
+            }
+
+            @Override
+            public OrderedExecutor getMainWorkerPool() {
+                return mainWorkerPool;
+            }
+
+            @Override
+            public OrderedScheduler getScheduler() {
+                return scheduler;
+            }
+
+            @Override
+            public BookKeeperClientStats getClientStats() {
+                return clientStats;
+            }
+
+            @Override
+            public BookieReadLatencyTracker getBookieReadLatencyTracker() {
+                return null;
+            }
+
+            @Override
+            public ClientEntryCache getEntryCache() {
+                return null;
+            }
+
+            @Override
+            public MemoryLimitController getPendingAddsMemoryLimiter() {
+                return memoryLimiter;
+            }
+
+            @Override
+            public LacWatchMultiplexer getLacWatchMultiplexer() {
+                return null;
+            }
+
+            @Override
+            public boolean isClientClosed() {
+                return false;
+            }
+
+            @Override
+            public boolean isClientThread() {
+                return mainWorkerPool.isExecutorThread() || scheduler.isExecutorThread();
+            }
+        };
+        LedgerMetadataBuilder metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withEnsembleSize(3)
+                .withWriteQuorumSize(3)
+                .withAckQuorumSize(2)
+                .withPassword(PASSWORD)
+                .withDigestType(BookKeeper.DigestType.CRC32.toApiDigestType())
+                .newEnsembleEntry(0L, ensemble);
+        if (inRecovery) {
+            metadata.withInRecoveryState();
+        }
+        return new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata.build(), new LongVersion(0)),
+                BookKeeper.DigestType.CRC32, PASSWORD, EnumSet.noneOf(WriteFlag.class));
+    }
+
+    private PendingAddOp addEntry() {
+        lh.asyncAddEntry(Unpooled.wrappedBuffer(new byte[10]),
+                (rc, handle, entryId, ctx) -> {
+                    callbackRcs.add(rc);
+                    callbackEntryIds.add(entryId);
+                }, null);
+        PendingAddOp op = null;
+        for (PendingAddOp pendingAddOp : lh.pendingAddOps) {
+            op = pendingAddOp;
+        }
+        return op;
+    }
+
+    // runs on the ordered thread of the ledger and waits for it
+    private void runOrdered(Runnable runnable) throws Exception {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        lh.executeOrdered(() -> {
+            try {
+                runnable.run();
+                done.complete(null);
+            } catch (Throwable t) {
+                done.completeExceptionally(t);
+            }
+        });
+        done.get(10, TimeUnit.SECONDS);
+    }
+
+    private void respond(WriteRequest request, int rc) throws Exception {
+        runOrdered(() -> request.cb.writeComplete(rc, LEDGER_ID, request.entryId, request.bookie, request.ctx));
+    }
+
+    private List<WriteRequest> requestsTo(BookieId bookie) {
+        List<WriteRequest> requests = new ArrayList<>();
+        for (WriteRequest request : writeRequests) {
+            if (request.bookie.equals(bookie)) {
+                requests.add(request);
+            }
+        }
+        return requests;
+    }
+
+    private static void assertRecycled(PendingAddOp op) {
+        assertNull(op.lh);
+        assertNull(op.ackSet);
+    }
+
+    private void assertNotRecycled(PendingAddOp op) {
+        assertSame(lh, op.lh);
+    }
+
+    @Test
+    public void testAddCompletesOnAckQuorum() throws Exception {
+        lh = createLedgerHandle(false);
+        PendingAddOp op = addEntry();
+        assertEquals(3, writeRequests.size());
+        ReferenceCounted toSend = writeRequests.get(0).toSend;
+
+        respond(writeRequests.get(0), BKException.Code.OK);
+        assertEquals(Collections.emptyList(), callbackRcs);
+        respond(writeRequests.get(1), BKException.Code.OK);
+        assertEquals(Collections.singletonList(BKException.Code.OK), callbackRcs);
+        assertEquals(0L, lh.getLastAddConfirmed());
+        // the entry is released once the callback is run, the op once all the bookies responded
+        assertEquals(0, toSend.refCnt());
+        assertNotRecycled(op);
+
+        respond(writeRequests.get(2), BKException.Code.OK);
+        assertRecycled(op);
+        assertEquals(1, callbackRcs.size());
+    }
+
+    @Test
+    public void testEnsembleChangeWhileSendingToNewEnsemble() throws Exception {
+        lh = spy(createLedgerHandle(false));
+        // the ensemble changes once the entry is published, before it is sent
+        doAnswer(invocation -> {
+            runOrdered(() -> lh.unsetSuccessAndSendWriteRequest(newEnsemble, Collections.singleton(1)));
+            return null;
+        }).when(lh).maybeHandleDelayedWriteBookieFailure();
+        PendingAddOp op = addEntry();
+
+        // the entry is sent once to the new bookie, and not to the replaced one
+        assertEquals(3, writeRequests.size());
+        assertEquals(1, requestsTo(b3).size());
+        assertEquals(0, requestsTo(b1).size());
+
+        respond(requestsTo(b0).get(0), BKException.Code.OK);
+        respond(requestsTo(b3).get(0), BKException.Code.OK);
+        assertEquals(Collections.singletonList(BKException.Code.OK), callbackRcs);
+        assertNotRecycled(op);
+        respond(requestsTo(b2).get(0), BKException.Code.OK);
+        assertRecycled(op);
+    }
+
+    @Test
+    public void testEnsembleChangeWhileSendingToOldEnsemble() throws Exception {
+        lh = createLedgerHandle(false);
+        // the ensemble changes once the entry is sent to the replaced bookie of the old ensemble
+        doAnswer(invocation -> {
+            writeRequests.add(new WriteRequest(invocation.getArgument(0), invocation.getArgument(3),
+                    invocation.getArgument(4), invocation.getArgument(5), invocation.getArgument(6)));
+            if (writeRequests.size() == 2) {
+                runOrdered(() -> lh.unsetSuccessAndSendWriteRequest(newEnsemble, Collections.singleton(1)));
+            }
+            return null;
+        }).when(bookieClient).addEntry(any(), anyLong(), any(), anyLong(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+        PendingAddOp op = addEntry();
+
+        assertEquals(4, writeRequests.size());
+        assertEquals(1, requestsTo(b1).size());
+        assertEquals(1, requestsTo(b3).size());
+
+        // the ack of the replaced bookie doesn't count
+        respond(requestsTo(b0).get(0), BKException.Code.OK);
+        respond(requestsTo(b1).get(0), BKException.Code.OK);
+        assertEquals(Collections.emptyList(), callbackRcs);
+        respond(requestsTo(b3).get(0), BKException.Code.OK);
+        assertEquals(Collections.singletonList(BKException.Code.OK), callbackRcs);
+
+        respond(requestsTo(b2).get(0), BKException.Code.OK);
+        assertRecycled(op);
+    }
+
+    @Test
+    public void testEnsembleChangeAfterAckQuorum() throws Exception {
+        lh = createLedgerHandle(false);
+        lh.changingEnsemble = true;
+        PendingAddOp first = addEntry();
+        PendingAddOp second = addEntry();
+        for (WriteRequest request : new ArrayList<>(writeRequests)) {
+            if (!request.bookie.equals(b1)) {
+                respond(request, BKException.Code.OK);
+            }
+        }
+        // the acks are held during the ensemble change
+        assertEquals(Collections.emptyList(), callbackRcs);
+
+        runOrdered(() -> {
+            lh.changingEnsemble = false;
+            lh.unsetSuccessAndSendWriteRequest(newEnsemble, Collections.singleton(1));
+            lh.sendAddSuccessCallbacks();
+        });
+        // the adds kept their ack quorum
+        assertEquals(Arrays.asList(BKException.Code.OK, BKException.Code.OK), callbackRcs);
+        assertEquals(2, requestsTo(b3).size());
+
+        // the responses of the replaced bookie are ignored
+        for (WriteRequest request : requestsTo(b1)) {
+            respond(request, BKException.Code.BookieHandleNotAvailableException);
+        }
+        assertNotRecycled(first);
+        for (WriteRequest request : requestsTo(b3)) {
+            respond(request, BKException.Code.OK);
+        }
+        assertRecycled(first);
+        assertRecycled(second);
+        assertEquals(2, callbackRcs.size());
+    }
+
+    @Test
+    public void testResendToTheSameBookieAfterItResponded() throws Exception {
+        // the failed writes are sent again to the same bookies
+        featureProvider = new SettableFeatureProvider("", 100);
+        lh = createLedgerHandle(false);
+        PendingAddOp op = addEntry();
+
+        respond(requestsTo(b1).get(0), BKException.Code.BookieHandleNotAvailableException);
+        // the retry is submitted to the ordered thread
+        runOrdered(() -> { });
+        assertEquals(2, requestsTo(b1).size());
+
+        respond(requestsTo(b0).get(0), BKException.Code.OK);
+        respond(requestsTo(b1).get(1), BKException.Code.OK);
+        assertEquals(Collections.singletonList(BKException.Code.OK), callbackRcs);
+        respond(requestsTo(b2).get(0), BKException.Code.OK);
+        assertRecycled(op);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        lh = createLedgerHandle(true);
+        PendingAddOp op = addEntry();
+        ReferenceCounted toSend = writeRequests.get(0).toSend;
+        respond(writeRequests.get(0), BKException.Code.OK);
+
+        runOrdered(op::timeoutQuorumWait);
+        assertEquals(Collections.singletonList(BKException.Code.AddEntryQuorumTimeoutException), callbackRcs);
+        assertEquals(0, toSend.refCnt());
+        assertTrue(lh.pendingAddOps.isEmpty());
+
+        // the late responses don't complete the add again
+        respond(writeRequests.get(1), BKException.Code.OK);
+        assertNotRecycled(op);
+        respond(writeRequests.get(2), BKException.Code.OK);
+        assertRecycled(op);
+        assertEquals(1, callbackRcs.size());
+    }
+
+    @Test
+    public void testEnsembleChangeWaitsForMetadataWrite() throws Exception {
+        lh = createLedgerHandle(false);
+        addEntry();
+        respond(requestsTo(b1).get(0), BKException.Code.BookieHandleNotAvailableException);
+        runOrdered(() -> { });
+        assertEquals(1, metadataWrites.size());
+        assertEquals(newEnsemble, metadataWrites.get(0).metadata.getAllEnsembles().get(0L));
+        // the entry is sent to the new bookie once the new ensemble is written
+        assertEquals(0, requestsTo(b3).size());
+
+        metadataWrites.get(0).complete();
+        runOrdered(() -> { });
+        assertEquals(1, requestsTo(b3).size());
+        respond(requestsTo(b0).get(0), BKException.Code.OK);
+        respond(requestsTo(b3).get(0), BKException.Code.OK);
+        assertEquals(Collections.singletonList(BKException.Code.OK), callbackRcs);
+    }
+
+    @Test
+    public void testOptimisticEnsembleChangeHoldsAcksUntilMetadataWrite() throws Exception {
+        clientConf.setOptimisticEnsembleChange(true);
+        lh = createLedgerHandle(false);
+        PendingAddOp op = addEntry();
+        respond(requestsTo(b1).get(0), BKException.Code.BookieHandleNotAvailableException);
+        runOrdered(() -> { });
+
+        // the entry is sent to the new bookie while its ensemble is written
+        assertEquals(1, metadataWrites.size());
+        assertEquals(newEnsemble, metadataWrites.get(0).metadata.getAllEnsembles().get(0L));
+        assertEquals(1, requestsTo(b3).size());
+        assertEquals(newEnsemble, lh.getEnsembleForAdds());
+        assertEquals(ensemble, lh.getCurrentEnsemble());
+
+        // the entry has its ack quorum, but it is only acknowledged once the new ensemble is written
+        respond(requestsTo(b0).get(0), BKException.Code.OK);
+        respond(requestsTo(b3).get(0), BKException.Code.OK);
+        respond(requestsTo(b2).get(0), BKException.Code.OK);
+        assertEquals(Collections.emptyList(), callbackRcs);
+        assertEquals(-1L, lh.getLastAddConfirmed());
+
+        metadataWrites.get(0).complete();
+        runOrdered(() -> { });
+        assertEquals(Collections.singletonList(BKException.Code.OK), callbackRcs);
+        assertEquals(0L, lh.getLastAddConfirmed());
+        assertEquals(newEnsemble, lh.getCurrentEnsemble());
+        assertEquals(newEnsemble, lh.getEnsembleForAdds());
+        // the entry is not sent again to the new bookie
+        assertEquals(1, requestsTo(b3).size());
+        assertEquals(4, writeRequests.size());
+        assertRecycled(op);
+    }
+
+    @Test
+    public void testOptimisticEnsembleChangeNewAddsSentToNewEnsemble() throws Exception {
+        clientConf.setOptimisticEnsembleChange(true);
+        lh = createLedgerHandle(false);
+        addEntry();
+        respond(requestsTo(b1).get(0), BKException.Code.BookieHandleNotAvailableException);
+        runOrdered(() -> { });
+
+        // the adds issued during the metadata write go to the new ensemble
+        addEntry();
+        assertEquals(1, requestsTo(b1).size());
+        assertEquals(2, requestsTo(b3).size());
+        for (WriteRequest request : new ArrayList<>(writeRequests)) {
+            if (!request.bookie.equals(b1)) {
+                respond(request, BKException.Code.OK);
+            }
+        }
+        assertEquals(Collections.emptyList(), callbackRcs);
+
+        metadataWrites.get(0).complete();
+        runOrdered(() -> { });
+        assertEquals(Arrays.asList(BKException.Code.OK, BKException.Code.OK), callbackRcs);
+        assertEquals(1L, lh.getLastAddConfirmed());
+        assertEquals(2, requestsTo(b3).size());
+    }
+
+    @Test
+    public void testOptimisticEnsembleChangeMetadataWriteFailure() throws Exception {
+        clientConf.setOptimisticEnsembleChange(true);
+        lh = createLedgerHandle(false);
+        addEntry();
+        respond(requestsTo(b1).get(0), BKException.Code.BookieHandleNotAvailableException);
+        runOrdered(() -> { });
+        respond(requestsTo(b0).get(0), BKException.Code.OK);
+        respond(requestsTo(b3).get(0), BKException.Code.OK);
+        assertEquals(Collections.emptyList(), callbackRcs);
+
+        // the entry written to the new bookie is never acknowledged
+        metadataWrites.get(0).future.completeExceptionally(new BKException.MetaStoreException());
+        // the failure closes the handle on the ordered thread
+        runOrdered(() -> { });
+        runOrdered(() -> { });
+        assertEquals(1, callbackRcs.size());
+        assertNotEquals(BKException.Code.OK, callbackRcs.get(0).intValue());
+    }
+
+    private long rejectedAdds() {
+        return statsProvider.getCounter(ADD_OP_MEMORY_REJECTED).get();
+    }
+
+    @Test
+    public void testMemoryReservedUntilRecycled() throws Exception {
+        memoryLimiter = new MemoryLimitController(25);
+        lh = createLedgerHandle(false);
+        PendingAddOp op = addEntry();
+        assertEquals(10L, memoryLimiter.currentUsage());
+
+        // the memory is held until all the bookies responded
+        respond(writeRequests.get(0), BKException.Code.OK);
+        respond(writeRequests.get(1), BKException.Code.OK);
+        assertEquals(Collections.singletonList(BKException.Code.OK), callbackRcs);
+        assertEquals(10L, memoryLimiter.currentUsage());
+        respond(writeRequests.get(2), BKException.Code.OK);
+        assertRecycled(op);
+        assertEquals(0L, memoryLimiter.currentUsage());
+    }
+
+    @Test
+    public void testFailFastOverMemoryLimit() throws Exception {
+        clientConf.setPendingAddsMemoryFailFast(true);
+        memoryLimiter = new MemoryLimitController(15);
+        lh = createLedgerHandle(false);
+        // the limiter lets the add crossing the limit through
+        addEntry();
+        addEntry();
+        addEntry();
+        runOrdered(() -> { });
+
+        // the rejected add isn't given an entry id
+        assertEquals(Collections.singletonList(BKException.Code.TooManyRequestsException), callbackRcs);
+        assertEquals(Collections.singletonList(LedgerHandle.INVALID_ENTRY_ID), callbackEntryIds);
+        assertEquals(1L, lh.getLastAddPushed());
+        assertEquals(6, writeRequests.size());
+        assertEquals(20L, memoryLimiter.currentUsage());
+        assertEquals(1L, rejectedAdds());
+
+        for (WriteRequest request : new ArrayList<>(writeRequests)) {
+            respond(request, BKException.Code.OK);
+        }
+        assertEquals(Arrays.asList(0L, 1L), callbackEntryIds.subList(1, 3));
+        assertEquals(0L, memoryLimiter.currentUsage());
+
+        // the next adds are accepted once the memory is released
+        addEntry();
+        assertEquals(2L, lh.getLastAddPushed());
+        assertEquals(9, writeRequests.size());
+    }
+
+    @Test
+    public void testAddFromClientThreadFailsFast() throws Exception {
+        memoryLimiter = new MemoryLimitController(15);
+        lh = createLedgerHandle(false);
+        addEntry();
+        addEntry();
+
+        // neither the worker threads nor the scheduler threads of the client wait for the memory
+        runOrdered(this::addEntry);
+        scheduler.submit(this::addEntry).get(10, TimeUnit.SECONDS);
+        runOrdered(() -> { });
+        assertEquals(Arrays.asList(BKException.Code.TooManyRequestsException,
+                BKException.Code.TooManyRequestsException), callbackRcs);
+        assertEquals(1L, lh.getLastAddPushed());
+        assertEquals(2L, rejectedAdds());
+    }
+
+    @Test
+    public void testAddBlocksUntilMemoryReleased() throws Exception {
+        memoryLimiter = new MemoryLimitController(15);
+        lh = createLedgerHandle(false);
+        addEntry();
+        addEntry();
+
+        CompletableFuture<PendingAddOp> blockedAdd = CompletableFuture.supplyAsync(this::addEntry);
+        Thread.sleep(200);
+        assertFalse(blockedAdd.isDone());
+        assertEquals(6, writeRequests.size());
+
+        // the add proceeds once the first add is recycled
+        for (WriteRequest request : new ArrayList<>(writeRequests)) {
+            if (request.entryId == 0L) {
+                respond(request, BKException.Code.OK);
+            }
+        }
+        blockedAdd.get(10, TimeUnit.SECONDS);
+        assertEquals(2L, lh.getLastAddPushed());
+        assertEquals(9, writeRequests.size());
+        assertEquals(20L, memoryLimiter.currentUsage());
+        assertEquals(0L, rejectedAdds());
+    }
+
+    @Test
+    public void testBlockedAddInterrupted() throws Exception {
+        memoryLimiter = new MemoryLimitController(15);
+        lh = createLedgerHandle(false);
+        addEntry();
+        addEntry();
+
+        Thread addThread = new Thread(this::addEntry);
+        addThread.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (addThread.getState() != Thread.State.WAITING) {
+            assertTrue("The add should wait for the memory", addThread.isAlive()
+                    && System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        addThread.interrupt();
+        addThread.join();
+        runOrdered(() -> { });
+        assertEquals(Collections.singletonList(BKException.Code.InterruptedException), callbackRcs);
+        assertEquals(Collections.singletonList(LedgerHandle.INVALID_ENTRY_ID), callbackEntryIds);
+        assertEquals(1L, lh.getLastAddPushed());
+        assertEquals(20L, memoryLimiter.currentUsage());
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.BookKeeperClusterTestCase;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.BatchedRecords;
+import org.apache.bookkeeper.client.api.BatchingAppender;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.junit.Test;
+
+/**
+ * Test the batching of records in ledger entries.
+ */
+public class BatchingAppenderTest extends BookKeeperClusterTestCase {
+
+    private static final byte[] PASSWORD = "passwd".getBytes(UTF_8);
+
+    public BatchingAppenderTest() {
+        super(3);
+    }
+
+    private WriteHandle createLedger(boolean batched) throws Exception {
+        return bkc.newCreateLedgerOp()
+                .withEnsembleSize(3)
+                .withWriteQuorumSize(2)
+                .withAckQuorumSize(2)
+                .withDigestType(DigestType.CRC32C)
+                .withPassword(PASSWORD)
+                .withCustomMetadata(batched ? BatchingAppender.newLedgerCustomMetadata() : Collections.emptyMap())
+                .execute().get();
+    }
+
+    private ReadHandle openLedger(long ledgerId) throws Exception {
+        return bkc.newOpenLedgerOp()
+                .withLedgerId(ledgerId)
+                .withDigestType(DigestType.CRC32C)
+                .withPassword(PASSWORD)
+                .execute().get();
+    }
+
+    private static byte[] record(int index, int size) {
+        byte[] record = new byte[size];
+        for (int i = 0; i < size; i++) {
+            record[i] = (byte) (index + i);
+        }
+        return record;
+    }
+
+    private static void assertPosition(long entryId, int index, RecordPosition position) {
+        assertEquals(entryId, position.getEntryId());
+        assertEquals(index, position.getIndex());
+    }
+
+    // reads back the records of the ledger, checking them against their positions
+    private void assertRecords(long ledgerId, List<RecordPosition> positions, List<byte[]> records)
+            throws Exception {
+        try (ReadHandle rh = openLedger(ledgerId);
+             LedgerEntries entries = rh.read(0, rh.getLastAddConfirmed())) {
+            List<List<byte[]>> entryRecords = new ArrayList<>();
+            for (LedgerEntry entry : entries) {
+                BatchedRecords batch = BatchedRecords.of(entry, rh.getLedgerMetadata());
+                assertEquals(entry.getEntryId(), batch.getEntryId());
+                List<byte[]> read = new ArrayList<>();
+                for (ByteBuf record : batch) {
+                    read.add(ByteBufUtil.getBytes(record));
+                }
+                assertEquals(batch.size(), read.size());
+                entryRecords.add(read);
+            }
+            int numRecords = 0;
+            for (List<byte[]> read : entryRecords) {
+                numRecords += read.size();
+            }
+            assertEquals(records.size(), numRecords);
+            for (int i = 0; i < records.size(); i++) {
+                RecordPosition position = positions.get(i);
+                assertArrayEquals(records.get(i),
+                        entryRecords.get((int) position.getEntryId()).get(position.getIndex()));
+            }
+        }
+    }
+
+    @Test
+    public void testRecordsBatchedByCount() throws Exception {
+        WriteHandle wh = createLedger(true);
+        List<byte[]> records = new ArrayList<>();
+        List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+        try (BatchingAppender appender = BatchingAppender.newBuilder(wh)
+                .withMaxBatchRecords(3)
+                .withLingerTime(0, TimeUnit.MILLISECONDS)
+                .build()) {
+            for (int i = 0; i < 7; i++) {
+                records.add(record(i, 10 + i));
+                futures.add(appender.appendAsync(records.get(i)));
+            }
+            // the last record waits for the batch to be flushed
+            futures.get(5).get();
+            assertFalse(futures.get(6).isDone());
+            appender.flush();
+        }
+        List<RecordPosition> positions = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            positions.add(futures.get(i).get());
+            assertPosition(i / 3, i % 3, positions.get(i));
+        }
+        assertEquals(2L, wh.getLastAddConfirmed());
+        wh.close();
+        assertRecords(wh.getId(), positions, records);
+    }
+
+    @Test
+    public void testRecordsBatchedBySize() throws Exception {
+        WriteHandle wh = createLedger(true);
+        List<byte[]> records = new ArrayList<>();
+        List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+        try (BatchingAppender appender = BatchingAppender.newBuilder(wh)
+                .withMaxBatchBytes(250)
+                .withLingerTime(0, TimeUnit.MILLISECONDS)
+                .build()) {
+            for (int i = 0; i < 3; i++) {
+                records.add(record(i, 100));
+            }
+            // a record larger than a batch is appended on its own
+            records.add(record(3, 1000));
+            records.add(record(4, 100));
+            for (byte[] record : records) {
+                futures.add(appender.appendAsync(record));
+            }
+        }
+        List<RecordPosition> positions = new ArrayList<>();
+        for (CompletableFuture<RecordPosition> future : futures) {
+            positions.add(future.get());
+        }
+        assertPosition(0, 0, positions.get(0));
+        assertPosition(0, 1, positions.get(1));
+        assertPosition(1, 0, positions.get(2));
+        assertPosition(2, 0, positions.get(3));
+        assertPosition(3, 0, positions.get(4));
+        wh.close();
+        assertRecords(wh.getId(), positions, records);
+    }
+
+    @Test
+    public void testBatchAppendedAfterLingerTime() throws Exception {
+        WriteHandle wh = createLedger(true);
+        try (BatchingAppender appender = BatchingAppender.newBuilder(wh)
+                .withLingerTime(10, TimeUnit.MILLISECONDS)
+                .build()) {
+            CompletableFuture<RecordPosition> first = appender.appendAsync(record(0, 10));
+            CompletableFuture<RecordPosition> second = appender.appendAsync(record(1, 10));
+            assertPosition(0, 0, first.get(10, TimeUnit.SECONDS));
+            assertPosition(0, 1, second.get(10, TimeUnit.SECONDS));
+
+            assertPosition(1, 0, appender.appendAsync(record(2, 10)).get(10, TimeUnit.SECONDS));
+        }
+        wh.close();
+    }
+
+    @Test
+    public void testAppendAfterClose() throws Exception {
+        WriteHandle wh = createLedger(true);
+        BatchingAppender appender = BatchingAppender.newBuilder(wh).build();
+        CompletableFuture<RecordPosition> appended = appender.appendAsync(record(0, 10));
+        appender.close();
+        assertPosition(0, 0, appended.get());
+
+        ByteBuf record = Unpooled.wrappedBuffer(record(1, 10));
+        try {
+            appender.appendAsync(record).get();
+            fail("The record should not be appended after the appender is closed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKException.BKLedgerClosedException);
+        }
+        assertEquals(0, record.refCnt());
+        wh.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLedgerWithoutCustomMetadataRejected() throws Exception {
+        WriteHandle wh = createLedger(false);
+        try {
+            BatchingAppender.newBuilder(wh).build();
+        } finally {
+            wh.close();
+        }
+    }
+
+    @Test
+    public void testEntriesOfOtherLedgersReadAsSingleRecord() throws Exception {
+        WriteHandle wh = createLedger(false);
+        // an entry which looks like a batch of 2 records of 1 byte
+        ByteBuf header = Unpooled.buffer();
+        header.writeInt(2);
+        header.writeInt(1);
+        header.writeInt(1);
+        header.writeByte(1);
+        header.writeByte(2);
+        byte[] data = ByteBufUtil.getBytes(header);
+        wh.append(data);
+        wh.close();
+
+        try (ReadHandle rh = openLedger(wh.getId());
+             LedgerEntries entries = rh.read(0, 0)) {
+            BatchedRecords batch = BatchedRecords.of(entries.getEntry(0), rh.getLedgerMetadata());
+            assertEquals(1, batch.size());
+            assertArrayEquals(data, ByteBufUtil.getBytes(batch.getRecord(0)));
+        }
+    }
+
+    @Test
+    public void testInvalidBatch() throws Exception {
+        WriteHandle wh = createLedger(true);
+        wh.append(new byte[] { 0, 0, 0, 5, 1, 2 });
+        wh.close();
+
+        try (ReadHandle rh = openLedger(wh.getId());
+             LedgerEntries entries = rh.read(0, 0)) {
+            BatchedRecords.of(entries.getEntry(0), rh.getLedgerMetadata());
+            fail("The entry should not be read as a batch");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static WriteHandle mockHandle(List<CompletableFuture<Long>> appends, List<ByteBuf> entries) {
+        LedgerMetadata metadata = mock(LedgerMetadata.class);
+        when(metadata.getCustomMetadata()).thenReturn(BatchingAppender.newLedgerCustomMetadata());
+        WriteHandle handle = mock(WriteHandle.class);
+        when(handle.getLedgerMetadata()).thenReturn(metadata);
+        when(handle.appendAsync(any(ByteBuf.class))).thenAnswer(invocation -> {
+            synchronized (entries) {
+                entries.add(invocation.getArgument(0));
+                return appends.get(entries.size() - 1);
+            }
+        });
+        return handle;
+    }
+
+    private static int numRecords(ByteBuf entry) {
+        return entry.getInt(entry.readerIndex());
+    }
+
+    @Test
+    public void testFailedAppend() throws Exception {
+        CompletableFuture<Long> append = new CompletableFuture<>();
+        List<ByteBuf> entries = new ArrayList<>();
+        BatchingAppender appender = BatchingAppender.newBuilder(
+                mockHandle(Collections.singletonList(append), entries))
+                .withLingerTime(0, TimeUnit.MILLISECONDS)
+                .build();
+        CompletableFuture<RecordPosition> first = appender.appendAsync(record(0, 10));
+        CompletableFuture<RecordPosition> second = appender.appendAsync(record(1, 10));
+        CompletableFuture<Void> flushed = appender.flushAsync();
+        assertEquals(1, entries.size());
+        assertEquals(2, numRecords(entries.get(0)));
+
+        BKException failure = new BKException.BKNotEnoughBookiesException();
+        append.completeExceptionally(failure);
+        CompletableFuture<Void> closed = appender.closeAsync();
+        for (CompletableFuture<?> future : new CompletableFuture<?>[] { first, second, flushed, closed }) {
+            try {
+                future.get();
+                fail("The append should fail");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+        entries.get(0).release();
+    }
+
+    @Test
+    public void testAppendBlockedOutsideOfTheBatch() throws Exception {
+        List<CompletableFuture<Long>> appends = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            appends.add(CompletableFuture.completedFuture((long) i));
+        }
+        List<ByteBuf> entries = new ArrayList<>();
+        WriteHandle handle = mockHandle(appends, entries);
+        CountDownLatch appendStarted = new CountDownLatch(1);
+        CountDownLatch appendUnblocked = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            int index;
+            synchronized (entries) {
+                entries.add(invocation.getArgument(0));
+                index = entries.size() - 1;
+            }
+            if (index == 0) {
+                // blocked like by the throttling of the client
+                appendStarted.countDown();
+                appendUnblocked.await();
+            }
+            return appends.get(index);
+        }).when(handle).appendAsync(any(ByteBuf.class));
+        BatchingAppender appender = BatchingAppender.newBuilder(handle)
+                .withMaxBatchRecords(2)
+                .withLingerTime(0, TimeUnit.MILLISECONDS)
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<CompletableFuture<RecordPosition>> blocked = executor.submit(() -> {
+                appender.appendAsync(record(0, 10));
+                return appender.appendAsync(record(1, 10));
+            });
+            appendStarted.await();
+
+            // the records are added to the next batch while the previous one is being appended
+            CompletableFuture<RecordPosition> third = appender.appendAsync(record(2, 10));
+            assertFalse(third.isDone());
+            // the next full batch waits for the previous one to be appended
+            Future<CompletableFuture<RecordPosition>> fourth =
+                    executor.submit(() -> appender.appendAsync(record(3, 10)));
+
+            appendUnblocked.countDown();
+            assertPosition(0, 1, blocked.get().get());
+            assertPosition(1, 0, third.get());
+            assertPosition(1, 1, fourth.get().get());
+            CompletableFuture<RecordPosition> fifth = appender.appendAsync(record(4, 10));
+            appender.flush();
+            assertPosition(2, 0, fifth.get());
+        } finally {
+            appendUnblocked.countDown();
+            executor.shutdown();
+        }
+        // the batches are appended in the order of their records
+        assertEquals(3, entries.size());
+        assertEquals(2, numRecords(entries.get(0)));
+        assertEquals(2, numRecords(entries.get(1)));
+        assertEquals(1, numRecords(entries.get(2)));
+        assertEquals(2, entries.get(1).getByte(12));
+        assertEquals(3, entries.get(1).getByte(22));
+        for (ByteBuf entry : entries) {
+            entry.release();
+        }
+        appender.close();
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.client.api.SequentialReadHandle;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the prefetching of the entries read by a {@link SequentialReadHandle}.
+ */
+public class SequentialReadHandleTest {
+
+    private static final long LEDGER_ID = 1234L;
+
+    /**
+     * A batch read sent by the sequential read handle, completed by the test.
+     */
+    private static class BatchRead {
+        final long startEntry;
+        final int maxCount;
+        final CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+
+        BatchRead(long startEntry, int maxCount) {
+            this.startEntry = startEntry;
+            this.maxCount = maxCount;
+        }
+    }
+
+    private final List<BatchRead> reads = new ArrayList<>();
+    // the buffers of the entries read
+    private final List<ByteBuf> buffers = new ArrayList<>();
+    private ReadHandle handle;
+    private long lastAddConfirmed;
+
+    @Before
+    public void setUp() {
+        handle = mock(ReadHandle.class);
+        when(handle.getLastAddConfirmed()).thenAnswer(invocation -> lastAddConfirmed);
+        doAnswer(invocation -> {
+            BatchRead read = new BatchRead(invocation.getArgument(0), invocation.getArgument(1));
+            reads.add(read);
+            return read.future;
+        }).when(handle).batchReadAsync(anyLong(), anyInt(), anyLong());
+    }
+
+    private SequentialReadHandle newHandle(int maxReadEntries, int maxOutstandingEntries, long maxOutstandingBytes) {
+        return SequentialReadHandle.newBuilder(handle)
+                .withMaxReadEntries(maxReadEntries)
+                .withMaxOutstandingEntries(maxOutstandingEntries)
+                .withMaxOutstandingBytes(maxOutstandingBytes)
+                .build();
+    }
+
+    private void assertRead(int index, long startEntry, int maxCount) {
+        BatchRead read = reads.get(index);
+        assertEquals(startEntry, read.startEntry);
+        assertEquals(maxCount, read.maxCount);
+    }
+
+    // completes a read with the entries from its start entry to the last entry
+    private void completeRead(int index, long lastEntry, int entrySize) {
+        BatchRead read = reads.get(index);
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (long entryId = read.startEntry; entryId <= lastEntry; entryId++) {
+            ByteBuf buffer = Unpooled.buffer(entrySize).writeZero(entrySize);
+            buffers.add(buffer);
+            entries.add(LedgerEntryImpl.create(LEDGER_ID, entryId, entrySize, buffer));
+        }
+        read.future.complete(LedgerEntriesImpl.create(entries));
+    }
+
+    private static void assertEntry(long entryId, LedgerEntry entry) {
+        try {
+            assertEquals(entryId, entry.getEntryId());
+        } finally {
+            entry.close();
+        }
+    }
+
+    private static Throwable failure(CompletableFuture<LedgerEntry> future) throws Exception {
+        try {
+            future.get();
+            fail("The read should have failed");
+            return null;
+        } catch (ExecutionException ee) {
+            return ee.getCause();
+        }
+    }
+
+    private void assertBuffersReleased() {
+        for (ByteBuf buffer : buffers) {
+            assertEquals(0, buffer.refCnt());
+        }
+    }
+
+    @Test
+    public void testEntriesReturnedInOrder() throws Exception {
+        lastAddConfirmed = 29;
+        SequentialReadHandle readHandle = newHandle(10, 30, 1024 * 1024);
+        assertEquals(1, reads.size());
+        assertRead(0, 0, 10);
+
+        // the window doubles every time the reader waits for an entry
+        CompletableFuture<LedgerEntry> first = readHandle.nextAsync();
+        assertEquals(2, reads.size());
+        assertRead(1, 10, 10);
+        CompletableFuture<LedgerEntry> second = readHandle.nextAsync();
+        assertEquals(3, reads.size());
+        assertRead(2, 20, 10);
+        assertEquals(2L, readHandle.getNextEntryId());
+
+        // the reads completing out of order
+        completeRead(2, 29, 10);
+        completeRead(1, 19, 10);
+        assertFalse(first.isDone());
+        completeRead(0, 9, 10);
+        assertEntry(0, first.get());
+        assertEntry(1, second.get());
+
+        for (long entryId = 2; entryId <= 29; entryId++) {
+            assertTrue(readHandle.hasNext());
+            assertEntry(entryId, readHandle.next());
+        }
+        assertFalse(readHandle.hasNext());
+        assertTrue(failure(readHandle.nextAsync()) instanceof BKException.BKNoSuchEntryException);
+        assertEquals(3, reads.size());
+        readHandle.close();
+        assertBuffersReleased();
+    }
+
+    @Test
+    public void testWindowBoundedByMaxOutstandingEntries() throws Exception {
+        lastAddConfirmed = 1000;
+        SequentialReadHandle readHandle = newHandle(10, 20, 1024 * 1024);
+        CompletableFuture<LedgerEntry> first = readHandle.nextAsync();
+        CompletableFuture<LedgerEntry> second = readHandle.nextAsync();
+        assertEquals(2, reads.size());
+        assertRead(1, 10, 10);
+
+        // the entries returned to the reader make room for new reads
+        completeRead(0, 9, 10);
+        assertEntry(0, first.get());
+        assertEntry(1, second.get());
+        assertEquals(3, reads.size());
+        assertRead(2, 20, 2);
+        readHandle.close();
+    }
+
+    @Test
+    public void testWindowBoundedByMaxOutstandingBytes() throws Exception {
+        lastAddConfirmed = 1000;
+        SequentialReadHandle readHandle = newHandle(10, 100, 500);
+        completeRead(0, 9, 100);
+        // the entries read exceed the max bytes, until the reader consumes them
+        for (long entryId = 0; entryId < 5; entryId++) {
+            assertEntry(entryId, readHandle.next());
+            assertEquals(1, reads.size());
+        }
+        assertEntry(5, readHandle.next());
+        assertEquals(2, reads.size());
+        assertRead(1, 10, 1);
+        readHandle.close();
+        assertBuffersReleased();
+    }
+
+    @Test
+    public void testBatchReadCutShortIsContinued() throws Exception {
+        lastAddConfirmed = 9;
+        SequentialReadHandle readHandle = newHandle(10, 10, 1024 * 1024);
+        completeRead(0, 3, 10);
+        assertEquals(2, reads.size());
+        assertRead(1, 4, 6);
+        completeRead(1, 9, 10);
+        for (long entryId = 0; entryId <= 9; entryId++) {
+            assertEntry(entryId, readHandle.next());
+        }
+        readHandle.close();
+        assertBuffersReleased();
+    }
+
+    @Test
+    public void testReadFailure() throws Exception {
+        lastAddConfirmed = 19;
+        SequentialReadHandle readHandle = newHandle(10, 20, 1024 * 1024);
+        CompletableFuture<LedgerEntry> first = readHandle.nextAsync();
+        assertEquals(2, reads.size());
+        completeRead(0, 9, 10);
+        BKException.BKReadException cause = new BKException.BKReadException();
+        reads.get(1).future.completeExceptionally(cause);
+
+        // the entries read before the failure are still returned
+        assertEntry(0, first.get());
+        for (long entryId = 1; entryId <= 9; entryId++) {
+            assertEntry(entryId, readHandle.next());
+        }
+        assertSame(cause, failure(readHandle.nextAsync()));
+        assertSame(cause, failure(readHandle.nextAsync()));
+        assertEquals(2, reads.size());
+        readHandle.close();
+        assertBuffersReleased();
+    }
+
+    @Test
+    public void testEmptyBatchReadFails() throws Exception {
+        lastAddConfirmed = 9;
+        SequentialReadHandle readHandle = newHandle(10, 10, 1024 * 1024);
+        CompletableFuture<LedgerEntry> first = readHandle.nextAsync();
+        LedgerEntries entries = mock(LedgerEntries.class);
+        when(entries.iterator()).thenReturn(Collections.emptyIterator());
+        reads.get(0).future.complete(entries);
+        assertTrue(failure(first) instanceof BKException.BKReadException);
+        readHandle.close();
+    }
+
+    @Test
+    public void testTailing() throws Exception {
+        lastAddConfirmed = 4;
+        SequentialReadHandle readHandle = newHandle(10, 10, 1024 * 1024);
+        assertRead(0, 0, 5);
+        completeRead(0, 4, 10);
+        for (long entryId = 0; entryId <= 4; entryId++) {
+            assertEntry(entryId, readHandle.next());
+        }
+        assertFalse(readHandle.hasNext());
+        assertTrue(failure(readHandle.nextAsync()) instanceof BKException.BKNoSuchEntryException);
+
+        // the entries added once the LastAddConfirmed is refreshed are read
+        lastAddConfirmed = 9;
+        assertTrue(readHandle.hasNext());
+        CompletableFuture<LedgerEntry> next = readHandle.nextAsync();
+        assertEquals(2, reads.size());
+        assertRead(1, 5, 5);
+        completeRead(1, 9, 10);
+        assertEntry(5, next.get());
+        readHandle.close();
+        assertBuffersReleased();
+    }
+
+    @Test
+    public void testCloseReleasesPrefetchedEntries() throws Exception {
+        lastAddConfirmed = 19;
+        SequentialReadHandle readHandle = newHandle(10, 20, 1024 * 1024);
+        completeRead(0, 9, 10);
+        LedgerEntry entry = readHandle.next();
+        readHandle.close();
+        assertTrue(failure(readHandle.nextAsync()) instanceof BKException.BKLedgerClosedException);
+
+        // the entry returned to the reader is owned by the reader
+        assertEquals(1, entry.getEntryBuffer().refCnt());
+        assertEntry(0, entry);
+        assertBuffersReleased();
+    }
+
+    @Test
+    public void testCloseFailsPendingReads() throws Exception {
+        lastAddConfirmed = 19;
+        SequentialReadHandle readHandle = newHandle(10, 20, 1024 * 1024);
+        CompletableFuture<LedgerEntry> first = readHandle.nextAsync();
+        assertEquals(2, reads.size());
+        readHandle.close();
+        assertTrue(failure(first) instanceof BKException.BKLedgerClosedException);
+
+        // the entries of the reads completing after the close are released
+        completeRead(0, 9, 10);
+        completeRead(1, 19, 10);
+        assertEquals(20, buffers.size());
+        assertBuffersReleased();
+        assertEquals(2, reads.size());
+        // closing twice is fine
+        readHandle.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxOutstandingBytes() {
+        newHandle(10, 20, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFirstEntry() {
+        SequentialReadHandle.newBuilder(handle).withFirstEntry(-1).build();
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.proto.BookieProtocol.BatchedReadRequest;
+import org.apache.bookkeeper.proto.BookieProtocol.BatchedReadResponse;
+import org.apache.bookkeeper.proto.BookieProtocol.Response;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Test the processing of the batch read requests on the bookie.
+ */
+public class BatchedReadEntryProcessorTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int ENTRY_SIZE = 100;
+    // size of an entry in the response, with its length prefix
+    private static final int ENTRY_FRAME_SIZE = ENTRY_SIZE + 4;
+
+    private Channel channel;
+    private BookieRequestHandler requestHandler;
+    private BookieRequestProcessor requestProcessor;
+    private Bookie bookie;
+    private List<ByteBuf> readEntries;
+
+    @Before
+    public void setUp() throws Exception {
+        channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+        when(channel.isActive()).thenReturn(true);
+        when(channel.isWritable()).thenReturn(true);
+        when(channel.voidPromise()).thenReturn(mock(ChannelPromise.class));
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+
+        bookie = mock(Bookie.class);
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getWaitTimeoutOnBackpressureMillis()).thenReturn(-1L);
+        readEntries = new ArrayList<>();
+    }
+
+    /**
+     * The bookie stores the entries up to <i>lastEntryId</i>.
+     */
+    private void storeEntries(long lastEntryId) throws Exception {
+        when(bookie.readEntry(eq(LEDGER_ID), anyLong())).thenAnswer(invocation -> {
+            long entryId = invocation.getArgument(1);
+            if (entryId > lastEntryId) {
+                throw new Bookie.NoEntryException(LEDGER_ID, entryId);
+            }
+            ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+            entry.writeLong(LEDGER_ID);
+            entry.writeLong(entryId);
+            entry.writeZero(ENTRY_SIZE - 16);
+            readEntries.add(entry);
+            return entry;
+        });
+    }
+
+    private Response batchRead(long entryId, int maxCount, long maxSize, long maxResponseSize) {
+        BatchedReadRequest request = BatchedReadRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION,
+                LEDGER_ID, entryId, BookieProtocol.FLAG_NONE, null, 10L, maxCount, maxSize);
+        BatchedReadEntryProcessor processor = BatchedReadEntryProcessor.create(request, requestHandler,
+                requestProcessor, false, maxResponseSize);
+        processor.run();
+
+        ArgumentCaptor<Object> response = ArgumentCaptor.forClass(Object.class);
+        verify(channel).writeAndFlush(response.capture(), any(ChannelPromise.class));
+        verify(requestProcessor).onReadRequestFinish(requestHandler);
+        return (Response) response.getValue();
+    }
+
+    private static void assertEntries(Response response, long firstEntryId, int numEntries) {
+        assertEquals(BookieProtocol.EOK, response.getErrorCode());
+        BatchedReadResponse batchResponse = (BatchedReadResponse) response;
+        assertEquals(10L, batchResponse.getRequestId());
+        assertEquals(firstEntryId, batchResponse.getEntryId());
+        assertEquals(numEntries, batchResponse.getData().size());
+        for (int i = 0; i < numEntries; i++) {
+            assertEquals(firstEntryId + i, batchResponse.getData().getBuffer(i).getLong(8));
+        }
+        batchResponse.release();
+    }
+
+    @Test
+    public void testReadMaxCountEntries() throws Exception {
+        storeEntries(100);
+        assertEntries(batchRead(5, 10, Long.MAX_VALUE, Long.MAX_VALUE), 5, 10);
+    }
+
+    @Test
+    public void testPartialResponseAtTheLastEntry() throws Exception {
+        storeEntries(7);
+        assertEntries(batchRead(5, 10, Long.MAX_VALUE, Long.MAX_VALUE), 5, 3);
+    }
+
+    @Test
+    public void testFirstEntryMissing() throws Exception {
+        storeEntries(4);
+        Response response = batchRead(5, 10, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(BookieProtocol.ENOENTRY, response.getErrorCode());
+    }
+
+    @Test
+    public void testLedgerMissing() throws Exception {
+        when(bookie.readEntry(eq(LEDGER_ID), anyLong())).thenThrow(new Bookie.NoLedgerException(LEDGER_ID));
+        Response response = batchRead(0, 10, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(BookieProtocol.ENOLEDGER, response.getErrorCode());
+    }
+
+    @Test
+    public void testResponseBoundedByMaxSize() throws Exception {
+        storeEntries(100);
+        assertEntries(batchRead(0, 10, 3 * ENTRY_FRAME_SIZE + ENTRY_FRAME_SIZE / 2, Long.MAX_VALUE), 0, 3);
+        // the entry read past the max size is not leaked
+        assertEquals(4, readEntries.size());
+        assertEquals(0, readEntries.get(3).refCnt());
+    }
+
+    @Test
+    public void testResponseBoundedByMaxResponseSize() throws Exception {
+        storeEntries(100);
+        assertEntries(batchRead(0, 10, Long.MAX_VALUE, 2 * ENTRY_FRAME_SIZE), 0, 2);
+    }
+
+    @Test
+    public void testFirstEntryAlwaysReturned() throws Exception {
+        storeEntries(100);
+        assertEntries(batchRead(0, 10, 1, Long.MAX_VALUE), 0, 1);
+    }
+
+    @Test
+    public void testPartialResponseOnReadError() throws Exception {
+        storeEntries(100);
+        doThrow(new IOException("read error")).when(bookie).readEntry(LEDGER_ID, 2L);
+        assertEntries(batchRead(0, 10, Long.MAX_VALUE, Long.MAX_VALUE), 0, 2);
+    }
+
+    @Test
+    public void testReadErrorOnFirstEntry() throws Exception {
+        storeEntries(100);
+        doThrow(new IOException("read error")).when(bookie).readEntry(LEDGER_ID, 0L);
+        Response response = batchRead(0, 10, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(BookieProtocol.EIO, response.getErrorCode());
+        assertTrue(readEntries.isEmpty());
+    }
+}
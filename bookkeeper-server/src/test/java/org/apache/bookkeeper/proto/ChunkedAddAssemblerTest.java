@@ -0,0 +1,343 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.apache.bookkeeper.discover.BookieServiceInfo;
+import org.apache.bookkeeper.discover.BookieServiceInfoUtils;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the reassembly of the entries added in chunks.
+ */
+public class ChunkedAddAssemblerTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int CHUNK_SIZE = 4000;
+    private static final long MAX_PENDING_BYTES = 16000;
+
+    private RequestStats requestStats;
+    private BookieRequestHandler requestHandler;
+    private ChunkedAddAssembler assembler;
+    // the entries added once reassembled, and the responses of the rejected entries
+    private List<Request> addedRequests;
+    private List<byte[]> addedEntries;
+    private List<Response> responses;
+    private List<ByteBuf> sentChunks;
+
+    @Before
+    public void setUp() {
+        requestStats = new RequestStats(new TestStatsProvider().getStatsLogger(""));
+        addedRequests = new ArrayList<>();
+        addedEntries = new ArrayList<>();
+        responses = new ArrayList<>();
+        sentChunks = new ArrayList<>();
+
+        Channel channel = mock(Channel.class);
+        when(channel.writeAndFlush(any())).thenAnswer(invocation -> {
+            responses.add(invocation.getArgument(0));
+            return null;
+        });
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        when(ctx.alloc()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+
+        BookieRequestProcessor requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getRequestStats()).thenReturn(requestStats);
+        when(requestProcessor.getMaxChunkedAddPendingBytes()).thenReturn(MAX_PENDING_BYTES);
+        when(requestProcessor.tryAcquireChunkedAddBytes(anyInt())).thenAnswer(invocation ->
+                requestStats.tryTrackChunkedAddBytes((int) invocation.getArgument(0), MAX_PENDING_BYTES));
+        doAnswer(invocation -> {
+            requestStats.untrackChunkedAddBytes((int) invocation.getArgument(0));
+            return null;
+        }).when(requestProcessor).releaseChunkedAddBytes(anyInt());
+        doAnswer(invocation -> {
+            addedRequests.add(invocation.getArgument(0));
+            ByteBuf entry = invocation.getArgument(1);
+            addedEntries.add(ByteBufUtil.getBytes(entry));
+            entry.release();
+            return null;
+        }).when(requestProcessor).processAddRequestV3(any(), any(), any());
+        assembler = new ChunkedAddAssembler(requestProcessor);
+    }
+
+    private static byte[] entry(int size) {
+        byte[] entry = new byte[size];
+        new Random(size).nextBytes(entry);
+        return entry;
+    }
+
+    private static Request chunkRequest(long txnId, long entryId, int chunkOffset, int entryLength) {
+        return Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.ADD_ENTRY_CHUNK)
+                        .setTxnId(txnId))
+                .setAddRequest(AddRequest.newBuilder()
+                        .setLedgerId(LEDGER_ID)
+                        .setEntryId(entryId)
+                        .setMasterKey(ByteString.copyFromUtf8("key"))
+                        .setBody(ByteString.EMPTY)
+                        .setChunkOffset(chunkOffset)
+                        .setEntryLength(entryLength))
+                .build();
+    }
+
+    private void sendChunk(long txnId, long entryId, byte[] entry, int chunkIndex) {
+        int offset = chunkIndex * CHUNK_SIZE;
+        ByteBuf chunk = Unpooled.wrappedBuffer(entry, offset, Math.min(CHUNK_SIZE, entry.length - offset));
+        sentChunks.add(chunk);
+        assembler.addChunk(chunkRequest(txnId, entryId, offset, entry.length), chunk, requestHandler);
+    }
+
+    private static int numChunks(byte[] entry) {
+        return (entry.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    private void sendEntry(long txnId, long entryId, byte[] entry) {
+        for (int i = 0; i < numChunks(entry); i++) {
+            sendChunk(txnId, entryId, entry, i);
+        }
+    }
+
+    private long pendingBytes() {
+        return requestStats.chunkedAddBytesPending.get();
+    }
+
+    private void assertChunksReleased() {
+        for (ByteBuf chunk : sentChunks) {
+            assertEquals(0, chunk.refCnt());
+        }
+    }
+
+    private void assertRejected(int index, StatusCode status) {
+        Response response = responses.get(index);
+        assertEquals(status, response.getStatus());
+        assertEquals(OperationType.ADD_ENTRY, response.getHeader().getOperation());
+        assertEquals(status, response.getAddResponse().getStatus());
+    }
+
+    @Test
+    public void testAssembly() {
+        byte[] entry = entry(10 * 1000);
+        sendChunk(1L, 0L, entry, 0);
+        sendChunk(1L, 0L, entry, 1);
+        assertTrue(addedRequests.isEmpty());
+        assertEquals(entry.length, pendingBytes());
+
+        sendChunk(1L, 0L, entry, 2);
+        assertEquals(1, addedRequests.size());
+        Request request = addedRequests.get(0);
+        assertEquals(OperationType.ADD_ENTRY, request.getHeader().getOperation());
+        assertEquals(1L, request.getHeader().getTxnId());
+        assertEquals(LEDGER_ID, request.getAddRequest().getLedgerId());
+        assertEquals(0L, request.getAddRequest().getEntryId());
+        assertFalse(request.getAddRequest().hasChunkOffset());
+        assertFalse(request.getAddRequest().hasEntryLength());
+        assertArrayEquals(entry, addedEntries.get(0));
+        assertTrue(responses.isEmpty());
+        assertEquals(0, pendingBytes());
+        assertChunksReleased();
+    }
+
+    @Test
+    public void testSingleChunkEntry() {
+        byte[] entry = entry(CHUNK_SIZE);
+        sendEntry(1L, 0L, entry);
+        assertEquals(1, addedRequests.size());
+        assertArrayEquals(entry, addedEntries.get(0));
+        assertEquals(0, pendingBytes());
+    }
+
+    @Test
+    public void testInterleavedEntries() {
+        byte[] entry0 = entry(9000);
+        byte[] entry1 = entry(7000);
+        sendChunk(1L, 0L, entry0, 0);
+        sendChunk(2L, 1L, entry1, 0);
+        sendChunk(1L, 0L, entry0, 1);
+        sendChunk(2L, 1L, entry1, 1);
+        assertEquals(1, addedRequests.size());
+        assertEquals(1L, addedRequests.get(0).getAddRequest().getEntryId());
+        assertArrayEquals(entry1, addedEntries.get(0));
+        sendChunk(1L, 0L, entry0, 2);
+        assertEquals(2, addedRequests.size());
+        assertArrayEquals(entry0, addedEntries.get(1));
+        assertEquals(0, pendingBytes());
+        assertChunksReleased();
+    }
+
+    @Test
+    public void testOutOfOrderChunk() {
+        byte[] entry = entry(4 * CHUNK_SIZE);
+        sendChunk(1L, 0L, entry, 0);
+        // the second chunk is skipped
+        sendChunk(1L, 0L, entry, 2);
+        assertEquals(1, responses.size());
+        assertRejected(0, StatusCode.EBADREQ);
+        assertEquals(0, pendingBytes());
+
+        // the next chunks of the entry are dropped without other responses
+        sendChunk(1L, 0L, entry, 3);
+        assertEquals(1, responses.size());
+        assertTrue(addedRequests.isEmpty());
+        assertChunksReleased();
+
+        // and the transaction id can be used again
+        byte[] other = entry(CHUNK_SIZE + 1);
+        sendEntry(1L, 1L, other);
+        assertEquals(1, addedRequests.size());
+        assertArrayEquals(other, addedEntries.get(0));
+    }
+
+    @Test
+    public void testMismatchedChunk() {
+        byte[] entry = entry(3 * CHUNK_SIZE);
+        sendChunk(1L, 0L, entry, 0);
+        // a chunk of another entry with the same transaction id
+        ByteBuf chunk = Unpooled.wrappedBuffer(entry, CHUNK_SIZE, CHUNK_SIZE);
+        sentChunks.add(chunk);
+        assembler.addChunk(chunkRequest(1L, 5L, CHUNK_SIZE, entry.length), chunk, requestHandler);
+        assertRejected(0, StatusCode.EBADREQ);
+        assertEquals(0, pendingBytes());
+        assertChunksReleased();
+    }
+
+    @Test
+    public void testFirstChunkMissing() {
+        byte[] entry = entry(3 * CHUNK_SIZE);
+        sendChunk(1L, 0L, entry, 1);
+        assertRejected(0, StatusCode.EBADREQ);
+        sendChunk(1L, 0L, entry, 2);
+        assertEquals(1, responses.size());
+        assertTrue(addedRequests.isEmpty());
+        assertEquals(0, pendingBytes());
+        assertChunksReleased();
+    }
+
+    @Test
+    public void testMissingChunksReleasedOnClose() {
+        byte[] entry0 = entry(2 * CHUNK_SIZE + 1);
+        byte[] entry1 = entry(CHUNK_SIZE + 1);
+        sendChunk(1L, 0L, entry0, 0);
+        sendChunk(1L, 0L, entry0, 1);
+        sendChunk(2L, 1L, entry1, 0);
+        assertEquals(entry0.length + entry1.length, pendingBytes());
+
+        // the channel closes before the last chunks arrive
+        assembler.release();
+        assertEquals(0, pendingBytes());
+        assertTrue(addedRequests.isEmpty());
+        assertTrue(responses.isEmpty());
+        assertChunksReleased();
+    }
+
+    @Test
+    public void testMemoryCap() {
+        byte[] entry0 = entry(10000);
+        byte[] entry1 = entry(10000);
+        sendChunk(1L, 0L, entry0, 0);
+        // doesn't fit beside the first entry
+        sendChunk(2L, 1L, entry1, 0);
+        assertEquals(1, responses.size());
+        assertRejected(0, StatusCode.ETOOMANYREQUESTS);
+        assertEquals(1L, requestStats.getAddEntryChunkedRejectedCounter().get().longValue());
+        assertEquals(entry0.length, pendingBytes());
+
+        // the chunks of the rejected entry are dropped
+        sendChunk(2L, 1L, entry1, 1);
+        sendChunk(2L, 1L, entry1, 2);
+        assertEquals(1, responses.size());
+
+        sendChunk(1L, 0L, entry0, 1);
+        sendChunk(1L, 0L, entry0, 2);
+        assertEquals(1, addedRequests.size());
+        assertArrayEquals(entry0, addedEntries.get(0));
+        assertEquals(0, pendingBytes());
+
+        // once the first entry is added, the second one fits
+        sendEntry(3L, 1L, entry1);
+        assertEquals(2, addedRequests.size());
+        assertArrayEquals(entry1, addedEntries.get(1));
+        assertChunksReleased();
+    }
+
+    @Test
+    public void testEntryLargerThanTheCap() {
+        byte[] entry = entry((int) MAX_PENDING_BYTES + 1);
+        sendEntry(1L, 0L, entry);
+        assertEquals(1, responses.size());
+        assertRejected(0, StatusCode.EBADREQ);
+        assertTrue(addedRequests.isEmpty());
+        assertEquals(0, pendingBytes());
+        assertChunksReleased();
+    }
+
+    @Test
+    public void testChunkedAddsNegotiated() {
+        BookieServiceInfo.Endpoint endpoint = new BookieServiceInfo.Endpoint("bookie", 3181, "localhost",
+                "bookie-rpc", null, Arrays.asList("tls"));
+        BookieServiceInfo withoutChunks = new BookieServiceInfo(Collections.emptyMap(), Arrays.asList(endpoint));
+        assertFalse(BookieServiceInfoUtils.hasBookieRpcExtension(withoutChunks,
+                BookieServiceInfoUtils.CHUNKED_ADD_EXTENSION));
+        assertFalse(BookieServiceInfoUtils.hasBookieRpcExtension(BookieServiceInfo.EMPTY,
+                BookieServiceInfoUtils.CHUNKED_ADD_EXTENSION));
+
+        BookieServiceInfo.Endpoint withExtension = new BookieServiceInfo.Endpoint("bookie", 3181, "localhost",
+                "bookie-rpc", null, Arrays.asList("tls", BookieServiceInfoUtils.CHUNKED_ADD_EXTENSION));
+        BookieServiceInfo withChunks = new BookieServiceInfo(Collections.emptyMap(),
+                Arrays.asList(withExtension));
+        assertTrue(BookieServiceInfoUtils.hasBookieRpcExtension(withChunks,
+                BookieServiceInfoUtils.CHUNKED_ADD_EXTENSION));
+    }
+}
@@ -0,0 +1,765 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CompressionType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ContextPair;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Test;
+
+/**
+ * Test that the direct v3 codec reads and writes the same messages as the generated protobuf codec.
+ */
+public class DirectCodecV3Test {
+
+    private static final ByteBufAllocator ALLOCATOR = UnpooledByteBufAllocator.DEFAULT;
+    private static final byte[] MASTER_KEY = "master-key".getBytes(UTF_8);
+
+    private static BKPacketHeader header(OperationType operation, long txnId, int priority) {
+        BKPacketHeader.Builder header = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(operation)
+                .setTxnId(txnId);
+        if (priority != 0) {
+            header.setPriority(priority);
+        }
+        return header.build();
+    }
+
+    private static byte[] entry(int size) {
+        byte[] entry = new byte[size];
+        new Random(size).nextBytes(entry);
+        return entry;
+    }
+
+    /**
+     * The bytes of an encoded frame, without its length prefix. The frame is released.
+     */
+    private static byte[] frameBytes(Object frame) {
+        try {
+            ByteBuf buf;
+            if (frame instanceof ByteBufList) {
+                ByteBufList list = (ByteBufList) frame;
+                buf = Unpooled.buffer(list.readableBytes());
+                for (int i = 0; i < list.size(); i++) {
+                    buf.writeBytes(list.getBuffer(i), list.getBuffer(i).readerIndex(),
+                            list.getBuffer(i).readableBytes());
+                }
+            } else {
+                buf = ((ByteBuf) frame).duplicate();
+            }
+            int length = buf.readInt();
+            assertEquals(length, buf.readableBytes());
+            byte[] bytes = new byte[length];
+            buf.readBytes(bytes);
+            return bytes;
+        } finally {
+            ReferenceCountUtil.release(frame);
+        }
+    }
+
+    private static byte[] toBytes(ByteBuf buf) {
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), bytes);
+        return bytes;
+    }
+
+    /**
+     * Decode a request with the direct codec, and check that it reads the same message as the
+     * generated codec, or leaves it to the generated codec.
+     *
+     * @return the request decoded by the direct codec, with its payload as body, or null
+     */
+    private static Request decodeRequest(byte[] data) {
+        Request generated;
+        try {
+            generated = Request.parseFrom(data);
+        } catch (InvalidProtocolBufferException e) {
+            generated = null;
+        }
+        ByteBuf packet = Unpooled.wrappedBuffer(data);
+        Object direct = DirectCodecV3.decodeRequest(packet);
+        if (direct == null) {
+            assertEquals("the packet is left to the protobuf codec", 0, packet.readerIndex());
+            return null;
+        }
+        Request request;
+        if (direct instanceof DirectCodecV3.RequestWithPayload) {
+            DirectCodecV3.RequestWithPayload withPayload = (DirectCodecV3.RequestWithPayload) direct;
+            assertEquals(ByteString.EMPTY, withPayload.getRequest().getAddRequest().getBody());
+            request = withPayload.getRequest().toBuilder()
+                    .setAddRequest(withPayload.getRequest().getAddRequest().toBuilder()
+                            .setBody(ByteString.copyFrom(toBytes(withPayload.getPayload()))))
+                    .build();
+            withPayload.release();
+        } else {
+            request = (Request) direct;
+        }
+        assertNotNull("decoded a request rejected by protobuf: " + ByteBufUtil.hexDump(data), generated);
+        assertEquals(ByteBufUtil.hexDump(data), generated, request);
+        return request;
+    }
+
+    /**
+     * Decode a response with the direct codec, and check that it reads the same message as the
+     * generated codec, or leaves it to the generated codec.
+     *
+     * @return the response decoded by the direct codec, with its payload as body, or null
+     */
+    private static Response decodeResponse(byte[] data) {
+        Response generated;
+        try {
+            generated = Response.parseFrom(data);
+        } catch (InvalidProtocolBufferException e) {
+            generated = null;
+        }
+        ByteBuf packet = Unpooled.wrappedBuffer(data);
+        Object direct = DirectCodecV3.decodeResponse(packet);
+        if (direct == null) {
+            assertEquals("the packet is left to the protobuf codec", 0, packet.readerIndex());
+            return null;
+        }
+        Response response;
+        if (direct instanceof DirectCodecV3.ResponseWithPayload) {
+            DirectCodecV3.ResponseWithPayload withPayload = (DirectCodecV3.ResponseWithPayload) direct;
+            response = withPayload.getResponse();
+            assertFalse(response.getReadResponse().hasBody());
+            if (withPayload.getPayload() != null) {
+                response = response.toBuilder()
+                        .setReadResponse(response.getReadResponse().toBuilder()
+                                .setBody(ByteString.copyFrom(toBytes(withPayload.getPayload()))))
+                        .build();
+            }
+            withPayload.release();
+        } else {
+            response = (Response) direct;
+        }
+        assertNotNull("decoded a response rejected by protobuf: " + ByteBufUtil.hexDump(data), generated);
+        assertEquals(ByteBufUtil.hexDump(data), generated, response);
+        return response;
+    }
+
+    /**
+     * Check that the direct codec never reads a different message than the generated codec from
+     * the truncations and random corruptions of a message.
+     */
+    private static void assertCorruptionsAgree(byte[] data, boolean request) {
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            Object decoded = request ? decodeRequest(truncated) : decodeResponse(truncated);
+            assertNull("decoded a truncated message of " + length + " bytes", decoded);
+        }
+        Random random = new Random(data.length);
+        for (int i = 0; i < 2000; i++) {
+            byte[] corrupt = data.clone();
+            int numCorruptions = 1 + random.nextInt(3);
+            for (int j = 0; j < numCorruptions; j++) {
+                corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt(256);
+            }
+            if (request) {
+                decodeRequest(corrupt);
+            } else {
+                decodeResponse(corrupt);
+            }
+        }
+    }
+
+    // --- read requests
+
+    private static Request readRequest(ReadRequest readRequest, int priority) {
+        return Request.newBuilder()
+                .setHeader(header(OperationType.READ_ENTRY, 1234L, priority))
+                .setReadRequest(readRequest)
+                .build();
+    }
+
+    private static Request encodeAndDecode(Request request) throws Exception {
+        byte[] data = frameBytes(DirectCodecV3.encodeReadRequest(request, ALLOCATOR));
+        assertEquals(request, Request.parseFrom(data));
+        Request decoded = decodeRequest(data);
+        assertEquals(request, decoded);
+        return decoded;
+    }
+
+    @Test
+    public void testReadRequestWithoutOptionalFields() throws Exception {
+        Request request = readRequest(ReadRequest.newBuilder().setLedgerId(1L).setEntryId(2L).build(), 0);
+        Request decoded = encodeAndDecode(request);
+        assertFalse(decoded.getHeader().hasPriority());
+        assertFalse(decoded.getReadRequest().hasMasterKey());
+        assertFalse(decoded.getReadRequest().hasFlag());
+        assertFalse(decoded.getReadRequest().hasAcceptedCompression());
+    }
+
+    @Test
+    public void testReadRequestWithAllFields() throws Exception {
+        encodeAndDecode(readRequest(ReadRequest.newBuilder()
+                .setLedgerId(1L)
+                .setEntryId(2L)
+                .setMasterKey(ByteString.copyFrom(MASTER_KEY))
+                .setPreviousLAC(1L)
+                .setTimeOut(1000L)
+                .setAcceptedCompression(CompressionType.SNAPPY)
+                .setFlag(ReadRequest.Flag.ENTRY_PIGGYBACK)
+                .build(), 1));
+    }
+
+    @Test
+    public void testReadRequestLargeAndNegativeVarints() throws Exception {
+        encodeAndDecode(readRequest(ReadRequest.newBuilder()
+                .setLedgerId(Long.MAX_VALUE)
+                // the last add confirmed
+                .setEntryId(-1L)
+                .setPreviousLAC(Long.MIN_VALUE)
+                .setTimeOut(-1L)
+                .setMasterKey(ByteString.copyFrom(new byte[300]))
+                .setFlag(ReadRequest.Flag.FENCE_LEDGER)
+                .build(), -1));
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder(header(OperationType.READ_ENTRY, Long.MIN_VALUE, 0))
+                        .setPriority(Integer.MIN_VALUE))
+                .setReadRequest(ReadRequest.newBuilder().setLedgerId(-1L).setEntryId(Long.MIN_VALUE))
+                .build();
+        encodeAndDecode(request);
+    }
+
+    @Test
+    public void testReadRequestFromTheGeneratedCodec() throws Exception {
+        // the explicit default priority is written by the generated codec
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder(header(OperationType.READ_ENTRY, 7L, 0)).setPriority(0))
+                .setReadRequest(ReadRequest.newBuilder().setLedgerId(1L).setEntryId(2L)
+                        .setAcceptedCompression(CompressionType.NONE))
+                .build();
+        Request decoded = decodeRequest(request.toByteArray());
+        assertEquals(request, decoded);
+        assertTrue(decoded.getHeader().hasPriority());
+    }
+
+    @Test
+    public void testReadRequestNotEncoded() {
+        Request withContext = readRequest(ReadRequest.newBuilder().setLedgerId(1L).setEntryId(2L).build(), 0)
+                .toBuilder()
+                .addRequestContext(ContextPair.newBuilder().setKey("key").setValue("value"))
+                .build();
+        assertNull(DirectCodecV3.encodeReadRequest(withContext, ALLOCATOR));
+        Request readLac = Request.newBuilder()
+                .setHeader(header(OperationType.READ_LAC, 1L, 0))
+                .setReadLacRequest(ReadLacRequest.newBuilder().setLedgerId(1L))
+                .build();
+        assertNull(DirectCodecV3.encodeReadRequest(readLac, ALLOCATOR));
+        // and left to the generated codec when received
+        assertNull(decodeRequest(withContext.toByteArray()));
+        assertNull(decodeRequest(readLac.toByteArray()));
+    }
+
+    @Test
+    public void testReadRequestCorruptions() throws Exception {
+        Request request = readRequest(ReadRequest.newBuilder()
+                .setLedgerId(12345L)
+                .setEntryId(-1L)
+                .setMasterKey(ByteString.copyFrom(MASTER_KEY))
+                .setPreviousLAC(100L)
+                .setTimeOut(1000L)
+                .setAcceptedCompression(CompressionType.DEFLATE)
+                .setFlag(ReadRequest.Flag.FENCE_LEDGER)
+                .build(), 3);
+        assertCorruptionsAgree(frameBytes(DirectCodecV3.encodeReadRequest(request, ALLOCATOR)), true);
+    }
+
+    // --- add requests
+
+    private static ByteBufList body(byte[] entry, int numBuffers) {
+        ByteBufList body = ByteBufList.get();
+        int bufferSize = (entry.length + numBuffers - 1) / numBuffers;
+        for (int offset = 0; offset < entry.length; offset += bufferSize) {
+            body.add(Unpooled.wrappedBuffer(entry, offset, Math.min(bufferSize, entry.length - offset)));
+        }
+        return body;
+    }
+
+    private static Request addRequest(OperationType operation, long txnId, int priority, long ledgerId,
+                                      long entryId, byte[] body, boolean recoveryAdd, int writeFlags) {
+        AddRequest.Builder addRequest = AddRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setEntryId(entryId)
+                .setMasterKey(ByteString.copyFrom(MASTER_KEY))
+                .setBody(ByteString.copyFrom(body));
+        if (recoveryAdd) {
+            addRequest.setFlag(AddRequest.Flag.RECOVERY_ADD);
+        }
+        if (writeFlags >= 0) {
+            addRequest.setWriteFlags(writeFlags);
+        }
+        return Request.newBuilder()
+                .setHeader(header(operation, txnId, priority))
+                .setAddRequest(addRequest)
+                .build();
+    }
+
+    private void testAddRequest(long txnId, int priority, long ledgerId, long entryId, int entrySize,
+                                boolean recoveryAdd, int writeFlags) throws Exception {
+        byte[] entry = entry(entrySize);
+        ByteBufList body = body(entry, 3);
+        byte[] data = frameBytes(DirectCodecV3.encodeAddRequest(ALLOCATOR, txnId, priority, ledgerId, entryId,
+                MASTER_KEY, body, recoveryAdd, writeFlags));
+        body.release();
+        Request expected = addRequest(OperationType.ADD_ENTRY, txnId, priority, ledgerId, entryId, entry,
+                recoveryAdd, writeFlags);
+        assertEquals(expected, Request.parseFrom(data));
+        assertEquals(expected, decodeRequest(data));
+    }
+
+    @Test
+    public void testAddRequest() throws Exception {
+        testAddRequest(1L, 0, 1L, 0L, 1024, false, -1);
+        testAddRequest(2L, 1, 1L, 1L, 1024, true, 0);
+        testAddRequest(3L, 0, 1L, 2L, 100 * 1024, false, 1);
+    }
+
+    @Test
+    public void testAddRequestLargeAndNegativeVarints() throws Exception {
+        testAddRequest(Long.MAX_VALUE, -1, Long.MAX_VALUE, Long.MAX_VALUE - 1, 10, true, Integer.MAX_VALUE);
+        testAddRequest(Long.MIN_VALUE, Integer.MIN_VALUE, -2L, -1L, 1, false, -1);
+    }
+
+    @Test
+    public void testEmptyAddRequest() throws Exception {
+        testAddRequest(1L, 0, 1L, 0L, 0, false, -1);
+    }
+
+    @Test
+    public void testAddRequestFromTheGeneratedCodec() throws Exception {
+        Request request = addRequest(OperationType.ADD_ENTRY, 5L, 0, 1L, 2L, entry(512), true, 0);
+        // negative int32 are sign extended to 10 bytes
+        request = request.toBuilder()
+                .setAddRequest(request.getAddRequest().toBuilder().setWriteFlags(-5))
+                .build();
+        assertEquals(request, decodeRequest(request.toByteArray()));
+    }
+
+    @Test
+    public void testAddRequestChunks() throws Exception {
+        byte[] entry = entry(10 * 1024 + 17);
+        int chunkSize = 4 * 1024;
+        ByteBufList body = body(entry, 4);
+        ByteBufList frames = DirectCodecV3.encodeAddRequestChunks(ALLOCATOR, 9L, 2, 1L, 5L, MASTER_KEY, body,
+                true, 1, chunkSize);
+        body.release();
+        ByteBuf all = Unpooled.buffer(frames.readableBytes());
+        for (int i = 0; i < frames.size(); i++) {
+            all.writeBytes(frames.getBuffer(i), frames.getBuffer(i).readerIndex(),
+                    frames.getBuffer(i).readableBytes());
+        }
+        frames.release();
+
+        ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+        int numChunks = 0;
+        while (all.isReadable()) {
+            byte[] data = new byte[all.readInt()];
+            all.readBytes(data);
+            Request chunk = decodeRequest(data);
+            assertNotNull(chunk);
+            assertEquals(OperationType.ADD_ENTRY_CHUNK, chunk.getHeader().getOperation());
+            assertEquals(9L, chunk.getHeader().getTxnId());
+            assertEquals(2, chunk.getHeader().getPriority());
+            AddRequest addRequest = chunk.getAddRequest();
+            assertEquals(1L, addRequest.getLedgerId());
+            assertEquals(5L, addRequest.getEntryId());
+            assertEquals(AddRequest.Flag.RECOVERY_ADD, addRequest.getFlag());
+            assertEquals(1, addRequest.getWriteFlags());
+            assertEquals(entry.length, addRequest.getEntryLength());
+            assertEquals(assembled.size(), addRequest.getChunkOffset());
+            assertTrue(addRequest.getBody().size() <= chunkSize);
+            addRequest.getBody().writeTo(assembled);
+            numChunks++;
+        }
+        assertEquals(3, numChunks);
+        assertArrayEquals(entry, assembled.toByteArray());
+    }
+
+    @Test
+    public void testAddRequestCorruptions() throws Exception {
+        ByteBufList body = body(entry(64), 2);
+        byte[] data = frameBytes(DirectCodecV3.encodeAddRequest(ALLOCATOR, 77L, 1, 5L, 6L, MASTER_KEY, body,
+                true, 0));
+        body.release();
+        assertCorruptionsAgree(data, true);
+    }
+
+    // --- read responses
+
+    private static Response readResponse(int priority, ReadResponse readResponse) {
+        return Response.newBuilder()
+                .setHeader(header(OperationType.READ_ENTRY, 4321L, priority))
+                .setStatus(readResponse.getStatus())
+                .setReadResponse(readResponse)
+                .build();
+    }
+
+    private static Response encodeAndDecode(Response response, byte[] payload) throws Exception {
+        ReadResponse readResponse = response.getReadResponse();
+        ByteBuf payloadBuf = payload == null ? null : Unpooled.buffer(payload.length).writeBytes(payload);
+        Object frame = DirectCodecV3.encodeReadResponse(ALLOCATOR, response.getHeader(), response.getStatus(),
+                readResponse, payloadBuf);
+        if (payload != null) {
+            // large entries are appended to the frame without being copied
+            assertEquals(payload.length >= BookieProtoEncoding.SMALL_ENTRY_SIZE_THRESHOLD,
+                    frame instanceof ByteBufList);
+        }
+        byte[] data = frameBytes(frame);
+        if (payloadBuf != null) {
+            assertEquals(0, payloadBuf.refCnt());
+        }
+        Response expected = payload == null ? response : response.toBuilder()
+                .setReadResponse(readResponse.toBuilder().setBody(ByteString.copyFrom(payload)))
+                .build();
+        assertEquals(expected, Response.parseFrom(data));
+        Response decoded = decodeResponse(data);
+        assertEquals(expected, decoded);
+        return decoded;
+    }
+
+    @Test
+    public void testReadResponseWithPayload() throws Exception {
+        ReadResponse readResponse = ReadResponse.newBuilder()
+                .setStatus(StatusCode.EOK).setLedgerId(1L).setEntryId(2L).build();
+        encodeAndDecode(readResponse(0, readResponse), entry(100));
+        encodeAndDecode(readResponse(0, readResponse), entry(BookieProtoEncoding.SMALL_ENTRY_SIZE_THRESHOLD));
+        encodeAndDecode(readResponse(0, readResponse), new byte[0]);
+    }
+
+    @Test
+    public void testReadResponseWithBody() throws Exception {
+        encodeAndDecode(readResponse(1, ReadResponse.newBuilder()
+                .setStatus(StatusCode.EOK).setLedgerId(1L).setEntryId(2L)
+                .setBody(ByteString.copyFrom(entry(1000)))
+                .build()), null);
+    }
+
+    @Test
+    public void testReadResponseWithoutBody() throws Exception {
+        Response decoded = encodeAndDecode(readResponse(0, ReadResponse.newBuilder()
+                .setStatus(StatusCode.ENOENTRY).setLedgerId(1L).setEntryId(2L)
+                .build()), null);
+        assertFalse(decoded.getReadResponse().hasBody());
+        assertFalse(decoded.getReadResponse().hasMaxLAC());
+    }
+
+    @Test
+    public void testReadResponseWithAllFields() throws Exception {
+        encodeAndDecode(readResponse(-1, ReadResponse.newBuilder()
+                .setStatus(StatusCode.EOK)
+                .setLedgerId(Long.MAX_VALUE)
+                .setEntryId(-1L)
+                .setMaxLAC(-1L)
+                .setLacUpdateTimestamp(Long.MIN_VALUE)
+                .setBodyCompression(CompressionType.SNAPPY)
+                .setBodyUncompressedSize(Integer.MAX_VALUE)
+                .build()), entry(20 * 1024));
+    }
+
+    @Test
+    public void testReadResponseFromTheGeneratedCodec() throws Exception {
+        Response response = readResponse(0, ReadResponse.newBuilder()
+                .setStatus(StatusCode.EOK).setLedgerId(1L).setEntryId(2L)
+                .setBody(ByteString.copyFrom(entry(10)))
+                .setMaxLAC(1L)
+                .setBodyCompression(CompressionType.NONE)
+                .setBodyUncompressedSize(-1)
+                .build());
+        assertEquals(response, decodeResponse(response.toByteArray()));
+    }
+
+    @Test
+    public void testReadResponseCorruptions() throws Exception {
+        ReadResponse readResponse = ReadResponse.newBuilder()
+                .setStatus(StatusCode.EOK).setLedgerId(3L).setEntryId(4L)
+                .setMaxLAC(3L).setLacUpdateTimestamp(1000L)
+                .setBodyCompression(CompressionType.DEFLATE).setBodyUncompressedSize(100)
+                .build();
+        Response response = readResponse(2, readResponse);
+        assertCorruptionsAgree(frameBytes(DirectCodecV3.encodeReadResponse(ALLOCATOR, response.getHeader(),
+                response.getStatus(), readResponse, Unpooled.wrappedBuffer(entry(50)))), false);
+    }
+
+    // --- add responses
+
+    private static Response addResponse(long txnId, int priority, StatusCode status, long ledgerId, long entryId) {
+        return Response.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY, txnId, priority))
+                .setStatus(status)
+                .setAddResponse(AddResponse.newBuilder().setStatus(status).setLedgerId(ledgerId).setEntryId(entryId))
+                .build();
+    }
+
+    private static void testAddResponse(Response response) throws Exception {
+        byte[] data = frameBytes(DirectCodecV3.encodeResponse(response, ALLOCATOR));
+        assertEquals(response, Response.parseFrom(data));
+        assertEquals(response, decodeResponse(data));
+        assertEquals(response, decodeResponse(response.toByteArray()));
+    }
+
+    @Test
+    public void testAddResponse() throws Exception {
+        testAddResponse(addResponse(1L, 0, StatusCode.EOK, 1L, 2L));
+        testAddResponse(addResponse(Long.MAX_VALUE, -1, StatusCode.EUNKNOWNLEDGERSTATE, Long.MAX_VALUE, -1L));
+        testAddResponse(addResponse(Long.MIN_VALUE, 7, StatusCode.EFENCED, -1L, Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testAddResponseCorruptions() throws Exception {
+        assertCorruptionsAgree(frameBytes(DirectCodecV3.encodeResponse(
+                addResponse(10L, 1, StatusCode.EOK, 20L, 30L), ALLOCATOR)), false);
+    }
+
+    @Test
+    public void testResponseNotEncoded() throws Exception {
+        Response readLac = Response.newBuilder()
+                .setHeader(header(OperationType.READ_LAC, 1L, 0))
+                .setStatus(StatusCode.EOK)
+                .setReadLacResponse(ReadLacResponse.newBuilder().setStatus(StatusCode.EOK).setLedgerId(1L))
+                .build();
+        assertNull(DirectCodecV3.encodeResponse(readLac, ALLOCATOR));
+        assertNull(decodeResponse(readLac.toByteArray()));
+    }
+
+    // --- unknown fields and values, written with the protobuf wire format
+
+    /**
+     * Writer of raw protobuf messages.
+     */
+    private static class RawMessage {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+
+        RawMessage varint(int field, long value) throws IOException {
+            out.writeInt64(field, value);
+            return this;
+        }
+
+        RawMessage bytes(int field, byte[] value) throws IOException {
+            out.writeByteArray(field, value);
+            return this;
+        }
+
+        RawMessage message(int field, RawMessage message) throws IOException {
+            return bytes(field, message.toByteArray());
+        }
+
+        byte[] toByteArray() throws IOException {
+            out.flush();
+            return bytes.toByteArray();
+        }
+    }
+
+    private static RawMessage rawHeader(int operation) throws IOException {
+        return new RawMessage().varint(1, ProtocolVersion.VERSION_THREE_VALUE).varint(2, operation).varint(3, 1L);
+    }
+
+    private static RawMessage rawReadRequest() throws IOException {
+        return new RawMessage().varint(1, 1L).varint(2, 2L);
+    }
+
+    private static RawMessage rawAddRequest() throws IOException {
+        return new RawMessage().varint(1, 1L).varint(2, 2L).bytes(3, MASTER_KEY).bytes(4, entry(10));
+    }
+
+    private static RawMessage rawReadResponse() throws IOException {
+        return new RawMessage().varint(1, 0).varint(2, 1L).varint(3, 2L).bytes(4, entry(10));
+    }
+
+    private static RawMessage rawAddResponse() throws IOException {
+        return new RawMessage().varint(1, 0).varint(2, 1L).varint(3, 2L);
+    }
+
+    @Test
+    public void testRawMessagesDecoded() throws Exception {
+        // the raw messages used below are valid without the unknown fields and values
+        assertNotNull(decodeRequest(new RawMessage().message(1, rawHeader(1)).message(100, rawReadRequest())
+                .toByteArray()));
+        assertNotNull(decodeRequest(new RawMessage().message(1, rawHeader(2)).message(101, rawAddRequest())
+                .toByteArray()));
+        assertNotNull(decodeResponse(new RawMessage().message(1, rawHeader(1)).varint(2, 0)
+                .message(100, rawReadResponse()).toByteArray()));
+        assertNotNull(decodeResponse(new RawMessage().message(1, rawHeader(2)).varint(2, 0)
+                .message(101, rawAddResponse()).toByteArray()));
+    }
+
+    @Test
+    public void testUnknownFieldsLeftToTheGeneratedCodec() throws Exception {
+        List<byte[]> requests = new ArrayList<>();
+        requests.add(new RawMessage().message(1, rawHeader(1)).message(100, rawReadRequest())
+                .varint(150, 1L).toByteArray());
+        requests.add(new RawMessage().message(1, rawHeader(1).varint(10, 1L))
+                .message(100, rawReadRequest()).toByteArray());
+        requests.add(new RawMessage().message(1, rawHeader(1))
+                .message(100, rawReadRequest().bytes(20, MASTER_KEY)).toByteArray());
+        requests.add(new RawMessage().message(1, rawHeader(2))
+                .message(101, rawAddRequest().varint(20, 1L)).toByteArray());
+        for (byte[] request : requests) {
+            assertNotNull(Request.parseFrom(request));
+            assertNull(decodeRequest(request));
+        }
+
+        List<byte[]> responses = new ArrayList<>();
+        responses.add(new RawMessage().message(1, rawHeader(1)).varint(2, 0)
+                .message(100, rawReadResponse().varint(20, 1L)).toByteArray());
+        responses.add(new RawMessage().message(1, rawHeader(2)).varint(2, 0)
+                .message(101, rawAddResponse().bytes(20, MASTER_KEY)).toByteArray());
+        responses.add(new RawMessage().message(1, rawHeader(2)).varint(2, 0)
+                .message(101, rawAddResponse()).varint(150, 1L).toByteArray());
+        for (byte[] response : responses) {
+            assertNotNull(Response.parseFrom(response));
+            assertNull(decodeResponse(response));
+        }
+    }
+
+    @Test
+    public void testUnknownEnumValuesLeftToTheGeneratedCodec() throws Exception {
+        byte[][] requests = {
+            // operation
+            new RawMessage().message(1, rawHeader(99)).message(100, rawReadRequest()).toByteArray(),
+            // read flag
+            new RawMessage().message(1, rawHeader(1)).message(100, rawReadRequest().varint(100, 99))
+                    .toByteArray(),
+            // accepted compression
+            new RawMessage().message(1, rawHeader(1)).message(100, rawReadRequest().varint(6, 99))
+                    .toByteArray(),
+            // add flag
+            new RawMessage().message(1, rawHeader(2)).message(101, rawAddRequest().varint(100, 99))
+                    .toByteArray(),
+            // protocol version
+            new RawMessage().message(1, new RawMessage().varint(1, 99).varint(2, 1).varint(3, 1L))
+                    .message(100, rawReadRequest()).toByteArray(),
+        };
+        for (byte[] request : requests) {
+            assertNull(decodeRequest(request));
+        }
+        byte[][] responses = {
+            // status
+            new RawMessage().message(1, rawHeader(2)).varint(2, 999)
+                    .message(101, rawAddResponse()).toByteArray(),
+            // add status
+            new RawMessage().message(1, rawHeader(2)).varint(2, 0)
+                    .message(101, new RawMessage().varint(1, 999).varint(2, 1L).varint(3, 2L)).toByteArray(),
+            // body compression
+            new RawMessage().message(1, rawHeader(1)).varint(2, 0)
+                    .message(100, rawReadResponse().varint(7, 99)).toByteArray(),
+        };
+        for (byte[] response : responses) {
+            assertNull(decodeResponse(response));
+        }
+    }
+
+    @Test
+    public void testMissingRequiredFields() throws Exception {
+        byte[][] requests = {
+            new RawMessage().message(100, rawReadRequest()).toByteArray(),
+            new RawMessage().message(1, rawHeader(1)).toByteArray(),
+            new RawMessage().message(1, new RawMessage().varint(1, ProtocolVersion.VERSION_THREE_VALUE)
+                    .varint(2, 1)).message(100, rawReadRequest()).toByteArray(),
+            new RawMessage().message(1, rawHeader(1)).message(100, new RawMessage().varint(1, 1L))
+                    .toByteArray(),
+            new RawMessage().message(1, rawHeader(2)).message(101, new RawMessage().varint(1, 1L).varint(2, 2L)
+                    .bytes(3, MASTER_KEY)).toByteArray(),
+            new RawMessage().message(1, rawHeader(2)).message(101, new RawMessage().varint(1, 1L).varint(2, 2L)
+                    .bytes(4, entry(10))).toByteArray(),
+        };
+        for (byte[] request : requests) {
+            assertNull(decodeRequest(request));
+        }
+        byte[][] responses = {
+            new RawMessage().message(1, rawHeader(2)).message(101, rawAddResponse()).toByteArray(),
+            new RawMessage().message(1, rawHeader(2)).varint(2, 0).toByteArray(),
+            new RawMessage().message(1, rawHeader(2)).varint(2, 0)
+                    .message(101, new RawMessage().varint(1, 0).varint(2, 1L)).toByteArray(),
+            new RawMessage().message(1, rawHeader(1)).varint(2, 0)
+                    .message(100, new RawMessage().varint(2, 1L).varint(3, 2L)).toByteArray(),
+        };
+        for (byte[] response : responses) {
+            assertNull(decodeResponse(response));
+        }
+    }
+
+    @Test
+    public void testMalformedVarintsAndLengths() throws Exception {
+        byte[] valid = new RawMessage().message(1, rawHeader(1)).message(100, rawReadRequest()).toByteArray();
+        // a varint longer than 10 bytes
+        byte[] longVarint = new byte[valid.length + 12];
+        longVarint[0] = 0x08;
+        Arrays.fill(longVarint, 1, 12, (byte) 0xFF);
+        System.arraycopy(valid, 0, longVarint, 12, valid.length);
+        assertNull(decodeRequest(longVarint));
+        // a length past the end of the message
+        byte[] longLength = valid.clone();
+        longLength[1] = (byte) 0x7F;
+        assertNull(decodeRequest(longLength));
+        // a negative length
+        byte[] negativeLength = new RawMessage().message(1, rawHeader(1)).toByteArray();
+        byte[] withNegativeLength = new byte[negativeLength.length + 6];
+        System.arraycopy(negativeLength, 0, withNegativeLength, 0, negativeLength.length);
+        withNegativeLength[negativeLength.length] = (byte) ((100 << 3) | 2);
+        withNegativeLength[negativeLength.length + 1] = 0x06;
+        byte[] minusOne = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x0F};
+        System.arraycopy(minusOne, 0, withNegativeLength, negativeLength.length + 2, minusOne.length);
+        assertNull(decodeRequest(withNegativeLength));
+        assertNull(decodeResponse(withNegativeLength));
+        // an empty frame
+        assertNull(decodeRequest(new byte[0]));
+        assertNull(decodeResponse(new byte[0]));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.IOException;
+import java.util.Random;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CompressionType;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Test;
+
+/**
+ * Test the compression of the entries of the read responses.
+ */
+public class EntryCompressionTest {
+
+    private static final ByteBufAllocator ALLOCATOR = UnpooledByteBufAllocator.DEFAULT;
+    private static final int MAX_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * An entry made of a few random words, so that it compresses.
+     */
+    private static byte[] compressibleEntry(int size) {
+        Random random = new Random(size);
+        String[] words = {"bookkeeper", "ledger", "entry", "bookie", "journal", "ensemble", "quorum"};
+        StringBuilder entry = new StringBuilder(size + 16);
+        while (entry.length() < size) {
+            entry.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        return entry.substring(0, size).getBytes();
+    }
+
+    private static void assertRoundTrip(CompressionType type, byte[] data) throws IOException {
+        ByteBuf entry = Unpooled.wrappedBuffer(data);
+        // a non zero reader index
+        entry = Unpooled.wrappedBuffer(Unpooled.wrappedBuffer(new byte[7]), entry).skipBytes(7);
+        ByteBuf compressed = EntryCompression.compress(type, entry, ALLOCATOR);
+        assertNotNull(type + " didn't compress an entry of " + data.length + " bytes", compressed);
+        assertTrue(compressed.readableBytes() < data.length);
+        assertEquals("the entry is left untouched", data.length, entry.readableBytes());
+
+        ByteBuf decompressed = EntryCompression.decompress(type, compressed, data.length, MAX_SIZE, ALLOCATOR);
+        try {
+            assertArrayEquals(data, ByteBufUtil.getBytes(decompressed));
+            assertEquals(1, compressed.refCnt());
+        } finally {
+            decompressed.release();
+            compressed.release();
+        }
+    }
+
+    @Test
+    public void testSnappyRoundTrip() throws Exception {
+        for (int size : new int[] {100, 4096, 32 * 1024 - 1, 32 * 1024, 32 * 1024 + 1, 100 * 1024, 1024 * 1024}) {
+            assertRoundTrip(CompressionType.SNAPPY, compressibleEntry(size));
+        }
+    }
+
+    @Test
+    public void testDeflateRoundTrip() throws Exception {
+        for (int size : new int[] {100, 4096, 32 * 1024, 100 * 1024, 1024 * 1024}) {
+            assertRoundTrip(CompressionType.DEFLATE, compressibleEntry(size));
+        }
+    }
+
+    @Test
+    public void testIncompressibleEntry() {
+        byte[] data = new byte[64 * 1024];
+        new Random(1).nextBytes(data);
+        for (CompressionType type : new CompressionType[] {CompressionType.SNAPPY, CompressionType.DEFLATE}) {
+            assertNull(EntryCompression.compress(type, Unpooled.wrappedBuffer(data), ALLOCATOR));
+        }
+        assertNull(EntryCompression.compress(CompressionType.NONE,
+                Unpooled.wrappedBuffer(compressibleEntry(1024)), ALLOCATOR));
+    }
+
+    private static void assertDecompressFails(CompressionType type, ByteBuf compressed, int uncompressedSize,
+                                              int maxSize) {
+        try {
+            EntryCompression.decompress(type, compressed, uncompressedSize, maxSize, ALLOCATOR).release();
+            fail("decompressed a corrupted " + type + " entry");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUncompressedSizeCapped() throws Exception {
+        byte[] data = compressibleEntry(10 * 1024);
+        for (CompressionType type : new CompressionType[] {CompressionType.SNAPPY, CompressionType.DEFLATE}) {
+            ByteBuf compressed = EntryCompression.compress(type, Unpooled.wrappedBuffer(data), ALLOCATOR);
+            // the size from the wire is checked before allocating the entry
+            assertDecompressFails(type, compressed, Integer.MAX_VALUE, MAX_SIZE);
+            assertDecompressFails(type, compressed, data.length, data.length - 1);
+            assertDecompressFails(type, compressed, -1, MAX_SIZE);
+            ByteBuf decompressed = EntryCompression.decompress(type, compressed, data.length, data.length,
+                    ALLOCATOR);
+            assertArrayEquals(data, ByteBufUtil.getBytes(decompressed));
+            decompressed.release();
+            compressed.release();
+        }
+    }
+
+    @Test
+    public void testWrongUncompressedSize() throws Exception {
+        byte[] data = compressibleEntry(10 * 1024);
+        for (CompressionType type : new CompressionType[] {CompressionType.SNAPPY, CompressionType.DEFLATE}) {
+            ByteBuf compressed = EntryCompression.compress(type, Unpooled.wrappedBuffer(data), ALLOCATOR);
+            assertDecompressFails(type, compressed, data.length - 1, MAX_SIZE);
+            assertDecompressFails(type, compressed, data.length + 1, MAX_SIZE);
+            compressed.release();
+        }
+    }
+
+    @Test
+    public void testCorruptedEntry() throws Exception {
+        byte[] data = compressibleEntry(10 * 1024);
+        for (CompressionType type : new CompressionType[] {CompressionType.SNAPPY, CompressionType.DEFLATE}) {
+            ByteBuf compressed = EntryCompression.compress(type, Unpooled.wrappedBuffer(data), ALLOCATOR);
+            // truncated
+            assertDecompressFails(type, compressed.slice(0, compressed.readableBytes() / 2), data.length, MAX_SIZE);
+            // garbage
+            byte[] garbage = new byte[compressed.readableBytes()];
+            new Random(2).nextBytes(garbage);
+            assertDecompressFails(type, Unpooled.wrappedBuffer(garbage), data.length, MAX_SIZE);
+            compressed.release();
+        }
+        assertDecompressFails(CompressionType.NONE, Unpooled.wrappedBuffer(data), data.length, MAX_SIZE);
+    }
+
+    @Test
+    public void testClientCompressionConfiguration() throws Exception {
+        ClientConfiguration conf = new ClientConfiguration();
+        assertEquals(CompressionType.NONE, conf.getReadResponseCompressionType());
+        conf.setReadResponseCompression(" snappy ");
+        assertEquals(CompressionType.SNAPPY, conf.getReadResponseCompressionType());
+        conf.validate();
+        conf.setReadResponseCompression("lz4");
+        try {
+            conf.validate();
+            fail("validated an unknown read response compression");
+        } catch (ConfigurationException e) {
+            // expected
+        }
+    }
+}
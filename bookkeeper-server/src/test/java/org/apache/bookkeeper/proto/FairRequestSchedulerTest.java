@@ -0,0 +1,212 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.proto.FairRequestScheduler.RequestClass;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the fair request scheduler.
+ */
+public class FairRequestSchedulerTest {
+
+    // connections with a known shard, i.e. their hash code modulo the number of shards
+    private static final Integer CONNECTION_A = 0;
+    private static final Integer CONNECTION_B = 2;
+
+    private FairRequestScheduler scheduler;
+    private final List<String> runOrder = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private FairRequestScheduler newScheduler(int numThreads, int numShards, int maxPending, int quantum) {
+        scheduler = new FairRequestScheduler("test-scheduler", numThreads, numShards, maxPending, quantum,
+                false, NullStatsLogger.INSTANCE);
+        return scheduler;
+    }
+
+    /**
+     * Keep the workers of a shard busy until the returned latch is released.
+     */
+    private CountDownLatch blockWorkers(Object connection, int numWorkers) throws Exception {
+        CountDownLatch started = new CountDownLatch(numWorkers);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < numWorkers; i++) {
+            scheduler.execute(connection, RequestClass.HIGH_PRIORITY, 1, () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private void execute(Object connection, RequestClass requestClass, int cost, String name, CountDownLatch done) {
+        scheduler.execute(connection, requestClass, cost, () -> {
+            runOrder.add(name);
+            done.countDown();
+        });
+    }
+
+    @Test
+    public void testConnectionsServedInRoundRobin() throws Exception {
+        newScheduler(1, 1, 0, 2);
+        CountDownLatch release = blockWorkers(CONNECTION_A, 1);
+        CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 8; i++) {
+            execute(CONNECTION_A, RequestClass.NORMAL, 1, "a" + i, done);
+        }
+        execute(CONNECTION_B, RequestClass.NORMAL, 1, "b0", done);
+        execute(CONNECTION_B, RequestClass.NORMAL, 1, "b1", done);
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // the backlog of the first connection doesn't delay the second one by more than a quantum
+        assertEquals(Arrays.asList("a0", "a1", "b0", "b1", "a2", "a3", "a4", "a5", "a6", "a7"), runOrder);
+    }
+
+    @Test
+    public void testCostSpendsTheQuantum() throws Exception {
+        newScheduler(1, 1, 0, 2);
+        CountDownLatch release = blockWorkers(CONNECTION_A, 1);
+        CountDownLatch done = new CountDownLatch(6);
+        for (int i = 0; i < 2; i++) {
+            execute(CONNECTION_A, RequestClass.NORMAL, 4, "a" + i, done);
+        }
+        for (int i = 0; i < 4; i++) {
+            execute(CONNECTION_B, RequestClass.NORMAL, 1, "b" + i, done);
+        }
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // a request costing two quanta waits for a second round, while the other connection gets two
+        assertEquals(Arrays.asList("b0", "b1", "a0", "b2", "b3", "a1"), runOrder);
+    }
+
+    @Test
+    public void testHighPriorityServedFirst() throws Exception {
+        newScheduler(1, 1, 0, 8);
+        CountDownLatch release = blockWorkers(CONNECTION_A, 1);
+        CountDownLatch done = new CountDownLatch(4);
+        execute(CONNECTION_A, RequestClass.NORMAL, 1, "n0", done);
+        execute(CONNECTION_B, RequestClass.NORMAL, 1, "n1", done);
+        execute(CONNECTION_B, RequestClass.HIGH_PRIORITY, 1, "h0", done);
+        execute(CONNECTION_A, RequestClass.HIGH_PRIORITY, 1, "h1", done);
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("h0", "h1", "n0", "n1"), runOrder);
+    }
+
+    @Test
+    public void testTooManyPendingRequests() throws Exception {
+        newScheduler(1, 1, 2, 8);
+        CountDownLatch release = blockWorkers(CONNECTION_A, 1);
+        CountDownLatch done = new CountDownLatch(2);
+        execute(CONNECTION_A, RequestClass.NORMAL, 1, "n0", done);
+        execute(CONNECTION_B, RequestClass.NORMAL, 1, "n1", done);
+        try {
+            execute(CONNECTION_B, RequestClass.NORMAL, 1, "n2", done);
+            fail("Should reject the request over the max pending requests");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        // the limit applies per class
+        CountDownLatch highPriorityDone = new CountDownLatch(1);
+        execute(CONNECTION_B, RequestClass.HIGH_PRIORITY, 1, "h0", highPriorityDone);
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(highPriorityDone.await(10, TimeUnit.SECONDS));
+        CountDownLatch moreDone = new CountDownLatch(1);
+        execute(CONNECTION_B, RequestClass.NORMAL, 1, "n3", moreDone);
+        assertTrue(moreDone.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testIdleWorkersTakeRequestsOfOtherShards() throws Exception {
+        newScheduler(2, 2, 0, 8);
+        // both connections are in the first shard, whose only worker is busy
+        CountDownLatch release = blockWorkers(CONNECTION_A, 1);
+        CountDownLatch done = new CountDownLatch(2);
+        execute(CONNECTION_A, RequestClass.NORMAL, 1, "a0", done);
+        execute(CONNECTION_B, RequestClass.NORMAL, 1, "b0", done);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void testShutdownRunsPendingRequests() throws Exception {
+        newScheduler(2, 2, 0, 8);
+        CountDownLatch release = blockWorkers(CONNECTION_A, 2);
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            execute(i, RequestClass.NORMAL, 1, "n" + i, done);
+        }
+        Thread shutdown = new Thread(() -> scheduler.shutdown(10, TimeUnit.SECONDS));
+        shutdown.start();
+        release.countDown();
+        shutdown.join();
+        assertEquals(0, done.getCount());
+        try {
+            execute(CONNECTION_A, RequestClass.NORMAL, 1, "after", done);
+            fail("Should reject the requests after the shutdown");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        scheduler = null;
+    }
+
+    @Test
+    public void testBatchReadCostEstimate() {
+        // no estimate yet, a batch read costs its max count
+        assertEquals(100, BookieRequestProcessor.estimateBatchReadCost(100, 1024 * 1024, 0));
+        // the entries that fit in the max size
+        assertEquals(10, BookieRequestProcessor.estimateBatchReadCost(100, 10 * 1028, 1024));
+        assertEquals(11, BookieRequestProcessor.estimateBatchReadCost(100, 10 * 1028 + 1, 1024));
+        // capped by the max count
+        assertEquals(5, BookieRequestProcessor.estimateBatchReadCost(5, 1024 * 1024, 1024));
+        // the first entry is always read
+        assertEquals(1, BookieRequestProcessor.estimateBatchReadCost(100, 10, 1024));
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNELS_THROTTLED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_THROTTLED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_THROTTLED_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.IN_FLIGHT_REQUEST_BYTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the limits of the requests in flight on the bookie channels.
+ */
+public class InFlightRequestLimiterTest {
+
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private final RequestStats requestStats = new RequestStats(statsProvider.getStatsLogger(""));
+    private final Map<BookieRequestHandler, EmbeddedChannel> channels = new HashMap<>();
+    private InFlightRequestLimiter limiter;
+
+    @After
+    public void tearDown() {
+        for (EmbeddedChannel channel : channels.values()) {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    private BookieRequestHandler channel() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        InFlightRequestLimiter.ChannelBudget budget = limiter.newChannelBudget(channel);
+        BookieRequestHandler requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.getInFlightBudget(limiter)).thenReturn(budget);
+        channels.put(requestHandler, channel);
+        return requestHandler;
+    }
+
+    private boolean isAutoRead(BookieRequestHandler requestHandler) {
+        return channels.get(requestHandler).config().isAutoRead();
+    }
+
+    private long channelsThrottled() {
+        return statsProvider.getGauge(CHANNELS_THROTTLED).getSample().longValue();
+    }
+
+    private long inFlightBytes() {
+        return statsProvider.getGauge(IN_FLIGHT_REQUEST_BYTES).getSample().longValue();
+    }
+
+    private long throttleCount() {
+        return statsProvider.getCounter(CHANNEL_THROTTLED).get();
+    }
+
+    private long unthrottleCount() {
+        return statsProvider.getOpStatsLogger(CHANNEL_THROTTLED_WAIT).getSuccessCount();
+    }
+
+    @Test
+    public void testEnabled() {
+        assertFalse(new InFlightRequestLimiter(0, 0, 0, requestStats).isEnabled());
+        assertTrue(new InFlightRequestLimiter(1, 0, 0, requestStats).isEnabled());
+        assertTrue(new InFlightRequestLimiter(0, 1, 0, requestStats).isEnabled());
+        assertTrue(new InFlightRequestLimiter(0, 0, 1, requestStats).isEnabled());
+    }
+
+    @Test
+    public void testMaxRequestsPerChannel() {
+        limiter = new InFlightRequestLimiter(2, 0, 0, requestStats);
+        BookieRequestHandler channel = channel();
+        BookieRequestHandler other = channel();
+
+        limiter.onRequestStart(channel, 0);
+        limiter.onRequestStart(channel, 0);
+        assertTrue(isAutoRead(channel));
+        assertFalse(limiter.isThrottled(channel));
+
+        limiter.onRequestStart(channel, 0);
+        assertFalse(isAutoRead(channel));
+        assertTrue(limiter.isThrottled(channel));
+        assertEquals(1L, throttleCount());
+        assertEquals(1L, channelsThrottled());
+
+        // the other channels keep reading
+        limiter.onRequestStart(other, 0);
+        assertTrue(isAutoRead(other));
+
+        // still over the limit
+        limiter.onRequestStart(channel, 0);
+        limiter.onRequestFinish(channel, 0);
+        assertFalse(isAutoRead(channel));
+
+        limiter.onRequestFinish(channel, 0);
+        assertTrue(isAutoRead(channel));
+        assertFalse(limiter.isThrottled(channel));
+        assertEquals(1L, throttleCount());
+        assertEquals(1L, unthrottleCount());
+        assertEquals(0L, channelsThrottled());
+    }
+
+    @Test
+    public void testMaxBytesPerChannel() {
+        limiter = new InFlightRequestLimiter(0, 1000, 0, requestStats);
+        BookieRequestHandler channel = channel();
+
+        limiter.onRequestStart(channel, 600);
+        limiter.onRequestStart(channel, 400);
+        assertTrue(isAutoRead(channel));
+        assertEquals(1000L, inFlightBytes());
+
+        // the requests without bytes count for nothing
+        limiter.onRequestStart(channel, 0);
+        assertTrue(isAutoRead(channel));
+
+        limiter.onRequestStart(channel, 1);
+        assertFalse(isAutoRead(channel));
+        assertEquals(1L, channelsThrottled());
+
+        limiter.onRequestFinish(channel, 600);
+        assertTrue(isAutoRead(channel));
+        assertEquals(401L, inFlightBytes());
+        assertEquals(0L, channelsThrottled());
+    }
+
+    @Test
+    public void testMaxBytes() {
+        limiter = new InFlightRequestLimiter(0, 0, 1000, requestStats);
+        BookieRequestHandler first = channel();
+        BookieRequestHandler second = channel();
+        BookieRequestHandler idle = channel();
+
+        limiter.onRequestStart(first, 600);
+        assertTrue(isAutoRead(first));
+
+        // only the channel receiving a request over the global budget is throttled
+        limiter.onRequestStart(second, 600);
+        assertTrue(isAutoRead(first));
+        assertFalse(isAutoRead(second));
+        assertTrue(isAutoRead(idle));
+        assertEquals(1L, channelsThrottled());
+
+        limiter.onRequestStart(first, 100);
+        assertFalse(isAutoRead(first));
+        assertEquals(2L, channelsThrottled());
+        assertEquals(1300L, inFlightBytes());
+
+        // still over the budget
+        limiter.onRequestFinish(first, 100);
+        assertFalse(isAutoRead(first));
+        assertFalse(isAutoRead(second));
+
+        // back within the budget, both the channels resume
+        limiter.onRequestFinish(first, 600);
+        assertTrue(isAutoRead(first));
+        assertTrue(isAutoRead(second));
+        assertEquals(0L, channelsThrottled());
+        assertEquals(2L, unthrottleCount());
+        assertEquals(600L, inFlightBytes());
+    }
+
+    @Test
+    public void testCloseThrottledChannel() {
+        limiter = new InFlightRequestLimiter(1, 0, 1000, requestStats);
+        BookieRequestHandler channel = channel();
+        BookieRequestHandler other = channel();
+
+        limiter.onRequestStart(channel, 1200);
+        limiter.onRequestStart(channel, 0);
+        assertFalse(isAutoRead(channel));
+        assertEquals(1L, channelsThrottled());
+
+        channel.getInFlightBudget(limiter).close();
+        assertEquals(0L, channelsThrottled());
+        assertEquals(1L, unthrottleCount());
+        assertFalse(limiter.isThrottled(channel));
+
+        // the requests of the closed channel complete without resuming it
+        limiter.onRequestFinish(channel, 0);
+        limiter.onRequestFinish(channel, 1200);
+        assertFalse(isAutoRead(channel));
+        assertEquals(0L, inFlightBytes());
+
+        // nor throttling it again
+        limiter.onRequestStart(channel, 1200);
+        assertFalse(limiter.isThrottled(channel));
+        assertEquals(1L, throttleCount());
+        limiter.onRequestFinish(channel, 1200);
+
+        limiter.onRequestStart(other, 0);
+        assertTrue(isAutoRead(other));
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_FLUSH;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_RESPONSES_PER_FLUSH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the consolidation of the flushes of the responses written to a bookie channel.
+ */
+public class ResponseFlushConsolidationHandlerTest {
+
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private final ResponseFlushConsolidationHandler.Stats stats =
+            new ResponseFlushConsolidationHandler.Stats(statsProvider.getStatsLogger(""));
+    private EmbeddedChannel channel;
+    private int socketFlushes;
+
+    /**
+     * Counts the flushes reaching the socket, and writes a response for each request read.
+     */
+    private void createChannel(int maxResponsesPerFlush, long windowMicros) {
+        channel = new EmbeddedChannel();
+        channel.freezeTime();
+        channel.pipeline().addLast(new ChannelOutboundHandlerAdapter() {
+            // the embedded channel runs the pending tasks on every write, so the writes are held
+            // until they are flushed
+            private final List<Object> writes = new ArrayList<>();
+            private final List<ChannelPromise> promises = new ArrayList<>();
+
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                writes.add(msg);
+                promises.add(promise);
+            }
+
+            @Override
+            public void flush(ChannelHandlerContext ctx) throws Exception {
+                socketFlushes++;
+                for (int i = 0; i < writes.size(); i++) {
+                    ctx.write(writes.get(i), promises.get(i));
+                }
+                writes.clear();
+                promises.clear();
+                ctx.flush();
+            }
+        });
+        channel.pipeline().addLast(new ResponseFlushConsolidationHandler(maxResponsesPerFlush, windowMicros, stats));
+        channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                ctx.writeAndFlush(msg);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        if (channel != null) {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    private void writeResponse() {
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+    }
+
+    private void readRequests(int numRequests) {
+        for (int i = 0; i < numRequests; i++) {
+            channel.pipeline().fireChannelRead(Unpooled.wrappedBuffer(new byte[10]));
+        }
+    }
+
+    private int numResponsesSent() {
+        int numResponses = 0;
+        Object response;
+        while ((response = channel.readOutbound()) != null) {
+            ((ByteBuf) response).release();
+            numResponses++;
+        }
+        return numResponses;
+    }
+
+    private long flushes() {
+        return statsProvider.getCounter(CHANNEL_FLUSH).get();
+    }
+
+    @Test
+    public void testFlushOnReadComplete() {
+        createChannel(100, 0);
+        readRequests(5);
+        assertEquals(0, socketFlushes);
+        assertEquals(0, numResponsesSent());
+
+        channel.pipeline().fireChannelReadComplete();
+        assertEquals(1, socketFlushes);
+        assertEquals(5, numResponsesSent());
+        assertEquals(1L, flushes());
+        assertEquals(5.0, statsProvider.getOpStatsLogger(CHANNEL_RESPONSES_PER_FLUSH).getSuccessAverage(), 0.0);
+
+        // a read without a response does not flush
+        channel.pipeline().fireChannelReadComplete();
+        assertEquals(1, socketFlushes);
+    }
+
+    @Test
+    public void testFlushOnNextEventLoopRun() {
+        createChannel(100, 0);
+        writeResponse();
+        writeResponse();
+        writeResponse();
+        assertEquals(0, socketFlushes);
+
+        channel.runPendingTasks();
+        assertEquals(1, socketFlushes);
+        assertEquals(3, numResponsesSent());
+
+        // nothing left to flush
+        channel.runPendingTasks();
+        assertEquals(1, socketFlushes);
+    }
+
+    @Test
+    public void testFlushAfterTheWindow() {
+        createChannel(100, 1000);
+        writeResponse();
+        channel.runPendingTasks();
+        assertEquals(0, socketFlushes);
+
+        channel.advanceTimeBy(500, TimeUnit.MICROSECONDS);
+        writeResponse();
+        channel.runPendingTasks();
+        assertEquals(0, socketFlushes);
+
+        // the window starts with the first response
+        channel.advanceTimeBy(500, TimeUnit.MICROSECONDS);
+        channel.runPendingTasks();
+        assertEquals(1, socketFlushes);
+        assertEquals(2, numResponsesSent());
+    }
+
+    @Test
+    public void testWindowAfterReadComplete() {
+        createChannel(100, 1000);
+        readRequests(2);
+        channel.pipeline().fireChannelReadComplete();
+        channel.runPendingTasks();
+        assertEquals(0, socketFlushes);
+
+        channel.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        channel.runPendingTasks();
+        assertEquals(1, socketFlushes);
+        assertEquals(2, numResponsesSent());
+    }
+
+    @Test
+    public void testWindowDoesNotFlushDuringRead() {
+        createChannel(100, 1000);
+        writeResponse();
+        channel.pipeline().fireChannelRead(Unpooled.wrappedBuffer(new byte[10]));
+        channel.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        channel.runPendingTasks();
+        // the timer fired during the read, so the flush waits for the read to complete
+        assertEquals(0, socketFlushes);
+
+        channel.pipeline().fireChannelReadComplete();
+        channel.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        channel.runPendingTasks();
+        assertEquals(1, socketFlushes);
+        assertEquals(2, numResponsesSent());
+    }
+
+    @Test
+    public void testMaxResponsesPerFlush() {
+        createChannel(3, 1000);
+        readRequests(7);
+        // flushed after the 3rd and the 6th responses, without waiting for the read to complete
+        assertEquals(2, socketFlushes);
+        assertEquals(6, numResponsesSent());
+
+        channel.pipeline().fireChannelReadComplete();
+        channel.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        channel.runPendingTasks();
+        assertEquals(3, socketFlushes);
+        assertEquals(1, numResponsesSent());
+        assertEquals(3L, flushes());
+    }
+
+    @Test
+    public void testMaxResponsesCancelsTheWindow() {
+        createChannel(2, 1000);
+        writeResponse();
+        writeResponse();
+        assertEquals(1, socketFlushes);
+
+        channel.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        channel.runPendingTasks();
+        assertEquals(1, socketFlushes);
+    }
+
+    @Test
+    public void testFlushWhenNotWritable() {
+        createChannel(100, 1000);
+        writeResponse();
+        writeResponse();
+        assertEquals(0, socketFlushes);
+
+        // the pending responses are flushed, so that the channel can become writable again
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        channel.runPendingTasks();
+        assertFalse(channel.isWritable());
+        assertEquals(1, socketFlushes);
+        assertEquals(2, numResponsesSent());
+
+        // becoming writable again does not flush
+        writeResponse();
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        channel.runPendingTasks();
+        assertEquals(1, socketFlushes);
+        channel.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        channel.runPendingTasks();
+        assertEquals(2, socketFlushes);
+        assertEquals(1, numResponsesSent());
+    }
+
+    @Test
+    public void testFlushOnClose() {
+        createChannel(100, 1000);
+        writeResponse();
+        assertEquals(0, socketFlushes);
+        channel.close();
+        assertEquals(1, socketFlushes);
+        assertEquals(1, numResponsesSent());
+    }
+}
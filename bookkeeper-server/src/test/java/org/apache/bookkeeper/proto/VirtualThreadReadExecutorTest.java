@@ -0,0 +1,203 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+/**
+ * Test the executor running the reads on virtual threads.
+ */
+public class VirtualThreadReadExecutorTest {
+
+    private VirtualThreadReadExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static boolean runtimeSupportsVirtualThreads() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            Class.forName("java.lang.Thread$Builder");
+            return Runtime.version().feature() >= 21;
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The executor is only created on a runtime with virtual threads, the bookie falls back to the
+     * read worker threads otherwise.
+     */
+    @Test
+    public void testFallbackWithoutVirtualThreads() throws Exception {
+        executor = VirtualThreadReadExecutor.create("test-read", 4, 0, false);
+        if (!runtimeSupportsVirtualThreads()) {
+            assertNull(executor);
+            assertNull(VirtualThreadReadExecutor.newVirtualThreadPerTaskExecutor("test-read"));
+            return;
+        }
+        assertNotNull(executor);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<String> threadName = new AtomicReference<>();
+        executor.execute(() -> {
+            threadName.set(Thread.currentThread().getName());
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(threadName.get(), threadName.get().startsWith("test-read-"));
+    }
+
+    @Test
+    public void testConcurrentAndPendingReadsLimited() throws Exception {
+        executor = new VirtualThreadReadExecutor("test-read", Executors.newCachedThreadPool(), 2, 2, false);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        Runnable read = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            done.countDown();
+        };
+        for (int i = 0; i < 4; i++) {
+            executor.execute(read);
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        try {
+            executor.execute(read);
+            fail("Should reject the reads over the max pending reads");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+
+        // the completed reads don't count anymore
+        CountDownLatch moreDone = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(moreDone::countDown);
+        }
+        assertTrue(moreDone.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNoPendingReadsLimit() throws Exception {
+        executor = new VirtualThreadReadExecutor("test-read", Executors.newCachedThreadPool(), 1, 0, false);
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            executor.execute(done::countDown);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailedReadReleasesItsPermit() throws Exception {
+        executor = new VirtualThreadReadExecutor("test-read", Executors.newCachedThreadPool(), 1, 1, false);
+        executor.execute(() -> {
+            throw new RuntimeException("read failure");
+        });
+        CountDownLatch done = new CountDownLatch(1);
+        // wait for the failed read to complete, then the next one runs
+        while (true) {
+            try {
+                executor.execute(done::countDown);
+                break;
+            } catch (RejectedExecutionException e) {
+                Thread.sleep(10);
+            }
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMdcPreserved() throws Exception {
+        executor = new VirtualThreadReadExecutor("test-read", Executors.newSingleThreadExecutor(), 1, 0, true);
+        AtomicReference<String> mdcValue = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        MDC.put("test-key", "test-value");
+        try {
+            executor.execute(() -> {
+                mdcValue.set(MDC.get("test-key"));
+                done.countDown();
+            });
+        } finally {
+            MDC.remove("test-key");
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("test-value", mdcValue.get());
+
+        // the MDC is cleared after the read
+        AtomicReference<String> nextMdcValue = new AtomicReference<>("unset");
+        CountDownLatch nextDone = new CountDownLatch(1);
+        executor.execute(() -> {
+            nextMdcValue.set(MDC.get("test-key"));
+            nextDone.countDown();
+        });
+        assertTrue(nextDone.await(10, TimeUnit.SECONDS));
+        assertNull(nextMdcValue.get());
+    }
+
+    @Test
+    public void testRejectedAfterShutdown() throws Exception {
+        ExecutorService threads = Executors.newCachedThreadPool();
+        executor = new VirtualThreadReadExecutor("test-read", threads, 1, 1, false);
+        executor.shutdown(10, TimeUnit.SECONDS);
+        assertTrue(threads.isShutdown());
+        for (int i = 0; i < 3; i++) {
+            try {
+                executor.execute(() -> { });
+                fail("Should reject the reads after the shutdown");
+            } catch (RejectedExecutionException e) {
+                // the rejected reads don't count as pending, so the error doesn't change
+                assertFalse(e.getMessage() != null && e.getMessage().startsWith("Too many pending reads"));
+            }
+        }
+        executor = null;
+    }
+}
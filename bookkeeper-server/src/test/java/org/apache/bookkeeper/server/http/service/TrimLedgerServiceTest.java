@@ -0,0 +1,111 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.server.http.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.LedgerStorage;
+import org.apache.bookkeeper.http.HttpServer;
+import org.apache.bookkeeper.http.service.HttpServiceRequest;
+import org.apache.bookkeeper.http.service.HttpServiceResponse;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieServer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the http service trimming a ledger.
+ */
+public class TrimLedgerServiceTest {
+
+    private LedgerStorage ledgerStorage;
+    private TrimLedgerService service;
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerStorage = mock(LedgerStorage.class);
+        Bookie bookie = mock(Bookie.class);
+        when(bookie.getLedgerStorage()).thenReturn(ledgerStorage);
+        BookieServer bookieServer = mock(BookieServer.class);
+        when(bookieServer.getBookie()).thenReturn(bookie);
+        when(bookieServer.getBookieId()).thenReturn(BookieId.parse("bookie-1:3181"));
+        service = new TrimLedgerService(bookieServer);
+    }
+
+    private HttpServiceResponse put(String body) throws Exception {
+        return service.handle(new HttpServiceRequest(body, HttpServer.Method.PUT, new HashMap<>()));
+    }
+
+    @Test
+    public void testTrimLedger() throws Exception {
+        when(ledgerStorage.trimLedger(1L, 100L)).thenReturn(true);
+        HttpServiceResponse response = put("{\"ledger_id\": 1, \"trim_entry_id\": 100}");
+        assertEquals(HttpServer.StatusCode.OK.getValue(), response.getStatusCode());
+        assertTrue(response.getBody().contains("Trimmed ledger 1 up to entry 100"));
+        verify(ledgerStorage).trimLedger(1L, 100L);
+    }
+
+    @Test
+    public void testLedgerAlreadyTrimmed() throws Exception {
+        when(ledgerStorage.trimLedger(1L, 100L)).thenReturn(false);
+        HttpServiceResponse response = put("{\"ledger_id\": 1, \"trim_entry_id\": 100}");
+        assertEquals(HttpServer.StatusCode.OK.getValue(), response.getStatusCode());
+        assertTrue(response.getBody().contains("already trimmed"));
+    }
+
+    @Test
+    public void testUnknownLedger() throws Exception {
+        when(ledgerStorage.trimLedger(1L, 100L)).thenThrow(new Bookie.NoLedgerException(1L));
+        HttpServiceResponse response = put("{\"ledger_id\": 1, \"trim_entry_id\": 100}");
+        assertEquals(HttpServer.StatusCode.NOT_FOUND.getValue(), response.getStatusCode());
+    }
+
+    @Test
+    public void testTrimNotSupported() throws Exception {
+        when(ledgerStorage.trimLedger(1L, 100L)).thenThrow(new UnsupportedOperationException("not supported"));
+        HttpServiceResponse response = put("{\"ledger_id\": 1, \"trim_entry_id\": 100}");
+        assertEquals(HttpServer.StatusCode.BAD_REQUEST.getValue(), response.getStatusCode());
+    }
+
+    @Test
+    public void testBadRequests() throws Exception {
+        assertEquals(HttpServer.StatusCode.METHOD_NOT_ALLOWED.getValue(),
+                service.handle(new HttpServiceRequest("{}", HttpServer.Method.GET, new HashMap<>()))
+                        .getStatusCode());
+        assertEquals(HttpServer.StatusCode.BAD_REQUEST.getValue(), put("").getStatusCode());
+        assertEquals(HttpServer.StatusCode.BAD_REQUEST.getValue(), put("not json").getStatusCode());
+        assertEquals(HttpServer.StatusCode.BAD_REQUEST.getValue(),
+                put("{\"ledger_id\": 1}").getStatusCode());
+        assertEquals(HttpServer.StatusCode.BAD_REQUEST.getValue(),
+                put("{\"ledger_id\": \"1\", \"trim_entry_id\": 100}").getStatusCode());
+        assertEquals(HttpServer.StatusCode.BAD_REQUEST.getValue(),
+                put("{\"ledger_id\": 1, \"trim_entry_id\": -1}").getStatusCode());
+        verify(ledgerStorage, never()).trimLedger(anyLong(), anyLong());
+    }
+}
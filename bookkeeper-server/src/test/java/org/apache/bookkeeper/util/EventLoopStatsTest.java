@@ -0,0 +1,92 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the stats of the event loops.
+ */
+public class EventLoopStatsTest {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private DefaultEventLoopGroup eventLoopGroup;
+    private boolean cpuTimeEnabled;
+
+    @Before
+    public void setUp() {
+        assumeTrue(THREAD_MX_BEAN.isThreadCpuTimeSupported());
+        cpuTimeEnabled = THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+        eventLoopGroup = new DefaultEventLoopGroup(2);
+    }
+
+    @After
+    public void tearDown() {
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully();
+            THREAD_MX_BEAN.setThreadCpuTimeEnabled(cpuTimeEnabled);
+        }
+    }
+
+    @Test
+    public void testStatsRegistered() throws Exception {
+        THREAD_MX_BEAN.setThreadCpuTimeEnabled(true);
+        new EventLoopStats(eventLoopGroup, statsProvider.getStatsLogger(""));
+        for (int i = 0; i < 2; i++) {
+            Gauge<? extends Number> pendingTasks =
+                    statsProvider.getGauge("eventloop_" + i + "." + EventLoopStats.EVENT_LOOP_PENDING_TASKS);
+            // the task recording the thread of the event loop
+            await().untilAsserted(() -> assertEquals(0, pendingTasks.getSample().intValue()));
+            Gauge<? extends Number> utilization =
+                    statsProvider.getGauge("eventloop_" + i + "." + EventLoopStats.EVENT_LOOP_UTILIZATION);
+            assertNotNull(utilization);
+            utilization.getSample();
+            double sample = utilization.getSample().doubleValue();
+            assertTrue(sample >= 0 && sample <= 100);
+        }
+    }
+
+    @Test
+    public void testCpuTimeMeasurementLeftDisabled() throws Exception {
+        THREAD_MX_BEAN.setThreadCpuTimeEnabled(false);
+        new EventLoopStats(eventLoopGroup, statsProvider.getStatsLogger(""));
+        assertFalse(THREAD_MX_BEAN.isThreadCpuTimeEnabled());
+        assertNotNull(statsProvider.getGauge("eventloop_0." + EventLoopStats.EVENT_LOOP_PENDING_TASKS));
+        assertNull(statsProvider.getGauge("eventloop_0." + EventLoopStats.EVENT_LOOP_UTILIZATION));
+    }
+}
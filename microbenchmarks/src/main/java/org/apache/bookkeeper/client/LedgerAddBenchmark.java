@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ReferenceCounted;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WatchLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks of the adds to a single ledger by a varying number of threads.
+ *
+ * <p>The bookies acknowledge the entries as soon as they are sent, on the ordered thread of the
+ * ledger as the bookie client does, so the benchmark measures the add path of the client: the
+ * digest, the pending adds and the completion of the adds in order.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class LedgerAddBenchmark {
+
+    private static final long LEDGER_ID = 1L;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState implements AddCallback {
+        @Param({"100"})
+        private int entrySize;
+
+        @Param({"1000"})
+        private int maxOutstandingAdds;
+
+        private OrderedExecutor mainWorkerPool;
+        private OrderedScheduler scheduler;
+        private LedgerHandle lh;
+        private Semaphore outstandingAdds;
+        private byte[] data;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            mainWorkerPool = OrderedExecutor.newBuilder().name("benchmark-worker").numThreads(4).build();
+            scheduler = OrderedScheduler.newSchedulerBuilder().name("benchmark-scheduler").numThreads(1).build();
+            // don't rate limit the adds
+            ClientConfiguration conf = new ClientConfiguration().setThrottleValue(0);
+            ClientContext clientCtx = new BenchmarkClientContext(ClientInternalConf.fromConfig(conf),
+                    new AckingBookieClient(mainWorkerPool), mainWorkerPool, scheduler);
+
+            List<BookieId> ensemble = Lists.newArrayList(
+                    BookieId.parse("bookie-1:3181"),
+                    BookieId.parse("bookie-2:3181"),
+                    BookieId.parse("bookie-3:3181"));
+            byte[] password = "benchmark".getBytes(UTF_8);
+            LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                    .withId(LEDGER_ID)
+                    .withPassword(password)
+                    .withDigestType(DigestType.CRC32C)
+                    .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                    .newEnsembleEntry(0L, ensemble)
+                    .build();
+            lh = new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0L)),
+                    BookKeeper.DigestType.CRC32C, password, EnumSet.noneOf(WriteFlag.class));
+
+            outstandingAdds = new Semaphore(maxOutstandingAdds);
+            data = new byte[entrySize];
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            outstandingAdds.acquire(maxOutstandingAdds);
+            mainWorkerPool.shutdown();
+            scheduler.shutdown();
+        }
+
+        @Override
+        public void addComplete(int rc, LedgerHandle lh, long entryId, Object ctx) {
+            outstandingAdds.release();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void addEntry1Thread(TestState s) throws Exception {
+        addEntry(s);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void addEntry4Threads(TestState s) throws Exception {
+        addEntry(s);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void addEntry16Threads(TestState s) throws Exception {
+        addEntry(s);
+    }
+
+    private static void addEntry(TestState s) throws Exception {
+        s.outstandingAdds.acquire();
+        s.lh.asyncAddEntry(s.data, s, null);
+    }
+
+    private static class BenchmarkClientContext implements ClientContext {
+        private final ClientInternalConf conf;
+        private final BookieClient bookieClient;
+        private final OrderedExecutor mainWorkerPool;
+        private final OrderedScheduler scheduler;
+        private final BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+        private final BookieReadLatencyTracker bookieReadLatencyTracker = new BookieReadLatencyTracker();
+
+        BenchmarkClientContext(ClientInternalConf conf, BookieClient bookieClient,
+                               OrderedExecutor mainWorkerPool, OrderedScheduler scheduler) {
+            this.conf = conf;
+            this.bookieClient = bookieClient;
+            this.mainWorkerPool = mainWorkerPool;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public ClientInternalConf getConf() {
+            return conf;
+        }
+
+        @Override
+        public LedgerManager getLedgerManager() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BookieWatcher getBookieWatcher() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EnsemblePlacementPolicy getPlacementPolicy() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BookieClient getBookieClient() {
+            return bookieClient;
+        }
+
+        @Override
+        public ByteBufAllocator getByteBufAllocator() {
+            return PooledByteBufAllocator.DEFAULT;
+        }
+
+        @Override
+        public OrderedExecutor getMainWorkerPool() {
+            return mainWorkerPool;
+        }
+
+        @Override
+        public OrderedScheduler getScheduler() {
+            return scheduler;
+        }
+
+        @Override
+        public BookKeeperClientStats getClientStats() {
+            return clientStats;
+        }
+
+        @Override
+        public BookieReadLatencyTracker getBookieReadLatencyTracker() {
+            return bookieReadLatencyTracker;
+        }
+
+        @Override
+        public ClientEntryCache getEntryCache() {
+            return null;
+        }
+
+        @Override
+        public MemoryLimitController getPendingAddsMemoryLimiter() {
+            return null;
+        }
+
+        @Override
+        public LacWatchMultiplexer getLacWatchMultiplexer() {
+            return null;
+        }
+
+        @Override
+        public boolean isClientClosed() {
+            return false;
+        }
+
+        @Override
+        public boolean isClientThread() {
+            return mainWorkerPool.isExecutorThread() || scheduler.isExecutorThread();
+        }
+    }
+
+    /**
+     * A bookie client acknowledging the entries as soon as they are sent.
+     */
+    private static class AckingBookieClient implements BookieClient {
+        private final OrderedExecutor executor;
+
+        AckingBookieClient(OrderedExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void addEntry(BookieId address, long ledgerId, byte[] masterKey,
+                             long entryId, ReferenceCounted toSend, WriteCallback cb, Object ctx,
+                             int options, boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+            executor.executeOrdered(ledgerId,
+                    () -> cb.writeComplete(BKException.Code.OK, ledgerId, entryId, address, ctx));
+        }
+
+        @Override
+        public List<BookieId> getFaultyBookies() {
+            return Lists.newArrayList();
+        }
+
+        @Override
+        public boolean isWritable(BookieId address, long ledgerId) {
+            return true;
+        }
+
+        @Override
+        public long getNumPendingRequests(BookieId address, long ledgerId) {
+            return 0;
+        }
+
+        @Override
+        public void forceLedger(BookieId address, long ledgerId, ForceLedgerCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readLac(BookieId address, long ledgerId, ReadLacCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeLac(BookieId address, long ledgerId, byte[] masterKey,
+                             long lac, ByteBufList toSend, WriteLacCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readEntry(BookieId address, long ledgerId, long entryId,
+                              ReadEntryCallback cb, Object ctx, int flags, byte[] masterKey,
+                              boolean allowFastFail) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void batchReadEntries(BookieId address, long ledgerId, long startEntryId, int maxCount, long maxSize,
+                                     BatchedReadEntryCallback cb, Object ctx, int flags) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readEntryWaitForLACUpdate(BookieId address, long ledgerId, long entryId, long previousLAC,
+                                              long timeOutInMillis, boolean piggyBackEntry,
+                                              ReadEntryCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void watchLac(BookieId address, long[] ledgerIds, long[] previousLACs, long timeOutInMillis,
+                             boolean piggyBackEntry, WatchLacCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getBookieInfo(BookieId address, long requested, GetBookieInfoCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
+                                                                                       long ledgerId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
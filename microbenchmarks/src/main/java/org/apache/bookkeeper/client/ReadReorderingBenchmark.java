@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import io.netty.util.HashedWheelTimer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.net.NetworkTopology;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Simulates the reads of entries from an ensemble of bookies with different latencies, to compare
+ * the read reordering modes of the {@link RackawareEnsemblePlacementPolicy}.
+ *
+ * <p>Each bookie serves its reads one at a time, in order, with exponentially distributed service
+ * times, and one bookie is slower than the others. The reads arrive on a simulated clock at a
+ * fraction of the capacity of the ensemble and are sent to the first bookie of the read sequence
+ * returned by the placement policy. The latencies of the reads are fed back to the client once the
+ * reads complete on the simulated clock.
+ *
+ * <p>The benchmark measures the cost of the reordering, and prints the simulated latencies of the
+ * reads at the end of each iteration.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Threads(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class ReadReorderingBenchmark {
+
+    private static final int ENSEMBLE_SIZE = 6;
+    private static final int WRITE_QUORUM_SIZE = 3;
+    private static final int ACK_QUORUM_SIZE = 2;
+    private static final long SERVICE_TIME_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    private static final int MAX_LATENCY_SAMPLES = 1 << 20;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Thread)
+    public static class TestState implements BookiesHealthInfo {
+        @Param({"none", "pendingThreshold", "latencyAware"})
+        private String reordering;
+
+        // the service time of the slow bookie, relatively to the others
+        @Param({"5"})
+        private int slowdown;
+
+        // the load of the ensemble, relatively to its capacity
+        @Param({"0.7"})
+        private double load;
+
+        private HashedWheelTimer timer;
+        private RackawareEnsemblePlacementPolicy policy;
+        private DistributionSchedule schedule;
+        private BookieReadLatencyTracker latencyTracker;
+        private List<BookieId> ensemble;
+        private SimulatedBookie[] bookies;
+        private Random random;
+        private long meanInterArrivalNanos;
+        private long nowNanos;
+        private long entryId;
+        private long[] latencies;
+        private int numLatencies;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            ClientConfiguration conf = new ClientConfiguration();
+            if ("pendingThreshold".equals(reordering)) {
+                conf.setReorderThresholdPendingRequests(5);
+            } else if ("latencyAware".equals(reordering)) {
+                conf.setReorderReadLatencyAwareEnabled(true);
+            }
+            timer = new HashedWheelTimer();
+            policy = new RackawareEnsemblePlacementPolicy();
+            policy.initialize(conf,
+                    Optional.of(new TopologyAwareEnsemblePlacementPolicy.DefaultResolver(
+                            () -> NetworkTopology.DEFAULT_REGION_AND_RACK)),
+                    timer, SettableFeatureProvider.DISABLE_ALL, NullStatsLogger.INSTANCE,
+                    BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+
+            ensemble = new ArrayList<>(ENSEMBLE_SIZE);
+            bookies = new SimulatedBookie[ENSEMBLE_SIZE];
+            double capacity = 0;
+            for (int i = 0; i < ENSEMBLE_SIZE; i++) {
+                ensemble.add(BookieId.parse("127.0.0." + (i + 1) + ":3181"));
+                long serviceTimeNanos = i == 0 ? SERVICE_TIME_NANOS * slowdown : SERVICE_TIME_NANOS;
+                bookies[i] = new SimulatedBookie(serviceTimeNanos);
+                capacity += 1.0 / serviceTimeNanos;
+            }
+            Set<BookieId> writableBookies = new HashSet<>(ensemble);
+            policy.onClusterChanged(writableBookies, new HashSet<>());
+
+            schedule = new RoundRobinDistributionSchedule(WRITE_QUORUM_SIZE, ACK_QUORUM_SIZE, ENSEMBLE_SIZE);
+            latencyTracker = new BookieReadLatencyTracker();
+            random = new Random(1234);
+            meanInterArrivalNanos = (long) (1.0 / (capacity * load));
+            latencies = new long[MAX_LATENCY_SAMPLES];
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            policy.uninitalize();
+            timer.stop();
+        }
+
+        @TearDown(Level.Iteration)
+        public void printLatencies() {
+            int count = Math.min(numLatencies, MAX_LATENCY_SAMPLES);
+            if (count == 0) {
+                return;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long latency : sorted) {
+                sum += latency;
+            }
+            System.out.printf("%n%s: simulated read latency over %d reads: mean %d us, p50 %d us, p99 %d us,"
+                    + " p999 %d us%n", reordering, count,
+                    TimeUnit.NANOSECONDS.toMicros(sum / count),
+                    TimeUnit.NANOSECONDS.toMicros(sorted[(int) (count * 0.5)]),
+                    TimeUnit.NANOSECONDS.toMicros(sorted[(int) (count * 0.99)]),
+                    TimeUnit.NANOSECONDS.toMicros(sorted[(int) (count * 0.999)]));
+            numLatencies = 0;
+        }
+
+        long read() {
+            nowNanos += (long) (-Math.log(1.0 - random.nextDouble()) * meanInterArrivalNanos);
+            for (int i = 0; i < ENSEMBLE_SIZE; i++) {
+                bookies[i].completeReads(ensemble.get(i), latencyTracker, nowNanos);
+            }
+
+            DistributionSchedule.WriteSet writeSet = schedule.getWriteSet(entryId++);
+            try {
+                if (!"none".equals(reordering)) {
+                    writeSet = policy.reorderReadSequence(ensemble, this, writeSet);
+                }
+                long latencyNanos = bookies[writeSet.get(0)].read(nowNanos, random);
+                latencies[numLatencies++ & (MAX_LATENCY_SAMPLES - 1)] = latencyNanos;
+                return latencyNanos;
+            } finally {
+                writeSet.recycle();
+            }
+        }
+
+        @Override
+        public long getBookieFailureHistory(BookieId bookieSocketAddress) {
+            return -1L;
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookieSocketAddress) {
+            return bookies[ensemble.indexOf(bookieSocketAddress)].pendingReads.size();
+        }
+
+        @Override
+        public long getBookieReadLatencyEwmaNanos(BookieId bookieSocketAddress) {
+            return latencyTracker.getReadLatencyEwmaNanos(bookieSocketAddress);
+        }
+    }
+
+    /**
+     * A bookie serving its reads one at a time, in order, on the simulated clock.
+     */
+    static class SimulatedBookie {
+        private final long meanServiceTimeNanos;
+        // the completion and the send times of the pending reads, in order
+        private final ArrayDeque<long[]> pendingReads = new ArrayDeque<>();
+        private long idleAtNanos;
+
+        SimulatedBookie(long meanServiceTimeNanos) {
+            this.meanServiceTimeNanos = meanServiceTimeNanos;
+        }
+
+        long read(long nowNanos, Random random) {
+            long serviceTimeNanos = (long) (-Math.log(1.0 - random.nextDouble()) * meanServiceTimeNanos);
+            idleAtNanos = Math.max(idleAtNanos, nowNanos) + serviceTimeNanos;
+            pendingReads.add(new long[] { idleAtNanos, nowNanos });
+            return idleAtNanos - nowNanos;
+        }
+
+        void completeReads(BookieId bookie, BookieReadLatencyTracker latencyTracker, long nowNanos) {
+            while (!pendingReads.isEmpty() && pendingReads.peek()[0] <= nowNanos) {
+                long[] read = pendingReads.poll();
+                latencyTracker.recordReadLatency(bookie, read[0] - read[1]);
+            }
+        }
+    }
+
+    @Benchmark
+    public long read(TestState state) {
+        return state.read();
+    }
+}
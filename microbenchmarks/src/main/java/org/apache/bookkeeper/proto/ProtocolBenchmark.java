@@ -63,6 +63,7 @@ public class ProtocolBenchmark {
     short flags;
     EnDecoder reqEnDeV2;
     EnDecoder reqEnDeV3;
+    ByteBuf addRequestV3Frame;
 
     @Setup
     public void prepare() {
@@ -77,6 +78,27 @@ public class ProtocolBenchmark {
         // prepare the encoder
         this.reqEnDeV2 = new RequestEnDeCoderPreV3(null);
         this.reqEnDeV3 = new RequestEnDecoderV3(null);
+
+        // prepare an add request frame, without the length prefix, for the decoding benchmarks
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.ADD_ENTRY)
+                        .setTxnId(0L))
+                .setAddRequest(AddRequest.newBuilder()
+                        .setLedgerId(ledgerId)
+                        .setEntryId(entryId)
+                        .setMasterKey(ByteString.copyFrom(masterKey))
+                        .setBody(ByteString.copyFrom(data))
+                        .setFlag(AddRequest.Flag.RECOVERY_ADD))
+                .build();
+        try {
+            ByteBuf frame = (ByteBuf) this.reqEnDeV3.encode(request, ByteBufAllocator.DEFAULT);
+            this.addRequestV3Frame = Unpooled.copiedBuffer(frame.slice(4, frame.readableBytes() - 4));
+            frame.release();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Benchmark
@@ -178,4 +200,27 @@ public class ProtocolBenchmark {
         Object res = this.reqEnDeV3.encode(request, ByteBufAllocator.DEFAULT);
         ReferenceCountUtil.release(res);
     }
+
+    @Benchmark
+    public void testAddEntryV3Direct() throws Exception {
+        // the frame is written around the entry, which is not copied
+        ByteBufList toSend = ByteBufList.get(entry.retainedSlice());
+        ByteBufList res = DirectCodecV3.encodeAddRequest(ByteBufAllocator.DEFAULT, 0L, 0, ledgerId, entryId,
+                masterKey, toSend, true, -1);
+        toSend.release();
+        res.release();
+    }
+
+    @Benchmark
+    public Object testDecodeAddEntryV3() throws Exception {
+        return this.reqEnDeV3.decode(addRequestV3Frame.duplicate());
+    }
+
+    @Benchmark
+    public Object testDecodeAddEntryV3Direct() throws Exception {
+        DirectCodecV3.RequestWithPayload res =
+                (DirectCodecV3.RequestWithPayload) DirectCodecV3.decodeRequest(addRequestV3Frame.duplicate());
+        res.release();
+        return res.getRequest();
+    }
 }
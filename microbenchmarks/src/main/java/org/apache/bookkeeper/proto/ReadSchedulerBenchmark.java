@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.proto.FairRequestScheduler.RequestClass;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks of the read schedulers of the bookie: the ordered read thread pool, and the fair
+ * read scheduler with a single shard or with the default number of shards. Each benchmark thread
+ * acts as a client connection reading a few ledgers.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class ReadSchedulerBenchmark {
+
+    private static final int NUM_THREADS = 8;
+
+    /**
+     * State holder of the scheduler.
+     */
+    @State(Scope.Benchmark)
+    public static class SchedulerState {
+        @Param({"OrderedExecutor", "FairScheduler-1-shard", "FairScheduler"})
+        private String schedulerName;
+
+        private OrderedExecutor orderedExecutor;
+        private FairRequestScheduler fairScheduler;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            switch (schedulerName) {
+            case "OrderedExecutor":
+                orderedExecutor = OrderedExecutor.newBuilder().numThreads(NUM_THREADS).build();
+                break;
+            case "FairScheduler-1-shard":
+                fairScheduler = new FairRequestScheduler("bench", NUM_THREADS, 1, 0, 8, false,
+                        NullStatsLogger.INSTANCE);
+                break;
+            default:
+                fairScheduler = new FairRequestScheduler("bench", NUM_THREADS, 0, 0, 8, false,
+                        NullStatsLogger.INSTANCE);
+                break;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            if (orderedExecutor != null) {
+                orderedExecutor.shutdown();
+            }
+            if (fairScheduler != null) {
+                fairScheduler.shutdown(10, TimeUnit.SECONDS);
+            }
+        }
+
+        void execute(Object connection, long ledgerId, Runnable read) {
+            if (orderedExecutor != null) {
+                orderedExecutor.executeOrdered(ledgerId, read);
+            } else {
+                fairScheduler.execute(connection, RequestClass.NORMAL, 1, read);
+            }
+        }
+    }
+
+    /**
+     * State holder of a client connection.
+     */
+    @State(Scope.Thread)
+    public static class ConnectionState {
+        private final Object connection = new Object();
+    }
+
+    @Benchmark
+    public void submitAndWait(SchedulerState s, ConnectionState c) throws Exception {
+        CompletableFuture<Void> read = new CompletableFuture<>();
+        s.execute(c.connection, ThreadLocalRandom.current().nextInt(4), () -> read.complete(null));
+        read.get();
+    }
+}